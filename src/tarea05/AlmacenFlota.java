@@ -0,0 +1,894 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Almacén en disco del estado de una flota que no cabe en memoria: cada barco
+ * ocupa un registro de tamaño fijo en un fichero proyectado en memoria por
+ * páginas, de modo que el montón sólo guarda un índice compacto por nombre
+ * (unos 16 bytes por barco) y el resto lo gestiona la caché de páginas del
+ * sistema operativo.</p>
+ * <p>
+ * Las consultas por número de registro leen directamente de la página
+ * proyectada, sin crear objetos. Para operar con un barco con las reglas de
+ * <code>Velero</code> (salidas, llegadas, cambios de rumbo...) se pide su
+ * vista con <code>getVelero</code>: un <code>Velero</code> hidratado desde su
+ * registro, en una escuela propia, cuyos cambios se escriben en el registro en
+ * cuanto se producen. Las vistas de los barcos más usados se conservan en una
+ * caché LRU de tamaño fijo. Una vista que sale de la caché sigue escribiendo
+ * sus cambios en su registro (y la vista que la sustituye en la caché, si la
+ * hay, se actualiza con ellos), aunque es preferible pedir la vista cada vez
+ * en lugar de conservarla. Cuando el almacén se cierra, sus vistas ya no
+ * pueden escribir: quien opere con una debe comprobar antes
+ * <code>isAbierto</code>, porque el aviso llega cuando el cambio ya está
+ * hecho en la vista y el error sólo queda anotado en su escuela
+ * (<code>EscuelaVela.getUltimoErrorOyente</code>).</p>
+ * <p>
+ * Estructura del fichero (orden de bytes nativo), en páginas de
+ * {@value TAMANO_PAGINA} bytes:</p>
+ * <ul>
+ * <li>Cabecera de {@value TAMANO_CABECERA} bytes: identificador, versión,
+ * número de registros, los contadores <code>numBarcosNavegando</code> y
+ * <code>tiempoTotalNavegacion</code>, y la tabla de rumbos del almacén (como
+ * mucho {@value MAX_RUMBOS} rumbos de hasta {@value MAX_BYTES_RUMBO} bytes en
+ * UTF-8). Los registros guardan el número del rumbo en esta tabla, no el
+ * identificador de <code>TablaSimbolos</code>, que sólo vale en la máquina
+ * virtual que lo asignó.</li>
+ * <li>Registros de {@value TAMANO_REGISTRO} bytes: resumen (<i>hash</i>) del
+ * nombre, mástiles, indicador de navegación, velocidad, rumbo, máximo de
+ * tripulantes, tripulación, tiempo total de navegación, instante de la
+ * última salida (<code>Long.MIN_VALUE</code> si no se conoce), nombre (como mucho
+ * {@value MAX_BYTES_NOMBRE} bytes en UTF-8) y patrón (los primeros
+ * {@value MAX_BYTES_PATRON} bytes).</li>
+ * </ul>
+ * <p>
+ * El fichero se bloquea mientras está abierto: sólo un proceso puede usar el
+ * almacén a la vez.</p>
+ *
+ * @author profesorado
+ */
+public class AlmacenFlota implements OyenteFlota, Closeable {
+
+    /**
+     * Tamaño (en bytes) de cada registro: {@value TAMANO_REGISTRO}.
+     */
+    public static final int TAMANO_REGISTRO = 128;
+
+    /**
+     * Tamaño (en bytes) de la cabecera, que va delante del primer registro: {@value TAMANO_CABECERA}.
+     */
+    public static final int TAMANO_CABECERA = 4096;
+
+    /**
+     * Tamaño (en bytes) de cada página proyectada: {@value TAMANO_PAGINA}.
+     */
+    public static final int TAMANO_PAGINA = 1 << 23;
+
+    /**
+     * Número máximo de registros de un almacén: {@value MAX_REGISTROS}.
+     */
+    public static final int MAX_REGISTROS = 1 << 29;
+
+    /**
+     * Longitud máxima (en bytes UTF-8) del nombre de un barco del almacén: {@value MAX_BYTES_NOMBRE}.
+     */
+    public static final int MAX_BYTES_NOMBRE = 64;
+
+    /**
+     * Bytes UTF-8 del patrón que se guardan en cada registro: {@value MAX_BYTES_PATRON}.
+     */
+    public static final int MAX_BYTES_PATRON = 32;
+
+    /**
+     * Longitud máxima (en bytes UTF-8) de cada rumbo de la tabla de rumbos: {@value MAX_BYTES_RUMBO}.
+     */
+    public static final int MAX_BYTES_RUMBO = 31;
+
+    /**
+     * Número máximo de rumbos distintos de un almacén: {@value MAX_RUMBOS}.
+     */
+    public static final int MAX_RUMBOS = 126;
+
+    /**
+     * Número de vistas que conserva la caché si no se indica otro: {@value VISTAS_POR_DEFECTO}.
+     */
+    public static final int VISTAS_POR_DEFECTO = 1024;
+
+    // Identificador y versión del formato del fichero
+    private static final long IDENTIFICADOR = 0x464C4F5441303031L;      // "FLOTA001"
+    private static final int VERSION = 4;
+
+    // Posiciones de los campos de la cabecera
+    private static final int POS_IDENTIFICADOR = 0;
+    private static final int POS_VERSION = 8;
+    private static final int POS_NUM_REGISTROS = 12;
+    private static final int POS_NUM_NAVEGANDO = 16;
+    private static final int POS_TIEMPO_TOTAL = 24;
+    private static final int POS_NUM_RUMBOS = 32;
+    private static final int POS_RUMBOS = 64;           // Tabla de rumbos: longitud y bytes UTF-8 de cada uno
+    private static final int TAMANO_RUMBO = 1 + MAX_BYTES_RUMBO;
+
+    // Posiciones de los campos dentro de cada registro
+    private static final int REG_RESUMEN = 0;
+    private static final int REG_MASTILES = 4;
+    private static final int REG_NAVEGANDO = 5;
+    private static final int REG_VELOCIDAD = 6;
+    private static final int REG_RUMBO = 7;
+    private static final int REG_MAX_TRIPULANTES = 8;
+    private static final int REG_TRIPULACION = 12;
+    private static final int REG_TIEMPO_TOTAL = 16;
+    private static final int REG_LONGITUD_NOMBRE = 20;
+    private static final int REG_LONGITUD_PATRON = 21;
+    private static final int REG_INSTANTE_SALIDA = 24;
+    private static final int REG_NOMBRE = 32;
+    private static final int REG_PATRON = REG_NOMBRE + MAX_BYTES_NOMBRE;
+
+    // Bits de la posición dentro de una página
+    private static final int BITS_PAGINA = Integer.numberOfTrailingZeros(TAMANO_PAGINA);
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final Path fichero;                         // Fichero proyectado
+    private final FileChannel canal;                    // Canal del fichero
+    private final FileLock bloqueo;                     // Bloqueo del fichero mientras está abierto
+    private MappedByteBuffer[] paginas;                 // Páginas proyectadas (se proyectan al usarlas)
+    private int numRegistros;                           // Registros ocupados
+    private long[] indice;                              // Resumen del nombre y registro + 1 de cada barco (0 si está libre)
+    private final String[] rumbos;                      // Tabla de rumbos del fichero
+    private final Map<String, Integer> numerosRumbo;    // Número de cada rumbo en la tabla del fichero
+    private final LinkedHashMap<Integer, Velero> vistas;  // Vistas hidratadas, de la menos a la más usada
+    private long aciertos;                              // Peticiones de vistas servidas desde la caché
+    private long fallos;                                // Peticiones de vistas que han hidratado una nueva
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    // Constructor privado: los almacenes se obtienen con el método abrir
+    private AlmacenFlota(Path fichero, FileChannel canal, FileLock bloqueo, int capacidadVistas) {
+        this.fichero = fichero;
+        this.canal = canal;
+        this.bloqueo = bloqueo;
+        this.paginas = new MappedByteBuffer[1];
+        this.numRegistros = 0;
+        this.indice = new long[64];
+        this.rumbos = new String[AlmacenFlota.MAX_RUMBOS];
+        this.numerosRumbo = new HashMap<>();
+        this.vistas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Velero> mayor) {
+                return this.size() > capacidadVistas;
+            }
+        };
+    }
+
+    /**
+     * Abre (o crea, si no existe) un almacén con la caché de vistas por defecto.
+     *
+     * @param fichero Ruta del fichero del almacén
+     * @return El almacén
+     *
+     * @throws NullPointerException Si el fichero es nulo
+     * @throws IllegalArgumentException Si el fichero no es un almacén de veleros
+     * @throws IllegalStateException Si otro proceso tiene abierto el almacén
+     * @throws IOException Si se produce un error al abrir o proyectar el fichero
+     */
+    public static AlmacenFlota abrir(Path fichero) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+        return AlmacenFlota.abrir(fichero, AlmacenFlota.VISTAS_POR_DEFECTO);
+    }
+
+    /**
+     * Abre (o crea, si no existe) un almacén y reconstruye su índice por nombre.
+     *
+     * @param fichero Ruta del fichero del almacén
+     * @param capacidadVistas Número de vistas hidratadas que conserva la caché
+     * @return El almacén
+     *
+     * @throws NullPointerException Si el fichero es nulo
+     * @throws IllegalArgumentException Si la capacidad no es válida o el fichero no es un almacén de veleros
+     * @throws IllegalStateException Si otro proceso tiene abierto el almacén
+     * @throws IOException Si se produce un error al abrir o proyectar el fichero
+     */
+    public static AlmacenFlota abrir(Path fichero, int capacidadVistas) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+        if (fichero == null) {
+            throw new NullPointerException("El fichero del almacén no puede ser nulo.\n");
+        }
+        if (capacidadVistas < 1) {
+            throw new IllegalArgumentException("La caché de vistas del almacén debe tener al menos una vista.\n");
+        }
+        FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock bloqueo;
+            try {
+                bloqueo = canal.tryLock();
+            } catch (OverlappingFileLockException e) {
+                bloqueo = null;
+            }
+            if (bloqueo == null) {
+                throw new IllegalStateException(String.format("El almacén %s ya está abierto.\n", fichero));
+            }
+            AlmacenFlota almacen = new AlmacenFlota(fichero, canal, bloqueo, capacidadVistas);
+            almacen.inicializar();
+            return almacen;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // Escribe la cabecera si el fichero es nuevo, o la comprueba y reconstruye el índice si ya existía
+    private void inicializar() throws IOException {
+        if (this.canal.size() == 0) {
+            MappedByteBuffer cabecera = this.pagina(0);
+            cabecera.putLong(AlmacenFlota.POS_IDENTIFICADOR, AlmacenFlota.IDENTIFICADOR);
+            cabecera.putInt(AlmacenFlota.POS_VERSION, AlmacenFlota.VERSION);
+            // El rumbo 0 es el rumbo por defecto, que tienen los registros nuevos (a cero)
+            this.numeroRumbo(Velero.RUMBO_POR_DEFECTO);
+            return;
+        }
+        // La cabecera se comprueba antes de proyectar, para no ampliar un fichero ajeno
+        ByteBuffer cabecera = ByteBuffer.allocate(AlmacenFlota.TAMANO_CABECERA).order(ByteOrder.nativeOrder());
+        this.canal.read(cabecera, 0);
+        if (cabecera.getLong(AlmacenFlota.POS_IDENTIFICADOR) != AlmacenFlota.IDENTIFICADOR
+                || cabecera.getInt(AlmacenFlota.POS_VERSION) != AlmacenFlota.VERSION) {
+            throw new IllegalArgumentException("El fichero no contiene un almacén de veleros válido.\n");
+        }
+        int numRumbos = cabecera.getInt(AlmacenFlota.POS_NUM_RUMBOS);
+        for (int r = 0; r < numRumbos; r++) {
+            int posicion = AlmacenFlota.POS_RUMBOS + r * AlmacenFlota.TAMANO_RUMBO;
+            this.rumbos[r] = AlmacenFlota.leerTexto(cabecera, posicion + 1, cabecera.get(posicion));
+            this.numerosRumbo.put(this.rumbos[r], r);
+        }
+        int registros = cabecera.getInt(AlmacenFlota.POS_NUM_REGISTROS);
+        this.indice = new long[AlmacenFlota.capacidadIndice(registros)];
+        for (int n = 0; n < registros; n++) {
+            this.indexar(this.resumen(n), n);
+        }
+        this.numRegistros = registros;
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>fichero</code>
+     * @return Ruta del fichero del almacén
+     */
+    public Path getFichero() {
+        return this.fichero;
+    }
+
+    /**
+     * @return Número de barcos del almacén
+     */
+    public synchronized int getNumRegistros() {
+        return this.numRegistros;
+    }
+
+    /**
+     * @return Número de barcos del almacén navegando
+     */
+    public synchronized long getNumBarcosNavegando() {
+        return this.paginas[0].getLong(AlmacenFlota.POS_NUM_NAVEGANDO);
+    }
+
+    /**
+     * @return Minutos de navegación de todos los barcos del almacén
+     */
+    public synchronized long getTiempoTotalNavegacion() {
+        return this.paginas[0].getLong(AlmacenFlota.POS_TIEMPO_TOTAL);
+    }
+
+    /**
+     * @return <code>true</code> si el almacén sigue abierto y sus vistas pueden guardar sus cambios
+     */
+    public synchronized boolean isAbierto() {
+        return this.canal.isOpen();
+    }
+
+    /**
+     * @return Número de vistas hidratadas en la caché
+     */
+    public synchronized int getNumVistas() {
+        return this.vistas.size();
+    }
+
+    /**
+     * @return Peticiones de vistas servidas desde la caché
+     */
+    public synchronized long getAciertos() {
+        return this.aciertos;
+    }
+
+    /**
+     * @return Peticiones de vistas que han tenido que hidratar una nueva
+     */
+    public synchronized long getFallos() {
+        return this.fallos;
+    }
+
+    // ------------------------------------------------------------------------
+    // Registros
+    // ------------------------------------------------------------------------
+    /**
+     * Añade un barco atracado y sin navegación al almacén.
+     *
+     * @param nombre Nombre del barco
+     * @param mastiles Número de mástiles del barco
+     * @param tripulantes Número máximo de tripulantes del barco
+     * @return Número de registro del barco
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si algún dato no es válido, el nombre es demasiado largo o ya existe
+     * @throws IllegalStateException Si el almacén está lleno
+     * @throws IOException Si se produce un error al ampliar el fichero
+     */
+    public synchronized int anadir(String nombre, int mastiles, int tripulantes) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+        Velero.comprobarDatos(nombre, mastiles, tripulantes);
+        byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > AlmacenFlota.MAX_BYTES_NOMBRE) {
+            throw new IllegalArgumentException(String.format("El nombre del velero %s ocupa más de %d bytes.\n", nombre, AlmacenFlota.MAX_BYTES_NOMBRE));
+        }
+        if (this.buscar(nombre.hashCode(), bytes) >= 0) {
+            throw new IllegalArgumentException(String.format("El velero %s ya está en el almacén.\n", nombre));
+        }
+        if (this.numRegistros == AlmacenFlota.MAX_REGISTROS) {
+            throw new IllegalStateException(String.format("El almacén %s está lleno (%d barcos).\n", this.fichero, AlmacenFlota.MAX_REGISTROS));
+        }
+        int n = this.numRegistros;
+        MappedByteBuffer pagina = this.pagina(AlmacenFlota.numPagina(n));
+        int base = AlmacenFlota.posicion(n);
+        // Las páginas nuevas están a cero: sólo se escriben los campos que no lo son
+        pagina.putInt(base + AlmacenFlota.REG_RESUMEN, nombre.hashCode());
+        pagina.put(base + AlmacenFlota.REG_MASTILES, (byte) mastiles);
+        pagina.putInt(base + AlmacenFlota.REG_MAX_TRIPULANTES, tripulantes);
+        pagina.putInt(base + AlmacenFlota.REG_TRIPULACION, Velero.MIN_TRIPULANTES);
+        pagina.putLong(base + AlmacenFlota.REG_INSTANTE_SALIDA, Velero.SIN_INSTANTE);
+        pagina.put(base + AlmacenFlota.REG_LONGITUD_NOMBRE, (byte) bytes.length);
+        pagina.put(base + AlmacenFlota.REG_NOMBRE, bytes);
+        AlmacenFlota.escribirPatron(pagina, base, Velero.PATRON_POR_DEFECTO);
+        // El registro se publica en la cabecera cuando ya está completo
+        this.numRegistros++;
+        this.paginas[0].putInt(AlmacenFlota.POS_NUM_REGISTROS, this.numRegistros);
+        if (2 * this.numRegistros > this.indice.length) {
+            this.ampliarIndice();
+        }
+        this.indexar(nombre.hashCode(), n);
+        return n;
+    }
+
+    /**
+     * Guarda en el almacén el estado de un velero de cualquier escuela, añadiéndolo
+     * si no estaba. Si hay una vista del barco en la caché, se actualiza también.
+     *
+     * @param barco Velero
+     * @return Número de registro del barco
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el nombre o el rumbo del barco son demasiado largos
+     * @throws IllegalStateException Si el almacén está lleno o su tabla de rumbos no admite uno nuevo
+     * @throws IOException Si se produce un error al ampliar el fichero
+     */
+    public synchronized int guardar(Velero barco) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+        if (barco == null) {
+            throw new NullPointerException("El velero que se guarda no puede ser nulo.\n");
+        }
+        int rumbo = this.numeroRumbo(barco.getRumbo());
+        int n = this.buscar(barco.getNombreBarco());
+        if (n < 0) {
+            n = this.anadir(barco.getNombreBarco(), barco.getNumMastiles(), barco.getMaxTripulantes());
+        }
+        this.escribirEstado(n, barco, rumbo);
+        Velero vista = this.vistas.get(n);
+        if (vista != null && vista != barco) {
+            AlmacenFlota.rehidratar(vista, barco.isNavegando(), barco.getTiempoTotalNavegacionBarco(), barco.getVelocidad(),
+                    barco.getRumbo(), barco.getPatron(), barco.getTripulacion(), barco.getMilisegundosSalida());
+        }
+        return n;
+    }
+
+    /**
+     * Busca un barco por su nombre.
+     *
+     * @param nombre Nombre del barco
+     * @return Número de registro del barco, o -1 si no está en el almacén
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     */
+    public synchronized int buscar(String nombre) throws NullPointerException {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre del velero no puede ser nulo.\n");
+        }
+        return this.buscar(nombre.hashCode(), nombre.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Nombre del barco
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized String getNombreBarco(int n) throws IndexOutOfBoundsException {
+        MappedByteBuffer pagina = this.paginaDe(n);
+        int base = AlmacenFlota.posicion(n);
+        return AlmacenFlota.leerTexto(pagina, base + AlmacenFlota.REG_NOMBRE, pagina.get(base + AlmacenFlota.REG_LONGITUD_NOMBRE));
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Número de mástiles del barco
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized int getNumMastiles(int n) throws IndexOutOfBoundsException {
+        return this.paginaDe(n).get(AlmacenFlota.posicion(n) + AlmacenFlota.REG_MASTILES);
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Número máximo de tripulantes del barco
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized int getMaxTripulantes(int n) throws IndexOutOfBoundsException {
+        return this.paginaDe(n).getInt(AlmacenFlota.posicion(n) + AlmacenFlota.REG_MAX_TRIPULANTES);
+    }
+
+    /**
+     * @param n Número de registro
+     * @return <code>true</code> si el barco está navegando
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized boolean isNavegando(int n) throws IndexOutOfBoundsException {
+        return this.paginaDe(n).get(AlmacenFlota.posicion(n) + AlmacenFlota.REG_NAVEGANDO) != 0;
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Tiempo total de navegación del barco (en minutos)
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized int getTiempoTotalNavegacionBarco(int n) throws IndexOutOfBoundsException {
+        return this.paginaDe(n).getInt(AlmacenFlota.posicion(n) + AlmacenFlota.REG_TIEMPO_TOTAL);
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Velocidad del barco (en nudos)
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized int getVelocidad(int n) throws IndexOutOfBoundsException {
+        return this.paginaDe(n).get(AlmacenFlota.posicion(n) + AlmacenFlota.REG_VELOCIDAD);
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Rumbo del barco
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized String getRumbo(int n) throws IndexOutOfBoundsException {
+        return this.rumbos[this.paginaDe(n).get(AlmacenFlota.posicion(n) + AlmacenFlota.REG_RUMBO) & 0xFF];
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Patrón del barco (como mucho, sus primeros {@value MAX_BYTES_PATRON} bytes)
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized String getPatron(int n) throws IndexOutOfBoundsException {
+        MappedByteBuffer pagina = this.paginaDe(n);
+        int base = AlmacenFlota.posicion(n);
+        return AlmacenFlota.leerTexto(pagina, base + AlmacenFlota.REG_PATRON, pagina.get(base + AlmacenFlota.REG_LONGITUD_PATRON));
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Número de tripulantes del barco
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized int getTripulacion(int n) throws IndexOutOfBoundsException {
+        return this.paginaDe(n).getInt(AlmacenFlota.posicion(n) + AlmacenFlota.REG_TRIPULACION);
+    }
+
+    /**
+     * @param n Número de registro
+     * @return Instante de la última salida del barco, o <code>null</code> si no ha salido nunca
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized Instant getInstanteSalida(int n) throws IndexOutOfBoundsException {
+        long instante = this.paginaDe(n).getLong(AlmacenFlota.posicion(n) + AlmacenFlota.REG_INSTANTE_SALIDA);
+        return (instante == Velero.SIN_INSTANTE ? null : Instant.ofEpochMilli(instante));
+    }
+
+    // ------------------------------------------------------------------------
+    // Vistas hidratadas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve la vista de un barco del almacén.
+     *
+     * @param nombre Nombre del barco
+     * @return Vista del barco, o <code>null</code> si no está en el almacén
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     */
+    public synchronized Velero getVelero(String nombre) throws NullPointerException {
+        int n = this.buscar(nombre);
+        return (n < 0 ? null : this.getVelero(n));
+    }
+
+    /**
+     * Devuelve la vista de un barco del almacén: un <code>Velero</code> con el
+     * estado de su registro, cuyos cambios se escriben en el registro.
+     *
+     * @param n Número de registro
+     * @return Vista del barco
+     *
+     * @throws IndexOutOfBoundsException Si el registro no existe
+     */
+    public synchronized Velero getVelero(int n) throws IndexOutOfBoundsException {
+        Velero vista = this.vistas.get(n);
+        if (vista != null) {
+            this.aciertos++;
+            return vista;
+        }
+        this.fallos++;
+        EscuelaVela escuela = new EscuelaVela(String.format("%s#%d", this.fichero.getFileName(), n));
+        vista = escuela.crearVelero(this.getNombreBarco(n), this.getNumMastiles(n), this.getMaxTripulantes(n));
+        this.rehidratar(vista, n);
+        escuela.anadirOyente(this);
+        this.vistas.put(n, vista);
+        return vista;
+    }
+
+    // Copia el estado de un registro en una vista
+    private void rehidratar(Velero vista, int n) {
+        AlmacenFlota.rehidratar(vista, this.isNavegando(n), this.getTiempoTotalNavegacionBarco(n), this.getVelocidad(n),
+                this.getRumbo(n), this.getPatron(n), this.getTripulacion(n),
+                this.paginaDe(n).getLong(AlmacenFlota.posicion(n) + AlmacenFlota.REG_INSTANTE_SALIDA));
+    }
+
+    // Copia un estado en una vista, manteniendo los contadores de su escuela
+    private static void rehidratar(Velero vista, boolean navegando, int tiempoTotal, int velocidad, String rumbo, String patron, int tripulacion, long instanteSalida) {
+        EscuelaVela escuela = vista.getEscuela();
+        int navegaba = (vista.isNavegando() ? 1 : 0);
+        int tiempoAnterior = vista.getTiempoTotalNavegacionBarco();
+        vista.restaurar(navegando, tiempoTotal, velocidad, escuela.getRumbos().getId(rumbo), escuela.getPatrones().getId(patron), tripulacion, instanteSalida);
+        escuela.registrarLote((navegando ? 1 : 0) - navegaba, tiempoTotal - tiempoAnterior);
+    }
+
+    // ------------------------------------------------------------------------
+    // Avisos de las vistas: los cambios se escriben en el registro
+    // ------------------------------------------------------------------------
+    @Override
+    public void navegacionIniciada(Velero barco) {
+        this.escribirEstado(barco, false);
+    }
+
+    @Override
+    public void rumboCambiado(Velero barco, int idRumboAnterior) {
+        this.escribirEstado(barco, false);
+    }
+
+    @Override
+    public void velocidadCambiada(Velero barco, int velocidadAnterior) {
+        this.escribirEstado(barco, false);
+    }
+
+    @Override
+    public void navegacionParada(Velero barco, int tiempoNavegando) {
+        // El aviso llega antes de que el barco vuelva a puerto: se escribe el estado de llegada
+        this.escribirEstado(barco, true);
+    }
+
+    // Escribe los cambios de una vista en su registro, siga o no en la caché; si la caché tiene
+    // otra vista del mismo barco, se actualiza con ellos. Con el almacén cerrado no se escribe nada
+    private synchronized void escribirEstado(Velero vista, boolean llegada) throws IllegalStateException {
+        if (!this.canal.isOpen()) {
+            throw new IllegalStateException(String.format("El almacén %s se ha cerrado: el cambio del velero %s no se ha guardado.\n",
+                    this.fichero, vista.getNombreBarco()));
+        }
+        int n = this.buscar(vista.getNombreBarco());
+        if (llegada) {
+            this.escribirEstado(n, false, 0, 0, Velero.PATRON_POR_DEFECTO, Velero.MIN_TRIPULANTES,
+                    vista.getTiempoTotalNavegacionBarco(), vista.getMilisegundosSalida());
+        } else {
+            this.escribirEstado(n, vista, this.numeroRumbo(vista.getRumbo()));
+        }
+        Velero actual = this.vistas.get(n);
+        if (actual != null && actual != vista) {
+            this.rehidratar(actual, n);
+        }
+    }
+
+    private void escribirEstado(int n, Velero barco, int rumbo) {
+        this.escribirEstado(n, barco.isNavegando(), barco.getVelocidad(), rumbo, barco.getPatron(), barco.getTripulacion(),
+                barco.getTiempoTotalNavegacionBarco(), barco.getMilisegundosSalida());
+    }
+
+    // Escribe el estado de navegación de un barco en su registro y ajusta los contadores de la cabecera
+    private void escribirEstado(int n, boolean navegando, int velocidad, int rumbo, String patron, int tripulacion, int tiempoTotal, long instanteSalida) {
+        MappedByteBuffer pagina = this.paginaDe(n);
+        int base = AlmacenFlota.posicion(n);
+        int navegaba = pagina.get(base + AlmacenFlota.REG_NAVEGANDO);
+        int tiempoAnterior = pagina.getInt(base + AlmacenFlota.REG_TIEMPO_TOTAL);
+        pagina.put(base + AlmacenFlota.REG_NAVEGANDO, (byte) (navegando ? 1 : 0));
+        pagina.put(base + AlmacenFlota.REG_VELOCIDAD, (byte) velocidad);
+        pagina.put(base + AlmacenFlota.REG_RUMBO, (byte) rumbo);
+        pagina.putInt(base + AlmacenFlota.REG_TRIPULACION, tripulacion);
+        pagina.putInt(base + AlmacenFlota.REG_TIEMPO_TOTAL, tiempoTotal);
+        pagina.putLong(base + AlmacenFlota.REG_INSTANTE_SALIDA, instanteSalida);
+        AlmacenFlota.escribirPatron(pagina, base, patron);
+
+        MappedByteBuffer cabecera = this.paginas[0];
+        cabecera.putLong(AlmacenFlota.POS_NUM_NAVEGANDO, cabecera.getLong(AlmacenFlota.POS_NUM_NAVEGANDO) + (navegando ? 1 : 0) - navegaba);
+        cabecera.putLong(AlmacenFlota.POS_TIEMPO_TOTAL, cabecera.getLong(AlmacenFlota.POS_TIEMPO_TOTAL) + tiempoTotal - tiempoAnterior);
+    }
+
+    // ------------------------------------------------------------------------
+    // Cierre del almacén
+    // ------------------------------------------------------------------------
+    /**
+     * Escribe en disco las páginas modificadas.
+     */
+    public synchronized void forzar() {
+        for (MappedByteBuffer pagina : this.paginas) {
+            if (pagina != null) {
+                pagina.force();
+            }
+        }
+    }
+
+    /**
+     * Escribe en disco las páginas modificadas y cierra el fichero. Las
+     * páginas se liberan cuando se liberen el almacén y sus vistas.
+     *
+     * @throws IOException Si se produce un error al cerrar el fichero
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!this.canal.isOpen()) {
+            return;
+        }
+        this.forzar();
+        this.vistas.clear();
+        this.bloqueo.release();
+        this.canal.close();
+    }
+
+    /**
+     * Devuelve el estado del almacén en un tipo String
+     *
+     * @return String Estado del almacén
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("{Fichero: %s, Barcos: %d, Navegando: %d, Minutos: %d, Páginas: %d, Vistas: %d (aciertos: %d, fallos: %d)}",
+                this.fichero, this.numRegistros, this.getNumBarcosNavegando(), this.getTiempoTotalNavegacion(),
+                AlmacenFlota.numPagina(Math.max(this.numRegistros - 1, 0)) + 1, this.vistas.size(), this.aciertos, this.fallos);
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Posición de un registro dentro de su página y número de su página (la cabecera va delante del primero)
+    private static int posicion(int n) {
+        return (int) ((AlmacenFlota.TAMANO_CABECERA + (long) n * AlmacenFlota.TAMANO_REGISTRO) & (AlmacenFlota.TAMANO_PAGINA - 1));
+    }
+
+    private static int numPagina(int n) {
+        return (int) ((AlmacenFlota.TAMANO_CABECERA + (long) n * AlmacenFlota.TAMANO_REGISTRO) >>> AlmacenFlota.BITS_PAGINA);
+    }
+
+    // Número de un rumbo en la tabla del fichero, que se añade si no estaba
+    private int numeroRumbo(String rumbo) throws IllegalArgumentException, IllegalStateException {
+        Integer numero = this.numerosRumbo.get(rumbo);
+        if (numero != null) {
+            return numero;
+        }
+        byte[] bytes = rumbo.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > AlmacenFlota.MAX_BYTES_RUMBO) {
+            throw new IllegalArgumentException(String.format("El rumbo %s ocupa más de %d bytes.\n", rumbo, AlmacenFlota.MAX_BYTES_RUMBO));
+        }
+        int r = this.numerosRumbo.size();
+        if (r == AlmacenFlota.MAX_RUMBOS) {
+            throw new IllegalStateException(String.format("La tabla de rumbos del almacén %s está llena (%d rumbos).\n", this.fichero, AlmacenFlota.MAX_RUMBOS));
+        }
+        MappedByteBuffer cabecera = this.paginas[0];
+        int posicion = AlmacenFlota.POS_RUMBOS + r * AlmacenFlota.TAMANO_RUMBO;
+        cabecera.put(posicion, (byte) bytes.length);
+        cabecera.put(posicion + 1, bytes);
+        // El rumbo se publica en la cabecera cuando ya está completo
+        cabecera.putInt(AlmacenFlota.POS_NUM_RUMBOS, r + 1);
+        this.rumbos[r] = rumbo;
+        this.numerosRumbo.put(rumbo, r);
+        return r;
+    }
+
+    // Página de un registro existente
+    private MappedByteBuffer paginaDe(int n) throws IndexOutOfBoundsException {
+        if (n < 0 || n >= this.numRegistros) {
+            throw new IndexOutOfBoundsException(String.format("El almacén no tiene el registro %d.\n", n));
+        }
+        try {
+            return this.pagina(AlmacenFlota.numPagina(n));
+        } catch (IOException e) {
+            // Las páginas de los registros existentes ya están en el fichero: sólo falla si el fichero deja de ser accesible
+            throw new IllegalStateException(String.format("No se puede proyectar la página del registro %d de %s.\n", n, this.fichero), e);
+        }
+    }
+
+    // Proyecta una página la primera vez que se usa (proyectar más allá del final amplía el fichero con ceros)
+    private MappedByteBuffer pagina(int p) throws IOException {
+        if (p >= this.paginas.length) {
+            this.paginas = Arrays.copyOf(this.paginas, Math.max(p + 1, this.paginas.length * 2));
+        }
+        MappedByteBuffer pagina = this.paginas[p];
+        if (pagina == null) {
+            pagina = this.canal.map(FileChannel.MapMode.READ_WRITE, (long) p * AlmacenFlota.TAMANO_PAGINA, AlmacenFlota.TAMANO_PAGINA);
+            pagina.order(ByteOrder.nativeOrder());
+            this.paginas[p] = pagina;
+        }
+        return pagina;
+    }
+
+    private int resumen(int n) throws IOException {
+        return this.pagina(AlmacenFlota.numPagina(n)).getInt(AlmacenFlota.posicion(n) + AlmacenFlota.REG_RESUMEN);
+    }
+
+    private static String leerTexto(ByteBuffer pagina, int posicion, int longitud) {
+        byte[] bytes = new byte[longitud & 0xFF];
+        pagina.get(posicion, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Escribe el patrón, recortado a los bytes del registro sin partir ningún carácter
+    private static void escribirPatron(ByteBuffer pagina, int base, String patron) {
+        byte[] bytes = patron.getBytes(StandardCharsets.UTF_8);
+        int longitud = Math.min(bytes.length, AlmacenFlota.MAX_BYTES_PATRON);
+        while (longitud < bytes.length && (bytes[longitud] & 0xC0) == 0x80) {
+            longitud--;
+        }
+        pagina.put(base + AlmacenFlota.REG_LONGITUD_PATRON, (byte) longitud);
+        pagina.put(base + AlmacenFlota.REG_PATRON, bytes, 0, longitud);
+    }
+
+    // Índice por nombre: direccionamiento abierto con sondeo lineal sobre un array de long
+    private int buscar(int resumen, byte[] nombre) {
+        int mascara = this.indice.length - 1;
+        for (int i = AlmacenFlota.dispersar(resumen) & mascara; this.indice[i] != 0; i = (i + 1) & mascara) {
+            if ((int) (this.indice[i] >>> 32) == resumen) {
+                int n = (int) this.indice[i] - 1;
+                if (this.coincide(n, nombre)) {
+                    return n;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean coincide(int n, byte[] nombre) {
+        MappedByteBuffer pagina = this.paginaDe(n);
+        int base = AlmacenFlota.posicion(n);
+        if ((pagina.get(base + AlmacenFlota.REG_LONGITUD_NOMBRE) & 0xFF) != nombre.length) {
+            return false;
+        }
+        for (int i = 0; i < nombre.length; i++) {
+            if (pagina.get(base + AlmacenFlota.REG_NOMBRE + i) != nombre[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void indexar(int resumen, int n) {
+        int mascara = this.indice.length - 1;
+        int i = AlmacenFlota.dispersar(resumen) & mascara;
+        while (this.indice[i] != 0) {
+            i = (i + 1) & mascara;
+        }
+        this.indice[i] = ((long) resumen << 32) | (n + 1);
+    }
+
+    private void ampliarIndice() {
+        long[] anterior = this.indice;
+        this.indice = new long[anterior.length * 2];
+        for (long entrada : anterior) {
+            if (entrada != 0) {
+                this.indexar((int) (entrada >>> 32), (int) entrada - 1);
+            }
+        }
+    }
+
+    // Tamaño del índice (potencia de dos) para que quede, como mucho, medio lleno
+    private static int capacidadIndice(int registros) {
+        return Math.max(64, Integer.highestOneBit(Math.max(1, 2 * registros - 1)) << 1);
+    }
+
+    private static int dispersar(int resumen) {
+        int h = resumen * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main de prueba: llena un almacén temporal con una flota, consulta
+     * y opera con barcos al azar, y lo vuelve a abrir para comprobar que el
+     * estado se conserva.
+     * @param args Número de barcos (opcional)
+     * @throws IOException Si se produce un error con el fichero del almacén
+     */
+    public static void main(String[] args) throws IOException {
+        int numBarcos = (args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000);
+        Path fichero = Files.createTempFile("almacen", ".flota");
+        Files.delete(fichero);
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println(String.format("ALMACÉN EN DISCO con %d barcos en %s", numBarcos, fichero));
+        System.out.println("----------------------------------------------------\n");
+
+        try (AlmacenFlota almacen = AlmacenFlota.abrir(fichero)) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < numBarcos; i++) {
+                almacen.anadir("Barco " + i, 1 + i % Velero.MAX_MASTILES, 4 + i % 8);
+            }
+            long nanos = System.nanoTime() - inicio;
+            System.gc();
+            System.out.println(String.format(" -> Alta: %.0f ns por barco; montón ocupado: %d MB; fichero: %d MB",
+                    (double) nanos / numBarcos, (runtime.totalMemory() - runtime.freeMemory()) >> 20, Files.size(fichero) >> 20));
+
+            // Operaciones al azar: las vistas de los barcos más usados se sirven desde la caché
+            java.util.Random azar = new java.util.Random(48);
+            int numOperaciones = 200_000;
+            inicio = System.nanoTime();
+            for (int i = 0; i < numOperaciones; i++) {
+                int n = (azar.nextInt(10) < 8 ? azar.nextInt(500) : azar.nextInt(numBarcos));
+                Velero barco = almacen.getVelero("Barco " + n);
+                if (barco.isNavegando()) {
+                    barco.pararNavegacion(30 + n % 60);
+                } else {
+                    barco.iniciarNavegacion(Velero.MIN_VELOCIDAD + n % 10, "ceñida", "Patrón " + n % 7, 0);
+                }
+            }
+            nanos = System.nanoTime() - inicio;
+            System.out.println(String.format(" -> Operaciones: %.0f ns por operación", (double) nanos / numOperaciones));
+            inicio = System.nanoTime();
+            long minutos = 0;
+            for (int i = 0; i < numOperaciones; i++) {
+                minutos += almacen.getTiempoTotalNavegacionBarco(azar.nextInt(numBarcos));
+            }
+            nanos = System.nanoTime() - inicio;
+            System.out.println(String.format(" -> Consultas directas: %.0f ns por consulta (%d minutos)", (double) nanos / numOperaciones, minutos));
+            System.out.println(String.format(" -> %s", almacen));
+        }
+
+        try (AlmacenFlota almacen = AlmacenFlota.abrir(fichero)) {
+            long navegando = 0;
+            long minutos = 0;
+            for (int n = 0; n < almacen.getNumRegistros(); n++) {
+                navegando += (almacen.isNavegando(n) ? 1 : 0);
+                minutos += almacen.getTiempoTotalNavegacionBarco(n);
+            }
+            System.out.println(String.format(" -> Reabierto: %s", almacen));
+            System.out.println(String.format(" -> Recuento de los registros: %d navegando, %d minutos", navegando, minutos));
+            Velero barco = almacen.getVelero("Barco 7");
+            System.out.println(String.format(" -> %s", barco));
+        } finally {
+            Files.deleteIfExists(fichero);
+        }
+    }
+}
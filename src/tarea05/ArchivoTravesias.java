@@ -0,0 +1,762 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Archivo en disco de las series de telemetría (velocidad y rumbo) de las
+ * travesías de los veleros, comprimidas por columnas.</p>
+ * <p>
+ * El archivo sólo crece por el final. Cada travesía se registra con su barco
+ * y sus muestras se guardan en bloques de hasta <code>MUESTRAS_POR_BLOQUE</code>
+ * muestras. Dentro de un bloque, cada columna se comprime por separado:</p>
+ * <ul>
+ * <li>los instantes, con la diferencia entre diferencias consecutivas
+ * (con un intervalo de muestreo regular ocupan un bit por muestra)</li>
+ * <li>la velocidad y el rumbo, con la operación XOR de cada valor con el
+ * anterior, guardando sólo los bits significativos del resultado</li>
+ * </ul>
+ * <p>
+ * Junto al archivo de datos (<code>ruta</code>) se mantiene un índice de bloques
+ * (<code>ruta.idx</code>) con la posición, el número de muestras y el intervalo
+ * de tiempo de cada bloque, que se carga en memoria al abrir el archivo. Así,
+ * leer una travesía sólo lee sus bloques, y una consulta por intervalo de
+ * tiempo sólo los que se solapan con él. Si el índice no recoge los últimos
+ * registros (por ejemplo, tras una interrupción), se reconstruye a partir de
+ * los datos, y un último registro incompleto se descarta.</p>
+ *
+ * @author profesorado
+ */
+public class ArchivoTravesias implements Closeable {
+
+    /**
+     * Número máximo de muestras de un bloque.
+     */
+    public static final int MUESTRAS_POR_BLOQUE = 1024;
+
+    // Marcas de los registros del archivo de datos ("TRV1" y "BLQ1")
+    private static final int MARCA_TRAVESIA = 0x54525631;
+    private static final int MARCA_BLOQUE = 0x424C5131;
+
+    // Tamaño de las cabeceras de los registros y de las entradas del índice (en bytes)
+    private static final int CABECERA_TRAVESIA = 4 + 8 + 2;
+    private static final int CABECERA_BLOQUE = 4 + 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int ENTRADA_INDICE = 1 + 8 + 8 + 4 + 4 + 8 + 8;
+
+    // Tipos de entrada del índice
+    private static final byte TIPO_TRAVESIA = 'T';
+    private static final byte TIPO_BLOQUE = 'B';
+
+    // Bloques de una travesía, en arrays paralelos
+    private static final class Travesia {
+
+        final long id;
+        final String nombreBarco;
+        int numBloques;
+        long[] posiciones = new long[4];
+        int[] longitudes = new int[4];
+        int[] numMuestras = new int[4];
+        long[] desde = new long[4];
+        long[] hasta = new long[4];
+
+        Travesia(long id, String nombreBarco) {
+            this.id = id;
+            this.nombreBarco = nombreBarco;
+        }
+
+        void anadirBloque(long posicion, int longitud, int muestras, long primerInstante, long ultimoInstante) {
+            if (this.numBloques == this.posiciones.length) {
+                int capacidad = this.numBloques * 2;
+                this.posiciones = Arrays.copyOf(this.posiciones, capacidad);
+                this.longitudes = Arrays.copyOf(this.longitudes, capacidad);
+                this.numMuestras = Arrays.copyOf(this.numMuestras, capacidad);
+                this.desde = Arrays.copyOf(this.desde, capacidad);
+                this.hasta = Arrays.copyOf(this.hasta, capacidad);
+            }
+            this.posiciones[this.numBloques] = posicion;
+            this.longitudes[this.numBloques] = longitud;
+            this.numMuestras[this.numBloques] = muestras;
+            this.desde[this.numBloques] = primerInstante;
+            this.hasta[this.numBloques] = ultimoInstante;
+            this.numBloques++;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final Path ruta;                                    // Ruta del archivo de datos
+    private final FileChannel datos;                            // Archivo de datos
+    private final FileChannel indice;                           // Índice de bloques
+    private final LinkedHashMap<Long, Travesia> travesias;      // Travesías por identificador
+    private final HashMap<String, List<Long>> porBarco;         // Travesías de cada barco
+    private long finDatos;                                      // Tamaño del archivo de datos
+    private long finIndice;                                     // Tamaño del índice
+    private long siguienteId;                                   // Identificador de la siguiente travesía
+    private int numBloques;                                     // Número total de bloques
+    private long numMuestras;                                   // Número total de muestras
+
+    // Compresores de las columnas (reutilizados en cada bloque que se escribe)
+    private final FlujoBits columnaInstantes;
+    private final FlujoBits columnaVelocidades;
+    private final FlujoBits columnaRumbos;
+    private final CRC32 crc;
+
+    // Constructor privado: los archivos se abren con abrir
+    private ArchivoTravesias(Path ruta, FileChannel datos, FileChannel indice) {
+        this.ruta = ruta;
+        this.datos = datos;
+        this.indice = indice;
+        this.travesias = new LinkedHashMap<>();
+        this.porBarco = new HashMap<>();
+        this.finDatos = 0;
+        this.finIndice = 0;
+        this.siguienteId = 1;
+        this.numBloques = 0;
+        this.numMuestras = 0;
+        this.columnaInstantes = new FlujoBits(ArchivoTravesias.MUESTRAS_POR_BLOQUE);
+        this.columnaVelocidades = new FlujoBits(ArchivoTravesias.MUESTRAS_POR_BLOQUE * 2);
+        this.columnaRumbos = new FlujoBits(ArchivoTravesias.MUESTRAS_POR_BLOQUE * 2);
+        this.crc = new CRC32();
+    }
+
+    /**
+     * Abre un archivo de travesías, creándolo si no existe.
+     *
+     * @param ruta Ruta del archivo de datos (el índice se guarda en la misma ruta con la extensión <code>.idx</code>)
+     * @return El archivo abierto
+     *
+     * @throws IOException Si se produce un error al abrir o leer el archivo
+     */
+    public static ArchivoTravesias abrir(Path ruta) throws IOException {
+        FileChannel datos = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel indice;
+        try {
+            indice = FileChannel.open(ruta.resolveSibling(ruta.getFileName() + ".idx"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            datos.close();
+            throw e;
+        }
+        ArchivoTravesias archivo = new ArchivoTravesias(ruta, datos, indice);
+        try {
+            archivo.cargarIndice();
+            archivo.recuperarRegistros();
+        } catch (IOException | RuntimeException e) {
+            archivo.close();
+            throw e;
+        }
+        return archivo;
+    }
+
+    // ------------------------------------------------------------------------
+    // Escritura
+    // ------------------------------------------------------------------------
+    /**
+     * Registra una travesía nueva y devuelve la grabación con la que se añaden sus muestras.
+     *
+     * @param nombreBarco Nombre del barco
+     * @return Grabación de la travesía
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si el nombre ocupa más de 65535 bytes
+     * @throws IOException Si se produce un error al escribir
+     */
+    public synchronized Grabacion grabar(String nombreBarco) throws NullPointerException, IllegalArgumentException, IOException {
+        if (nombreBarco == null) {
+            throw new NullPointerException("El nombre del barco de la travesía no puede ser nulo.\n");
+        }
+        byte[] nombre = nombreBarco.getBytes(StandardCharsets.UTF_8);
+        if (nombre.length > 0xFFFF) {
+            throw new IllegalArgumentException("El nombre del barco de la travesía es demasiado largo.\n");
+        }
+        long id = this.siguienteId;
+        ByteBuffer registro = ByteBuffer.allocate(ArchivoTravesias.CABECERA_TRAVESIA + nombre.length);
+        registro.putInt(ArchivoTravesias.MARCA_TRAVESIA).putLong(id).putShort((short) nombre.length).put(nombre).flip();
+        long posicion = this.anadirDatos(registro);
+        this.anadirEntradaIndice(ArchivoTravesias.TIPO_TRAVESIA, id, posicion, registro.capacity(), 0, 0, 0);
+        this.registrarTravesia(id, nombreBarco);
+        return new Grabacion(id);
+    }
+
+    /**
+     * Grabación de las muestras de una travesía: las muestras se acumulan en
+     * memoria y se escriben en un bloque comprimido cada
+     * <code>MUESTRAS_POR_BLOQUE</code> muestras y al cerrar la grabación.
+     * Una grabación no debe utilizarse desde varios hilos a la vez.
+     */
+    public final class Grabacion implements Closeable {
+
+        private final long idTravesia;      // Identificador de la travesía
+        private final long[] instantes;     // Instantes pendientes de escribir
+        private final float[] velocidades;  // Velocidades pendientes de escribir
+        private final float[] rumbos;       // Rumbos pendientes de escribir
+        private int numPendientes;          // Número de muestras pendientes
+        private long ultimoInstante;        // Instante de la última muestra añadida
+        private boolean cerrada;            // Indica si la grabación se ha cerrado
+
+        private Grabacion(long idTravesia) {
+            this.idTravesia = idTravesia;
+            this.instantes = new long[ArchivoTravesias.MUESTRAS_POR_BLOQUE];
+            this.velocidades = new float[ArchivoTravesias.MUESTRAS_POR_BLOQUE];
+            this.rumbos = new float[ArchivoTravesias.MUESTRAS_POR_BLOQUE];
+            this.numPendientes = 0;
+            this.ultimoInstante = Long.MIN_VALUE;
+            this.cerrada = false;
+        }
+
+        /**
+         * @return Identificador de la travesía en el archivo
+         */
+        public long getIdTravesia() {
+            return this.idTravesia;
+        }
+
+        /**
+         * Añade una muestra a la travesía.
+         *
+         * @param instante Instante de la muestra (en milisegundos), no anterior al de la muestra previa
+         * @param velocidad Velocidad (en nudos)
+         * @param rumbo Rumbo (en grados)
+         *
+         * @throws IllegalArgumentException Si el instante es anterior al de la muestra previa
+         * @throws IllegalStateException Si la grabación está cerrada
+         * @throws IOException Si se produce un error al escribir un bloque
+         */
+        public void anadir(long instante, float velocidad, float rumbo) throws IllegalArgumentException, IllegalStateException, IOException {
+            if (this.cerrada) {
+                throw new IllegalStateException("La grabación de la travesía está cerrada.\n");
+            }
+            if (instante < this.ultimoInstante) {
+                throw new IllegalArgumentException(String.format("El instante %d es anterior al de la muestra previa (%d).\n", instante, this.ultimoInstante));
+            }
+            this.instantes[this.numPendientes] = instante;
+            this.velocidades[this.numPendientes] = velocidad;
+            this.rumbos[this.numPendientes] = rumbo;
+            this.ultimoInstante = instante;
+            if (++this.numPendientes == ArchivoTravesias.MUESTRAS_POR_BLOQUE) {
+                this.escribirPendientes();
+            }
+        }
+
+        /**
+         * Escribe las muestras pendientes y cierra la grabación.
+         *
+         * @throws IOException Si se produce un error al escribir el último bloque
+         */
+        @Override
+        public void close() throws IOException {
+            if (!this.cerrada) {
+                this.escribirPendientes();
+                this.cerrada = true;
+            }
+        }
+
+        // Escribe las muestras pendientes en un bloque
+        private void escribirPendientes() throws IOException {
+            if (this.numPendientes > 0) {
+                ArchivoTravesias.this.escribirBloque(this.idTravesia, this.instantes, this.velocidades, this.rumbos, this.numPendientes);
+                this.numPendientes = 0;
+            }
+        }
+    }
+
+    // Comprime las columnas de un bloque y lo añade al archivo
+    private synchronized void escribirBloque(long id, long[] instantes, float[] velocidades, float[] rumbos, int n) throws IOException {
+        Travesia travesia = this.travesias.get(id);
+        ArchivoTravesias.comprimirInstantes(this.columnaInstantes, instantes, n);
+        ArchivoTravesias.comprimirValores(this.columnaVelocidades, velocidades, n);
+        ArchivoTravesias.comprimirValores(this.columnaRumbos, rumbos, n);
+        int longitudInstantes = this.columnaInstantes.terminar();
+        int longitudVelocidades = this.columnaVelocidades.terminar();
+        int longitudRumbos = this.columnaRumbos.terminar();
+
+        int longitud = ArchivoTravesias.CABECERA_BLOQUE + longitudInstantes + longitudVelocidades + longitudRumbos;
+        ByteBuffer registro = ByteBuffer.allocate(longitud);
+        registro.position(ArchivoTravesias.CABECERA_BLOQUE);
+        registro.put(this.columnaInstantes.getDatos(), 0, longitudInstantes);
+        registro.put(this.columnaVelocidades.getDatos(), 0, longitudVelocidades);
+        registro.put(this.columnaRumbos.getDatos(), 0, longitudRumbos);
+        this.crc.reset();
+        this.crc.update(registro.array(), ArchivoTravesias.CABECERA_BLOQUE, longitud - ArchivoTravesias.CABECERA_BLOQUE);
+        registro.position(0);
+        registro.putInt(ArchivoTravesias.MARCA_BLOQUE).putLong(id).putInt(n).putLong(instantes[0]).putLong(instantes[n - 1])
+                .putInt(longitudInstantes).putInt(longitudVelocidades).putInt(longitudRumbos).putInt((int) this.crc.getValue());
+        registro.position(0);
+
+        long posicion = this.anadirDatos(registro);
+        this.anadirEntradaIndice(ArchivoTravesias.TIPO_BLOQUE, id, posicion, longitud, n, instantes[0], instantes[n - 1]);
+        travesia.anadirBloque(posicion, longitud, n, instantes[0], instantes[n - 1]);
+        this.numBloques++;
+        this.numMuestras += n;
+    }
+
+    /**
+     * Fuerza la escritura en disco de los datos y del índice.
+     *
+     * @throws IOException Si se produce un error al escribir
+     */
+    public synchronized void forzar() throws IOException {
+        this.datos.force(false);
+        this.indice.force(false);
+    }
+
+    /**
+     * Cierra el archivo. Las grabaciones que no se hayan cerrado pierden sus muestras pendientes.
+     *
+     * @throws IOException Si se produce un error al cerrar
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.datos.close();
+        } finally {
+            this.indice.close();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Lectura
+    // ------------------------------------------------------------------------
+    /**
+     * Lee todas las muestras de una travesía.
+     *
+     * @param idTravesia Identificador de la travesía
+     * @return Serie de la travesía
+     *
+     * @throws IllegalArgumentException Si la travesía no existe
+     * @throws IOException Si se produce un error al leer o algún bloque está dañado
+     */
+    public SerieTravesia leer(long idTravesia) throws IllegalArgumentException, IOException {
+        return this.leer(idTravesia, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Lee las muestras de una travesía comprendidas en un intervalo de tiempo.
+     * Sólo se leen del disco los bloques que se solapan con el intervalo.
+     *
+     * @param idTravesia Identificador de la travesía
+     * @param desde Primer instante (en milisegundos, incluido)
+     * @param hasta Último instante (en milisegundos, incluido)
+     * @return Serie con las muestras del intervalo
+     *
+     * @throws IllegalArgumentException Si la travesía no existe
+     * @throws IOException Si se produce un error al leer o algún bloque está dañado
+     */
+    public SerieTravesia leer(long idTravesia, long desde, long hasta) throws IllegalArgumentException, IOException {
+        // Se copian las posiciones de los bloques para leerlos sin mantener el cerrojo del archivo
+        long[] posiciones;
+        int[] longitudes;
+        int total = 0;
+        String nombreBarco;
+        synchronized (this) {
+            Travesia travesia = this.travesias.get(idTravesia);
+            if (travesia == null) {
+                throw new IllegalArgumentException(String.format("No existe la travesía %d en el archivo %s.\n", idTravesia, this.ruta));
+            }
+            nombreBarco = travesia.nombreBarco;
+            posiciones = new long[travesia.numBloques];
+            longitudes = new int[travesia.numBloques];
+            int numSeleccionados = 0;
+            for (int b = 0; b < travesia.numBloques; b++) {
+                if (travesia.hasta[b] >= desde && travesia.desde[b] <= hasta) {
+                    posiciones[numSeleccionados] = travesia.posiciones[b];
+                    longitudes[numSeleccionados] = travesia.longitudes[b];
+                    total += travesia.numMuestras[b];
+                    numSeleccionados++;
+                }
+            }
+            posiciones = Arrays.copyOf(posiciones, numSeleccionados);
+        }
+
+        long[] instantes = new long[total];
+        float[] velocidades = new float[total];
+        float[] rumbos = new float[total];
+        FlujoBits flujo = new FlujoBits(0);
+        CRC32 comprobacion = new CRC32();
+        byte[] bloque = new byte[0];
+        int n = 0;
+        for (int b = 0; b < posiciones.length; b++) {
+            if (bloque.length < longitudes[b]) {
+                bloque = new byte[longitudes[b]];
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bloque, 0, longitudes[b]);
+            this.leerCompleto(buffer, posiciones[b]);
+            buffer.flip();
+            n += ArchivoTravesias.descomprimirBloque(buffer, flujo, comprobacion, instantes, velocidades, rumbos, n);
+        }
+
+        // Se recortan las muestras de los bloques de los extremos que quedan fuera del intervalo
+        int inicio = 0;
+        while (inicio < n && instantes[inicio] < desde) {
+            inicio++;
+        }
+        int fin = n;
+        while (fin > inicio && instantes[fin - 1] > hasta) {
+            fin--;
+        }
+        if (inicio > 0 || fin < n) {
+            instantes = Arrays.copyOfRange(instantes, inicio, fin);
+            velocidades = Arrays.copyOfRange(velocidades, inicio, fin);
+            rumbos = Arrays.copyOfRange(rumbos, inicio, fin);
+        }
+        return new SerieTravesia(idTravesia, nombreBarco, fin - inicio, instantes, velocidades, rumbos);
+    }
+
+    /**
+     * Devuelve los identificadores de las travesías de un barco.
+     *
+     * @param nombreBarco Nombre del barco
+     * @return Identificadores de sus travesías, en el orden en que se registraron
+     */
+    public synchronized List<Long> getTravesias(String nombreBarco) {
+        List<Long> ids = this.porBarco.get(nombreBarco);
+        return (ids == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(ids)));
+    }
+
+    /**
+     * Devuelve el número de travesías del archivo.
+     * @return Número de travesías registradas
+     */
+    public synchronized int getNumTravesias() {
+        return this.travesias.size();
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numBloques</code>
+     * @return Número de bloques del archivo
+     */
+    public synchronized int getNumBloques() {
+        return this.numBloques;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numMuestras</code>
+     * @return Número de muestras guardadas en el archivo
+     */
+    public synchronized long getNumMuestras() {
+        return this.numMuestras;
+    }
+
+    /**
+     * Devuelve el tamaño del archivo de datos.
+     * @return Tamaño (en bytes) de los datos, sin el índice
+     */
+    public synchronized long getTamanoDatos() {
+        return this.finDatos;
+    }
+
+    /**
+     * Devuelve el estado del archivo en un tipo String
+     *
+     * @return String Estado del archivo
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("{Archivo: %s, Travesías: %d, Bloques: %d, Muestras: %d, Tamaño: %d bytes (%.2f bytes por muestra)}",
+                this.ruta,
+                this.travesias.size(),
+                this.numBloques,
+                this.numMuestras,
+                this.finDatos,
+                (this.numMuestras == 0 ? 0.0 : (double) this.finDatos / this.numMuestras)
+        );
+    }
+
+    // ------------------------------------------------------------------------
+    // Compresión de columnas
+    // ------------------------------------------------------------------------
+    // Instantes: se guarda la diferencia entre cada intervalo y el anterior con un código de longitud variable
+    private static void comprimirInstantes(FlujoBits flujo, long[] instantes, int n) {
+        flujo.reiniciar();
+        long intervaloAnterior = 0;
+        for (int i = 1; i < n; i++) {
+            long intervalo = instantes[i] - instantes[i - 1];
+            long diferencia = intervalo - intervaloAnterior;
+            if (diferencia == 0) {
+                flujo.escribir(0b0, 1);
+            } else if (diferencia >= -63 && diferencia <= 64) {
+                flujo.escribir(0b10, 2);
+                flujo.escribir(diferencia + 63, 7);
+            } else if (diferencia >= -255 && diferencia <= 256) {
+                flujo.escribir(0b110, 3);
+                flujo.escribir(diferencia + 255, 9);
+            } else if (diferencia >= -2047 && diferencia <= 2048) {
+                flujo.escribir(0b1110, 4);
+                flujo.escribir(diferencia + 2047, 12);
+            } else {
+                flujo.escribir(0b1111, 4);
+                flujo.escribir(diferencia, 64);
+            }
+            intervaloAnterior = intervalo;
+        }
+    }
+
+    // Valores: se guarda el XOR con el valor anterior, reutilizando la ventana de bits significativos si es posible
+    private static void comprimirValores(FlujoBits flujo, float[] valores, int n) {
+        flujo.reiniciar();
+        int anterior = Float.floatToRawIntBits(valores[0]);
+        flujo.escribir(anterior, 32);
+        int cerosIzquierda = Integer.MAX_VALUE;
+        int cerosDerecha = 0;
+        for (int i = 1; i < n; i++) {
+            int actual = Float.floatToRawIntBits(valores[i]);
+            int xor = actual ^ anterior;
+            if (xor == 0) {
+                flujo.escribir(0b0, 1);
+            } else {
+                int izquierda = Integer.numberOfLeadingZeros(xor);
+                int derecha = Integer.numberOfTrailingZeros(xor);
+                if (izquierda >= cerosIzquierda && derecha >= cerosDerecha) {
+                    flujo.escribir(0b10, 2);
+                    flujo.escribir(xor >>> cerosDerecha, 32 - cerosIzquierda - cerosDerecha);
+                } else {
+                    izquierda = Math.min(izquierda, 31);
+                    int significativos = 32 - izquierda - derecha;
+                    flujo.escribir(0b11, 2);
+                    flujo.escribir(izquierda, 5);
+                    flujo.escribir(significativos - 1, 5);
+                    flujo.escribir(xor >>> derecha, significativos);
+                    cerosIzquierda = izquierda;
+                    cerosDerecha = derecha;
+                }
+            }
+            anterior = actual;
+        }
+    }
+
+    // Descomprime un bloque completo en los arrays a partir de una posición y devuelve su número de muestras
+    private static int descomprimirBloque(ByteBuffer bloque, FlujoBits flujo, CRC32 comprobacion,
+            long[] instantes, float[] velocidades, float[] rumbos, int desde) throws IOException {
+        if (bloque.getInt() != ArchivoTravesias.MARCA_BLOQUE) {
+            throw new IOException("El índice del archivo de travesías no apunta a un bloque.\n");
+        }
+        bloque.getLong();
+        int n = bloque.getInt();
+        long primerInstante = bloque.getLong();
+        bloque.getLong();
+        int longitudInstantes = bloque.getInt();
+        int longitudVelocidades = bloque.getInt();
+        int longitudRumbos = bloque.getInt();
+        int crc = bloque.getInt();
+        byte[] datos = bloque.array();
+        int inicio = bloque.arrayOffset() + ArchivoTravesias.CABECERA_BLOQUE;
+        comprobacion.reset();
+        comprobacion.update(datos, inicio, longitudInstantes + longitudVelocidades + longitudRumbos);
+        if ((int) comprobacion.getValue() != crc) {
+            throw new IOException("Un bloque del archivo de travesías está dañado.\n");
+        }
+
+        // Instantes
+        flujo.leerDe(datos, inicio, longitudInstantes);
+        long instante = primerInstante;
+        long intervalo = 0;
+        instantes[desde] = instante;
+        for (int i = 1; i < n; i++) {
+            long diferencia;
+            if (!flujo.leerBit()) {
+                diferencia = 0;
+            } else if (!flujo.leerBit()) {
+                diferencia = flujo.leer(7) - 63;
+            } else if (!flujo.leerBit()) {
+                diferencia = flujo.leer(9) - 255;
+            } else if (!flujo.leerBit()) {
+                diferencia = flujo.leer(12) - 2047;
+            } else {
+                diferencia = flujo.leer(64);
+            }
+            intervalo += diferencia;
+            instante += intervalo;
+            instantes[desde + i] = instante;
+        }
+
+        // Velocidades y rumbos
+        flujo.leerDe(datos, inicio + longitudInstantes, longitudVelocidades);
+        ArchivoTravesias.descomprimirValores(flujo, velocidades, desde, n);
+        flujo.leerDe(datos, inicio + longitudInstantes + longitudVelocidades, longitudRumbos);
+        ArchivoTravesias.descomprimirValores(flujo, rumbos, desde, n);
+        return n;
+    }
+
+    // Descomprime una columna de valores
+    private static void descomprimirValores(FlujoBits flujo, float[] valores, int desde, int n) {
+        int valor = (int) flujo.leer(32);
+        valores[desde] = Float.intBitsToFloat(valor);
+        int cerosIzquierda = 0;
+        int cerosDerecha = 0;
+        for (int i = 1; i < n; i++) {
+            if (flujo.leerBit()) {
+                if (flujo.leerBit()) {
+                    cerosIzquierda = (int) flujo.leer(5);
+                    int significativos = (int) flujo.leer(5) + 1;
+                    cerosDerecha = 32 - cerosIzquierda - significativos;
+                }
+                valor ^= (int) flujo.leer(32 - cerosIzquierda - cerosDerecha) << cerosDerecha;
+            }
+            valores[desde + i] = Float.intBitsToFloat(valor);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Índice y recuperación
+    // ------------------------------------------------------------------------
+    // Carga las entradas completas del índice
+    private void cargarIndice() throws IOException {
+        long tamano = this.indice.size();
+        int numEntradas = (int) (tamano / ArchivoTravesias.ENTRADA_INDICE);
+        ByteBuffer entradas = ByteBuffer.allocate(numEntradas * ArchivoTravesias.ENTRADA_INDICE);
+        this.leerCompleto(this.indice, entradas, 0);
+        entradas.flip();
+        long tamanoDatos = this.datos.size();
+        for (int e = 0; e < numEntradas; e++) {
+            byte tipo = entradas.get();
+            long id = entradas.getLong();
+            long posicion = entradas.getLong();
+            int longitud = entradas.getInt();
+            int n = entradas.getInt();
+            long desde = entradas.getLong();
+            long hasta = entradas.getLong();
+            if (posicion + longitud > tamanoDatos) {
+                // El índice apunta más allá de los datos: se descarta desde aquí
+                numEntradas = e;
+                break;
+            }
+            if (tipo == ArchivoTravesias.TIPO_TRAVESIA) {
+                byte[] nombre = new byte[longitud - ArchivoTravesias.CABECERA_TRAVESIA];
+                this.leerCompleto(ByteBuffer.wrap(nombre), posicion + ArchivoTravesias.CABECERA_TRAVESIA);
+                this.registrarTravesia(id, new String(nombre, StandardCharsets.UTF_8));
+            } else {
+                Travesia travesia = this.travesias.get(id);
+                if (travesia == null) {
+                    throw new IOException(String.format("El índice del archivo %s contiene un bloque de una travesía desconocida.\n", this.ruta));
+                }
+                travesia.anadirBloque(posicion, longitud, n, desde, hasta);
+                this.numBloques++;
+                this.numMuestras += n;
+            }
+            this.finDatos = Math.max(this.finDatos, posicion + longitud);
+        }
+        this.finIndice = (long) numEntradas * ArchivoTravesias.ENTRADA_INDICE;
+        this.indice.truncate(this.finIndice);
+    }
+
+    // Añade al índice los registros de datos que no recoge y descarta un último registro incompleto
+    private void recuperarRegistros() throws IOException {
+        long tamano = this.datos.size();
+        ByteBuffer cabecera = ByteBuffer.allocate(ArchivoTravesias.CABECERA_BLOQUE);
+        while (this.finDatos < tamano) {
+            long posicion = this.finDatos;
+            cabecera.clear();
+            cabecera.limit((int) Math.min(cabecera.capacity(), tamano - posicion));
+            this.leerCompleto(cabecera, posicion);
+            cabecera.flip();
+            int longitud = this.comprobarRegistro(cabecera, posicion, tamano);
+            if (longitud < 0) {
+                break;
+            }
+            cabecera.position(0);
+            int marca = cabecera.getInt();
+            long id = cabecera.getLong();
+            if (marca == ArchivoTravesias.MARCA_TRAVESIA) {
+                byte[] nombre = new byte[longitud - ArchivoTravesias.CABECERA_TRAVESIA];
+                this.leerCompleto(ByteBuffer.wrap(nombre), posicion + ArchivoTravesias.CABECERA_TRAVESIA);
+                this.anadirEntradaIndice(ArchivoTravesias.TIPO_TRAVESIA, id, posicion, longitud, 0, 0, 0);
+                this.registrarTravesia(id, new String(nombre, StandardCharsets.UTF_8));
+            } else {
+                int n = cabecera.getInt();
+                long desde = cabecera.getLong();
+                long hasta = cabecera.getLong();
+                this.anadirEntradaIndice(ArchivoTravesias.TIPO_BLOQUE, id, posicion, longitud, n, desde, hasta);
+                this.travesias.get(id).anadirBloque(posicion, longitud, n, desde, hasta);
+                this.numBloques++;
+                this.numMuestras += n;
+            }
+            this.finDatos = posicion + longitud;
+        }
+        this.datos.truncate(this.finDatos);
+    }
+
+    // Comprueba un registro de datos y devuelve su longitud, o -1 si está incompleto o no es válido
+    private int comprobarRegistro(ByteBuffer cabecera, long posicion, long tamano) throws IOException {
+        if (cabecera.remaining() < ArchivoTravesias.CABECERA_TRAVESIA) {
+            return -1;
+        }
+        int marca = cabecera.getInt();
+        long id = cabecera.getLong();
+        if (marca == ArchivoTravesias.MARCA_TRAVESIA) {
+            int longitud = ArchivoTravesias.CABECERA_TRAVESIA + (cabecera.getShort() & 0xFFFF);
+            return (posicion + longitud <= tamano ? longitud : -1);
+        }
+        if (marca != ArchivoTravesias.MARCA_BLOQUE || cabecera.remaining() < ArchivoTravesias.CABECERA_BLOQUE - 12
+                || !this.travesias.containsKey(id)) {
+            return -1;
+        }
+        cabecera.position(ArchivoTravesias.CABECERA_BLOQUE - 16);
+        long longitud = (long) ArchivoTravesias.CABECERA_BLOQUE + cabecera.getInt() + cabecera.getInt() + cabecera.getInt();
+        int crc = cabecera.getInt();
+        if (posicion + longitud > tamano) {
+            return -1;
+        }
+        ByteBuffer cuerpo = ByteBuffer.allocate((int) longitud - ArchivoTravesias.CABECERA_BLOQUE);
+        this.leerCompleto(cuerpo, posicion + ArchivoTravesias.CABECERA_BLOQUE);
+        CRC32 comprobacion = new CRC32();
+        comprobacion.update(cuerpo.array());
+        return ((int) comprobacion.getValue() == crc ? (int) longitud : -1);
+    }
+
+    // Registra una travesía en memoria
+    private void registrarTravesia(long id, String nombreBarco) {
+        this.travesias.put(id, new Travesia(id, nombreBarco));
+        this.porBarco.computeIfAbsent(nombreBarco, n -> new ArrayList<>()).add(id);
+        this.siguienteId = Math.max(this.siguienteId, id + 1);
+    }
+
+    // Añade un registro al final del archivo de datos y devuelve su posición
+    private long anadirDatos(ByteBuffer registro) throws IOException {
+        long posicion = this.finDatos;
+        long destino = posicion;
+        while (registro.hasRemaining()) {
+            destino += this.datos.write(registro, destino);
+        }
+        this.finDatos = destino;
+        return posicion;
+    }
+
+    // Añade una entrada al final del índice
+    private void anadirEntradaIndice(byte tipo, long id, long posicion, int longitud, int n, long desde, long hasta) throws IOException {
+        ByteBuffer entrada = ByteBuffer.allocate(ArchivoTravesias.ENTRADA_INDICE);
+        entrada.put(tipo).putLong(id).putLong(posicion).putInt(longitud).putInt(n).putLong(desde).putLong(hasta).flip();
+        while (entrada.hasRemaining()) {
+            this.finIndice += this.indice.write(entrada, this.finIndice);
+        }
+    }
+
+    // Lee del archivo de datos hasta llenar el buffer
+    private void leerCompleto(ByteBuffer destino, long posicion) throws IOException {
+        this.leerCompleto(this.datos, destino, posicion);
+    }
+
+    // Lee de un canal hasta llenar el buffer
+    private void leerCompleto(FileChannel canal, ByteBuffer destino, long posicion) throws IOException {
+        long actual = posicion;
+        while (destino.hasRemaining()) {
+            int leidos = canal.read(destino, actual);
+            if (leidos < 0) {
+                throw new IOException(String.format("Fin inesperado del archivo %s.\n", this.ruta));
+            }
+            actual += leidos;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package tarea05;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <p>
+ * Bolsa de tripulantes de una escuela: reparte los marineros disponibles
+ * entre los veleros que esperan para salir y lanza todas las salidas de una
+ * vez.</p>
+ * <p>
+ * Cada salida solicitada necesita un patrón (un marinero con título de
+ * patrón) y una tripulación mínima, y admite hasta <code>getMaxTripulantes</code>
+ * tripulantes. El reparto maximiza primero el número de barcos que salen y
+ * después el número de plazas ocupadas:</p>
+ * <ol>
+ * <li>se eligen los barcos que necesitan menos tripulantes, sacándolos de un
+ * montículo ordenado por tripulación mínima, mientras queden patrones y
+ * marineros suficientes (con esos barcos salen los máximos posibles)</li>
+ * <li>sin cambiar el número de barcos, se cambian los elegidos con menos
+ * plazas por los descartados con más, mientras haya marineros para su
+ * tripulación mínima</li>
+ * <li>los marineros sobrantes se reparten de uno en uno al barco con más
+ * plazas libres, con un montículo ordenado por plazas libres, para que las
+ * tripulaciones queden equilibradas</li>
+ * </ol>
+ * <p>
+ * Con n marineros y m barcos, el reparto cuesta O((n + m) log m). Los
+ * marineros embarcados vuelven a la bolsa cuando su barco vuelve a puerto.
+ * Los métodos están sincronizados.</p>
+ *
+ * @author profesorado
+ */
+public class BolsaTripulantes implements OyenteFlota {
+
+    /**
+     * Embarque calculado para un velero: patrón y tripulantes.
+     */
+    public static final class Embarque {
+
+        private final Velero barco;             // Velero que sale
+        private final String patron;            // Marinero que hace de patrón
+        private final List<String> tripulantes; // Resto de la tripulación
+
+        private Embarque(Velero barco, String patron, List<String> tripulantes) {
+            this.barco = barco;
+            this.patron = patron;
+            this.tripulantes = Collections.unmodifiableList(tripulantes);
+        }
+
+        /**
+         * @return Velero que sale
+         */
+        public Velero getBarco() {
+            return this.barco;
+        }
+
+        /**
+         * @return Marinero que hace de patrón
+         */
+        public String getPatron() {
+            return this.patron;
+        }
+
+        /**
+         * @return Tripulantes (sin contar el patrón)
+         */
+        public List<String> getTripulantes() {
+            return this.tripulantes;
+        }
+
+        /**
+         * Devuelve el embarque en un tipo String
+         *
+         * @return String Datos del embarque
+         */
+        @Override
+        public String toString() {
+            return String.format("{Barco: %s, Patrón: %s, Tripulantes: %d}", this.barco.getNombreBarco(), this.patron, this.tripulantes.size());
+        }
+    }
+
+    // Salida solicitada
+    private static final class Solicitud {
+
+        final Velero barco;
+        final int velocidad;
+        final String rumbo;
+        final int tripulacionMinima;
+
+        Solicitud(Velero barco, int velocidad, String rumbo, int tripulacionMinima) {
+            this.barco = barco;
+            this.velocidad = velocidad;
+            this.rumbo = rumbo;
+            this.tripulacionMinima = tripulacionMinima;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                          // Escuela cuyos barcos se tripulan
+    private final ArrayDeque<String> patrones;                  // Marineros con título de patrón disponibles
+    private final ArrayDeque<String> marineros;                 // Marineros sin título disponibles
+    private final List<Solicitud> solicitudes;                  // Salidas solicitadas, por orden de llegada
+    private final BitSet conSolicitud;                          // Índices de los barcos con una salida pendiente
+    private final HashMap<Integer, Embarque> embarcados;        // Embarques de los barcos que navegan, por índice
+
+    /**
+     * Crea la bolsa de tripulantes de una escuela y la conecta a sus sucesos.
+     *
+     * @param escuela Escuela cuyos barcos se tripulan
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public BolsaTripulantes(EscuelaVela escuela) throws NullPointerException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela de la bolsa de tripulantes no puede ser nula.\n");
+        }
+        this.escuela = escuela;
+        this.patrones = new ArrayDeque<>();
+        this.marineros = new ArrayDeque<>();
+        this.solicitudes = new ArrayList<>();
+        this.conSolicitud = new BitSet();
+        this.embarcados = new HashMap<>();
+        escuela.anadirOyente(this);
+    }
+
+    /**
+     * Desconecta la bolsa de los sucesos de la escuela.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Marineros y solicitudes
+    // ------------------------------------------------------------------------
+    /**
+     * Añade un marinero disponible a la bolsa.
+     *
+     * @param nombre Nombre del marinero
+     * @param patron Indica si tiene título de patrón
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si el nombre está vacío
+     */
+    public synchronized void anadirMarinero(String nombre, boolean patron) throws NullPointerException, IllegalArgumentException {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre del marinero no puede ser nulo.\n");
+        }
+        if (nombre.isEmpty()) {
+            throw new IllegalArgumentException("El nombre del marinero no puede estar vacío.\n");
+        }
+        (patron ? this.patrones : this.marineros).add(nombre);
+    }
+
+    /**
+     * Solicita la salida de un velero con la tripulación que asigne la bolsa.
+     * Cada barco sólo puede tener una salida pendiente.
+     *
+     * @param barco Velero que sale
+     * @param velocidad Velocidad de la navegación
+     * @param rumbo Rumbo de la navegación
+     * @param tripulacionMinima Número mínimo de tripulantes (sin contar el patrón) para salir
+     *
+     * @throws NullPointerException Si el barco o el rumbo son nulos
+     * @throws IllegalArgumentException Si el barco no es de la escuela, ya tiene una salida pendiente o la tripulación mínima supera su máximo
+     * @throws IllegalStateException Si el barco está navegando
+     */
+    public synchronized void solicitarSalida(Velero barco, int velocidad, String rumbo, int tripulacionMinima)
+            throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        if (barco == null || rumbo == null) {
+            throw new NullPointerException("El velero y el rumbo de la salida no pueden ser nulos.\n");
+        }
+        if (barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        if (tripulacionMinima < Velero.MIN_TRIPULANTES || tripulacionMinima > barco.getMaxTripulantes()) {
+            throw new IllegalArgumentException(String.format("La tripulación mínima debe estar entre %d y %d.\n", Velero.MIN_TRIPULANTES, barco.getMaxTripulantes()));
+        }
+        if (barco.isNavegando()) {
+            throw new IllegalStateException(String.format("El velero %s ya está navegando y se encuentra fuera de puerto.\n", barco.getNombreBarco()));
+        }
+        if (this.conSolicitud.get(barco.getIndice())) {
+            throw new IllegalArgumentException(String.format("El velero %s ya tiene una salida pendiente en la bolsa.\n", barco.getNombreBarco()));
+        }
+        this.conSolicitud.set(barco.getIndice());
+        this.solicitudes.add(new Solicitud(barco, velocidad, rumbo, tripulacionMinima));
+    }
+
+    // ------------------------------------------------------------------------
+    // Reparto y salidas
+    // ------------------------------------------------------------------------
+    /**
+     * Calcula el reparto de los marineros disponibles entre las salidas
+     * solicitadas, sin ejecutarlo.
+     *
+     * @return Embarques de los barcos que pueden salir, por orden de solicitud
+     */
+    public synchronized List<Embarque> calcular() {
+        int numSolicitudes = this.solicitudes.size();
+        int[] plazas = new int[numSolicitudes];
+        this.repartir(plazas);
+        return this.asignar(plazas, this.patrones.clone(), this.marineros.clone());
+    }
+
+    /**
+     * Calcula el reparto y lanza las salidas. Las salidas que fallan (por
+     * ejemplo, porque el viento no permite la velocidad solicitada) siguen
+     * pendientes y sus marineros vuelven a la bolsa; un barco que llega a
+     * salir cuenta como lanzado aunque después falle algo.
+     *
+     * @return Embarques de los barcos que han salido
+     */
+    public synchronized List<Embarque> lanzar() {
+        int numSolicitudes = this.solicitudes.size();
+        int[] plazas = new int[numSolicitudes];
+        this.repartir(plazas);
+        List<Embarque> embarques = this.asignar(plazas, this.patrones, this.marineros);
+        List<Embarque> lanzados = new ArrayList<>(embarques.size());
+        List<Solicitud> pendientes = new ArrayList<>();
+        int e = 0;
+        for (int s = 0; s < numSolicitudes; s++) {
+            Solicitud solicitud = this.solicitudes.get(s);
+            if (plazas[s] < 0) {
+                pendientes.add(solicitud);
+                continue;
+            }
+            Embarque embarque = embarques.get(e++);
+            boolean enPuerto = !solicitud.barco.isNavegando();
+            try {
+                solicitud.barco.iniciarNavegacion(solicitud.velocidad, solicitud.rumbo, embarque.patron, embarque.tripulantes.size());
+            } catch (RuntimeException ex) {
+                if (!enPuerto || !solicitud.barco.isNavegando()) {
+                    this.devolver(embarque);
+                    pendientes.add(solicitud);
+                    continue;
+                }
+                // El barco ha salido aunque algo haya fallado después: la tripulación va a bordo
+            }
+            this.embarcados.put(solicitud.barco.getIndice(), embarque);
+            this.conSolicitud.clear(solicitud.barco.getIndice());
+            lanzados.add(embarque);
+        }
+        this.solicitudes.clear();
+        this.solicitudes.addAll(pendientes);
+        return lanzados;
+    }
+
+    /**
+     * Devuelve el embarque de un velero que navega con tripulación de la bolsa.
+     *
+     * @param barco Velero
+     * @return Su embarque, o <code>null</code> si no navega con tripulación de la bolsa
+     */
+    public synchronized Embarque getEmbarque(Velero barco) {
+        return (barco == null || barco.getEscuela() != this.escuela ? null : this.embarcados.get(barco.getIndice()));
+    }
+
+    /**
+     * Devuelve el número de marineros disponibles.
+     * @return Marineros en la bolsa (con y sin título de patrón)
+     */
+    public synchronized int getNumDisponibles() {
+        return this.patrones.size() + this.marineros.size();
+    }
+
+    /**
+     * Devuelve el número de salidas pendientes.
+     * @return Número de salidas solicitadas que aún no se han lanzado
+     */
+    public synchronized int getNumSolicitudes() {
+        return this.solicitudes.size();
+    }
+
+    /**
+     * Devuelve el estado de la bolsa en un tipo String
+     *
+     * @return String Estado de la bolsa
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("{Escuela: %s, Patrones: %d, Marineros: %d, Solicitudes: %d, Barcos tripulados: %d}",
+                this.escuela.getNombre(), this.patrones.size(), this.marineros.size(), this.solicitudes.size(), this.embarcados.size());
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public synchronized void navegacionParada(Velero barco, int tiempoNavegando) {
+        Embarque embarque = this.embarcados.remove(barco.getIndice());
+        if (embarque != null) {
+            this.devolver(embarque);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Devuelve a la bolsa los marineros de un embarque
+    private void devolver(Embarque embarque) {
+        this.patrones.add(embarque.patron);
+        for (String tripulante : embarque.tripulantes) {
+            this.marineros.add(tripulante);
+        }
+    }
+
+    // Saca de las colas los marineros de cada barco que sale: primero los patrones, después los
+    // marineros sin título y, si faltan, los patrones sobrantes
+    private List<Embarque> asignar(int[] plazas, ArrayDeque<String> patronesLibres, ArrayDeque<String> marinerosLibres) {
+        List<Embarque> embarques = new ArrayList<>();
+        for (int s = 0; s < plazas.length; s++) {
+            if (plazas[s] >= 0) {
+                String patron = patronesLibres.poll();
+                List<String> tripulantes = new ArrayList<>(plazas[s]);
+                for (int p = 0; p < plazas[s]; p++) {
+                    tripulantes.add(marinerosLibres.isEmpty() ? patronesLibres.poll() : marinerosLibres.poll());
+                }
+                embarques.add(new Embarque(this.solicitudes.get(s).barco, patron, tripulantes));
+            }
+        }
+        return embarques;
+    }
+
+    // Calcula los tripulantes (sin el patrón) de cada solicitud, o -1 si no sale; devuelve el número de barcos que salen
+    private int repartir(int[] plazas) {
+        int numSolicitudes = plazas.length;
+        Arrays.fill(plazas, -1);
+
+        // 1. Barcos que salen: los de menor tripulación mínima, mientras haya patrón y marineros para ellos
+        // (cada clave es tripulación mínima << 32 | solicitud, para desempatar por orden de solicitud)
+        PriorityQueue<Long> porMinima = new PriorityQueue<>(Math.max(1, numSolicitudes));
+        for (int s = 0; s < numSolicitudes; s++) {
+            porMinima.add(((long) this.solicitudes.get(s).tripulacionMinima << 32) | s);
+        }
+        long restantes = (long) this.patrones.size() + this.marineros.size();
+        int patronesLibres = this.patrones.size();
+        int numElegidas = 0;
+        while (!porMinima.isEmpty() && patronesLibres > 0) {
+            int s = (int) (long) porMinima.peek();
+            int necesarios = 1 + this.solicitudes.get(s).tripulacionMinima;
+            if (necesarios > restantes) {
+                break;
+            }
+            porMinima.poll();
+            plazas[s] = this.solicitudes.get(s).tripulacionMinima;
+            restantes -= necesarios;
+            patronesLibres--;
+            numElegidas++;
+        }
+
+        // 2. Intercambios: sin cambiar el número de barcos, se cambia el elegido con menos plazas por el
+        // descartado con más, mientras aumenten las plazas y haya marineros para la tripulación mínima
+        PriorityQueue<Long> elegidosPorMaximo = new PriorityQueue<>(Math.max(1, numElegidas));
+        long[] descartadosPorMaximo = new long[numSolicitudes - numElegidas];
+        long plazasLibres = 0;
+        for (int s = 0, d = 0; s < numSolicitudes; s++) {
+            long clave = ((long) this.solicitudes.get(s).barco.getMaxTripulantes() << 32) | s;
+            if (plazas[s] >= 0) {
+                elegidosPorMaximo.add(clave);
+                plazasLibres += this.solicitudes.get(s).barco.getMaxTripulantes() - plazas[s];
+            } else {
+                descartadosPorMaximo[d++] = clave;
+            }
+        }
+        Arrays.sort(descartadosPorMaximo);
+        for (int d = descartadosPorMaximo.length - 1; d >= 0 && plazasLibres < restantes && !elegidosPorMaximo.isEmpty(); d--) {
+            Solicitud entra = this.solicitudes.get((int) descartadosPorMaximo[d]);
+            int sale = (int) (long) elegidosPorMaximo.peek();
+            Solicitud saliente = this.solicitudes.get(sale);
+            if (entra.barco.getMaxTripulantes() <= saliente.barco.getMaxTripulantes()) {
+                break;
+            }
+            long diferencia = entra.tripulacionMinima - saliente.tripulacionMinima;
+            if (diferencia <= restantes) {
+                elegidosPorMaximo.poll();
+                elegidosPorMaximo.add(descartadosPorMaximo[d]);
+                plazas[sale] = -1;
+                plazas[(int) descartadosPorMaximo[d]] = entra.tripulacionMinima;
+                restantes -= diferencia;
+                plazasLibres += (entra.barco.getMaxTripulantes() - entra.tripulacionMinima) - (saliente.barco.getMaxTripulantes() - saliente.tripulacionMinima);
+            }
+        }
+
+        // 3. Marineros sobrantes: de uno en uno al barco elegido con más plazas libres
+        PriorityQueue<int[]> porLibres = new PriorityQueue<>(Math.max(1, numElegidas), (a, b) -> Integer.compare(b[1], a[1]));
+        for (int s = 0; s < numSolicitudes; s++) {
+            int libres = (plazas[s] < 0 ? 0 : this.solicitudes.get(s).barco.getMaxTripulantes() - plazas[s]);
+            if (libres > 0) {
+                porLibres.add(new int[]{s, libres});
+            }
+        }
+        while (restantes > 0 && !porLibres.isEmpty()) {
+            int[] barco = porLibres.poll();
+            plazas[barco[0]]++;
+            restantes--;
+            if (--barco[1] > 0) {
+                porLibres.add(barco);
+            }
+        }
+        return numElegidas;
+    }
+}
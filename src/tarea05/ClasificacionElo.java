@@ -0,0 +1,306 @@
+package tarea05;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * <p>
+ * Clasificación de una escuela de vela basada en el sistema de puntuación Elo:
+ * cada regata entre dos veleros actualiza la puntuación de los dos barcos y de
+ * sus dos patrones según el resultado esperado a partir de sus puntuaciones.</p>
+ * <p>
+ * Como sólo regatean los barcos con el mismo número de mástiles, hay una
+ * <code>TablaClasificacion</code> de barcos y otra de patrones por cada número
+ * de mástiles, que se mantienen al día mientras se disputan las regatas. Los
+ * barcos se identifican por su nombre y los patrones por el suyo.</p>
+ * <p>
+ * Las puntuaciones pueden guardarse en un fichero JSON Lines y cargarse más
+ * tarde para continuar la clasificación.</p>
+ *
+ * @author profesorado
+ */
+public class ClasificacionElo implements OyenteFlota {
+
+    /**
+     * Puntuación inicial de un barco o un patrón: {@value PUNTUACION_INICIAL}.
+     */
+    public static final double PUNTUACION_INICIAL = 1500;
+
+    /**
+     * Variación máxima de la puntuación en una regata: {@value FACTOR_K}.
+     */
+    public static final double FACTOR_K = 32;
+
+    // Tipos de participante en el fichero de puntuaciones
+    private static final String TIPO_BARCO = "barco";
+    private static final String TIPO_PATRON = "patron";
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                  // Escuela cuyas regatas se puntúan
+    private final double factorK;                       // Variación máxima en una regata
+    private final TablaClasificacion[] barcos;          // Clasificación de barcos por número de mástiles
+    private final TablaClasificacion[] patrones;        // Clasificación de patrones por número de mástiles
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Crea una clasificación vacía con el factor K por defecto y la conecta a
+     * las regatas de una escuela.
+     *
+     * @param escuela Escuela cuyas regatas se puntúan
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public ClasificacionElo(EscuelaVela escuela) throws NullPointerException {
+        this(escuela, ClasificacionElo.FACTOR_K);
+    }
+
+    /**
+     * Crea una clasificación vacía y la conecta a las regatas de una escuela.
+     *
+     * @param escuela Escuela cuyas regatas se puntúan
+     * @param factorK Variación máxima de la puntuación en una regata
+     *
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si el factor K no es positivo
+     */
+    public ClasificacionElo(EscuelaVela escuela, double factorK) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela de la clasificación no puede ser nula.\n");
+        }
+        if (!(factorK > 0)) {
+            throw new IllegalArgumentException(String.format("El factor K %.2f debe ser positivo.\n", factorK));
+        }
+        this.escuela = escuela;
+        this.factorK = factorK;
+        this.barcos = new TablaClasificacion[Velero.MAX_MASTILES + 1];
+        this.patrones = new TablaClasificacion[Velero.MAX_MASTILES + 1];
+        for (int mastiles = Velero.MIN_MASTILES; mastiles <= Velero.MAX_MASTILES; mastiles++) {
+            this.barcos[mastiles] = new TablaClasificacion();
+            this.patrones[mastiles] = new TablaClasificacion();
+        }
+        escuela.anadirOyente(this);
+    }
+
+    /**
+     * Desconecta la clasificación de la escuela: las regatas posteriores no se puntúan.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Actualización de puntuaciones
+    // ------------------------------------------------------------------------
+    /**
+     * Actualiza las puntuaciones de los barcos y de los patrones de una regata.
+     * Si los dos barcos llevan el mismo patrón, sólo se puntúan los barcos.
+     *
+     * @param barco Velero que ha iniciado la regata
+     * @param otroBarco Velero contra el que se ha regateado
+     * @param resultado Positivo si gana <code>barco</code>, negativo si gana <code>otroBarco</code> y cero si empatan
+     */
+    @Override
+    public synchronized void regataFinalizada(Velero barco, Velero otroBarco, int resultado) {
+        double puntos = (resultado > 0 ? 1 : (resultado < 0 ? 0 : 0.5));
+        int mastiles = barco.getNumMastiles();
+        this.puntuar(this.barcos[mastiles], barco.getNombreBarco(), otroBarco.getNombreBarco(), puntos);
+        String patron = barco.getPatron();
+        String otroPatron = otroBarco.getPatron();
+        if (!patron.equals(otroPatron)) {
+            this.puntuar(this.patrones[mastiles], patron, otroPatron, puntos);
+        }
+    }
+
+    // Aplica la fórmula de Elo a dos participantes de una tabla
+    private void puntuar(TablaClasificacion tabla, String nombre, String otroNombre, double puntos) {
+        TablaClasificacion.Entrada entrada = tabla.getEntrada(nombre);
+        TablaClasificacion.Entrada otraEntrada = tabla.getEntrada(otroNombre);
+        double puntuacion = (entrada == null ? ClasificacionElo.PUNTUACION_INICIAL : entrada.getPuntuacion());
+        double otraPuntuacion = (otraEntrada == null ? ClasificacionElo.PUNTUACION_INICIAL : otraEntrada.getPuntuacion());
+        double esperado = 1 / (1 + Math.pow(10, (otraPuntuacion - puntuacion) / 400));
+        double variacion = this.factorK * (puntos - esperado);
+        tabla.establecer(nombre, puntuacion + variacion, (entrada == null ? 0 : entrada.getNumRegatas()) + 1);
+        tabla.establecer(otroNombre, otraPuntuacion - variacion, (otraEntrada == null ? 0 : otraEntrada.getNumRegatas()) + 1);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve la clasificación de los barcos con un número de mástiles.
+     *
+     * @param mastiles Número de mástiles
+     * @return Tabla de clasificación de esos barcos
+     *
+     * @throws IllegalArgumentException Si el número de mástiles no es válido
+     */
+    public TablaClasificacion getClasificacionBarcos(int mastiles) throws IllegalArgumentException {
+        return this.barcos[ClasificacionElo.comprobarMastiles(mastiles)];
+    }
+
+    /**
+     * Devuelve la clasificación de los patrones en las regatas de barcos con un número de mástiles.
+     *
+     * @param mastiles Número de mástiles
+     * @return Tabla de clasificación de esos patrones
+     *
+     * @throws IllegalArgumentException Si el número de mástiles no es válido
+     */
+    public TablaClasificacion getClasificacionPatrones(int mastiles) throws IllegalArgumentException {
+        return this.patrones[ClasificacionElo.comprobarMastiles(mastiles)];
+    }
+
+    /**
+     * Devuelve la puntuación de un barco.
+     *
+     * @param barco Velero que se consulta
+     * @return Puntuación del barco (la inicial si aún no ha regateado)
+     *
+     * @throws NullPointerException Si el barco es nulo
+     */
+    public double getPuntuacion(Velero barco) throws NullPointerException {
+        TablaClasificacion.Entrada entrada = this.barcos[barco.getNumMastiles()].getEntrada(barco.getNombreBarco());
+        return (entrada == null ? ClasificacionElo.PUNTUACION_INICIAL : entrada.getPuntuacion());
+    }
+
+    /**
+     * Devuelve la posición de un barco en la clasificación de su número de mástiles.
+     *
+     * @param barco Velero que se consulta
+     * @return Posición del barco (empezando en 1), o -1 si aún no ha regateado
+     *
+     * @throws NullPointerException Si el barco es nulo
+     */
+    public int getPosicion(Velero barco) throws NullPointerException {
+        return this.barcos[barco.getNumMastiles()].getPosicion(barco.getNombreBarco());
+    }
+
+    /**
+     * Devuelve el estado de la clasificación en un tipo String: los tres mejores
+     * barcos de cada número de mástiles.
+     *
+     * @return String Resumen de la clasificación
+     */
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder();
+        for (int mastiles = Velero.MIN_MASTILES; mastiles <= Velero.MAX_MASTILES; mastiles++) {
+            List<TablaClasificacion.Entrada> mejores = this.barcos[mastiles].getMejores(3);
+            if (!mejores.isEmpty()) {
+                texto.append(String.format("Barcos de %d mástiles: %s\n", mastiles, mejores));
+            }
+        }
+        return texto.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Persistencia
+    // ------------------------------------------------------------------------
+    /**
+     * Guarda todas las puntuaciones en un fichero JSON Lines, con una línea por
+     * participante. El fichero se sustituye de forma atómica.
+     *
+     * @param ruta Ruta del fichero
+     *
+     * @throws IOException Si se produce un error al escribir el fichero
+     */
+    public synchronized void guardar(Path ruta) throws IOException {
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        StringBuilder linea = new StringBuilder();
+        try (BufferedWriter salida = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+            for (int mastiles = Velero.MIN_MASTILES; mastiles <= Velero.MAX_MASTILES; mastiles++) {
+                this.guardarTabla(ClasificacionElo.TIPO_BARCO, mastiles, this.barcos[mastiles], linea, salida);
+                this.guardarTabla(ClasificacionElo.TIPO_PATRON, mastiles, this.patrones[mastiles], linea, salida);
+            }
+        }
+        Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carga las puntuaciones de un fichero creado con <code>guardar</code>. Las
+     * puntuaciones del fichero sustituyen a las actuales de los mismos participantes.
+     *
+     * @param ruta Ruta del fichero
+     * @return Número de puntuaciones cargadas
+     *
+     * @throws IOException Si se produce un error al leer el fichero
+     * @throws IllegalArgumentException Si alguna línea no es válida
+     */
+    public synchronized int cargar(Path ruta) throws IOException, IllegalArgumentException {
+        LectorJson lector = new LectorJson();
+        int numCargadas = 0;
+        int numLinea = 0;
+        for (String texto : Files.readAllLines(ruta, StandardCharsets.UTF_8)) {
+            numLinea++;
+            if (texto.isBlank()) {
+                continue;
+            }
+            String tipo = null;
+            String nombre = null;
+            int mastiles = 0;
+            double puntuacion = Double.NaN;
+            int numRegatas = 0;
+            try {
+                byte[] datos = texto.getBytes(StandardCharsets.UTF_8);
+                lector.iniciar(datos, 0, datos.length);
+                while (lector.siguienteCampo()) {
+                    if (lector.claveEs("tipo")) {
+                        tipo = lector.getTexto();
+                    } else if (lector.claveEs("mastiles")) {
+                        mastiles = lector.getEntero();
+                    } else if (lector.claveEs("nombre")) {
+                        nombre = lector.getTexto();
+                    } else if (lector.claveEs("puntuacion")) {
+                        puntuacion = lector.getDecimal();
+                    } else if (lector.claveEs("regatas")) {
+                        numRegatas = lector.getEntero();
+                    }
+                }
+                TablaClasificacion[] tablas = (ClasificacionElo.TIPO_BARCO.equals(tipo) ? this.barcos
+                        : ClasificacionElo.TIPO_PATRON.equals(tipo) ? this.patrones : null);
+                if (tablas == null || nombre == null) {
+                    throw new IllegalArgumentException("Faltan el tipo o el nombre del participante.\n");
+                }
+                tablas[ClasificacionElo.comprobarMastiles(mastiles)].establecer(this.escuela.getSimbolos().getCanonico(nombre), puntuacion, numRegatas);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Línea %d del fichero %s: %s", numLinea, ruta, e.getMessage()));
+            }
+            numCargadas++;
+        }
+        return numCargadas;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Escribe una línea JSON por cada participante de una tabla
+    private void guardarTabla(String tipo, int mastiles, TablaClasificacion tabla, StringBuilder linea, BufferedWriter salida) throws IOException {
+        for (TablaClasificacion.Entrada entrada : tabla.getPosiciones(1, Integer.MAX_VALUE)) {
+            linea.setLength(0);
+            linea.append("{\"tipo\":");
+            EscritorInformeVeleros.anadirCadenaJson(tipo, linea);
+            linea.append(",\"mastiles\":").append(mastiles).append(",\"nombre\":");
+            EscritorInformeVeleros.anadirCadenaJson(entrada.getNombre(), linea);
+            linea.append(",\"puntuacion\":").append(entrada.getPuntuacion());
+            linea.append(",\"regatas\":").append(entrada.getNumRegatas()).append("}\n");
+            salida.append(linea);
+        }
+    }
+
+    // Comprueba que un número de mástiles es válido y lo devuelve
+    private static int comprobarMastiles(int mastiles) throws IllegalArgumentException {
+        if (mastiles < Velero.MIN_MASTILES || mastiles > Velero.MAX_MASTILES) {
+            throw new IllegalArgumentException(String.format("El número de mástiles %d debe estar entre %d y %d.\n", mastiles, Velero.MIN_MASTILES, Velero.MAX_MASTILES));
+        }
+        return mastiles;
+    }
+}
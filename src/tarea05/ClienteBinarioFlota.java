@@ -0,0 +1,353 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * <p>
+ * Cliente del protocolo binario de órdenes de la flota
+ * (<code>ProtocoloFlota</code>). Las órdenes se acumulan en un buffer y se
+ * envían juntas con <code>enviar</code>; después se lee una respuesta por
+ * orden con <code>recibir</code>, en el mismo orden en que se pidieron. Así,
+ * un lote de órdenes cuesta un viaje de ida y vuelta en lugar de uno por
+ * orden. Si el buffer se llena, las órdenes acumuladas se envían solas; el
+ * número de órdenes sin respuesta debe ser moderado (unos miles), porque el
+ * servidor deja de leer mientras el cliente no recoge sus respuestas.</p>
+ * <p>
+ * El programa principal compara, en la misma máquina, el coste de las
+ * operaciones de los veleros llamadas directamente con el de enviarlas al
+ * servidor de una en una y encadenadas.</p>
+ * <p>
+ * Los objetos de esta clase no son seguros entre hilos.</p>
+ * <p>
+ * Uso: <code>java tarea05.ClienteBinarioFlota [veleros] [rondas] [encadenadas]</code></p>
+ *
+ * @author profesorado
+ */
+public class ClienteBinarioFlota implements Closeable {
+
+    // Tamaño de los buffers de envío y recepción
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final SocketChannel canal;      // Conexión con el servidor
+    private final ByteBuffer envio;         // Órdenes pendientes de enviar (modo escritura)
+    private final ByteBuffer recepcion;     // Bytes recibidos sin consumir (modo lectura)
+    private final ArrayDeque<Byte> pendientes;  // Operaciones enviadas o acumuladas sin respuesta leída
+    private int indice;                     // Índice del último barco creado
+    private String texto;                   // Texto de la última respuesta (resultado o error)
+
+    /**
+     * Abre una conexión con un servidor binario de la flota.
+     *
+     * @param direccion Dirección del servidor
+     *
+     * @throws IOException Si no se puede conectar
+     */
+    public ClienteBinarioFlota(InetSocketAddress direccion) throws IOException {
+        this.canal = SocketChannel.open(direccion);
+        this.canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.envio = ByteBuffer.allocateDirect(ClienteBinarioFlota.TAMANO_BUFFER);
+        this.recepcion = ByteBuffer.allocateDirect(ClienteBinarioFlota.TAMANO_BUFFER);
+        this.recepcion.flip();
+        this.pendientes = new ArrayDeque<>();
+        this.indice = -1;
+        this.texto = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Órdenes
+    // ------------------------------------------------------------------------
+    /**
+     * Pide crear un velero; su índice se obtiene con <code>getIndice</code> tras recibir la respuesta.
+     *
+     * @param nombre Nombre del velero
+     * @param mastiles Número de mástiles
+     * @param tripulantes Número máximo de tripulantes
+     *
+     * @throws IOException Si no se pueden enviar las órdenes acumuladas
+     */
+    public void crear(String nombre, int mastiles, int tripulantes) throws IOException {
+        int trama = this.abrir(ProtocoloFlota.CREAR);
+        ProtocoloFlota.ponerTexto(this.envio, nombre);
+        this.envio.put((byte) mastiles).putShort((short) tripulantes);
+        this.cerrar(trama);
+    }
+
+    /**
+     * Pide que un velero salga a navegar.
+     *
+     * @param barco Índice del velero en la escuela
+     * @param velocidad Velocidad
+     * @param rumbo Rumbo
+     * @param patron Patrón
+     * @param tripulacion Número de tripulantes (sin contar el patrón)
+     *
+     * @throws IOException Si no se pueden enviar las órdenes acumuladas
+     */
+    public void salida(int barco, int velocidad, String rumbo, String patron, int tripulacion) throws IOException {
+        int trama = this.abrir(ProtocoloFlota.SALIDA);
+        this.envio.putInt(barco).put((byte) velocidad);
+        ProtocoloFlota.ponerTexto(this.envio, rumbo);
+        ProtocoloFlota.ponerTexto(this.envio, patron);
+        this.envio.putShort((short) tripulacion);
+        this.cerrar(trama);
+    }
+
+    /**
+     * Pide que un velero vuelva a puerto.
+     *
+     * @param barco Índice del velero en la escuela
+     * @param minutos Tiempo navegando (en minutos)
+     *
+     * @throws IOException Si no se pueden enviar las órdenes acumuladas
+     */
+    public void llegada(int barco, int minutos) throws IOException {
+        int trama = this.abrir(ProtocoloFlota.LLEGADA);
+        this.envio.putInt(barco).putInt(minutos);
+        this.cerrar(trama);
+    }
+
+    /**
+     * Pide cambiar el rumbo de un velero.
+     *
+     * @param barco Índice del velero en la escuela
+     * @param rumbo Nuevo rumbo
+     *
+     * @throws IOException Si no se pueden enviar las órdenes acumuladas
+     */
+    public void rumbo(int barco, String rumbo) throws IOException {
+        int trama = this.abrir(ProtocoloFlota.RUMBO);
+        this.envio.putInt(barco);
+        ProtocoloFlota.ponerTexto(this.envio, rumbo);
+        this.cerrar(trama);
+    }
+
+    /**
+     * Pide una regata entre dos veleros; el resultado se obtiene con <code>getTexto</code>.
+     *
+     * @param barco Índice del velero en la escuela
+     * @param rival Índice del velero rival
+     *
+     * @throws IOException Si no se pueden enviar las órdenes acumuladas
+     */
+    public void regata(int barco, int rival) throws IOException {
+        int trama = this.abrir(ProtocoloFlota.REGATA);
+        this.envio.putInt(barco).putInt(rival);
+        this.cerrar(trama);
+    }
+
+    // ------------------------------------------------------------------------
+    // Envío y recepción
+    // ------------------------------------------------------------------------
+    /**
+     * Envía las órdenes acumuladas.
+     *
+     * @throws IOException Si se produce un error al escribir
+     */
+    public void enviar() throws IOException {
+        this.envio.flip();
+        while (this.envio.hasRemaining()) {
+            this.canal.write(this.envio);
+        }
+        this.envio.clear();
+    }
+
+    /**
+     * Lee la respuesta de la orden más antigua sin respuesta, enviando antes
+     * las órdenes acumuladas si las hay.
+     *
+     * @return Estado de la respuesta (<code>ProtocoloFlota.OK</code> o un código de error)
+     *
+     * @throws IllegalStateException Si no hay órdenes sin respuesta
+     * @throws IOException Si se produce un error al leer o el servidor cierra la conexión
+     */
+    public int recibir() throws IllegalStateException, IOException {
+        if (this.pendientes.isEmpty()) {
+            throw new IllegalStateException("No hay órdenes pendientes de respuesta.\n");
+        }
+        if (this.envio.position() > 0) {
+            this.enviar();
+        }
+        this.leerAlMenos(Integer.BYTES);
+        int longitud = this.recepcion.getInt();
+        this.leerAlMenos(longitud);
+        int fin = this.recepcion.position() + longitud;
+        byte estado = this.recepcion.get();
+        this.texto = null;
+        byte operacion = this.pendientes.poll();
+        if (estado != ProtocoloFlota.OK) {
+            this.texto = ProtocoloFlota.tomarTexto(this.recepcion);
+        } else if (operacion == ProtocoloFlota.CREAR) {
+            this.indice = this.recepcion.getInt();
+        } else if (operacion == ProtocoloFlota.REGATA) {
+            this.texto = ProtocoloFlota.tomarTexto(this.recepcion);
+        }
+        this.recepcion.position(fin);
+        return estado;
+    }
+
+    /**
+     * @return Número de órdenes sin respuesta leída
+     */
+    public int getNumPendientes() {
+        return this.pendientes.size();
+    }
+
+    /**
+     * @return Índice del último velero creado
+     */
+    public int getIndice() {
+        return this.indice;
+    }
+
+    /**
+     * @return Resultado de la última regata o mensaje de error de la última respuesta (o <code>null</code>)
+     */
+    public String getTexto() {
+        return this.texto;
+    }
+
+    /**
+     * Cierra la conexión.
+     *
+     * @throws IOException Si se produce un error al cerrar
+     */
+    @Override
+    public void close() throws IOException {
+        this.canal.close();
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Empieza una trama, enviando antes lo acumulado si puede no caber
+    private int abrir(byte operacion) throws IOException {
+        if (this.envio.remaining() < ProtocoloFlota.MAX_TRAMA + Integer.BYTES) {
+            this.enviar();
+        }
+        int trama = ProtocoloFlota.abrirTrama(this.envio);
+        this.envio.put(operacion);
+        return trama;
+    }
+
+    private void cerrar(int trama) {
+        ProtocoloFlota.cerrarTrama(this.envio, trama);
+        this.pendientes.add(this.envio.get(trama + Integer.BYTES));
+    }
+
+    private void leerAlMenos(int bytes) throws IOException {
+        if (this.recepcion.remaining() >= bytes) {
+            return;
+        }
+        this.recepcion.compact();
+        while (this.recepcion.position() < bytes) {
+            if (this.canal.read(this.recepcion) < 0) {
+                throw new EOFException("El servidor ha cerrado la conexión");
+            }
+        }
+        this.recepcion.flip();
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main de la comparativa: llamadas directas frente al protocolo binario
+     * @param args Número de veleros, rondas y órdenes encadenadas por envío (opcionales)
+     * @throws IOException Si se produce un error de comunicación
+     */
+    public static void main(String[] args) throws IOException {
+        int numVeleros = (args.length > 0 ? Integer.parseInt(args[0]) : 1000);
+        int numRondas = (args.length > 1 ? Integer.parseInt(args[1]) : 20);
+        int encadenadas = (args.length > 2 ? Integer.parseInt(args[2]) : 64);
+        int numOperaciones = 3 * numVeleros * numRondas;
+
+        System.out.println(String.format("PROTOCOLO BINARIO: %d veleros, %d rondas de salida, rumbo y llegada, %d órdenes encadenadas",
+                numVeleros, numRondas, encadenadas));
+        System.out.println("----------------------------------------------------\n");
+
+        // Referencia: las mismas operaciones llamadas directamente
+        EscuelaVela local = new EscuelaVela("Comparativa local");
+        Velero[] barcos = new Velero[numVeleros];
+        for (int i = 0; i < numVeleros; i++) {
+            barcos[i] = local.crearVelero("B" + i, 1 + i % Velero.MAX_MASTILES, 4);
+        }
+        long directo = Long.MAX_VALUE;
+        for (int repeticion = 0; repeticion < 3; repeticion++) {
+            long inicio = System.nanoTime();
+            for (int r = 0; r < numRondas; r++) {
+                for (Velero barco : barcos) {
+                    barco.iniciarNavegacion(10, "empopada", "Comparativa", 2);
+                    barco.setRumbo("ceñida");
+                    barco.pararNavegacion(30);
+                }
+            }
+            directo = Math.min(directo, System.nanoTime() - inicio);
+        }
+        System.out.println(String.format(" -> Llamadas directas: %.3f µs por operación", directo / 1e3 / numOperaciones));
+
+        EscuelaVela remota = new EscuelaVela("Comparativa binaria");
+        try (ServidorBinarioFlota servidor = new ServidorBinarioFlota(remota, new InetSocketAddress("127.0.0.1", 0))) {
+            servidor.iniciar();
+            try (ClienteBinarioFlota cliente = new ClienteBinarioFlota(new InetSocketAddress("127.0.0.1", servidor.getPuerto()))) {
+                int[] indices = new int[numVeleros];
+                for (int i = 0; i < numVeleros; i++) {
+                    cliente.crear("B" + i, 1 + i % Velero.MAX_MASTILES, 4);
+                }
+                for (int i = 0; i < numVeleros; i++) {
+                    if (cliente.recibir() != ProtocoloFlota.OK) {
+                        throw new IllegalStateException(cliente.getTexto());
+                    }
+                    indices[i] = cliente.getIndice();
+                }
+                for (int profundidad : new int[]{1, encadenadas}) {
+                    long mejor = Long.MAX_VALUE;
+                    long errores = 0;
+                    for (int repeticion = 0; repeticion < 3; repeticion++) {
+                        long inicio = System.nanoTime();
+                        for (int r = 0; r < numRondas; r++) {
+                            for (int indice : indices) {
+                                cliente.salida(indice, 10, "empopada", "Comparativa", 2);
+                                errores += ClienteBinarioFlota.recibirSiLleno(cliente, profundidad);
+                                cliente.rumbo(indice, "ceñida");
+                                errores += ClienteBinarioFlota.recibirSiLleno(cliente, profundidad);
+                                cliente.llegada(indice, 30);
+                                errores += ClienteBinarioFlota.recibirSiLleno(cliente, profundidad);
+                            }
+                        }
+                        errores += ClienteBinarioFlota.recibirTodas(cliente);
+                        mejor = Math.min(mejor, System.nanoTime() - inicio);
+                    }
+                    System.out.println(String.format(" -> Protocolo binario, %d %s por envío: %.3f µs por operación (%.1f veces la llamada directa, %d errores)",
+                            profundidad, profundidad == 1 ? "orden" : "órdenes",
+                            mejor / 1e3 / numOperaciones, (double) mejor / directo, errores));
+                }
+            }
+        }
+    }
+
+    // Lee las respuestas pendientes si ya hay tantas órdenes encadenadas como se pide
+    private static int recibirSiLleno(ClienteBinarioFlota cliente, int profundidad) throws IOException {
+        return (cliente.getNumPendientes() >= profundidad ? ClienteBinarioFlota.recibirTodas(cliente) : 0);
+    }
+
+    // Lee todas las respuestas pendientes y devuelve cuántas son de error
+    private static int recibirTodas(ClienteBinarioFlota cliente) throws IOException {
+        int errores = 0;
+        while (cliente.getNumPendientes() > 0) {
+            if (cliente.recibir() != ProtocoloFlota.OK) {
+                errores++;
+            }
+        }
+        return errores;
+    }
+}
@@ -0,0 +1,343 @@
+package tarea05;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Control de admisión de las salidas de puerto: limita el número de barcos
+ * de la escuela que navegan a la vez y pone en cola, por orden de llegada,
+ * las salidas que superan el límite.</p>
+ * <p>
+ * Cada solicitud devuelve un <code>CompletableFuture</code> que se completa
+ * con el barco cuando sale a navegar (o con la excepción de
+ * <code>iniciarNavegacion</code> si la salida no es válida). Si se indica un
+ * tiempo máximo de espera y vence antes de que haya sitio, se completa con una
+ * <code>TimeoutException</code> y la solicitud se descarta y sale de la cola.
+ * Cancelar el futuro también la descarta.</p>
+ * <p>
+ * El control no utiliza cerrojos: la cola es una cola enlazada concurrente,
+ * las plazas ocupadas son un contador atómico y cada solicitud pasa de
+ * pendiente a admitida o a descartada con una única operación atómica, de modo
+ * que soporta miles de solicitudes en espera. Las salidas que se hacen
+ * directamente con <code>iniciarNavegacion</code> no se ponen en cola, pero
+ * ocupan plaza.</p>
+ * <p>
+ * La plaza que deja un barco al llegar se reparte cuando la llegada está
+ * aplicada del todo (con <code>EscuelaVela.diferir</code>), de modo que el
+ * propio barco puede tener una salida en la cola. Si la salida admitida llega
+ * a hacerse, la solicitud se completa con el barco aunque después falle algo;
+ * sólo se libera la plaza si el barco no ha salido.</p>
+ *
+ * @author profesorado
+ */
+public class ControlPuerto implements OyenteFlota {
+
+    // Estados de una solicitud
+    private static final int PENDIENTE = 0;
+    private static final int ADMITIDA = 1;
+    private static final int DESCARTADA = 2;
+
+    // Solicitud de salida en espera
+    private static final class Solicitud {
+
+        final Velero barco;
+        final int velocidad;
+        final String rumbo;
+        final String patron;
+        final int tripulacion;
+        final CompletableFuture<Velero> resultado;
+        final AtomicInteger estado;
+        volatile boolean salido;                                // El barco ha salido (lo avisa la escuela)
+
+        Solicitud(Velero barco, int velocidad, String rumbo, String patron, int tripulacion) {
+            this.barco = barco;
+            this.velocidad = velocidad;
+            this.rumbo = rumbo;
+            this.patron = patron;
+            this.tripulacion = tripulacion;
+            this.resultado = new CompletableFuture<>();
+            this.estado = new AtomicInteger(ControlPuerto.PENDIENTE);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                          // Escuela cuyas salidas se controlan
+    private final AtomicInteger maxNavegando;                   // Número máximo de barcos navegando
+    private final AtomicInteger ocupadas;                       // Plazas ocupadas (barcos navegando y salidas en curso)
+    private final AtomicInteger enEspera;                       // Solicitudes pendientes en la cola
+    private final ConcurrentLinkedQueue<Solicitud> cola;        // Solicitudes por orden de llegada
+    private final ThreadLocal<Solicitud> admitiendo;            // Solicitud cuya salida admite el hilo actual
+    private final Set<Velero> contados;                         // Barcos navegando que ocupan plaza
+    private volatile Set<Velero> llegados;                      // Llegadas mientras se cuentan los barcos (o null)
+
+    /**
+     * Crea el control de salidas de una escuela y lo conecta a sus sucesos. Los
+     * barcos que ya están navegando ocupan plaza.
+     *
+     * @param escuela Escuela cuyas salidas se controlan
+     * @param maxNavegando Número máximo de barcos navegando a la vez
+     *
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si el máximo no es positivo
+     */
+    public ControlPuerto(EscuelaVela escuela, int maxNavegando) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del control de puerto no puede ser nula.\n");
+        }
+        ControlPuerto.comprobarMaximo(maxNavegando);
+        this.escuela = escuela;
+        this.maxNavegando = new AtomicInteger(maxNavegando);
+        this.ocupadas = new AtomicInteger(0);
+        this.enEspera = new AtomicInteger(0);
+        this.cola = new ConcurrentLinkedQueue<>();
+        this.admitiendo = new ThreadLocal<>();
+        this.contados = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        // Primero se escuchan los sucesos y después se cuentan los barcos que ya navegan: cada barco
+        // ocupa una sola plaza aunque salga mientras tanto, y no se cuenta si llega mientras tanto
+        Set<Velero> llegadas = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        this.llegados = llegadas;
+        escuela.anadirOyente(this);
+        for (Velero barco : escuela.getBarcos()) {
+            if (barco.isNavegando() && !llegadas.contains(barco) && this.contados.add(barco)) {
+                this.ocupadas.incrementAndGet();
+            }
+        }
+        this.llegados = null;
+    }
+
+    /**
+     * Desconecta el control de los sucesos de la escuela. Las solicitudes que
+     * siguen en espera se completan con una <code>IllegalStateException</code>.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+        Solicitud solicitud;
+        while ((solicitud = this.cola.poll()) != null) {
+            if (this.tomar(solicitud, ControlPuerto.DESCARTADA)) {
+                solicitud.resultado.completeExceptionally(new IllegalStateException("El control de salidas del puerto se ha desconectado.\n"));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Solicitudes de salida
+    // ------------------------------------------------------------------------
+    /**
+     * Solicita la salida de un velero, esperando sin límite de tiempo a que haya sitio.
+     *
+     * @param barco Velero que sale
+     * @param velocidad Velocidad de la navegación
+     * @param rumbo Rumbo de la navegación
+     * @param patron Patrón de la navegación
+     * @param tripulacion Número de tripulantes (exceptuando el patrón)
+     * @return Futuro que se completa con el barco cuando sale a navegar
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     */
+    public CompletableFuture<Velero> solicitarSalida(Velero barco, int velocidad, String rumbo, String patron, int tripulacion)
+            throws NullPointerException, IllegalArgumentException {
+        return this.solicitarSalida(barco, velocidad, rumbo, patron, tripulacion, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Solicita la salida de un velero con un tiempo máximo de espera.
+     *
+     * @param barco Velero que sale
+     * @param velocidad Velocidad de la navegación
+     * @param rumbo Rumbo de la navegación
+     * @param patron Patrón de la navegación
+     * @param tripulacion Número de tripulantes (exceptuando el patrón)
+     * @param espera Tiempo máximo de espera en la cola (0 o negativo para esperar sin límite)
+     * @param unidad Unidad del tiempo de espera
+     * @return Futuro que se completa con el barco cuando sale a navegar, o con una <code>TimeoutException</code>
+     *
+     * @throws NullPointerException Si el barco o la unidad son nulos
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     */
+    public CompletableFuture<Velero> solicitarSalida(Velero barco, int velocidad, String rumbo, String patron, int tripulacion, long espera, TimeUnit unidad)
+            throws NullPointerException, IllegalArgumentException {
+        if (barco == null) {
+            throw new NullPointerException("El velero que solicita la salida no puede ser nulo.\n");
+        }
+        if (unidad == null) {
+            throw new NullPointerException("La unidad del tiempo de espera no puede ser nula.\n");
+        }
+        if (barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        Solicitud solicitud = new Solicitud(barco, velocidad, rumbo, patron, tripulacion);
+        if (espera > 0) {
+            CompletableFuture.delayedExecutor(espera, unidad).execute(() -> {
+                if (this.descartar(solicitud)) {
+                    solicitud.resultado.completeExceptionally(new TimeoutException(String.format("El velero %s no ha podido salir de puerto en el tiempo de espera.\n", barco.getNombreBarco())));
+                }
+            });
+        }
+        // Si el que solicita cancela el futuro, la solicitud se descarta
+        solicitud.resultado.whenComplete((b, e) -> this.descartar(solicitud));
+        this.enEspera.incrementAndGet();
+        this.cola.add(solicitud);
+        this.admitirPendientes();
+        return solicitud.resultado;
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public void navegacionIniciada(Velero barco) {
+        // Las salidas admitidas por el control ya tienen su plaza reservada
+        Solicitud solicitud = this.admitiendo.get();
+        if (solicitud != null && solicitud.barco == barco) {
+            solicitud.salido = true;
+            this.contados.add(barco);
+        } else if (this.contados.add(barco)) {
+            this.ocupadas.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void navegacionParada(Velero barco, int tiempoNavegando) {
+        if (this.contados.remove(barco)) {
+            this.ocupadas.decrementAndGet();
+        } else {
+            // Todavía no estaba contado: el constructor no debe contarlo
+            Set<Velero> llegadas = this.llegados;
+            if (llegadas != null) {
+                llegadas.add(barco);
+            }
+        }
+        // Durante el aviso el barco todavía navega: la cola se atiende cuando la llegada está aplicada
+        this.escuela.diferir(this::admitirPendientes);
+    }
+
+    // ------------------------------------------------------------------------
+    // Configuración y estado
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>maxNavegando</code>
+     * @return Número máximo de barcos navegando a la vez
+     */
+    public int getMaxNavegando() {
+        return this.maxNavegando.get();
+    }
+
+    /**
+     * Cambia el número máximo de barcos navegando. Si aumenta, se admiten las
+     * solicitudes en espera que quepan; si disminuye, los barcos que ya
+     * navegan no se ven afectados.
+     *
+     * @param maxNavegando Número máximo de barcos navegando a la vez
+     *
+     * @throws IllegalArgumentException Si el máximo no es positivo
+     */
+    public void setMaxNavegando(int maxNavegando) throws IllegalArgumentException {
+        ControlPuerto.comprobarMaximo(maxNavegando);
+        this.maxNavegando.set(maxNavegando);
+        this.admitirPendientes();
+    }
+
+    /**
+     * Devuelve el número de plazas ocupadas.
+     * @return Barcos navegando más salidas en curso
+     */
+    public int getNumOcupadas() {
+        return this.ocupadas.get();
+    }
+
+    /**
+     * Devuelve el número de solicitudes que esperan plaza.
+     * @return Número de solicitudes en espera
+     */
+    public int getNumEnEspera() {
+        return this.enEspera.get();
+    }
+
+    /**
+     * Devuelve el estado del control en un tipo String
+     *
+     * @return String Estado del control
+     */
+    @Override
+    public String toString() {
+        return String.format("{Escuela: %s, Máximo: %d, Ocupadas: %d, En espera: %d}",
+                this.escuela.getNombre(), this.maxNavegando.get(), this.ocupadas.get(), this.enEspera.get());
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    private static void comprobarMaximo(int maxNavegando) throws IllegalArgumentException {
+        if (maxNavegando <= 0) {
+            throw new IllegalArgumentException(String.format("El número máximo de barcos navegando (%d) debe ser positivo.\n", maxNavegando));
+        }
+    }
+
+    // Pasa una solicitud pendiente a otro estado; sólo puede hacerlo un hilo
+    private boolean tomar(Solicitud solicitud, int estado) {
+        if (solicitud.estado.compareAndSet(ControlPuerto.PENDIENTE, estado)) {
+            this.enEspera.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // Descarta una solicitud pendiente y la saca de la cola, para que no ocupe sitio hasta que le llegue el turno
+    private boolean descartar(Solicitud solicitud) {
+        if (this.tomar(solicitud, ControlPuerto.DESCARTADA)) {
+            this.cola.remove(solicitud);
+            return true;
+        }
+        return false;
+    }
+
+    // Reserva una plaza si hay alguna libre
+    private boolean reservarPlaza() {
+        while (true) {
+            int actuales = this.ocupadas.get();
+            if (actuales >= this.maxNavegando.get()) {
+                return false;
+            }
+            if (this.ocupadas.compareAndSet(actuales, actuales + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Admite solicitudes de la cola, por orden, mientras haya plazas libres
+    private void admitirPendientes() {
+        while (this.cola.peek() != null && this.reservarPlaza()) {
+            Solicitud solicitud = this.cola.poll();
+            if (solicitud == null || !this.tomar(solicitud, ControlPuerto.ADMITIDA)) {
+                // La cola se ha vaciado o la solicitud estaba descartada: se libera la plaza
+                this.ocupadas.decrementAndGet();
+                continue;
+            }
+            this.admitiendo.set(solicitud);
+            try {
+                solicitud.barco.iniciarNavegacion(solicitud.velocidad, solicitud.rumbo, solicitud.patron, solicitud.tripulacion);
+            } catch (RuntimeException e) {
+                if (!solicitud.salido) {
+                    // La salida no se ha hecho: se libera la plaza reservada
+                    this.ocupadas.decrementAndGet();
+                    solicitud.resultado.completeExceptionally(e);
+                    continue;
+                }
+                // El barco ha salido y ocupa la plaza aunque algo haya fallado después
+            } finally {
+                this.admitiendo.remove();
+            }
+            solicitud.resultado.complete(solicitud.barco);
+        }
+    }
+}
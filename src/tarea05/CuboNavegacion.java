@@ -0,0 +1,463 @@
+package tarea05;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Cubo de agregados históricos de navegación: minutos navegados, travesías y
+ * regatas por periodo (día, semana o mes), número de mástiles, rumbo y patrón.</p>
+ * <p>
+ * Cada travesía que termina y cada regata se suman, en el momento en que se
+ * producen, a los tres niveles de periodo, de modo que las consultas no
+ * vuelven a recorrer las travesías. Dentro de cada periodo sólo se guardan las
+ * combinaciones de mástiles, rumbo y patrón que han aparecido, en arrays de
+ * tipos primitivos. Un total sobre un intervalo de fechas se obtiene con los
+ * meses completos que contiene y los días sueltos de los extremos, así que un
+ * año de historia se consulta con cualquier combinación de filtros en pocos
+ * milisegundos.</p>
+ * <p>
+ * Las semanas empiezan en lunes y se identifican por la fecha de ese lunes;
+ * los meses, por su primer día. Los métodos están sincronizados.</p>
+ *
+ * @author profesorado
+ */
+public class CuboNavegacion implements OyenteFlota {
+
+    /**
+     * Nivel de agregación temporal de las consultas.
+     */
+    public enum Granularidad {
+        DIA, SEMANA, MES
+    }
+
+    /**
+     * Valores agregados de un periodo. Es inmutable.
+     */
+    public static final class Agregado {
+
+        private final LocalDate inicio;     // Primer día del periodo
+        private final long minutos;         // Minutos navegados
+        private final long travesias;       // Número de travesías terminadas
+        private final long regatas;         // Número de participaciones en regatas
+
+        private Agregado(LocalDate inicio, long minutos, long travesias, long regatas) {
+            this.inicio = inicio;
+            this.minutos = minutos;
+            this.travesias = travesias;
+            this.regatas = regatas;
+        }
+
+        /**
+         * @return Primer día del periodo (o de la consulta, en los totales)
+         */
+        public LocalDate getInicio() {
+            return this.inicio;
+        }
+
+        /**
+         * @return Minutos navegados en el periodo
+         */
+        public long getMinutos() {
+            return this.minutos;
+        }
+
+        /**
+         * @return Número de travesías terminadas en el periodo
+         */
+        public long getTravesias() {
+            return this.travesias;
+        }
+
+        /**
+         * @return Número de participaciones en regatas (cada regata cuenta una vez por barco)
+         */
+        public long getRegatas() {
+            return this.regatas;
+        }
+
+        /**
+         * Devuelve el agregado en un tipo String
+         *
+         * @return String Valores del agregado
+         */
+        @Override
+        public String toString() {
+            return String.format("{Desde: %s, Minutos: %d, Travesías: %d, Regatas: %d}", this.inicio, this.minutos, this.travesias, this.regatas);
+        }
+    }
+
+    // Combinaciones de mástiles, rumbo y patrón de un periodo: arrays compactos con un índice de dispersión
+    private static final class Celdas {
+
+        long[] claves = new long[8];        // Clave de cada combinación
+        int[] minutos = new int[8];         // Minutos navegados de cada combinación
+        int[] travesias = new int[8];       // Travesías de cada combinación
+        int[] regatas = new int[8];         // Regatas de cada combinación
+        int numCeldas;                      // Número de combinaciones
+        int[] tabla = new int[16];          // Posición más uno de cada clave (0 si el hueco está libre)
+
+        void sumar(long clave, int minutos, int travesias, int regatas) {
+            int mascara = this.tabla.length - 1;
+            int hueco = Long.hashCode(clave * 0x9E3779B97F4A7C15L) & mascara;
+            while (this.tabla[hueco] != 0 && this.claves[this.tabla[hueco] - 1] != clave) {
+                hueco = (hueco + 1) & mascara;
+            }
+            int celda = this.tabla[hueco] - 1;
+            if (celda < 0) {
+                celda = this.nuevaCelda(clave);
+                this.tabla[hueco] = celda + 1;
+                if (this.numCeldas * 2 > this.tabla.length) {
+                    this.redimensionar();
+                }
+            }
+            this.minutos[celda] += minutos;
+            this.travesias[celda] += travesias;
+            this.regatas[celda] += regatas;
+        }
+
+        private int nuevaCelda(long clave) {
+            if (this.numCeldas == this.claves.length) {
+                int capacidad = this.numCeldas * 2;
+                this.claves = Arrays.copyOf(this.claves, capacidad);
+                this.minutos = Arrays.copyOf(this.minutos, capacidad);
+                this.travesias = Arrays.copyOf(this.travesias, capacidad);
+                this.regatas = Arrays.copyOf(this.regatas, capacidad);
+            }
+            this.claves[this.numCeldas] = clave;
+            return this.numCeldas++;
+        }
+
+        private void redimensionar() {
+            this.tabla = new int[this.tabla.length * 2];
+            int mascara = this.tabla.length - 1;
+            for (int celda = 0; celda < this.numCeldas; celda++) {
+                int hueco = Long.hashCode(this.claves[celda] * 0x9E3779B97F4A7C15L) & mascara;
+                while (this.tabla[hueco] != 0) {
+                    hueco = (hueco + 1) & mascara;
+                }
+                this.tabla[hueco] = celda + 1;
+            }
+        }
+
+        // Suma en total[0..2] los valores de las combinaciones que cumplen el filtro
+        void acumular(long[] total, int mastiles, int idRumbo, int idPatron) {
+            for (int celda = 0; celda < this.numCeldas; celda++) {
+                long clave = this.claves[celda];
+                if ((mastiles == 0 || CuboNavegacion.mastilesDe(clave) == mastiles)
+                        && (idRumbo < 0 || CuboNavegacion.rumboDe(clave) == idRumbo)
+                        && (idPatron < 0 || CuboNavegacion.patronDe(clave) == idPatron)) {
+                    total[0] += this.minutos[celda];
+                    total[1] += this.travesias[celda];
+                    total[2] += this.regatas[celda];
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                  // Escuela cuyos sucesos se agregan
+    private final Clock reloj;                          // Reloj con el que se fecha cada suceso
+    private final TreeMap<Long, Celdas> porDia;         // Periodos diarios, por día desde la época
+    private final TreeMap<Long, Celdas> porSemana;      // Periodos semanales, por día desde la época de su lunes
+    private final TreeMap<Long, Celdas> porMes;         // Periodos mensuales, por día desde la época de su día 1
+
+    /**
+     * Crea el cubo de una escuela, fechando los sucesos con el reloj que tenga
+     * la escuela en ese momento, y lo conecta a sus sucesos.
+     *
+     * @param escuela Escuela cuyos sucesos se agregan
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public CuboNavegacion(EscuelaVela escuela) throws NullPointerException {
+        this(escuela, (escuela == null ? null : escuela.getReloj()));
+    }
+
+    /**
+     * Crea el cubo de una escuela con el reloj indicado y lo conecta a sus sucesos.
+     *
+     * @param escuela Escuela cuyos sucesos se agregan
+     * @param reloj Reloj (con su zona horaria) con el que se fecha cada suceso
+     *
+     * @throws NullPointerException Si la escuela o el reloj son nulos
+     */
+    public CuboNavegacion(EscuelaVela escuela, Clock reloj) throws NullPointerException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del cubo de navegación no puede ser nula.\n");
+        }
+        if (reloj == null) {
+            throw new NullPointerException("El reloj del cubo de navegación no puede ser nulo.\n");
+        }
+        this.escuela = escuela;
+        this.reloj = reloj;
+        this.porDia = new TreeMap<>();
+        this.porSemana = new TreeMap<>();
+        this.porMes = new TreeMap<>();
+        escuela.anadirOyente(this);
+    }
+
+    /**
+     * Desconecta el cubo de los sucesos de la escuela.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public void navegacionParada(Velero barco, int tiempoNavegando) {
+        this.sumar(LocalDate.now(this.reloj), barco.getNumMastiles(), barco.getIdRumbo(), barco.getIdPatron(), tiempoNavegando, 1, 0);
+    }
+
+    @Override
+    public void regataFinalizada(Velero barco, Velero otroBarco, int resultado) {
+        LocalDate hoy = LocalDate.now(this.reloj);
+        this.sumar(hoy, barco.getNumMastiles(), barco.getIdRumbo(), barco.getIdPatron(), 0, 0, 1);
+        // Los dos barcos llevan el mismo rumbo, pero el otro puede ser de otra escuela (con otros identificadores)
+        this.sumar(hoy, otroBarco.getNumMastiles(), barco.getIdRumbo(), this.escuela.getPatrones().getId(otroBarco.getPatron()), 0, 0, 1);
+    }
+
+    /**
+     * Añade al cubo datos históricos (por ejemplo, de un informe de temporadas anteriores).
+     *
+     * @param dia Día al que corresponden
+     * @param mastiles Número de mástiles de los barcos
+     * @param rumbo Rumbo
+     * @param patron Patrón
+     * @param minutos Minutos navegados
+     * @param travesias Número de travesías
+     * @param regatas Número de participaciones en regatas
+     *
+     * @throws NullPointerException Si el día, el rumbo o el patrón son nulos
+     * @throws IllegalArgumentException Si el número de mástiles es incorrecto o algún valor es negativo
+     * @throws IllegalStateException Si el patrón es nuevo y la tabla de patrones está llena
+     */
+    public void anadirHistorico(LocalDate dia, int mastiles, String rumbo, String patron, int minutos, int travesias, int regatas)
+            throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        if (dia == null || rumbo == null || patron == null) {
+            throw new NullPointerException("El día, el rumbo y el patrón de los datos históricos no pueden ser nulos.\n");
+        }
+        if (mastiles < Velero.MIN_MASTILES || mastiles > Velero.MAX_MASTILES) {
+            throw new IllegalArgumentException(String.format("El número de mástiles debe estar entre %d y %d.\n", Velero.MIN_MASTILES, Velero.MAX_MASTILES));
+        }
+        if (minutos < 0 || travesias < 0 || regatas < 0) {
+            throw new IllegalArgumentException("Los minutos, las travesías y las regatas no pueden ser negativos.\n");
+        }
+        // Los datos ya están comprobados: sólo ahora se añaden el rumbo y el patrón a las tablas de la escuela
+        int idPatron = this.escuela.getPatrones().getId(patron);
+        this.sumar(dia, mastiles, this.escuela.getRumbos().getId(rumbo), idPatron, minutos, travesias, regatas);
+    }
+
+    // Suma un suceso a los tres niveles de periodo
+    private synchronized void sumar(LocalDate dia, int mastiles, int idRumbo, int idPatron, int minutos, int travesias, int regatas) {
+        long clave = ((long) idPatron << 32) | ((long) idRumbo << 8) | mastiles;
+        long epocaDia = dia.toEpochDay();
+        this.porDia.computeIfAbsent(epocaDia, d -> new Celdas()).sumar(clave, minutos, travesias, regatas);
+        this.porSemana.computeIfAbsent(CuboNavegacion.inicioPeriodo(Granularidad.SEMANA, epocaDia), d -> new Celdas()).sumar(clave, minutos, travesias, regatas);
+        this.porMes.computeIfAbsent(CuboNavegacion.inicioPeriodo(Granularidad.MES, epocaDia), d -> new Celdas()).sumar(clave, minutos, travesias, regatas);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve los agregados de cada periodo con actividad entre dos fechas.
+     * Los periodos de los extremos que no caen enteros en el intervalo sólo
+     * incluyen los días del intervalo.
+     *
+     * @param granularidad Nivel de los periodos
+     * @param desde Primer día (incluido)
+     * @param hasta Último día (incluido)
+     * @param mastiles Número de mástiles, o 0 para todos
+     * @param rumbo Rumbo, o <code>null</code> para todos
+     * @param patron Patrón, o <code>null</code> para todos
+     * @return Lista de agregados en orden cronológico
+     *
+     * @throws NullPointerException Si la granularidad o alguna de las fechas son nulas
+     * @throws IllegalArgumentException Si el intervalo está invertido
+     */
+    public synchronized List<Agregado> consultar(Granularidad granularidad, LocalDate desde, LocalDate hasta, int mastiles, String rumbo, String patron)
+            throws NullPointerException, IllegalArgumentException {
+        this.comprobarIntervalo(desde, hasta);
+        long primero = desde.toEpochDay();
+        long ultimo = hasta.toEpochDay();
+        int idRumbo = (rumbo == null ? -1 : this.escuela.getRumbos().buscar(rumbo));
+        int idPatron = (patron == null ? -1 : this.escuela.getPatrones().buscar(patron));
+        List<Agregado> resultado = new ArrayList<>();
+        if ((rumbo != null && idRumbo < 0) || (patron != null && idPatron < 0)) {
+            return resultado;
+        }
+        long[] total = new long[3];
+        TreeMap<Long, Celdas> nivel = this.getNivel(granularidad);
+        for (Map.Entry<Long, Celdas> periodo : nivel.subMap(CuboNavegacion.inicioPeriodo(granularidad, primero), true, ultimo, true).entrySet()) {
+            long inicio = periodo.getKey();
+            long fin = CuboNavegacion.finPeriodo(granularidad, inicio);
+            Arrays.fill(total, 0);
+            if (inicio >= primero && fin <= ultimo) {
+                periodo.getValue().acumular(total, mastiles, idRumbo, idPatron);
+            } else {
+                this.acumularDias(total, Math.max(inicio, primero), Math.min(fin, ultimo), mastiles, idRumbo, idPatron);
+            }
+            if (total[0] != 0 || total[1] != 0 || total[2] != 0) {
+                resultado.add(new Agregado(LocalDate.ofEpochDay(inicio), total[0], total[1], total[2]));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Devuelve el total entre dos fechas, combinando los meses completos del
+     * intervalo con los días sueltos de los extremos.
+     *
+     * @param desde Primer día (incluido)
+     * @param hasta Último día (incluido)
+     * @param mastiles Número de mástiles, o 0 para todos
+     * @param rumbo Rumbo, o <code>null</code> para todos
+     * @param patron Patrón, o <code>null</code> para todos
+     * @return Agregado del intervalo (con la fecha de inicio de la consulta)
+     *
+     * @throws NullPointerException Si alguna de las fechas es nula
+     * @throws IllegalArgumentException Si el intervalo está invertido
+     */
+    public synchronized Agregado total(LocalDate desde, LocalDate hasta, int mastiles, String rumbo, String patron)
+            throws NullPointerException, IllegalArgumentException {
+        this.comprobarIntervalo(desde, hasta);
+        long primero = desde.toEpochDay();
+        long ultimo = hasta.toEpochDay();
+        int idRumbo = (rumbo == null ? -1 : this.escuela.getRumbos().buscar(rumbo));
+        int idPatron = (patron == null ? -1 : this.escuela.getPatrones().buscar(patron));
+        long[] total = new long[3];
+        if ((rumbo == null || idRumbo >= 0) && (patron == null || idPatron >= 0)) {
+            // Meses completos dentro del intervalo
+            long primerMes = CuboNavegacion.inicioPeriodo(Granularidad.MES, primero);
+            if (primerMes < primero) {
+                primerMes = CuboNavegacion.finPeriodo(Granularidad.MES, primerMes) + 1;
+            }
+            long ultimoMes = CuboNavegacion.inicioPeriodo(Granularidad.MES, ultimo);
+            if (CuboNavegacion.finPeriodo(Granularidad.MES, ultimoMes) > ultimo) {
+                ultimoMes = CuboNavegacion.inicioPeriodo(Granularidad.MES, ultimoMes - 1);
+            }
+            if (primerMes <= ultimoMes) {
+                for (Celdas mes : this.porMes.subMap(primerMes, true, ultimoMes, true).values()) {
+                    mes.acumular(total, mastiles, idRumbo, idPatron);
+                }
+                // Días sueltos antes y después de los meses completos
+                this.acumularDias(total, primero, primerMes - 1, mastiles, idRumbo, idPatron);
+                this.acumularDias(total, CuboNavegacion.finPeriodo(Granularidad.MES, ultimoMes) + 1, ultimo, mastiles, idRumbo, idPatron);
+            } else {
+                this.acumularDias(total, primero, ultimo, mastiles, idRumbo, idPatron);
+            }
+        }
+        return new Agregado(desde, total[0], total[1], total[2]);
+    }
+
+    /**
+     * Devuelve el número de periodos diarios con actividad.
+     * @return Número de días con datos
+     */
+    public synchronized int getNumDias() {
+        return this.porDia.size();
+    }
+
+    /**
+     * Devuelve el estado del cubo en un tipo String
+     *
+     * @return String Estado del cubo
+     */
+    @Override
+    public synchronized String toString() {
+        int celdas = 0;
+        for (Celdas dia : this.porDia.values()) {
+            celdas += dia.numCeldas;
+        }
+        return String.format("{Escuela: %s, Días: %d, Semanas: %d, Meses: %d, Combinaciones diarias: %d%s}",
+                this.escuela.getNombre(),
+                this.porDia.size(),
+                this.porSemana.size(),
+                this.porMes.size(),
+                celdas,
+                (this.porDia.isEmpty() ? "" : String.format(", Desde: %s, Hasta: %s",
+                        LocalDate.ofEpochDay(this.porDia.firstKey()), LocalDate.ofEpochDay(this.porDia.lastKey())))
+        );
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    private void comprobarIntervalo(LocalDate desde, LocalDate hasta) throws NullPointerException, IllegalArgumentException {
+        if (desde == null || hasta == null) {
+            throw new NullPointerException("Las fechas de la consulta no pueden ser nulas.\n");
+        }
+        if (desde.isAfter(hasta)) {
+            throw new IllegalArgumentException(String.format("El intervalo de %s a %s está invertido.\n", desde, hasta));
+        }
+    }
+
+    private TreeMap<Long, Celdas> getNivel(Granularidad granularidad) throws NullPointerException {
+        switch (granularidad) {
+            case DIA:
+                return this.porDia;
+            case SEMANA:
+                return this.porSemana;
+            default:
+                return this.porMes;
+        }
+    }
+
+    // Acumula los periodos diarios de un intervalo de días desde la época (vacío si está invertido)
+    private void acumularDias(long[] total, long primero, long ultimo, int mastiles, int idRumbo, int idPatron) {
+        if (primero <= ultimo) {
+            for (Celdas dia : this.porDia.subMap(primero, true, ultimo, true).values()) {
+                dia.acumular(total, mastiles, idRumbo, idPatron);
+            }
+        }
+    }
+
+    // Primer día (desde la época) del periodo que contiene un día
+    private static long inicioPeriodo(Granularidad granularidad, long epocaDia) {
+        switch (granularidad) {
+            case DIA:
+                return epocaDia;
+            case SEMANA:
+                // El 1 de enero de 1970 fue jueves: el lunes anterior es el día -3
+                return Math.floorDiv(epocaDia + 3, 7) * 7 - 3;
+            default:
+                return LocalDate.ofEpochDay(epocaDia).withDayOfMonth(1).toEpochDay();
+        }
+    }
+
+    // Último día (desde la época) del periodo que empieza en un día
+    private static long finPeriodo(Granularidad granularidad, long inicio) {
+        switch (granularidad) {
+            case DIA:
+                return inicio;
+            case SEMANA:
+                return inicio + 6;
+            default:
+                return LocalDate.ofEpochDay(inicio).plus(1, ChronoUnit.MONTHS).toEpochDay() - 1;
+        }
+    }
+
+    private static int mastilesDe(long clave) {
+        return (int) (clave & 0xFF);
+    }
+
+    private static int rumboDe(long clave) {
+        return (int) ((clave >>> 8) & 0xFFFFFF);
+    }
+
+    private static int patronDe(long clave) {
+        return (int) (clave >>> 32);
+    }
+}
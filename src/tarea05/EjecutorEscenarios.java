@@ -0,0 +1,324 @@
+package tarea05;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Prueba de carga que reproduce un escenario muchas veces (réplicas) desde
+ * varios hilos a la vez sobre una misma escuela de vela.</p>
+ * <p>
+ * Cada réplica crea sus propios barcos, de modo que los hilos sólo comparten
+ * los contadores de la escuela. Las operaciones rechazadas por el velero
+ * (<code>IllegalArgumentException</code>, <code>IllegalStateException</code> o
+ * <code>NullPointerException</code>) forman parte del escenario y se cuentan
+ * aparte. Al terminar se comprueba que los contadores de la escuela coinciden
+ * con los de una ejecución de referencia de una sola réplica multiplicados por
+ * el número de réplicas, y se muestran el rendimiento y la distribución de
+ * latencias de las operaciones.</p>
+ * <p>
+ * Uso: <code>java tarea05.EjecutorEscenarios escenario [réplicas] [hilos] [calentamiento]</code></p>
+ *
+ * @author profesorado
+ */
+public class EjecutorEscenarios {
+
+    // Valores por defecto de los argumentos
+    private static final int REPLICAS_POR_DEFECTO = 100_000;
+    private static final int CALENTAMIENTO_POR_DEFECTO = 10_000;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final Escenario escenario;      // Escenario que se reproduce
+    private final int numHilos;             // Número de hilos que reproducen el escenario
+
+    /**
+     * Crea un ejecutor para un escenario.
+     *
+     * @param escenario Escenario que se reproduce
+     * @param numHilos Número de hilos que reproducen el escenario
+     *
+     * @throws NullPointerException Si el escenario es nulo
+     * @throws IllegalArgumentException Si el número de hilos es menor que uno
+     */
+    public EjecutorEscenarios(Escenario escenario, int numHilos) throws NullPointerException, IllegalArgumentException {
+        if (escenario == null) {
+            throw new NullPointerException("El escenario no puede ser nulo.\n");
+        }
+        if (numHilos < 1) {
+            throw new IllegalArgumentException(String.format("El número de hilos %d debe ser al menos uno.\n", numHilos));
+        }
+        this.escenario = escenario;
+        this.numHilos = numHilos;
+    }
+
+    // ------------------------------------------------------------------------
+    // Ejecución del escenario
+    // ------------------------------------------------------------------------
+    /**
+     * Reproduce el escenario el número de veces indicado en una escuela nueva.
+     *
+     * @param numReplicas Número de veces que se reproduce el escenario
+     * @return Resultado de la ejecución
+     *
+     * @throws IllegalArgumentException Si el número de réplicas es negativo
+     * @throws IllegalStateException Si se interrumpe la espera de los hilos
+     */
+    public Resultado ejecutar(int numReplicas) throws IllegalArgumentException, IllegalStateException {
+        if (numReplicas < 0) {
+            throw new IllegalArgumentException(String.format("El número de réplicas %d no puede ser negativo.\n", numReplicas));
+        }
+        EscuelaVela escuela = new EscuelaVela(this.escenario.getNombre());
+        AtomicInteger siguiente = new AtomicInteger();
+        HistogramaLatencias[] latencias = new HistogramaLatencias[this.numHilos];
+        long[] rechazadas = new long[this.numHilos];
+        Thread[] hilos = new Thread[this.numHilos];
+        for (int i = 0; i < hilos.length; i++) {
+            int hilo = i;
+            latencias[hilo] = new HistogramaLatencias();
+            hilos[hilo] = new Thread(() -> {
+                Velero[] barcos = new Velero[this.escenario.getNumBarcos()];
+                while (siguiente.getAndIncrement() < numReplicas) {
+                    rechazadas[hilo] += this.reproducir(escuela, barcos, latencias[hilo]);
+                }
+            }, "escenario-" + hilo);
+        }
+
+        long inicio = System.nanoTime();
+        for (Thread hilo : hilos) {
+            hilo.start();
+        }
+        try {
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Se ha interrumpido la ejecución del escenario.\n", e);
+        }
+        long tiempoNanos = System.nanoTime() - inicio;
+
+        HistogramaLatencias total = new HistogramaLatencias();
+        long totalRechazadas = 0;
+        for (int i = 0; i < hilos.length; i++) {
+            total.sumar(latencias[i]);
+            totalRechazadas += rechazadas[i];
+        }
+        return new Resultado(escuela, numReplicas, totalRechazadas, total, tiempoNanos);
+    }
+
+    // Reproduce una réplica del escenario y devuelve el número de operaciones rechazadas
+    private int reproducir(EscuelaVela escuela, Velero[] barcos, HistogramaLatencias latencias) {
+        int rechazadas = 0;
+        for (Escenario.Operacion operacion : this.escenario.getOperaciones()) {
+            long inicio = System.nanoTime();
+            try {
+                Velero barco = (operacion.barco < 0 ? null : barcos[operacion.barco]);
+                switch (operacion.tipo) {
+                    case CREAR:
+                        barcos[operacion.barco] = (operacion.porDefecto ? new Velero(escuela)
+                                : new Velero(escuela, operacion.texto1, operacion.entero1, operacion.entero2));
+                        break;
+                    case CREAR_ARRAY:
+                        Velero[] array = Velero.crearArrayVelero(escuela, operacion.entero1);
+                        System.arraycopy(array, 0, barcos, operacion.barco, array.length);
+                        break;
+                    case INICIAR:
+                        barco.iniciarNavegacion(operacion.entero1, operacion.texto1, operacion.texto2, operacion.entero2);
+                        break;
+                    case PARAR:
+                        barco.pararNavegacion(operacion.entero1);
+                        break;
+                    case RUMBO:
+                        barco.setRumbo(operacion.texto1);
+                        break;
+                    case REGATA:
+                        barco.iniciarRegata(operacion.otroBarco < 0 ? null : barcos[operacion.otroBarco]);
+                        break;
+                }
+            } catch (IllegalArgumentException | IllegalStateException | NullPointerException e) {
+                rechazadas++;
+            }
+            latencias.registrar(System.nanoTime() - inicio);
+        }
+        return rechazadas;
+    }
+
+    // ------------------------------------------------------------------------
+    // Resultado de una ejecución
+    // ------------------------------------------------------------------------
+    /**
+     * Resultado de reproducir un escenario: contadores de la escuela, operaciones
+     * rechazadas, latencias y tiempo total.
+     */
+    public static class Resultado {
+
+        private final int numReplicas;                  // Número de réplicas ejecutadas
+        private final int numBarcos;                    // Barcos creados en la escuela
+        private final int numBarcosNavegando;           // Barcos que quedan navegando
+        private final float tiempoTotalNavegacion;      // Minutos de navegación acumulados
+        private final long numRechazadas;               // Operaciones rechazadas
+        private final HistogramaLatencias latencias;    // Latencias de todas las operaciones
+        private final long tiempoNanos;                 // Duración de la ejecución
+
+        private Resultado(EscuelaVela escuela, int numReplicas, long numRechazadas, HistogramaLatencias latencias, long tiempoNanos) {
+            this.numReplicas = numReplicas;
+            this.numBarcos = escuela.getNumBarcos();
+            this.numBarcosNavegando = escuela.getNumBarcosNavegando();
+            this.tiempoTotalNavegacion = escuela.getTiempoTotalNavegacion();
+            this.numRechazadas = numRechazadas;
+            this.latencias = latencias;
+            this.tiempoNanos = tiempoNanos;
+        }
+
+        /**
+         * @return Número de réplicas ejecutadas
+         */
+        public int getNumReplicas() {
+            return this.numReplicas;
+        }
+
+        /**
+         * @return Número de barcos creados en la escuela
+         */
+        public int getNumBarcos() {
+            return this.numBarcos;
+        }
+
+        /**
+         * @return Número de barcos que quedan navegando al terminar
+         */
+        public int getNumBarcosNavegando() {
+            return this.numBarcosNavegando;
+        }
+
+        /**
+         * @return Minutos de navegación acumulados en la escuela
+         */
+        public float getTiempoTotalNavegacion() {
+            return this.tiempoTotalNavegacion;
+        }
+
+        /**
+         * @return Número de operaciones rechazadas por los veleros
+         */
+        public long getNumRechazadas() {
+            return this.numRechazadas;
+        }
+
+        /**
+         * @return Distribución de latencias de las operaciones
+         */
+        public HistogramaLatencias getLatencias() {
+            return this.latencias;
+        }
+
+        /**
+         * @return Duración de la ejecución (en nanosegundos)
+         */
+        public long getTiempoNanos() {
+            return this.tiempoNanos;
+        }
+
+        /**
+         * @return Operaciones por segundo
+         */
+        public double getOperacionesPorSegundo() {
+            return (this.tiempoNanos == 0 ? 0 : this.latencias.getNumValores() * 1e9 / this.tiempoNanos);
+        }
+
+        /**
+         * Comprueba si los contadores coinciden con los de otro resultado
+         * multiplicados por el número de réplicas de éste.
+         *
+         * @param referencia Resultado de una ejecución de una réplica
+         * @return <code>true</code> si los contadores coinciden
+         */
+        public boolean coincideCon(Resultado referencia) {
+            long n = (long) this.numReplicas;
+            return this.numBarcos == n * referencia.numBarcos
+                    && this.numBarcosNavegando == n * referencia.numBarcosNavegando
+                    && this.tiempoTotalNavegacion == (float) (n * (long) referencia.tiempoTotalNavegacion)
+                    && this.numRechazadas == n * referencia.numRechazadas;
+        }
+
+        /**
+         * Comprueba si los contadores coinciden con los valores esperados de un escenario.
+         * Los valores no declarados (-1) no se comprueban.
+         *
+         * @param esperado Barcos, navegando, tiempo y rechazadas esperados por réplica
+         * @return <code>true</code> si los contadores coinciden
+         */
+        boolean coincideCon(long[] esperado) {
+            long n = (long) this.numReplicas;
+            long[] obtenido = {this.numBarcos, this.numBarcosNavegando, (long) this.tiempoTotalNavegacion, this.numRechazadas};
+            for (int i = 0; i < obtenido.length; i++) {
+                if (esperado[i] >= 0 && obtenido[i] != n * esperado[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Devuelve el resultado en un tipo String
+         *
+         * @return String Resumen del resultado
+         */
+        @Override
+        public String toString() {
+            return String.format("{réplicas: %d, barcos: %d, navegando: %d, tiempo: %.0f, rechazadas: %d, duración: %.3f s, operaciones/s: %.0f, latencias: %s}",
+                    this.numReplicas,
+                    this.numBarcos,
+                    this.numBarcosNavegando,
+                    this.tiempoTotalNavegacion,
+                    this.numRechazadas,
+                    this.tiempoNanos / 1e9,
+                    this.getOperacionesPorSegundo(),
+                    this.latencias
+            );
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main de la prueba de carga
+     * @param args Escenario, número de réplicas, número de hilos y réplicas de calentamiento
+     * @throws IOException Si se produce un error al leer el escenario
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Uso: java tarea05.EjecutorEscenarios escenario [réplicas] [hilos] [calentamiento]");
+            System.out.println("Escenarios incluidos: TestEj0102, TestEj03, TestEj04, TestEj05, TestEj06, TestEj07");
+            return;
+        }
+        Escenario escenario = Escenario.cargar(args[0]);
+        int numReplicas = (args.length > 1 ? Integer.parseInt(args[1]) : EjecutorEscenarios.REPLICAS_POR_DEFECTO);
+        int numHilos = (args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+        int calentamiento = (args.length > 3 ? Integer.parseInt(args[3]) : EjecutorEscenarios.CALENTAMIENTO_POR_DEFECTO);
+
+        System.out.println(String.format("ESCENARIO %s: %d operaciones, %d réplicas, %d hilos",
+                escenario.getNombre(), escenario.getNumOperaciones(), numReplicas, numHilos));
+        System.out.println("----------------------------------------------------\n");
+
+        // Ejecución de referencia con una sola réplica en un único hilo
+        Resultado referencia = new EjecutorEscenarios(escenario, 1).ejecutar(1);
+        System.out.println(String.format(" -> Referencia: %s", referencia));
+        if (escenario.tieneEsperado()) {
+            System.out.println(String.format(" -> Valores esperados del guion: %s",
+                    referencia.coincideCon(escenario.getEsperado()) ? "coinciden" : "NO COINCIDEN"));
+        }
+
+        EjecutorEscenarios ejecutor = new EjecutorEscenarios(escenario, numHilos);
+        if (calentamiento > 0) {
+            ejecutor.ejecutar(calentamiento);
+        }
+        Resultado resultado = ejecutor.ejecutar(numReplicas);
+        System.out.println(String.format(" -> Ejecución: %s", resultado));
+        System.out.println(String.format(" -> Contadores respecto a la referencia: %s",
+                resultado.coincideCon(referencia) ? "coinciden" : "NO COINCIDEN"));
+    }
+}
@@ -0,0 +1,281 @@
+package tarea05;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Búsqueda de rivales para las regatas: para un velero que está navegando,
+ * encuentra los barcos que también navegan con su mismo rumbo y su mismo
+ * número de mástiles (los que pueden regatear con él) y cuya velocidad es más
+ * parecida a la suya.</p>
+ * <p>
+ * Los barcos que navegan se agrupan por clase (rumbo y número de mástiles) y,
+ * dentro de cada clase, se mantienen ordenados por velocidad a partir de los
+ * sucesos de la escuela: salidas, cambios de rumbo y de velocidad y llegadas.
+ * El rival más cercano se obtiene en O(log n) y los K más cercanos en
+ * O(log n + K). Los métodos están sincronizados.</p>
+ *
+ * @author profesorado
+ */
+public class EmparejadorRegatas implements OyenteFlota {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                  // Escuela cuyos barcos se emparejan
+
+    // Barcos que navegan, por clase: cada clave es (velocidad << 32 | índice del barco)
+    private final HashMap<Integer, TreeSet<Long>> clases;
+
+    // Datos con los que se ha registrado cada barco, por índice en la escuela
+    private int[] claseRegistrada;                      // Clase del barco (-1 si no navega)
+    private int[] velocidadRegistrada;                  // Velocidad del barco (en nudos)
+
+    /**
+     * Crea el emparejador de una escuela y lo conecta a sus sucesos. Los barcos
+     * que ya están navegando se incluyen.
+     *
+     * @param escuela Escuela cuyos barcos se emparejan
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public EmparejadorRegatas(EscuelaVela escuela) throws NullPointerException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del emparejador no puede ser nula.\n");
+        }
+        this.escuela = escuela;
+        this.clases = new HashMap<>();
+        int capacidad = Math.max(16, escuela.getNumBarcosLocales());
+        this.claseRegistrada = new int[capacidad];
+        Arrays.fill(this.claseRegistrada, -1);
+        this.velocidadRegistrada = new int[capacidad];
+        // Primero se conecta, para no perder las salidas que se produzcan mientras se incluyen las actuales
+        escuela.anadirOyente(this);
+        for (Velero barco : escuela.getBarcos()) {
+            if (barco.isNavegando()) {
+                this.navegacionIniciada(barco);
+            }
+        }
+    }
+
+    /**
+     * Desconecta el emparejador de los sucesos de la escuela.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public synchronized void navegacionIniciada(Velero barco) {
+        this.quitar(barco.getIndice());
+        this.poner(barco.getIndice(), EmparejadorRegatas.clase(barco.getIdRumbo(), barco.getNumMastiles()), barco.getVelocidad());
+    }
+
+    @Override
+    public synchronized void rumboCambiado(Velero barco, int idRumboAnterior) {
+        int i = barco.getIndice();
+        if (this.quitar(i)) {
+            this.poner(i, EmparejadorRegatas.clase(barco.getIdRumbo(), barco.getNumMastiles()), this.velocidadRegistrada[i]);
+        }
+    }
+
+    @Override
+    public synchronized void velocidadCambiada(Velero barco, int velocidadAnterior) {
+        int i = barco.getIndice();
+        if (i < this.claseRegistrada.length && this.claseRegistrada[i] >= 0) {
+            int clase = this.claseRegistrada[i];
+            this.quitar(i);
+            this.poner(i, clase, barco.getVelocidad());
+        }
+    }
+
+    @Override
+    public synchronized void navegacionParada(Velero barco, int tiempoNavegando) {
+        this.quitar(barco.getIndice());
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Busca el rival con la velocidad más parecida a la de un velero. En caso
+     * de empate entre uno más lento y otro más rápido, se elige el más rápido.
+     *
+     * @param barco Velero que busca rival
+     * @return El rival más cercano en velocidad, o <code>null</code> si no hay ningún barco con el que pueda regatear
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     * @throws IllegalStateException Si el barco no está navegando
+     */
+    public synchronized Velero buscarRival(Velero barco) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        int i = this.comprobarBarco(barco);
+        TreeSet<Long> clase = this.clases.get(this.claseRegistrada[i]);
+        long clave = EmparejadorRegatas.clave(this.velocidadRegistrada[i], i);
+        Long menor = clase.lower(clave);
+        Long mayor = clase.higher(clave);
+        if (menor == null && mayor == null) {
+            return null;
+        }
+        Long elegido;
+        if (menor == null) {
+            elegido = mayor;
+        } else if (mayor == null) {
+            elegido = menor;
+        } else {
+            elegido = (this.distancia(mayor, i) <= this.distancia(menor, i) ? mayor : menor);
+        }
+        return this.escuela.getBarco(EmparejadorRegatas.indiceDe(elegido));
+    }
+
+    /**
+     * Busca los K rivales con la velocidad más parecida a la de un velero,
+     * del más parecido al menos parecido.
+     *
+     * @param barco Velero que busca rivales
+     * @param k Número máximo de rivales
+     * @return Lista con hasta <code>k</code> rivales
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o <code>k</code> es negativo
+     * @throws IllegalStateException Si el barco no está navegando
+     */
+    public synchronized List<Velero> buscarRivales(Velero barco, int k) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        int i = this.comprobarBarco(barco);
+        if (k < 0) {
+            throw new IllegalArgumentException(String.format("El número de rivales %d no puede ser negativo.\n", k));
+        }
+        TreeSet<Long> clase = this.clases.get(this.claseRegistrada[i]);
+        long clave = EmparejadorRegatas.clave(this.velocidadRegistrada[i], i);
+        // Se avanza a la vez hacia los más lentos y hacia los más rápidos, tomando siempre el más cercano
+        Iterator<Long> lentos = clase.headSet(clave, false).descendingIterator();
+        Iterator<Long> rapidos = clase.tailSet(clave, false).iterator();
+        Long lento = (lentos.hasNext() ? lentos.next() : null);
+        Long rapido = (rapidos.hasNext() ? rapidos.next() : null);
+        List<Velero> rivales = new ArrayList<>(Math.min(k, clase.size() - 1));
+        while (rivales.size() < k && (lento != null || rapido != null)) {
+            if (lento == null || (rapido != null && this.distancia(rapido, i) <= this.distancia(lento, i))) {
+                rivales.add(this.escuela.getBarco(EmparejadorRegatas.indiceDe(rapido)));
+                rapido = (rapidos.hasNext() ? rapidos.next() : null);
+            } else {
+                rivales.add(this.escuela.getBarco(EmparejadorRegatas.indiceDe(lento)));
+                lento = (lentos.hasNext() ? lentos.next() : null);
+            }
+        }
+        return rivales;
+    }
+
+    /**
+     * Devuelve los barcos que navegan en una clase, de más lento a más rápido.
+     *
+     * @param rumbo Rumbo de la clase
+     * @param mastiles Número de mástiles de la clase
+     * @return Lista de barcos de la clase
+     *
+     * @throws NullPointerException Si el rumbo es nulo
+     */
+    public synchronized List<Velero> getClase(String rumbo, int mastiles) throws NullPointerException {
+        if (rumbo == null) {
+            throw new NullPointerException("El rumbo de la clase no puede ser nulo.\n");
+        }
+        int idRumbo = this.escuela.getRumbos().buscar(rumbo);
+        NavigableSet<Long> clase = (idRumbo < 0 ? null : this.clases.get(EmparejadorRegatas.clase(idRumbo, mastiles)));
+        List<Velero> barcos = new ArrayList<>(clase == null ? 0 : clase.size());
+        if (clase != null) {
+            for (long clave : clase) {
+                barcos.add(this.escuela.getBarco(EmparejadorRegatas.indiceDe(clave)));
+            }
+        }
+        return barcos;
+    }
+
+    /**
+     * Devuelve el estado del emparejador en un tipo String
+     *
+     * @return String Estado del emparejador
+     */
+    @Override
+    public synchronized String toString() {
+        int navegando = 0;
+        for (TreeSet<Long> clase : this.clases.values()) {
+            navegando += clase.size();
+        }
+        return String.format("{Escuela: %s, Clases: %d, Barcos navegando: %d}", this.escuela.getNombre(), this.clases.size(), navegando);
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Comprueba que el barco es de la escuela y está registrado como navegando, y devuelve su índice
+    private int comprobarBarco(Velero barco) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        if (barco == null) {
+            throw new NullPointerException("El velero que busca rival no puede ser nulo.\n");
+        }
+        if (barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        int i = barco.getIndice();
+        if (i >= this.claseRegistrada.length || this.claseRegistrada[i] < 0) {
+            throw new IllegalStateException(String.format("El velero %s no está navegando.\n", barco.getNombreBarco()));
+        }
+        return i;
+    }
+
+    // Añade un barco a una clase con una velocidad
+    private void poner(int i, int clase, int velocidad) {
+        if (i >= this.claseRegistrada.length) {
+            int anterior = this.claseRegistrada.length;
+            int capacidad = Math.max(i + 1, anterior * 2);
+            this.claseRegistrada = Arrays.copyOf(this.claseRegistrada, capacidad);
+            Arrays.fill(this.claseRegistrada, anterior, capacidad, -1);
+            this.velocidadRegistrada = Arrays.copyOf(this.velocidadRegistrada, capacidad);
+        }
+        this.clases.computeIfAbsent(clase, c -> new TreeSet<>()).add(EmparejadorRegatas.clave(velocidad, i));
+        this.claseRegistrada[i] = clase;
+        this.velocidadRegistrada[i] = velocidad;
+    }
+
+    // Quita un barco de su clase; devuelve false si no estaba registrado
+    private boolean quitar(int i) {
+        if (i >= this.claseRegistrada.length || this.claseRegistrada[i] < 0) {
+            return false;
+        }
+        TreeSet<Long> clase = this.clases.get(this.claseRegistrada[i]);
+        clase.remove(EmparejadorRegatas.clave(this.velocidadRegistrada[i], i));
+        if (clase.isEmpty()) {
+            this.clases.remove(this.claseRegistrada[i]);
+        }
+        this.claseRegistrada[i] = -1;
+        return true;
+    }
+
+    // Diferencia de velocidad entre un barco registrado y el barco i
+    private int distancia(long clave, int i) {
+        return Math.abs(EmparejadorRegatas.velocidadDe(clave) - this.velocidadRegistrada[i]);
+    }
+
+    private static int clase(int idRumbo, int mastiles) {
+        return idRumbo * (Velero.MAX_MASTILES + 1) + mastiles;
+    }
+
+    private static long clave(int velocidad, int indice) {
+        return ((long) velocidad << 32) | indice;
+    }
+
+    private static int velocidadDe(long clave) {
+        return (int) (clave >>> 32);
+    }
+
+    private static int indiceDe(long clave) {
+        return (int) clave;
+    }
+}
@@ -0,0 +1,53 @@
+package tarea05;
+
+/**
+ * Error detectado en una línea de un fichero de importación de veleros.
+ * Los objetos de esta clase son inmutables.
+ *
+ * @author profesorado
+ */
+public class ErrorImportacion {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final long linea;           // Número de línea del fichero (empezando en 1)
+    private final String mensaje;       // Descripción del error
+
+    /**
+     * Constructor de la clase <code>ErrorImportacion</code>.
+     *
+     * @param linea Número de línea del fichero en la que se ha producido el error
+     * @param mensaje Descripción del error
+     */
+    public ErrorImportacion(long linea, String mensaje) {
+        this.linea = linea;
+        this.mensaje = (mensaje == null ? "Error desconocido." : mensaje.trim());
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>linea</code>
+     * @return Número de línea del fichero (empezando en 1)
+     */
+    public long getLinea() {
+        return this.linea;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>mensaje</code>
+     * @return Descripción del error
+     */
+    public String getMensaje() {
+        return this.mensaje;
+    }
+
+    /**
+     * Devuelve el error en un mensaje formateado en un tipo String
+     *
+     * @return String Línea y descripción del error
+     */
+    @Override
+    public String toString() {
+        return String.format("Línea %d: %s", this.linea, this.mensaje);
+    }
+}
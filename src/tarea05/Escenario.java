@@ -0,0 +1,338 @@
+package tarea05;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Escenario de operaciones sobre veleros descrito en un guion de texto, que
+ * puede reproducirse muchas veces con <code>EjecutorEscenarios</code>.</p>
+ * <p>
+ * Cada línea del guion contiene una operación; los textos pueden ir entre
+ * comillas, <code>null</code> representa un valor nulo y <code>#</code> inicia
+ * un comentario. Los barcos se identifican con un alias local al guion:</p>
+ * <ul>
+ * <li><code>crear alias "nombre" mastiles tripulantes</code> (o <code>crear alias</code>
+ * para usar el constructor por defecto)</li>
+ * <li><code>crearArray alias cantidad</code>: crea un array de veleros con
+ * <code>Velero.crearArrayVelero</code>, cuyos barcos tienen los alias
+ * <code>alias[0]</code>, <code>alias[1]</code>...</li>
+ * <li><code>iniciar alias velocidad "rumbo" "patron" tripulacion</code></li>
+ * <li><code>parar alias minutos</code></li>
+ * <li><code>rumbo alias "rumbo"</code></li>
+ * <li><code>regata alias otroAlias</code></li>
+ * <li><code>esperado barcos=N navegando=N tiempo=N rechazadas=N</code>: valores
+ * que deben tener los contadores tras una ejecución del guion (opcional)</li>
+ * </ul>
+ * <p>
+ * En el paquete se incluyen los guiones de los programas de prueba
+ * <code>TestEj0102</code>, <code>TestEj03</code>, <code>TestEj04</code>,
+ * <code>TestEj05</code>, <code>TestEj06</code> y <code>TestEj07</code>.</p>
+ *
+ * @author profesorado
+ */
+public class Escenario {
+
+    /**
+     * Tipos de operación de un guion.
+     */
+    enum TipoOperacion {
+        CREAR, CREAR_ARRAY, INICIAR, PARAR, RUMBO, REGATA
+    }
+
+    /**
+     * Operación de un guion, con sus parámetros ya interpretados.
+     */
+    static class Operacion {
+        final TipoOperacion tipo;   // Tipo de operación
+        final int barco;            // Alias del barco sobre el que se opera (el primero del array, o -1 si no tiene)
+        final int otroBarco;        // Alias del otro barco de la regata (-1 si es nulo)
+        final String texto1;        // Nombre del barco o rumbo
+        final String texto2;        // Patrón
+        final int entero1;          // Mástiles, velocidad, minutos o número de barcos del array
+        final int entero2;          // Tripulantes o tripulación
+        final boolean porDefecto;   // Indica si se usa el constructor por defecto
+
+        Operacion(TipoOperacion tipo, int barco, int otroBarco, String texto1, String texto2, int entero1, int entero2, boolean porDefecto) {
+            this.tipo = tipo;
+            this.barco = barco;
+            this.otroBarco = otroBarco;
+            this.texto1 = texto1;
+            this.texto2 = texto2;
+            this.entero1 = entero1;
+            this.entero2 = entero2;
+            this.porDefecto = porDefecto;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final String nombre;                // Nombre del escenario
+    private final Operacion[] operaciones;      // Operaciones del guion
+    private final int numBarcos;                // Número de alias de barco del guion
+    private final long[] esperado;              // Barcos, navegando, tiempo y rechazadas esperados (o null)
+
+    // Constructor privado: los escenarios se obtienen leyendo un guion
+    private Escenario(String nombre, Operacion[] operaciones, int numBarcos, long[] esperado) {
+        this.nombre = nombre;
+        this.operaciones = operaciones;
+        this.numBarcos = numBarcos;
+        this.esperado = esperado;
+    }
+
+    // ------------------------------------------------------------------------
+    // Lectura de guiones
+    // ------------------------------------------------------------------------
+    /**
+     * Carga uno de los guiones incluidos en el paquete (por ejemplo, <code>TestEj06</code>).
+     *
+     * @param nombre Nombre del guion, sin extensión
+     * @return El escenario
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si el guion no existe o no es válido
+     * @throws IOException Si se produce un error al leer el guion
+     */
+    public static Escenario cargar(String nombre) throws NullPointerException, IllegalArgumentException, IOException {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre del escenario no puede ser nulo.\n");
+        }
+        InputStream recurso = Escenario.class.getResourceAsStream("escenarios/" + nombre + ".esc");
+        if (recurso == null) {
+            throw new IllegalArgumentException(String.format("No existe el escenario %s.\n", nombre));
+        }
+        try (Reader lector = new InputStreamReader(recurso, StandardCharsets.UTF_8)) {
+            return Escenario.leer(nombre, lector);
+        }
+    }
+
+    /**
+     * Lee un escenario a partir del texto de su guion.
+     *
+     * @param nombre Nombre del escenario
+     * @param guion Texto del guion
+     * @return El escenario
+     *
+     * @throws NullPointerException Si alguno de los parámetros es nulo
+     * @throws IllegalArgumentException Si el guion no es válido
+     * @throws IOException Si se produce un error al leer el guion
+     */
+    public static Escenario leer(String nombre, Reader guion) throws NullPointerException, IllegalArgumentException, IOException {
+        if (nombre == null || guion == null) {
+            throw new NullPointerException("El nombre y el guion del escenario no pueden ser nulos.\n");
+        }
+        List<Operacion> operaciones = new ArrayList<>();
+        Map<String, Integer> alias = new HashMap<>();
+        long[] esperado = null;
+        BufferedReader lineas = new BufferedReader(guion);
+        String linea;
+        int numLinea = 0;
+        while ((linea = lineas.readLine()) != null) {
+            numLinea++;
+            List<String> palabras = Escenario.dividir(linea, numLinea);
+            if (palabras.isEmpty()) {
+                continue;
+            }
+            try {
+                if (palabras.get(0).equals("esperado")) {
+                    esperado = Escenario.leerEsperado(palabras);
+                } else {
+                    operaciones.add(Escenario.leerOperacion(palabras, alias));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Línea %d del escenario %s: %s", numLinea, nombre, e.getMessage()));
+            }
+        }
+        return new Escenario(nombre, operaciones.toArray(new Operacion[0]), alias.size(), esperado);
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>nombre</code>
+     * @return Nombre del escenario
+     */
+    public String getNombre() {
+        return this.nombre;
+    }
+
+    /**
+     * Devuelve el número de operaciones del guion.
+     * @return Número de operaciones de una ejecución del escenario
+     */
+    public int getNumOperaciones() {
+        return this.operaciones.length;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numBarcos</code>
+     * @return Número de barcos distintos que utiliza el guion
+     */
+    public int getNumBarcos() {
+        return this.numBarcos;
+    }
+
+    /**
+     * Indica si el guion declara los valores esperados de los contadores.
+     * @return <code>true</code> si el guion contiene una línea <code>esperado</code>
+     */
+    public boolean tieneEsperado() {
+        return this.esperado != null;
+    }
+
+    /**
+     * Devuelve los valores esperados tras una ejecución del guion.
+     * @return Copia de los valores de barcos, navegando, tiempo y rechazadas, o <code>null</code> si no se declaran
+     */
+    long[] getEsperado() {
+        return (this.esperado == null ? null : this.esperado.clone());
+    }
+
+    /**
+     * Devuelve las operaciones del guion (sin copiarlas).
+     * @return Operaciones del guion
+     */
+    Operacion[] getOperaciones() {
+        return this.operaciones;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Interpreta una línea de operación
+    private static Operacion leerOperacion(List<String> palabras, Map<String, Integer> alias) {
+        String orden = palabras.get(0);
+        if (palabras.size() < 2 || palabras.get(1) == null) {
+            throw new IllegalArgumentException(String.format("Falta el alias del barco en la operación %s.\n", orden));
+        }
+        switch (orden) {
+            case "crear":
+                int barco = alias.computeIfAbsent(palabras.get(1), a -> alias.size());
+                if (palabras.size() == 2) {
+                    return new Operacion(TipoOperacion.CREAR, barco, -1, null, null, 0, 0, true);
+                }
+                Escenario.comprobarPalabras(palabras, 5);
+                return new Operacion(TipoOperacion.CREAR, barco, -1, palabras.get(2), null,
+                        Escenario.entero(palabras.get(3)), Escenario.entero(palabras.get(4)), false);
+            case "crearArray":
+                Escenario.comprobarPalabras(palabras, 3);
+                return Escenario.leerArray(palabras.get(1), Escenario.entero(palabras.get(2)), alias);
+            case "iniciar":
+                Escenario.comprobarPalabras(palabras, 6);
+                return new Operacion(TipoOperacion.INICIAR, Escenario.alias(alias, palabras.get(1)), -1, palabras.get(3), palabras.get(4),
+                        Escenario.entero(palabras.get(2)), Escenario.entero(palabras.get(5)), false);
+            case "parar":
+                Escenario.comprobarPalabras(palabras, 3);
+                return new Operacion(TipoOperacion.PARAR, Escenario.alias(alias, palabras.get(1)), -1, null, null,
+                        Escenario.entero(palabras.get(2)), 0, false);
+            case "rumbo":
+                Escenario.comprobarPalabras(palabras, 3);
+                return new Operacion(TipoOperacion.RUMBO, Escenario.alias(alias, palabras.get(1)), -1, palabras.get(2), null, 0, 0, false);
+            case "regata":
+                Escenario.comprobarPalabras(palabras, 3);
+                int otro = (palabras.get(2) == null ? -1 : Escenario.alias(alias, palabras.get(2)));
+                return new Operacion(TipoOperacion.REGATA, Escenario.alias(alias, palabras.get(1)), otro, null, null, 0, 0, false);
+            default:
+                throw new IllegalArgumentException(String.format("Operación desconocida: %s.\n", orden));
+        }
+    }
+
+    // Interpreta la creación de un array de veleros: reserva un alias para cada barco, salvo que la
+    // cantidad no sea válida (la operación se rechazará al ejecutarla)
+    private static Operacion leerArray(String nombre, int cantidad, Map<String, Integer> alias) {
+        if (cantidad < 1 || cantidad > Velero.MAX_ARRAY_VELEROS) {
+            return new Operacion(TipoOperacion.CREAR_ARRAY, -1, -1, null, null, cantidad, 0, true);
+        }
+        for (int i = 0; i < cantidad; i++) {
+            if (alias.containsKey(nombre + "[" + i + "]")) {
+                throw new IllegalArgumentException(String.format("El barco %s[%d] ya se ha creado en el escenario.\n", nombre, i));
+            }
+        }
+        int primero = alias.size();
+        for (int i = 0; i < cantidad; i++) {
+            alias.put(nombre + "[" + i + "]", primero + i);
+        }
+        return new Operacion(TipoOperacion.CREAR_ARRAY, primero, -1, null, null, cantidad, 0, true);
+    }
+
+    // Interpreta una línea con los valores esperados
+    private static long[] leerEsperado(List<String> palabras) {
+        String[] claves = {"barcos", "navegando", "tiempo", "rechazadas"};
+        long[] valores = {-1, -1, -1, -1};
+        for (int i = 1; i < palabras.size(); i++) {
+            String[] partes = String.valueOf(palabras.get(i)).split("=", 2);
+            int clave = Arrays.asList(claves).indexOf(partes[0]);
+            if (clave < 0 || partes.length < 2) {
+                throw new IllegalArgumentException(String.format("Valor esperado desconocido: %s.\n", palabras.get(i)));
+            }
+            valores[clave] = Escenario.entero(partes[1]);
+        }
+        return valores;
+    }
+
+    // Devuelve el índice de un alias ya creado
+    private static int alias(Map<String, Integer> alias, String nombre) {
+        Integer indice = alias.get(nombre);
+        if (indice == null) {
+            throw new IllegalArgumentException(String.format("El barco %s no se ha creado en el escenario.\n", nombre));
+        }
+        return indice;
+    }
+
+    // Comprueba el número de palabras de una operación
+    private static void comprobarPalabras(List<String> palabras, int numPalabras) {
+        if (palabras.size() != numPalabras) {
+            throw new IllegalArgumentException(String.format("La operación %s necesita %d parámetros.\n", palabras.get(0), numPalabras - 1));
+        }
+    }
+
+    // Convierte una palabra en un entero
+    private static int entero(String palabra) {
+        try {
+            return Integer.parseInt(String.valueOf(palabra));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Se esperaba un número entero en lugar de %s.\n", palabra));
+        }
+    }
+
+    // Divide una línea en palabras, respetando las comillas e ignorando los comentarios
+    private static List<String> dividir(String linea, int numLinea) {
+        List<String> palabras = new ArrayList<>();
+        int i = 0;
+        while (i < linea.length()) {
+            char c = linea.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#') {
+                break;
+            } else if (c == '"') {
+                int fin = linea.indexOf('"', i + 1);
+                if (fin < 0) {
+                    throw new IllegalArgumentException(String.format("Línea %d: faltan las comillas de cierre.\n", numLinea));
+                }
+                palabras.add(linea.substring(i + 1, fin));
+                i = fin + 1;
+            } else {
+                int fin = i;
+                while (fin < linea.length() && !Character.isWhitespace(linea.charAt(fin)) && linea.charAt(fin) != '#') {
+                    fin++;
+                }
+                String palabra = linea.substring(i, fin);
+                palabras.add(palabra.equals("null") ? null : palabra);
+                i = fin;
+            }
+        }
+        return palabras;
+    }
+}
@@ -0,0 +1,549 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Escritor de informes de la flota que vuelca los datos de cada velero
+ * directamente sobre un <code>Writer</code> o un <code>WritableByteChannel</code>.</p>
+ * <p>
+ * Cada registro se formatea sobre un único <code>StringBuilder</code> reutilizable
+ * y se copia a un buffer de tamaño fijo, que se vuelca al destino cada vez que se
+ * llena. De esta forma la memoria utilizada no depende del número de veleros del
+ * informe y el primer registro llega al destino sin esperar al resto.</p>
+ *
+ * @author profesorado
+ */
+public class EscritorInformeVeleros implements Closeable, Flushable {
+
+    /**
+     * Tamaño por defecto (en caracteres) del buffer de escritura: {@value TAMANO_BUFFER_POR_DEFECTO}.
+     */
+    public static final int TAMANO_BUFFER_POR_DEFECTO = 64 * 1024;
+
+    // Cabecera de los informes en formato CSV
+    private static final String CABECERA_CSV = "nombre,mastiles,maxTripulantes,navegando,tiempoTotalNavegacion,velocidad,rumbo,patron,tripulacion\n";
+
+    // Dígitos hexadecimales para escapar caracteres de control en JSON
+    private static final char[] HEXADECIMAL = "0123456789abcdef".toCharArray();
+
+    // Veleros de cada trozo del informe que se formatea en paralelo
+    private static final int VELEROS_POR_TROZO = 512;
+
+    // Caracteres que se reservan por velero al formatear un trozo (los registros suelen ser más cortos)
+    private static final int CARACTERES_POR_VELERO = 160;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final FormatoInforme formato;       // Formato de los registros
+    private final Writer escritor;              // Destino de caracteres (nulo si se escribe sobre un canal)
+    private final WritableByteChannel canal;    // Destino de bytes (nulo si se escribe sobre un Writer)
+    private final CharsetEncoder codificador;   // Codificador UTF-8 (sólo para canales)
+    private final ByteBuffer bytes;             // Buffer de bytes codificados (sólo para canales)
+    private final CharBuffer caracteres;        // Buffer de caracteres pendientes de volcar
+    private final StringBuilder registro;       // Registro que se está formateando
+
+    private boolean cabeceraEscrita;            // Indica si ya se ha escrito la cabecera CSV
+    private long numRegistros;                  // Número de registros escritos
+    private boolean cerrado;                    // Indica si el escritor ya se ha cerrado
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Crea un escritor de informes sobre un <code>Writer</code> con el tamaño de buffer por defecto.
+     *
+     * @param escritor Destino de los registros
+     * @param formato Formato de los registros
+     *
+     * @throws NullPointerException Si alguno de los parámetros es nulo
+     */
+    public EscritorInformeVeleros(Writer escritor, FormatoInforme formato) throws NullPointerException {
+        this(escritor, null, formato, EscritorInformeVeleros.TAMANO_BUFFER_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un escritor de informes sobre un <code>Writer</code>.
+     *
+     * @param escritor Destino de los registros
+     * @param formato Formato de los registros
+     * @param tamanoBuffer Tamaño del buffer de escritura (en caracteres)
+     *
+     * @throws NullPointerException Si alguno de los parámetros es nulo
+     * @throws IllegalArgumentException Si el tamaño del buffer no es válido
+     */
+    public EscritorInformeVeleros(Writer escritor, FormatoInforme formato, int tamanoBuffer) throws NullPointerException, IllegalArgumentException {
+        this(escritor, null, formato, tamanoBuffer);
+    }
+
+    /**
+     * Crea un escritor de informes sobre un <code>WritableByteChannel</code>, codificando
+     * los registros en UTF-8, con el tamaño de buffer por defecto.
+     *
+     * @param canal Destino de los registros
+     * @param formato Formato de los registros
+     *
+     * @throws NullPointerException Si alguno de los parámetros es nulo
+     */
+    public EscritorInformeVeleros(WritableByteChannel canal, FormatoInforme formato) throws NullPointerException {
+        this(null, canal, formato, EscritorInformeVeleros.TAMANO_BUFFER_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un escritor de informes sobre un <code>WritableByteChannel</code>, codificando
+     * los registros en UTF-8.
+     *
+     * @param canal Destino de los registros
+     * @param formato Formato de los registros
+     * @param tamanoBuffer Tamaño del buffer de escritura (en caracteres)
+     *
+     * @throws NullPointerException Si alguno de los parámetros es nulo
+     * @throws IllegalArgumentException Si el tamaño del buffer no es válido
+     */
+    public EscritorInformeVeleros(WritableByteChannel canal, FormatoInforme formato, int tamanoBuffer) throws NullPointerException, IllegalArgumentException {
+        this(null, canal, formato, tamanoBuffer);
+    }
+
+    // Constructor común: sólo uno de los dos destinos es distinto de nulo
+    private EscritorInformeVeleros(Writer escritor, WritableByteChannel canal, FormatoInforme formato, int tamanoBuffer) {
+        if (escritor == null && canal == null) {
+            throw new NullPointerException("El destino del informe no puede ser nulo.\n");
+        }
+        if (formato == null) {
+            throw new NullPointerException("El formato del informe no puede ser nulo.\n");
+        }
+        if (tamanoBuffer < 1) {
+            throw new IllegalArgumentException(String.format("El tamaño del buffer (%d) debe ser mayor que cero.\n", tamanoBuffer));
+        }
+        this.formato = formato;
+        this.escritor = escritor;
+        this.canal = canal;
+        this.caracteres = CharBuffer.allocate(tamanoBuffer);
+        this.registro = new StringBuilder(512);
+        if (canal != null) {
+            this.codificador = StandardCharsets.UTF_8.newEncoder();
+            this.bytes = ByteBuffer.allocate((int) Math.ceil(tamanoBuffer * (double) this.codificador.maxBytesPerChar()));
+        } else {
+            this.codificador = null;
+            this.bytes = null;
+        }
+        this.cabeceraEscrita = false;
+        this.numRegistros = 0;
+        this.cerrado = false;
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>formato</code>
+     * @return Formato de los registros del informe
+     */
+    public FormatoInforme getFormato() {
+        return this.formato;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numRegistros</code>
+     * @return Número de veleros escritos en el informe
+     */
+    public long getNumRegistros() {
+        return this.numRegistros;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos de escritura
+    // ------------------------------------------------------------------------
+    /**
+     * Escribe en el informe el registro de un velero.
+     *
+     * @param barco Velero que se añade al informe
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalStateException Si el escritor ya se ha cerrado
+     * @throws IOException Si se produce un error al escribir en el destino
+     */
+    public void escribir(Velero barco) throws NullPointerException, IllegalStateException, IOException {
+        if (barco == null) {
+            throw new NullPointerException("El velero que se añade al informe no puede ser nulo.\n");
+        }
+        this.comprobarAbierto();
+        this.registro.setLength(0);
+        if (this.formato == FormatoInforme.CSV && !this.cabeceraEscrita) {
+            this.registro.append(EscritorInformeVeleros.CABECERA_CSV);
+            this.cabeceraEscrita = true;
+        }
+        EscritorInformeVeleros.formatear(this.formato, barco, this.registro);
+        this.anadir(this.registro);
+        this.numRegistros++;
+    }
+
+    /**
+     * Escribe en el informe el registro de todos los veleros de un array.
+     *
+     * @param arrayBarcos Array de veleros que se añaden al informe
+     *
+     * @throws NullPointerException Si el array o alguno de sus veleros es nulo
+     * @throws IllegalStateException Si el escritor ya se ha cerrado
+     * @throws IOException Si se produce un error al escribir en el destino
+     */
+    public void escribirTodos(Velero[] arrayBarcos) throws NullPointerException, IllegalStateException, IOException {
+        if (arrayBarcos == null) {
+            throw new NullPointerException("El array de veleros no puede ser nulo.\n");
+        }
+        for (Velero barco : arrayBarcos) {
+            this.escribir(barco);
+        }
+    }
+
+    /**
+     * Vuelca al destino los registros pendientes que quedan en el buffer.
+     *
+     * @throws IOException Si se produce un error al escribir en el destino
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+        this.volcar(false);
+        if (this.escritor != null) {
+            this.escritor.flush();
+        }
+    }
+
+    /**
+     * Vuelca los registros pendientes y cierra el destino del informe.
+     *
+     * @throws IOException Si se produce un error al escribir o cerrar el destino
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+        try {
+            this.volcar(true);
+        } finally {
+            this.cerrado = true;
+            if (this.escritor != null) {
+                this.escritor.close();
+            } else {
+                this.canal.close();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Formateo de registros
+    // ------------------------------------------------------------------------
+    /**
+     * Añade a un <code>StringBuilder</code> el registro de un velero en el formato indicado.
+     * En formato CSV no se incluye la cabecera.
+     *
+     * @param formato Formato del registro
+     * @param barco Velero que se formatea
+     * @param destino Buffer en el que se añade el registro
+     */
+    static void formatear(FormatoInforme formato, Velero barco, StringBuilder destino) {
+        switch (formato) {
+            case CSV:
+                EscritorInformeVeleros.formatearCsv(barco, destino);
+                break;
+            case JSONL:
+                EscritorInformeVeleros.formatearJson(barco, destino);
+                break;
+            default:
+                EscritorInformeVeleros.formatearTexto(barco, destino);
+                break;
+        }
+    }
+
+    /**
+     * Devuelve la cabecera que precede a los registros del formato indicado.
+     *
+     * @param formato Formato del informe
+     * @return Cabecera del informe (cadena vacía si el formato no tiene cabecera)
+     */
+    static String cabecera(FormatoInforme formato) {
+        return (formato == FormatoInforme.CSV ? EscritorInformeVeleros.CABECERA_CSV : "");
+    }
+
+    /**
+     * Devuelve los registros de todos los veleros de un array en el formato
+     * indicado, sin cabecera. Con más de un procesador, el array se reparte en
+     * trozos de {@value VELEROS_POR_TROZO} veleros que se formatean en paralelo
+     * en el pool común de fork-join, cada uno sobre su propio
+     * <code>StringBuilder</code> (que se libera al unirlo), y los trozos se unen en el orden del array: el resultado es el mismo que al
+     * formatear los veleros uno a uno.
+     *
+     * @param formato Formato de los registros
+     * @param arrayBarcos Array de veleros
+     * @return Registros de los veleros, en el orden del array
+     *
+     * @throws NullPointerException Si el array o alguno de sus veleros es nulo
+     */
+    static String formatearTodos(FormatoInforme formato, Velero[] arrayBarcos) throws NullPointerException {
+        int numTrozos = (arrayBarcos.length + EscritorInformeVeleros.VELEROS_POR_TROZO - 1) / EscritorInformeVeleros.VELEROS_POR_TROZO;
+        if (numTrozos <= 1 || Runtime.getRuntime().availableProcessors() <= 1) {
+            StringBuilder informe = new StringBuilder();
+            for (Velero barco : arrayBarcos) {
+                EscritorInformeVeleros.formatear(formato, barco, informe);
+            }
+            return informe.toString();
+        }
+
+        // Cada trozo se formatea sobre un buffer del tamaño de sus veleros, que no sobrevive al informe
+        StringBuilder[] trozos = new StringBuilder[numTrozos];
+        IntStream.range(0, numTrozos).parallel().forEach(i -> {
+            int inicio = i * EscritorInformeVeleros.VELEROS_POR_TROZO;
+            int fin = Math.min(arrayBarcos.length, inicio + EscritorInformeVeleros.VELEROS_POR_TROZO);
+            StringBuilder trozo = new StringBuilder((fin - inicio) * EscritorInformeVeleros.CARACTERES_POR_VELERO);
+            for (int j = inicio; j < fin; j++) {
+                EscritorInformeVeleros.formatear(formato, arrayBarcos[j], trozo);
+            }
+            trozos[i] = trozo;
+        });
+
+        // Se reservan de una vez los caracteres del informe completo y se copia cada trozo una sola vez
+        long longitud = 0;
+        for (StringBuilder trozo : trozos) {
+            longitud += trozo.length();
+        }
+        StringBuilder informe = new StringBuilder((int) Math.min(longitud, Integer.MAX_VALUE - 8));
+        for (int i = 0; i < numTrozos; i++) {
+            informe.append(trozos[i]);
+            trozos[i] = null;
+        }
+        return informe.toString();
+    }
+
+    // Formato de texto, idéntico al de TestUtilidades.consultarAtributosVelero
+    private static void formatearTexto(Velero barco, StringBuilder destino) {
+        destino.append("Leyendo los datos almacenados en el velero...\n");
+        destino.append(" -> Nombre del velero: ").append(barco.getNombreBarco()).append('\n');
+        destino.append(" -> Número de mástiles: ").append(barco.getNumMastiles()).append('\n');
+        destino.append(" -> Número máximo de tripulantes: ").append(barco.getMaxTripulantes()).append('\n');
+        destino.append(" -> Navegando: ").append(barco.isNavegando() ? "Sí" : "No").append('\n');
+        destino.append(" -> Tiempo total de navegacion del velero: ").append(barco.getTiempoTotalNavegacionBarco()).append(" minutos \n");
+        destino.append(" -> Velocidad de navegación: ").append(barco.getVelocidad()).append(" nudos\n");
+        destino.append(" -> Rumbo de navegación: ").append(barco.getRumbo()).append('\n');
+        destino.append(" -> Patrón durante la navegación: ").append(barco.getPatron()).append('\n');
+        destino.append(" -> Número de tripulantes durante la navegación: ").append(barco.getTripulacion()).append("\n\n");
+    }
+
+    // Formato CSV: un registro por línea, con los textos entrecomillados cuando es necesario
+    private static void formatearCsv(Velero barco, StringBuilder destino) {
+        EscritorInformeVeleros.anadirCampoCsv(barco.getNombreBarco(), destino);
+        destino.append(',').append(barco.getNumMastiles());
+        destino.append(',').append(barco.getMaxTripulantes());
+        destino.append(',').append(barco.isNavegando());
+        destino.append(',').append(barco.getTiempoTotalNavegacionBarco());
+        destino.append(',').append(barco.getVelocidad());
+        destino.append(',');
+        EscritorInformeVeleros.anadirCampoCsv(barco.getRumbo(), destino);
+        destino.append(',');
+        EscritorInformeVeleros.anadirCampoCsv(barco.getPatron(), destino);
+        destino.append(',').append(barco.getTripulacion());
+        destino.append('\n');
+    }
+
+    // Formato JSON Lines: un objeto por línea
+    private static void formatearJson(Velero barco, StringBuilder destino) {
+        destino.append("{\"nombre\":");
+        EscritorInformeVeleros.anadirCadenaJson(barco.getNombreBarco(), destino);
+        destino.append(",\"mastiles\":").append(barco.getNumMastiles());
+        destino.append(",\"maxTripulantes\":").append(barco.getMaxTripulantes());
+        destino.append(",\"navegando\":").append(barco.isNavegando());
+        destino.append(",\"tiempoTotalNavegacion\":").append(barco.getTiempoTotalNavegacionBarco());
+        destino.append(",\"velocidad\":").append(barco.getVelocidad());
+        destino.append(",\"rumbo\":");
+        EscritorInformeVeleros.anadirCadenaJson(barco.getRumbo(), destino);
+        destino.append(",\"patron\":");
+        EscritorInformeVeleros.anadirCadenaJson(barco.getPatron(), destino);
+        destino.append(",\"tripulacion\":").append(barco.getTripulacion());
+        destino.append("}\n");
+    }
+
+    /**
+     * Añade un campo de texto CSV, entrecomillándolo si contiene separadores,
+     * comillas o saltos de línea.
+     *
+     * @param valor Texto del campo
+     * @param destino Buffer en el que se añade el campo
+     */
+    static void anadirCampoCsv(String valor, StringBuilder destino) {
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = (c == ',' || c == '"' || c == '\n' || c == '\r');
+        }
+        if (!comillas) {
+            destino.append(valor);
+            return;
+        }
+        destino.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') {
+                destino.append('"');
+            }
+            destino.append(c);
+        }
+        destino.append('"');
+    }
+
+    /**
+     * Añade una cadena JSON entrecomillada, escapando los caracteres especiales.
+     *
+     * @param valor Texto de la cadena
+     * @param destino Buffer en el que se añade la cadena
+     */
+    static void anadirCadenaJson(String valor, StringBuilder destino) {
+        destino.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"':
+                    destino.append("\\\"");
+                    break;
+                case '\\':
+                    destino.append("\\\\");
+                    break;
+                case '\n':
+                    destino.append("\\n");
+                    break;
+                case '\r':
+                    destino.append("\\r");
+                    break;
+                case '\t':
+                    destino.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        destino.append("\\u00").append(EscritorInformeVeleros.HEXADECIMAL[c >> 4]).append(EscritorInformeVeleros.HEXADECIMAL[c & 0xF]);
+                    } else {
+                        destino.append(c);
+                    }
+                    break;
+            }
+        }
+        destino.append('"');
+    }
+
+    // ------------------------------------------------------------------------
+    // Gestión del buffer
+    // ------------------------------------------------------------------------
+    // Copia un texto al buffer de caracteres, volcándolo al destino cada vez que se llena
+    private void anadir(StringBuilder texto) throws IOException {
+        int inicio = 0;
+        int longitud = texto.length();
+        while (inicio < longitud) {
+            if (!this.caracteres.hasRemaining()) {
+                this.volcar(false);
+            }
+            int fin = Math.min(longitud, inicio + this.caracteres.remaining());
+            int posicion = this.caracteres.position();
+            texto.getChars(inicio, fin, this.caracteres.array(), posicion);
+            this.caracteres.position(posicion + (fin - inicio));
+            inicio = fin;
+        }
+    }
+
+    // Vuelca el contenido del buffer de caracteres al destino
+    private void volcar(boolean finEntrada) throws IOException {
+        if (this.escritor != null) {
+            this.escritor.write(this.caracteres.array(), 0, this.caracteres.position());
+            this.caracteres.clear();
+            return;
+        }
+        this.caracteres.flip();
+        CoderResult resultado;
+        do {
+            resultado = this.codificador.encode(this.caracteres, this.bytes, finEntrada);
+            if (resultado.isError()) {
+                resultado.throwException();
+            }
+            this.escribirBytes();
+        } while (resultado.isOverflow());
+        if (finEntrada) {
+            while (this.codificador.flush(this.bytes).isOverflow()) {
+                this.escribirBytes();
+            }
+            this.escribirBytes();
+        }
+        // Los caracteres no codificados (mitad de un par sustituto) se conservan para el siguiente volcado
+        this.caracteres.compact();
+    }
+
+    // Escribe en el canal todos los bytes codificados pendientes
+    private void escribirBytes() throws IOException {
+        this.bytes.flip();
+        while (this.bytes.hasRemaining()) {
+            this.canal.write(this.bytes);
+        }
+        this.bytes.clear();
+    }
+
+    // Comprueba que el escritor no se ha cerrado
+    private void comprobarAbierto() throws IllegalStateException {
+        if (this.cerrado) {
+            throw new IllegalStateException("El escritor del informe ya está cerrado.\n");
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main de prueba: compara el informe de texto de una flota formateado
+     * con el bucle secuencial de <code>TestUtilidades</code> y en paralelo.
+     * @param args Número de veleros (opcional)
+     */
+    public static void main(String[] args) {
+        int numBarcos = (args.length > 0 ? Integer.parseInt(args[0]) : 200_000);
+        EscuelaVela escuela = new EscuelaVela("Informe");
+        Velero[] arrayBarcos = new Velero[numBarcos];
+        for (int i = 0; i < numBarcos; i++) {
+            arrayBarcos[i] = escuela.crearVelero("Velero " + i, 1 + i % Velero.MAX_MASTILES, 2 + i % 8);
+            if (i % 3 == 0) {
+                arrayBarcos[i].iniciarNavegacion(Velero.MIN_VELOCIDAD + i % 20, (i % 2 == 0 ? "ceñida" : "empopada"), "Patrón " + i % 50, 1);
+            }
+        }
+        System.out.println(String.format("INFORME DE %d VELEROS con %d procesadores (paralelismo del pool común: %d)",
+                numBarcos, Runtime.getRuntime().availableProcessors(), java.util.concurrent.ForkJoinPool.getCommonPoolParallelism()));
+        System.out.println("----------------------------------------------------\n");
+
+        long mejorSecuencial = Long.MAX_VALUE;
+        long mejorParalelo = Long.MAX_VALUE;
+        String secuencial = null;
+        String paralelo = null;
+        for (int ronda = 0; ronda < 10; ronda++) {
+            long inicio = System.nanoTime();
+            StringBuilder consulta = new StringBuilder();
+            for (Velero barco : arrayBarcos) {
+                EscritorInformeVeleros.formatear(FormatoInforme.TEXTO, barco, consulta);
+            }
+            secuencial = consulta.toString();
+            mejorSecuencial = Math.min(mejorSecuencial, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            paralelo = EscritorInformeVeleros.formatearTodos(FormatoInforme.TEXTO, arrayBarcos);
+            mejorParalelo = Math.min(mejorParalelo, System.nanoTime() - inicio);
+        }
+        System.out.println(String.format(" -> Secuencial: %.1f ms (%d caracteres)", mejorSecuencial / 1e6, secuencial.length()));
+        System.out.println(String.format(" -> Paralelo: %.1f ms (aceleración: %.2f)", mejorParalelo / 1e6, (double) mejorSecuencial / mejorParalelo));
+        System.out.println(String.format(" -> Informes idénticos: %b", secuencial.equals(paralelo)));
+    }
+}
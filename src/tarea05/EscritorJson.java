@@ -0,0 +1,283 @@
+package tarea05;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Escritor de JSON en flujo: codifica directamente en UTF-8 sobre un buffer
+ * de bytes, sin construir cadenas intermedias, y lo vuelca en un
+ * <code>OutputStream</code> cada vez que se llena. Sin flujo de salida, el
+ * buffer crece y el documento completo se obtiene con <code>getBytes</code>.</p>
+ * <p>
+ * Las comas entre elementos se añaden solas: el escritor recuerda, para cada
+ * nivel de anidamiento, si ya se ha escrito algún elemento. No comprueba que
+ * el documento esté bien formado; eso queda a cargo de quien lo utiliza.</p>
+ *
+ * @author profesorado
+ */
+class EscritorJson {
+
+    // Nivel máximo de anidamiento
+    private static final int MAX_NIVELES = 32;
+
+    // Dígitos hexadecimales para escapar caracteres de control
+    private static final byte[] HEXADECIMAL = "0123456789abcdef".getBytes();
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final OutputStream salida;      // Flujo en el que se vuelca el buffer (o null)
+    private byte[] buffer;                  // Bytes pendientes de volcar
+    private int longitud;                   // Número de bytes del buffer
+    private final boolean[] conElementos;   // Indica, por nivel, si ya se ha escrito algún elemento
+    private int nivel;                      // Nivel de anidamiento actual
+    private boolean trasNombre;             // Indica si el último elemento escrito es un nombre de campo
+
+    /**
+     * Crea un escritor que vuelca el JSON en un flujo.
+     *
+     * @param salida Flujo de salida (o <code>null</code> para escribir en memoria)
+     * @param capacidad Tamaño del buffer (en bytes)
+     */
+    EscritorJson(OutputStream salida, int capacidad) {
+        this.salida = salida;
+        this.buffer = new byte[Math.max(64, capacidad)];
+        this.longitud = 0;
+        this.conElementos = new boolean[EscritorJson.MAX_NIVELES];
+        this.nivel = 0;
+        this.trasNombre = false;
+    }
+
+    // ------------------------------------------------------------------------
+    // Estructura
+    // ------------------------------------------------------------------------
+    EscritorJson inicioObjeto() throws IOException {
+        this.separar();
+        this.escribirByte('{');
+        this.conElementos[++this.nivel] = false;
+        return this;
+    }
+
+    EscritorJson finObjeto() throws IOException {
+        this.nivel--;
+        this.escribirByte('}');
+        return this;
+    }
+
+    EscritorJson inicioArray() throws IOException {
+        this.separar();
+        this.escribirByte('[');
+        this.conElementos[++this.nivel] = false;
+        return this;
+    }
+
+    EscritorJson finArray() throws IOException {
+        this.nivel--;
+        this.escribirByte(']');
+        return this;
+    }
+
+    /**
+     * Escribe el nombre de un campo; el siguiente valor es el del campo.
+     */
+    EscritorJson nombre(String nombre) throws IOException {
+        this.separar();
+        this.cadena(nombre);
+        this.escribirByte(':');
+        this.trasNombre = true;
+        return this;
+    }
+
+    /**
+     * Termina un documento de JSON Lines: salto de línea y vuelta al nivel superior.
+     */
+    EscritorJson finLinea() throws IOException {
+        this.escribirByte('\n');
+        this.conElementos[0] = false;
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    // Valores
+    // ------------------------------------------------------------------------
+    EscritorJson valor(String valor) throws IOException {
+        this.separar();
+        if (valor == null) {
+            this.ascii("null");
+        } else {
+            this.cadena(valor);
+        }
+        return this;
+    }
+
+    EscritorJson valor(long valor) throws IOException {
+        this.separar();
+        if (valor == Long.MIN_VALUE) {
+            this.ascii(Long.toString(valor));
+            return this;
+        }
+        this.asegurar(20);
+        long resto = valor;
+        if (resto < 0) {
+            this.buffer[this.longitud++] = '-';
+            resto = -resto;
+        }
+        // Se escriben los dígitos al final del hueco reservado y se desplazan
+        int fin = this.longitud + 19;
+        int inicio = fin;
+        do {
+            this.buffer[--inicio] = (byte) ('0' + resto % 10);
+            resto /= 10;
+        } while (resto != 0);
+        System.arraycopy(this.buffer, inicio, this.buffer, this.longitud, fin - inicio);
+        this.longitud += fin - inicio;
+        return this;
+    }
+
+    EscritorJson valor(boolean valor) throws IOException {
+        this.separar();
+        this.ascii(valor ? "true" : "false");
+        return this;
+    }
+
+    EscritorJson valor(double valor) throws IOException {
+        this.separar();
+        this.ascii(Double.isFinite(valor) ? Double.toString(valor) : "null");
+        return this;
+    }
+
+    /**
+     * Escribe como valor el documento ya codificado en otro escritor en memoria.
+     */
+    EscritorJson valorCodificado(EscritorJson otro) throws IOException {
+        this.separar();
+        this.asegurar(otro.longitud);
+        System.arraycopy(otro.buffer, 0, this.buffer, this.longitud, otro.longitud);
+        this.longitud += otro.longitud;
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    // Salida
+    // ------------------------------------------------------------------------
+    /**
+     * Vuelca en el flujo de salida los bytes pendientes.
+     */
+    void volcar() throws IOException {
+        if (this.salida != null && this.longitud > 0) {
+            this.salida.write(this.buffer, 0, this.longitud);
+            this.longitud = 0;
+        }
+    }
+
+    /**
+     * @return Copia de los bytes escritos (en memoria, sin flujo de salida)
+     */
+    byte[] getBytes() {
+        return Arrays.copyOf(this.buffer, this.longitud);
+    }
+
+    /**
+     * Vacía el escritor para empezar otro documento.
+     */
+    void reiniciar() {
+        this.longitud = 0;
+        this.nivel = 0;
+        this.conElementos[0] = false;
+        this.trasNombre = false;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Añade la coma delante de un elemento que no es el primero de su nivel (ni el valor de un campo)
+    private void separar() throws IOException {
+        if (this.trasNombre) {
+            this.trasNombre = false;
+            return;
+        }
+        if (this.conElementos[this.nivel]) {
+            this.escribirByte(',');
+        }
+        this.conElementos[this.nivel] = true;
+    }
+
+    private void cadena(String valor) throws IOException {
+        this.escribirByte('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                if (this.longitud == this.buffer.length) {
+                    this.liberarEspacio(1);
+                }
+                this.buffer[this.longitud++] = (byte) c;
+            } else if (c == '"' || c == '\\') {
+                this.escribirByte('\\');
+                this.escribirByte(c);
+            } else if (c == '\n') {
+                this.ascii("\\n");
+            } else if (c == '\r') {
+                this.ascii("\\r");
+            } else if (c == '\t') {
+                this.ascii("\\t");
+            } else if (c < 0x20) {
+                this.ascii("\\u00");
+                this.escribirByte(EscritorJson.HEXADECIMAL[c >> 4]);
+                this.escribirByte(EscritorJson.HEXADECIMAL[c & 0xF]);
+            } else {
+                // Codificación UTF-8 de los caracteres no ASCII (con los pares suplentes combinados)
+                int punto = c;
+                if (Character.isHighSurrogate(c) && i + 1 < valor.length() && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                    punto = Character.toCodePoint(c, valor.charAt(++i));
+                } else if (Character.isSurrogate(c)) {
+                    // Suplente sin pareja: se sustituye por '?', que es un solo byte
+                    this.escribirByte('?');
+                    continue;
+                }
+                this.asegurar(4);
+                if (punto < 0x800) {
+                    this.buffer[this.longitud++] = (byte) (0xC0 | (punto >> 6));
+                } else if (punto < 0x10000) {
+                    this.buffer[this.longitud++] = (byte) (0xE0 | (punto >> 12));
+                    this.buffer[this.longitud++] = (byte) (0x80 | ((punto >> 6) & 0x3F));
+                } else {
+                    this.buffer[this.longitud++] = (byte) (0xF0 | (punto >> 18));
+                    this.buffer[this.longitud++] = (byte) (0x80 | ((punto >> 12) & 0x3F));
+                    this.buffer[this.longitud++] = (byte) (0x80 | ((punto >> 6) & 0x3F));
+                }
+                this.buffer[this.longitud++] = (byte) (0x80 | (punto & 0x3F));
+            }
+        }
+        this.escribirByte('"');
+    }
+
+    private void ascii(String texto) throws IOException {
+        this.asegurar(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            this.buffer[this.longitud++] = (byte) texto.charAt(i);
+        }
+    }
+
+    private void escribirByte(int b) throws IOException {
+        if (this.longitud == this.buffer.length) {
+            this.liberarEspacio(1);
+        }
+        this.buffer[this.longitud++] = (byte) b;
+    }
+
+    private void asegurar(int bytes) throws IOException {
+        if (this.longitud + bytes > this.buffer.length) {
+            this.liberarEspacio(bytes);
+        }
+    }
+
+    // Hace sitio en el buffer: lo vuelca si hay flujo de salida y, si no basta, lo amplía
+    private void liberarEspacio(int bytes) throws IOException {
+        this.volcar();
+        if (this.longitud + bytes > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.longitud + bytes));
+        }
+    }
+}
@@ -0,0 +1,759 @@
+package tarea05;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Clase que representa una <strong>escuela de vela</strong>: el contexto al que
+ * pertenece cada <code>Velero</code>.</p>
+ * <p>
+ * Cada escuela es propietaria de sus barcos y de la información general de la
+ * flota que antes era estática en la clase <code>Velero</code>:</p>
+ * <ul>
+ * <li><strong>cantidad total de veleros</strong> que existen en la escuela</li>
+ * <li><strong>cantidad de veleros navegando</strong> en el momento actual</li>
+ * <li><strong>cantidad total</strong> de minutos de navegación de todos los
+ * veleros</li>
+ * </ul>
+ * <p>
+ * Las escuelas no comparten ningún estado mutable, por lo que pueden convivir
+ * muchas en la misma máquina virtual y utilizarse en paralelo desde distintos
+ * hilos. Crear una escuela es barato, y al dejar de utilizarla se liberan con
+ * ella todos sus barcos y registros.</p>
+ * <p>
+ * Opcionalmente, los contadores de la flota y el indicador de navegación de
+ * cada barco pueden residir en una <code>RegionCompartidaFlota</code>, de modo
+ * que varios procesos de la misma máquina trabajen sobre la misma flota.</p>
+ * <p>
+ * Los veleros que se crean sin indicar una escuela pertenecen a la
+ * <strong>escuela por defecto</strong>, que es la que consultan los métodos
+ * estáticos de <code>Velero</code>.</p>
+ *
+ * @author profesorado
+ */
+public class EscuelaVela {
+
+    /**
+     * Nombre de la escuela por defecto: {@value NOMBRE_POR_DEFECTO}.
+     */
+    public static final String NOMBRE_POR_DEFECTO = "Escuela de vela";
+
+    /**
+     * Número máximo de patrones distintos de una escuela: {@value MAX_PATRONES}.
+     */
+    public static final int MAX_PATRONES = 1 << 16;
+
+    // Escuela a la que pertenecen los veleros creados sin indicar una escuela
+    private static final EscuelaVela POR_DEFECTO = new EscuelaVela(EscuelaVela.NOMBRE_POR_DEFECTO);
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final String nombre;                                // Nombre de la escuela
+
+    // Registro de barcos: la posición de cada barco en el array es su índice
+    private volatile Velero[] barcos;                           // Barcos de la escuela
+    private volatile int numBarcos;                             // Cantidad total de barcos de la escuela
+    private final ConcurrentHashMap<String, Velero> porNombre;  // Primer barco registrado con cada nombre
+    private final TablaSimbolos simbolos;                       // Nombres de barcos de la escuela
+    private final TablaSimbolos patrones;                       // Patrones de la escuela (tabla limitada)
+    private final TablaSimbolos rumbos;                         // Rumbos de la escuela (los conocidos, primero)
+    private final int idPatronPorDefecto;                       // Identificador del patrón por defecto
+
+    // Contadores de la flota (sólo se usan si no hay región compartida)
+    private final RegionCompartidaFlota region;                 // Región compartida entre procesos (o null)
+    private final AtomicInteger numBarcosNavegando;             // Cantidad de barcos que están navegando
+    private final LongAdder tiempoTotalNavegacion;              // Minutos de navegación de todos los barcos
+
+    // Condiciones de navegación
+    private volatile ModeloViento modeloViento;                 // Modelo de viento de la escuela (o null)
+    private volatile PlanMantenimiento planMantenimiento;       // Plan de mantenimiento que se aplica a las salidas (o null)
+    private volatile Clock reloj;                               // Reloj con el que se fechan las salidas y llegadas
+
+    // Oyentes de los sucesos de la flota (se sustituye el array completo al añadir o eliminar)
+    private volatile OyenteFlota[] oyentes;                     // Oyentes registrados
+    private final AtomicLong numErroresOyentes;                 // Excepciones lanzadas por los oyentes
+    private volatile RuntimeException ultimoErrorOyente;        // Última excepción de un oyente (o null)
+    private final ThreadLocal<ArrayDeque<Runnable>> diferidas;  // Tareas de los oyentes para cuando termine la operación del hilo
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor de la clase <code>EscuelaVela</code>.
+     * Crea una escuela de vela vacía.
+     *
+     * @param nombre Nombre de la escuela
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si el nombre está vacío
+     */
+    public EscuelaVela(String nombre) throws NullPointerException, IllegalArgumentException {
+        this(nombre, null);
+    }
+
+    /**
+     * Constructor de la clase <code>EscuelaVela</code>.
+     * Crea una escuela de vela vacía cuyos contadores y cuyos indicadores de
+     * navegación residen en una región de memoria compartida entre procesos.
+     *
+     * @param nombre Nombre de la escuela
+     * @param region Región compartida (si es nula, los contadores son locales)
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si el nombre está vacío
+     */
+    public EscuelaVela(String nombre, RegionCompartidaFlota region) throws NullPointerException, IllegalArgumentException {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre de la escuela no puede ser nulo.\n");
+        }
+        if (nombre.equals("")) {
+            throw new IllegalArgumentException("El nombre de la escuela no puede estar vacío.\n");
+        }
+        this.nombre = nombre;
+        this.barcos = new Velero[16];
+        this.numBarcos = 0;
+        this.porNombre = new ConcurrentHashMap<>();
+        this.simbolos = new TablaSimbolos();
+        this.patrones = new TablaSimbolos(EscuelaVela.MAX_PATRONES, Velero.PATRON_POR_DEFECTO);
+        this.idPatronPorDefecto = this.patrones.getId(Velero.PATRON_POR_DEFECTO);
+        this.rumbos = new TablaSimbolos(Velero.RUMBOS_CONOCIDOS);
+        this.region = region;
+        this.numBarcosNavegando = new AtomicInteger();
+        this.tiempoTotalNavegacion = new LongAdder();
+        this.oyentes = new OyenteFlota[0];
+        this.numErroresOyentes = new AtomicLong();
+        this.ultimoErrorOyente = null;
+        this.diferidas = new ThreadLocal<>();
+        this.modeloViento = null;
+        this.planMantenimiento = null;
+        this.reloj = Clock.systemDefaultZone();
+    }
+
+    /**
+     * Devuelve la escuela por defecto, a la que pertenecen los veleros creados
+     * sin indicar una escuela.
+     *
+     * @return Escuela por defecto
+     */
+    public static EscuelaVela getPorDefecto() {
+        return EscuelaVela.POR_DEFECTO;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos fábrica
+    // ------------------------------------------------------------------------
+    /**
+     * Crea un velero en esta escuela.
+     *
+     * @param nombre Nombre del barco
+     * @param mastiles Número de mástiles del velero
+     * @param tripulantes Número máximo de tripulantes del barco
+     * @return El velero creado
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si alguno de los parámetros no es válido
+     */
+    public Velero crearVelero(String nombre, int mastiles, int tripulantes) throws NullPointerException, IllegalArgumentException {
+        return new Velero(this, nombre, mastiles, tripulantes);
+    }
+
+    /**
+     * Crea un velero con los valores por defecto en esta escuela.
+     *
+     * @return El velero creado
+     */
+    public Velero crearVelero() {
+        return new Velero(this);
+    }
+
+    /**
+     * Crea un array de veleros con los valores por defecto en esta escuela.
+     *
+     * @param cantidad Número de barcos que se van a crear
+     * @return El array de barcos
+     *
+     * @throws IllegalArgumentException Si la cantidad no es válida
+     */
+    public Velero[] crearArrayVelero(int cantidad) throws IllegalArgumentException {
+        return Velero.crearArrayVelero(this, cantidad);
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>nombre</code>
+     * @return Nombre de la escuela
+     */
+    public String getNombre() {
+        return this.nombre;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>simbolos</code>
+     * @return Tabla de símbolos con los nombres de barcos de la escuela
+     */
+    public TablaSimbolos getSimbolos() {
+        return this.simbolos;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>patrones</code>.
+     * Los patrones llegan de fuera (clientes, ficheros), por lo que la tabla
+     * admite como mucho {@value MAX_PATRONES} patrones distintos.
+     * @return Tabla de símbolos con los patrones de la escuela
+     */
+    public TablaSimbolos getPatrones() {
+        return this.patrones;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>rumbos</code>.
+     * Los rumbos conocidos (el rumbo por defecto, ceñida y empopada) ocupan
+     * los primeros identificadores, que son los mismos en todas las escuelas;
+     * los demás rumbos sólo existen en la tabla de la escuela que los recibe,
+     * que no tiene límite para que ninguna salida válida falle por su causa.
+     * @return Tabla de símbolos con los rumbos de la escuela
+     */
+    public TablaSimbolos getRumbos() {
+        return this.rumbos;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>region</code>
+     * @return Región compartida de la escuela, o <code>null</code> si sus contadores son locales
+     */
+    public RegionCompartidaFlota getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>modeloViento</code>
+     * @return Modelo de viento de la escuela, o <code>null</code> si sólo se aplican los límites de velocidad fijos
+     */
+    public ModeloViento getModeloViento() {
+        return this.modeloViento;
+    }
+
+    /**
+     * Establece el modelo de viento con el que la escuela limita la velocidad de
+     * los veleros al iniciar la navegación y al cambiar de rumbo. Los veleros que
+     * ya están navegando no se comprueban de nuevo.
+     *
+     * @param modeloViento Modelo de viento (o <code>null</code> para no tener en cuenta el viento)
+     */
+    public void setModeloViento(ModeloViento modeloViento) {
+        this.modeloViento = modeloViento;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>reloj</code>
+     * @return Reloj con el que se fechan las salidas y llegadas de los veleros
+     */
+    public Clock getReloj() {
+        return this.reloj;
+    }
+
+    /**
+     * Establece el reloj con el que se fechan las salidas y llegadas de los
+     * veleros y se calcula la duración de las travesías que paran sin indicar
+     * los minutos. Por defecto es el reloj del sistema; si fechar las salidas
+     * pesa, se puede usar un <code>RelojGrueso</code>, y en pruebas y
+     * simulaciones un <code>RelojManual</code>. Las travesías en
+     * curso conservan el instante de salida tomado con el reloj anterior.
+     *
+     * @param reloj Reloj de la escuela
+     *
+     * @throws NullPointerException Si el reloj es nulo
+     */
+    public void setReloj(Clock reloj) throws NullPointerException {
+        if (reloj == null) {
+            throw new NullPointerException("El reloj de la escuela no puede ser nulo.\n");
+        }
+        this.reloj = reloj;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>planMantenimiento</code>
+     * @return Plan de mantenimiento que se aplica a las salidas, o <code>null</code> si no se aplica ninguno
+     */
+    public PlanMantenimiento getPlanMantenimiento() {
+        return this.planMantenimiento;
+    }
+
+    /**
+     * Establece el plan de mantenimiento que se aplica al iniciar la navegación:
+     * los veleros que necesitan mantenimiento no pueden salir de puerto.
+     *
+     * @param planMantenimiento Plan de mantenimiento de esta escuela (o <code>null</code> para no bloquear ninguna salida)
+     *
+     * @throws IllegalArgumentException Si el plan es de otra escuela
+     */
+    public void setPlanMantenimiento(PlanMantenimiento planMantenimiento) throws IllegalArgumentException {
+        if (planMantenimiento != null && planMantenimiento.getEscuela() != this) {
+            throw new IllegalArgumentException(String.format("El plan de mantenimiento no pertenece a la escuela %s.\n", this.nombre));
+        }
+        this.planMantenimiento = planMantenimiento;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numBarcos</code>.
+     * Con una región compartida, se cuentan los barcos distintos de todos los procesos;
+     * para recorrer los barcos de la escuela se debe usar <code>getNumBarcosLocales</code>.
+     * @return Número de barcos de la escuela
+     */
+    public int getNumBarcos() {
+        return (this.region == null ? this.numBarcos : this.region.getNumBarcos());
+    }
+
+    /**
+     * Consulta el número de barcos registrados en esta escuela por este proceso,
+     * que son los que se pueden obtener con <code>getBarco</code> y <code>getBarcos</code>.
+     * Sin región compartida coincide con <code>getNumBarcos</code>.
+     * @return Número de barcos registrados en este proceso
+     */
+    public int getNumBarcosLocales() {
+        return this.numBarcos;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numBarcosNavegando</code>.
+     * Con una región compartida, se cuentan los barcos navegando en todos los procesos.
+     * @return Número de barcos de la escuela navegando en el momento actual
+     */
+    public int getNumBarcosNavegando() {
+        return (this.region == null ? this.numBarcosNavegando.get() : this.region.getNumBarcosNavegando());
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>tiempoTotalNavegacion</code>.
+     * Con una región compartida, se suman los minutos registrados en todos los procesos.
+     * @return Minutos de navegación de todos los barcos de la escuela
+     */
+    public float getTiempoTotalNavegacion() {
+        return (float) (this.region == null ? this.tiempoTotalNavegacion.sum() : this.region.getTiempoTotalNavegacion());
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas del registro de barcos
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve el barco registrado con un índice determinado.
+     *
+     * @param indice Índice del barco en la escuela (de 0 a <code>getNumBarcosLocales() - 1</code>)
+     * @return El barco con ese índice
+     *
+     * @throws IndexOutOfBoundsException Si no existe ningún barco con ese índice
+     */
+    public Velero getBarco(int indice) throws IndexOutOfBoundsException {
+        // Se lee primero el contador: el array leído después contiene, como mínimo, esos barcos
+        int registrados = this.numBarcos;
+        Velero[] registro = this.barcos;
+        if (indice < 0 || indice >= registrados) {
+            throw new IndexOutOfBoundsException(String.format("No existe ningún barco con el índice %d en la escuela %s.\n", indice, this.nombre));
+        }
+        return registro[indice];
+    }
+
+    /**
+     * Busca un barco por su nombre. Si hay varios barcos con el mismo nombre,
+     * se devuelve el primero que se registró.
+     *
+     * @param nombreBarco Nombre del barco
+     * @return El barco con ese nombre, o <code>null</code> si no existe
+     */
+    public Velero buscarBarco(String nombreBarco) {
+        return (nombreBarco == null ? null : this.porNombre.get(nombreBarco));
+    }
+
+    /**
+     * Devuelve una copia de los barcos registrados en la escuela por este
+     * proceso, en el orden en que se crearon.
+     *
+     * @return Array con los barcos de la escuela
+     */
+    public Velero[] getBarcos() {
+        synchronized (this) {
+            return Arrays.copyOf(this.barcos, this.numBarcos);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Oyentes de la flota
+    // ------------------------------------------------------------------------
+    /**
+     * Registra un oyente que recibirá los sucesos de los veleros de la escuela.
+     *
+     * @param oyente Oyente que se registra
+     *
+     * @throws NullPointerException Si el oyente es nulo
+     */
+    public synchronized void anadirOyente(OyenteFlota oyente) throws NullPointerException {
+        if (oyente == null) {
+            throw new NullPointerException("El oyente de la flota no puede ser nulo.\n");
+        }
+        OyenteFlota[] nuevos = Arrays.copyOf(this.oyentes, this.oyentes.length + 1);
+        nuevos[nuevos.length - 1] = oyente;
+        this.oyentes = nuevos;
+    }
+
+    /**
+     * Elimina un oyente de la escuela.
+     *
+     * @param oyente Oyente que se elimina
+     * @return <code>true</code> si el oyente estaba registrado
+     */
+    public synchronized boolean eliminarOyente(OyenteFlota oyente) {
+        for (int i = 0; i < this.oyentes.length; i++) {
+            if (this.oyentes[i] == oyente) {
+                OyenteFlota[] nuevos = new OyenteFlota[this.oyentes.length - 1];
+                System.arraycopy(this.oyentes, 0, nuevos, 0, i);
+                System.arraycopy(this.oyentes, i + 1, nuevos, i, nuevos.length - i);
+                this.oyentes = nuevos;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Devuelve el número de excepciones que han lanzado los oyentes. Los
+     * avisos se dan cuando la operación ya está hecha, por lo que la excepción
+     * de un oyente no se propaga a quien la realiza: se anota aquí y el resto
+     * de oyentes recibe el aviso igualmente.
+     * @return Número de excepciones de los oyentes
+     */
+    public long getNumErroresOyentes() {
+        return this.numErroresOyentes.get();
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>ultimoErrorOyente</code>
+     * @return Última excepción lanzada por un oyente, o <code>null</code> si no ha fallado ninguno
+     */
+    public RuntimeException getUltimoErrorOyente() {
+        return this.ultimoErrorOyente;
+    }
+
+    /**
+     * Ejecuta una tarea cuando termine de aplicarse la operación cuyos avisos
+     * está recibiendo este hilo, o en el momento si no hay ninguna. Un oyente
+     * que, al recibir un aviso, quiera operar con los veleros debe hacerlo así:
+     * durante el aviso de una llegada, por ejemplo, el barco todavía figura
+     * como navegando. Las excepciones de la tarea se anotan como las de los
+     * oyentes.
+     *
+     * @param tarea Tarea que se ejecuta
+     *
+     * @throws NullPointerException Si la tarea es nula
+     */
+    public void diferir(Runnable tarea) throws NullPointerException {
+        if (tarea == null) {
+            throw new NullPointerException("La tarea diferida no puede ser nula.\n");
+        }
+        ArrayDeque<Runnable> tareas = this.diferidas.get();
+        if (tareas != null) {
+            tareas.add(tarea);
+            return;
+        }
+        try {
+            tarea.run();
+        } catch (RuntimeException e) {
+            this.anotarErrorOyente(e);
+        }
+    }
+
+    /**
+     * Marca el comienzo de una operación cuyos avisos pueden dejar tareas
+     * diferidas. Las operaciones pueden anidarse (un lote aplica llegadas).
+     *
+     * @return <code>true</code> si es la operación exterior del hilo, que debe pasarse a <code>terminarOperacion</code>
+     */
+    boolean empezarOperacion() {
+        if (this.diferidas.get() != null) {
+            return false;
+        }
+        this.diferidas.set(new ArrayDeque<>());
+        return true;
+    }
+
+    /**
+     * Marca el final de una operación y, si es la exterior del hilo, ejecuta
+     * las tareas diferidas durante sus avisos (y las que dejen éstas).
+     *
+     * @param exterior Valor devuelto por <code>empezarOperacion</code>
+     */
+    void terminarOperacion(boolean exterior) {
+        if (!exterior) {
+            return;
+        }
+        ArrayDeque<Runnable> tareas = this.diferidas.get();
+        try {
+            Runnable tarea;
+            while ((tarea = tareas.poll()) != null) {
+                try {
+                    tarea.run();
+                } catch (RuntimeException e) {
+                    this.anotarErrorOyente(e);
+                }
+            }
+        } finally {
+            this.diferidas.remove();
+        }
+    }
+
+    // Anota la excepción de un oyente, que no se propaga: la operación ya está hecha
+    private void anotarErrorOyente(RuntimeException e) {
+        this.ultimoErrorOyente = e;
+        this.numErroresOyentes.incrementAndGet();
+    }
+
+    /**
+     * Avisa a los oyentes de la creación de un velero.
+     *
+     * @param barco Velero creado
+     */
+    void notificarBarcoCreado(Velero barco) {
+        for (OyenteFlota oyente : this.oyentes) {
+            try {
+                oyente.barcoCreado(barco);
+            } catch (RuntimeException e) {
+                this.anotarErrorOyente(e);
+            }
+        }
+    }
+
+    /**
+     * Avisa a los oyentes del inicio de una navegación.
+     *
+     * @param barco Velero que ha salido a navegar
+     */
+    void notificarNavegacionIniciada(Velero barco) {
+        for (OyenteFlota oyente : this.oyentes) {
+            try {
+                oyente.navegacionIniciada(barco);
+            } catch (RuntimeException e) {
+                this.anotarErrorOyente(e);
+            }
+        }
+    }
+
+    /**
+     * Avisa a los oyentes de un cambio de rumbo.
+     *
+     * @param barco Velero que ha cambiado de rumbo
+     * @param idRumboAnterior Identificador del rumbo anterior
+     */
+    void notificarRumboCambiado(Velero barco, int idRumboAnterior) {
+        for (OyenteFlota oyente : this.oyentes) {
+            try {
+                oyente.rumboCambiado(barco, idRumboAnterior);
+            } catch (RuntimeException e) {
+                this.anotarErrorOyente(e);
+            }
+        }
+    }
+
+    /**
+     * Avisa a los oyentes de un cambio de velocidad.
+     *
+     * @param barco Velero que ha cambiado de velocidad
+     * @param velocidadAnterior Velocidad anterior (en nudos)
+     */
+    void notificarVelocidadCambiada(Velero barco, int velocidadAnterior) {
+        for (OyenteFlota oyente : this.oyentes) {
+            try {
+                oyente.velocidadCambiada(barco, velocidadAnterior);
+            } catch (RuntimeException e) {
+                this.anotarErrorOyente(e);
+            }
+        }
+    }
+
+    /**
+     * Avisa a los oyentes del final de una navegación.
+     *
+     * @param barco Velero que vuelve a puerto
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado navegando
+     */
+    void notificarNavegacionParada(Velero barco, int tiempoNavegando) {
+        for (OyenteFlota oyente : this.oyentes) {
+            try {
+                oyente.navegacionParada(barco, tiempoNavegando);
+            } catch (RuntimeException e) {
+                this.anotarErrorOyente(e);
+            }
+        }
+    }
+
+    /**
+     * Avisa a los oyentes del resultado de una regata.
+     *
+     * @param barco Velero que ha iniciado la regata
+     * @param otroBarco Velero contra el que se ha regateado
+     * @param resultado Positivo si gana <code>barco</code>, negativo si gana <code>otroBarco</code> y cero si empatan
+     */
+    void notificarRegataFinalizada(Velero barco, Velero otroBarco, int resultado) {
+        for (OyenteFlota oyente : this.oyentes) {
+            try {
+                oyente.regataFinalizada(barco, otroBarco, resultado);
+            } catch (RuntimeException e) {
+                this.anotarErrorOyente(e);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Actualización de los contadores (sólo desde la clase Velero)
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve el nombre que tendrá el siguiente velero creado con los valores por defecto.
+     *
+     * @return Nombre por defecto del siguiente velero
+     */
+    String siguienteNombrePorDefecto() {
+        return "Velero " + (this.getNumBarcos() + 1);
+    }
+
+    /**
+     * Devuelve el identificador del patrón por defecto en la tabla de símbolos de la escuela.
+     *
+     * @return Identificador de <code>Velero.PATRON_POR_DEFECTO</code>
+     */
+    int getIdPatronPorDefecto() {
+        return this.idPatronPorDefecto;
+    }
+
+    /**
+     * Devuelve la ranura de un barco en la región compartida de la escuela.
+     *
+     * @param nombreBarco Nombre del barco
+     * @return Ranura del barco, o -1 si la escuela no tiene región compartida
+     *
+     * @throws IllegalArgumentException Si el nombre es demasiado largo para la región compartida
+     * @throws IllegalStateException Si la región compartida está llena
+     */
+    int asignarRanura(String nombreBarco) throws IllegalArgumentException, IllegalStateException {
+        return (this.region == null ? -1 : this.region.ranura(nombreBarco));
+    }
+
+    /**
+     * Consulta el indicador de navegación compartido de un barco.
+     *
+     * @param ranura Ranura del barco en la región compartida
+     * @return <code>true</code> si algún proceso tiene el barco navegando
+     */
+    boolean isNavegando(int ranura) {
+        return this.region.isNavegando(ranura);
+    }
+
+    /**
+     * Registra un barco recién creado en la escuela. Con una región compartida
+     * el nombre identifica la ranura del barco, por lo que no puede repetirse
+     * dentro de la escuela.
+     *
+     * @param barco Barco que se registra
+     * @return Índice asignado al barco
+     *
+     * @throws IllegalArgumentException Si la escuela tiene región compartida y ya tiene un barco con ese nombre
+     */
+    synchronized int registrar(Velero barco) throws IllegalArgumentException {
+        if (this.region != null && this.porNombre.containsKey(barco.getNombreBarco())) {
+            throw new IllegalArgumentException(String.format("Ya existe un velero con el nombre %s en la escuela %s, que comparte su flota con otros procesos.\n", barco.getNombreBarco(), this.nombre));
+        }
+        int indice = this.numBarcos;
+        if (indice == this.barcos.length) {
+            this.barcos = Arrays.copyOf(this.barcos, indice * 2);
+        }
+        this.barcos[indice] = barco;
+        this.numBarcos = indice + 1;
+        this.porNombre.putIfAbsent(barco.getNombreBarco(), barco);
+        return indice;
+    }
+
+    /**
+     * Registra la salida a navegar de un barco de la escuela.
+     *
+     * @param ranura Ranura del barco en la región compartida (-1 si no hay región)
+     * @return <code>false</code> si otro proceso ya tiene el barco navegando
+     */
+    boolean registrarSalida(int ranura) {
+        if (ranura >= 0) {
+            return this.region.marcarSalida(ranura);
+        }
+        this.numBarcosNavegando.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Registra la llegada a puerto de un barco de la escuela.
+     *
+     * @param ranura Ranura del barco en la región compartida (-1 si no hay región)
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado el barco navegando
+     * @return <code>false</code> si otro proceso ya ha registrado la llegada del barco
+     */
+    boolean registrarLlegada(int ranura, int tiempoNavegando) {
+        if (ranura >= 0) {
+            return this.region.marcarLlegada(ranura, tiempoNavegando);
+        }
+        this.tiempoTotalNavegacion.add(tiempoNavegando);
+        this.numBarcosNavegando.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Cambia el indicador de navegación compartido de un barco sin tocar los
+     * contadores, para las órdenes de un lote.
+     *
+     * @param ranura Ranura del barco en la región compartida (-1 si no hay región)
+     * @param navegando Nuevo valor del indicador
+     * @return <code>false</code> si otro proceso ya ha dejado el indicador con ese valor
+     */
+    boolean cambiarIndicador(int ranura, boolean navegando) {
+        return (ranura < 0 || this.region.cambiarIndicador(ranura, navegando));
+    }
+
+    /**
+     * Registra de una vez en los contadores las salidas y llegadas de un lote.
+     *
+     * @param navegando Variación del número de barcos navegando
+     * @param minutos Minutos de navegación de los barcos que han vuelto
+     */
+    void registrarLote(int navegando, long minutos) {
+        if (this.region != null) {
+            this.region.sumarContadores(navegando, minutos);
+            return;
+        }
+        if (minutos != 0) {
+            this.tiempoTotalNavegacion.add(minutos);
+        }
+        if (navegando != 0) {
+            this.numBarcosNavegando.addAndGet(navegando);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Método toString (imprime el estado del objeto)
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve el estado de la escuela en un mensaje formateado en un tipo String
+     *
+     * @return String Estado de la escuela
+     */
+    @Override
+    public String toString() {
+        return String.format("{Escuela: %s, Número de veleros: %d, Veleros navegando: %d, Tiempo total de navegación: %.2f minutos}",
+                this.nombre,
+                this.getNumBarcos(),
+                this.getNumBarcosNavegando(),
+                this.getTiempoTotalNavegacion()
+        );
+    }
+}
@@ -0,0 +1,144 @@
+package tarea05;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Escritura y lectura de secuencias de bits, de más significativo a menos
+ * significativo, sobre un array de bytes. Es la base de la compresión de las
+ * series de <code>ArchivoTravesias</code>.</p>
+ * <p>
+ * El mismo objeto sirve para escribir (<code>reiniciar</code>, <code>escribir</code>
+ * y <code>terminar</code>) y para leer (<code>leerDe</code> y <code>leer</code>),
+ * y puede reutilizarse para muchas series sin reservar memoria nueva.</p>
+ *
+ * @author profesorado
+ */
+class FlujoBits {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private byte[] datos;           // Bytes de la secuencia
+    private int posicion;           // Siguiente byte que se escribe o se lee
+    private int fin;                // Fin (exclusivo) de los datos que se leen
+    private long acumulador;        // Bits pendientes de escribir o ya leídos y no consumidos
+    private int numPendientes;      // Número de bits válidos en el acumulador
+
+    /**
+     * Crea un flujo de bits con un buffer inicial del tamaño indicado.
+     *
+     * @param capacidad Tamaño inicial del buffer (en bytes)
+     */
+    FlujoBits(int capacidad) {
+        this.datos = new byte[Math.max(16, capacidad)];
+        this.reiniciar();
+    }
+
+    // ------------------------------------------------------------------------
+    // Escritura
+    // ------------------------------------------------------------------------
+    /**
+     * Vacía el flujo para empezar a escribir una secuencia nueva.
+     */
+    void reiniciar() {
+        this.posicion = 0;
+        this.fin = 0;
+        this.acumulador = 0;
+        this.numPendientes = 0;
+    }
+
+    /**
+     * Escribe los bits menos significativos de un valor.
+     *
+     * @param valor Valor que se escribe
+     * @param numBits Número de bits que se escriben (entre 0 y 64)
+     */
+    void escribir(long valor, int numBits) {
+        if (numBits > 32) {
+            this.escribir(valor >>> 32, numBits - 32);
+            this.escribir(valor, 32);
+            return;
+        }
+        if (numBits == 0) {
+            return;
+        }
+        this.acumulador = (this.acumulador << numBits) | (valor & ((1L << numBits) - 1));
+        this.numPendientes += numBits;
+        while (this.numPendientes >= 8) {
+            this.numPendientes -= 8;
+            if (this.posicion == this.datos.length) {
+                this.datos = Arrays.copyOf(this.datos, this.datos.length * 2);
+            }
+            this.datos[this.posicion++] = (byte) (this.acumulador >>> this.numPendientes);
+        }
+    }
+
+    /**
+     * Completa el último byte con ceros y devuelve la longitud de la secuencia.
+     *
+     * @return Número de bytes escritos
+     */
+    int terminar() {
+        if (this.numPendientes > 0) {
+            this.escribir(0, 8 - this.numPendientes);
+        }
+        return this.posicion;
+    }
+
+    /**
+     * Devuelve el buffer interno, con la secuencia escrita al principio.
+     *
+     * @return Bytes de la secuencia (no se copian)
+     */
+    byte[] getDatos() {
+        return this.datos;
+    }
+
+    // ------------------------------------------------------------------------
+    // Lectura
+    // ------------------------------------------------------------------------
+    /**
+     * Prepara el flujo para leer una secuencia de un array de bytes.
+     *
+     * @param origen Array que contiene la secuencia
+     * @param inicio Posición del primer byte de la secuencia
+     * @param longitud Número de bytes de la secuencia
+     */
+    void leerDe(byte[] origen, int inicio, int longitud) {
+        this.datos = origen;
+        this.posicion = inicio;
+        this.fin = inicio + longitud;
+        this.acumulador = 0;
+        this.numPendientes = 0;
+    }
+
+    /**
+     * Lee un valor de la secuencia. Más allá del final se leen ceros.
+     *
+     * @param numBits Número de bits que se leen (entre 0 y 64)
+     * @return Valor leído, en los bits menos significativos
+     */
+    long leer(int numBits) {
+        if (numBits > 32) {
+            long alto = this.leer(numBits - 32);
+            return (alto << 32) | this.leer(32);
+        }
+        while (this.numPendientes < numBits) {
+            int b = (this.posicion < this.fin ? this.datos[this.posicion++] & 0xFF : 0);
+            this.acumulador = (this.acumulador << 8) | b;
+            this.numPendientes += 8;
+        }
+        this.numPendientes -= numBits;
+        return (this.acumulador >>> this.numPendientes) & ((1L << numBits) - 1);
+    }
+
+    /**
+     * Lee un bit de la secuencia.
+     *
+     * @return <code>true</code> si el bit es 1
+     */
+    boolean leerBit() {
+        return this.leer(1) != 0;
+    }
+}
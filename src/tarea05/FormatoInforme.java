@@ -0,0 +1,25 @@
+package tarea05;
+
+/**
+ * Formatos de salida disponibles para los informes de la flota generados por
+ * la clase <code>EscritorInformeVeleros</code>.
+ *
+ * @author profesorado
+ */
+public enum FormatoInforme {
+    /**
+     * Formato de texto legible, idéntico al que genera
+     * <code>TestUtilidades.consultarAtributosVelero</code>.
+     */
+    TEXTO,
+
+    /**
+     * Valores separados por comas, con una línea de cabecera y un registro por velero.
+     */
+    CSV,
+
+    /**
+     * JSON Lines: un objeto JSON por línea y por velero.
+     */
+    JSONL
+}
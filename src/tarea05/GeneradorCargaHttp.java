@@ -0,0 +1,272 @@
+package tarea05;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>
+ * Generador de carga local para <code>ServidorFlota</code>: abre varias
+ * conexiones persistentes (HTTP/1.1 con keep-alive) y en cada una envía
+ * peticiones seguidas durante un tiempo, midiendo la latencia de cada
+ * respuesta. La mezcla es la de un quiosco: sobre todo consultas de un velero,
+ * algunas de la escuela y, en cada conexión, salidas y llegadas de su propio
+ * velero para que las operaciones no choquen entre conexiones.</p>
+ * <p>
+ * Si no se indica puerto, arranca un servidor en la misma máquina virtual con
+ * una escuela nueva. Las peticiones y las respuestas se escriben y leen a mano
+ * sobre el socket, sin cliente HTTP, para que el coste medido sea el del
+ * servidor.</p>
+ * <p>
+ * Uso: <code>java tarea05.GeneradorCargaHttp [conexiones] [segundos] [puerto]</code></p>
+ *
+ * @author profesorado
+ */
+public class GeneradorCargaHttp {
+
+    /**
+     * Número de conexiones por defecto.
+     */
+    public static final int CONEXIONES_POR_DEFECTO = 16;
+
+    /**
+     * Duración por defecto de la prueba (en segundos).
+     */
+    public static final int SEGUNDOS_POR_DEFECTO = 10;
+
+    /**
+     * Número de veleros de la escuela que se crea cuando no se indica puerto.
+     */
+    public static final int NUM_VELEROS = 1000;
+
+    // Porcentaje de consultas de un velero y de la escuela (el resto son salidas y llegadas)
+    private static final int PORCENTAJE_VELERO = 80;
+    private static final int PORCENTAJE_ESCUELA = 10;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final String host;              // Máquina del servidor
+    private final int puerto;               // Puerto del servidor
+    private final int numVeleros;           // Número de veleros que se consultan (V0 .. Vn-1)
+    private final HistogramaLatencias latencias = new HistogramaLatencias();
+    private long numPeticiones;             // Peticiones respondidas
+    private long numErrores;                // Respuestas con código distinto de 2xx
+
+    /**
+     * Crea un generador de carga contra un servidor.
+     *
+     * @param host Máquina del servidor
+     * @param puerto Puerto del servidor
+     * @param numVeleros Número de veleros de la escuela (se llaman V0, V1...)
+     */
+    public GeneradorCargaHttp(String host, int puerto, int numVeleros) {
+        this.host = host;
+        this.puerto = puerto;
+        this.numVeleros = numVeleros;
+    }
+
+    /**
+     * Ejecuta la prueba y espera a que termine.
+     *
+     * @param numConexiones Número de conexiones simultáneas
+     * @param milisegundos Duración de la prueba
+     * @return Peticiones por segundo
+     *
+     * @throws InterruptedException Si se interrumpe la espera
+     */
+    public double ejecutar(int numConexiones, long milisegundos) throws InterruptedException {
+        List<Thread> hilos = new ArrayList<>();
+        long inicio = System.nanoTime();
+        long fin = inicio + milisegundos * 1_000_000L;
+        for (int c = 0; c < numConexiones; c++) {
+            int conexion = c;
+            Thread hilo = new Thread(() -> this.conexion(conexion, fin), "carga-" + c);
+            hilos.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        return this.getNumPeticiones() / segundos;
+    }
+
+    /**
+     * @return Peticiones respondidas
+     */
+    public synchronized long getNumPeticiones() {
+        return this.numPeticiones;
+    }
+
+    /**
+     * @return Respuestas con error
+     */
+    public synchronized long getNumErrores() {
+        return this.numErrores;
+    }
+
+    /**
+     * @return Latencias de todas las peticiones
+     */
+    public synchronized HistogramaLatencias getLatencias() {
+        return this.latencias;
+    }
+
+    // ------------------------------------------------------------------------
+    // Conexiones
+    // ------------------------------------------------------------------------
+    // Envía peticiones por una conexión hasta el instante de fin y acumula sus resultados
+    private void conexion(int conexion, long fin) {
+        HistogramaLatencias propias = new HistogramaLatencias();
+        long peticiones = 0;
+        long errores = 0;
+        String propio = "V" + (conexion % this.numVeleros);
+        boolean navegando = false;
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        try (Socket socket = new Socket(this.host, this.puerto)) {
+            socket.setTcpNoDelay(true);
+            OutputStream salida = socket.getOutputStream();
+            InputStream entrada = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            while (System.nanoTime() < fin) {
+                int tipo = aleatorio.nextInt(100);
+                byte[] peticion;
+                if (tipo < GeneradorCargaHttp.PORCENTAJE_VELERO) {
+                    peticion = this.peticion("GET", "/veleros/V" + aleatorio.nextInt(this.numVeleros), null);
+                } else if (tipo < GeneradorCargaHttp.PORCENTAJE_VELERO + GeneradorCargaHttp.PORCENTAJE_ESCUELA) {
+                    peticion = this.peticion("GET", "/escuela", null);
+                } else if (!navegando) {
+                    peticion = this.peticion("POST", "/veleros/" + propio + "/salida",
+                            "{\"velocidad\":10,\"rumbo\":\"empopada\",\"patron\":\"Carga\",\"tripulacion\":0}");
+                    navegando = true;
+                } else {
+                    peticion = this.peticion("POST", "/veleros/" + propio + "/llegada", "{\"minutos\":30}");
+                    navegando = false;
+                }
+                long t0 = System.nanoTime();
+                salida.write(peticion);
+                int estado = GeneradorCargaHttp.leerRespuesta(entrada);
+                propias.registrar(System.nanoTime() - t0);
+                peticiones++;
+                if (estado < 200 || estado >= 300) {
+                    errores++;
+                }
+            }
+            // El velero propio vuelve a puerto para la siguiente prueba
+            if (navegando) {
+                salida.write(this.peticion("POST", "/veleros/" + propio + "/llegada", "{\"minutos\":30}"));
+                GeneradorCargaHttp.leerRespuesta(entrada);
+            }
+        } catch (IOException e) {
+            System.err.println(String.format("Conexión %d cerrada: %s", conexion, e.getMessage()));
+        }
+        synchronized (this) {
+            this.latencias.sumar(propias);
+            this.numPeticiones += peticiones;
+            this.numErrores += errores;
+        }
+    }
+
+    private byte[] peticion(String metodo, String ruta, String cuerpo) {
+        StringBuilder texto = new StringBuilder(160);
+        texto.append(metodo).append(' ').append(ruta).append(" HTTP/1.1\r\n");
+        texto.append("Host: ").append(this.host).append(':').append(this.puerto).append("\r\n");
+        if (cuerpo != null) {
+            texto.append("Content-Type: application/json\r\n");
+            texto.append("Content-Length: ").append(cuerpo.getBytes(StandardCharsets.UTF_8).length).append("\r\n\r\n");
+            texto.append(cuerpo);
+        } else {
+            texto.append("\r\n");
+        }
+        return texto.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Lee una respuesta con Content-Length y devuelve su código de estado
+    private static int leerRespuesta(InputStream entrada) throws IOException {
+        StringBuilder linea = new StringBuilder(64);
+        int estado = -1;
+        long longitud = 0;
+        while (true) {
+            linea.setLength(0);
+            int c;
+            while ((c = entrada.read()) != '\n') {
+                if (c < 0) {
+                    throw new IOException("El servidor ha cerrado la conexión");
+                }
+                if (c != '\r') {
+                    linea.append((char) c);
+                }
+            }
+            if (linea.length() == 0) {
+                break;
+            }
+            if (estado < 0) {
+                estado = Integer.parseInt(linea.substring(9, 12));
+            } else if (linea.length() > 15 && linea.substring(0, 15).equalsIgnoreCase("Content-Length:")) {
+                longitud = Long.parseLong(linea.substring(15).trim());
+            }
+        }
+        while (longitud > 0) {
+            long saltados = entrada.skip(longitud);
+            if (saltados <= 0) {
+                if (entrada.read() < 0) {
+                    throw new IOException("El servidor ha cerrado la conexión");
+                }
+                saltados = 1;
+            }
+            longitud -= saltados;
+        }
+        return estado;
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main del generador de carga
+     * @param args Número de conexiones, segundos y puerto de un servidor ya iniciado (opcionales)
+     * @throws IOException Si no se puede iniciar el servidor
+     * @throws InterruptedException Si se interrumpe la prueba
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int numConexiones = (args.length > 0 ? Integer.parseInt(args[0]) : GeneradorCargaHttp.CONEXIONES_POR_DEFECTO);
+        int segundos = (args.length > 1 ? Integer.parseInt(args[1]) : GeneradorCargaHttp.SEGUNDOS_POR_DEFECTO);
+        ServidorFlota servidor = null;
+        int puerto;
+        if (args.length > 2) {
+            puerto = Integer.parseInt(args[2]);
+        } else {
+            EscuelaVela escuela = new EscuelaVela("Carga HTTP");
+            for (int i = 0; i < GeneradorCargaHttp.NUM_VELEROS; i++) {
+                escuela.crearVelero("V" + i, 1 + i % Velero.MAX_MASTILES, 4);
+            }
+            servidor = new ServidorFlota(escuela, new InetSocketAddress("127.0.0.1", 0));
+            servidor.iniciar();
+            puerto = servidor.getPuerto();
+        }
+
+        System.out.println(String.format("CARGA HTTP: puerto %d, %d conexiones, %d segundos%s",
+                puerto, numConexiones, segundos,
+                servidor == null ? "" : (servidor.isHilosVirtuales() ? ", hilos virtuales" : ", conjunto fijo de hilos")));
+        System.out.println("----------------------------------------------------\n");
+
+        // Calentamiento breve para que el compilador JIT optimice el servidor
+        new GeneradorCargaHttp("127.0.0.1", puerto, GeneradorCargaHttp.NUM_VELEROS).ejecutar(numConexiones, 1000);
+
+        GeneradorCargaHttp generador = new GeneradorCargaHttp("127.0.0.1", puerto, GeneradorCargaHttp.NUM_VELEROS);
+        double porSegundo = generador.ejecutar(numConexiones, segundos * 1000L);
+        System.out.println(String.format(" -> Peticiones: %d (%d con error)", generador.getNumPeticiones(), generador.getNumErrores()));
+        System.out.println(String.format(" -> Peticiones por segundo: %.0f", porSegundo));
+        System.out.println(String.format(" -> Latencias: %s", generador.getLatencias()));
+        if (servidor != null) {
+            servidor.detener(1);
+        }
+    }
+}
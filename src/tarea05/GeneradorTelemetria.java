@@ -0,0 +1,99 @@
+package tarea05;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Generador local de telemetría: saca a navegar una flota de veleros y lanza
+ * varios hilos productores que publican muestras de velocidad, rumbo y escora
+ * tan rápido como pueden en un <code>TelemetriaFlota</code>, para medir el
+ * rendimiento sostenido del canal. Al terminar, los barcos vuelven a puerto y
+ * se muestran algunos resúmenes de travesía.</p>
+ * <p>
+ * Uso: <code>java tarea05.GeneradorTelemetria [barcos] [productores] [segundos]</code></p>
+ *
+ * @author profesorado
+ */
+public class GeneradorTelemetria {
+
+    // Valores por defecto de los argumentos
+    private static final int BARCOS_POR_DEFECTO = 10_000;
+    private static final int PRODUCTORES_POR_DEFECTO = 4;
+    private static final int SEGUNDOS_POR_DEFECTO = 5;
+
+    /**
+     * Se crea un constructor privado para evitar que la clase pueda instanciarse
+     */
+    private GeneradorTelemetria() {
+
+    }
+
+    /**
+     * Metodo main del generador
+     * @param args Número de barcos, número de hilos productores y duración (en segundos)
+     * @throws InterruptedException Si se interrumpe la espera de los productores
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int numBarcos = (args.length > 0 ? Integer.parseInt(args[0]) : GeneradorTelemetria.BARCOS_POR_DEFECTO);
+        int numProductores = (args.length > 1 ? Integer.parseInt(args[1]) : GeneradorTelemetria.PRODUCTORES_POR_DEFECTO);
+        int segundos = (args.length > 2 ? Integer.parseInt(args[2]) : GeneradorTelemetria.SEGUNDOS_POR_DEFECTO);
+
+        System.out.println(String.format("GENERADOR DE TELEMETRÍA: %d barcos, %d productores, %d segundos", numBarcos, numProductores, segundos));
+        System.out.println("----------------------------------------------------\n");
+
+        EscuelaVela escuela = new EscuelaVela("Telemetría");
+        Velero[] barcos = new Velero[numBarcos];
+        for (int i = 0; i < numBarcos; i++) {
+            barcos[i] = new Velero(escuela, "Velero " + (i + 1), 1 + i % Velero.MAX_MASTILES, 4);
+            barcos[i].iniciarNavegacion(10, (i % 2 == 0 ? "ceñida" : "empopada"), "Patrón " + (i % 500), 2);
+        }
+
+        LongAdder publicadas = new LongAdder();
+        long fin = System.nanoTime() + segundos * 1_000_000_000L;
+        try (TelemetriaFlota telemetria = new TelemetriaFlota(escuela)) {
+            Thread[] productores = new Thread[numProductores];
+            for (int p = 0; p < numProductores; p++) {
+                int semilla = p;
+                productores[p] = new Thread(() -> {
+                    SplittableRandom aleatorio = new SplittableRandom(semilla);
+                    long contador = 0;
+                    while ((contador & 1023) != 0 || System.nanoTime() < fin) {
+                        int barco = aleatorio.nextInt(numBarcos);
+                        float velocidad = 4 + 12 * (float) aleatorio.nextDouble();
+                        float rumbo = (float) (45 + 20 * aleatorio.nextDouble());
+                        float escora = (float) (15 * aleatorio.nextDouble());
+                        telemetria.publicar(barco, velocidad, rumbo, escora);
+                        contador++;
+                    }
+                    publicadas.add(contador);
+                }, "productor-" + p);
+            }
+            long inicio = System.nanoTime();
+            for (Thread productor : productores) {
+                productor.start();
+            }
+            for (Thread productor : productores) {
+                productor.join();
+            }
+            telemetria.esperarConsumidor();
+            double tiempo = (System.nanoTime() - inicio) / 1e9;
+
+            System.out.println(String.format(" -> Muestras publicadas: %d", publicadas.sum()));
+            System.out.println(String.format(" -> Muestras procesadas: %d", telemetria.getNumProcesadas()));
+            System.out.println(String.format(" -> Rendimiento: %.2f millones de muestras por segundo", telemetria.getNumProcesadas() / tiempo / 1e6));
+            System.out.println(String.format(" -> Velocidades medidas aplicadas: %d barcos", telemetria.aplicarVelocidades()));
+
+            for (Velero barco : barcos) {
+                barco.pararNavegacion(60);
+            }
+            telemetria.esperarConsumidor();
+            List<ResumenTravesia> resumenes = telemetria.extraerResumenes();
+            System.out.println(String.format(" -> Travesías resumidas: %d", resumenes.size()));
+            for (int i = 0; i < Math.min(3, resumenes.size()); i++) {
+                System.out.println(String.format(" -> %s", resumenes.get(i)));
+            }
+        }
+    }
+}
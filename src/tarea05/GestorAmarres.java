@@ -0,0 +1,296 @@
+package tarea05;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Asignación de amarres del puerto a los veleros de una escuela: cada barco
+ * que está en puerto ocupa un amarre, que se libera cuando sale a navegar y
+ * se asigna de nuevo cuando vuelve.</p>
+ * <p>
+ * Los amarres tienen un tamaño, del 1 al <code>Velero.MAX_MASTILES</code>, y un
+ * barco sólo cabe en los amarres de tamaño igual o mayor que su número de
+ * mástiles; se le asigna el más pequeño en el que cabe. Los amarres se
+ * numeran de forma consecutiva, primero los de tamaño 1, y los libres de cada
+ * tamaño se guardan en un <code>MapaBitsLibres</code>, de modo que asignar y
+ * liberar un amarre sólo lee o modifica unas pocas palabras aunque haya miles
+ * de amarres. Si no hay sitio, el barco espera (por orden de llegada) hasta
+ * que se libere un amarre en el que quepa. Los métodos están sincronizados.</p>
+ *
+ * @author profesorado
+ */
+public class GestorAmarres implements OyenteFlota {
+
+    /**
+     * Valor de <code>getAmarre</code> para los barcos que no tienen amarre.
+     */
+    public static final int SIN_AMARRE = -1;
+
+    // Valor interno del amarre de los barcos que esperan uno
+    private static final int EN_ESPERA = -2;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;              // Escuela cuyos barcos se amarran
+    private final MapaBitsLibres[] libres;          // Amarres libres de cada tamaño (posición 0: tamaño 1)
+    private final int[] primerAmarre;               // Número del primer amarre de cada tamaño
+    private final int[] ocupante;                   // Índice del barco de cada amarre (-1 si está libre)
+    private final ArrayDeque<Integer>[] enEspera;   // Barcos sin amarre, por número de mástiles (posición 0: 1 mástil)
+    private int[] amarre;                           // Amarre de cada barco, por índice en la escuela (o EN_ESPERA)
+    private long[] llegada;                         // Orden de llegada de los barcos que esperan
+    private long numLlegadas;                       // Contador de llegadas a la espera
+
+    /**
+     * Crea el gestor de amarres de una escuela y lo conecta a sus sucesos. Los
+     * barcos que están en puerto reciben amarre en el orden en que se crearon.
+     *
+     * @param escuela Escuela cuyos barcos se amarran
+     * @param amarresPorTamano Número de amarres de cada tamaño (la posición 0 corresponde al tamaño 1)
+     *
+     * @throws NullPointerException Si la escuela o el array son nulos
+     * @throws IllegalArgumentException Si el array no tiene <code>Velero.MAX_MASTILES</code> posiciones o algún número es negativo
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public GestorAmarres(EscuelaVela escuela, int... amarresPorTamano) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del gestor de amarres no puede ser nula.\n");
+        }
+        if (amarresPorTamano == null) {
+            throw new NullPointerException("El número de amarres de cada tamaño no puede ser nulo.\n");
+        }
+        if (amarresPorTamano.length != Velero.MAX_MASTILES) {
+            throw new IllegalArgumentException(String.format("Se debe indicar el número de amarres de los %d tamaños.\n", Velero.MAX_MASTILES));
+        }
+        this.escuela = escuela;
+        this.libres = new MapaBitsLibres[Velero.MAX_MASTILES];
+        this.primerAmarre = new int[Velero.MAX_MASTILES + 1];
+        this.enEspera = new ArrayDeque[Velero.MAX_MASTILES];
+        for (int t = 0; t < Velero.MAX_MASTILES; t++) {
+            if (amarresPorTamano[t] < 0) {
+                throw new IllegalArgumentException(String.format("El número de amarres de tamaño %d no puede ser negativo.\n", t + 1));
+            }
+            this.libres[t] = new MapaBitsLibres(amarresPorTamano[t]);
+            this.primerAmarre[t + 1] = this.primerAmarre[t] + amarresPorTamano[t];
+            this.enEspera[t] = new ArrayDeque<>();
+        }
+        this.ocupante = new int[this.primerAmarre[Velero.MAX_MASTILES]];
+        Arrays.fill(this.ocupante, -1);
+        int capacidad = Math.max(16, escuela.getNumBarcosLocales());
+        this.amarre = new int[capacidad];
+        Arrays.fill(this.amarre, GestorAmarres.SIN_AMARRE);
+        this.llegada = new long[capacidad];
+        this.numLlegadas = 0;
+        // Primero se conecta, para no perder los barcos que se creen mientras se amarran los existentes
+        escuela.anadirOyente(this);
+        synchronized (this) {
+            for (Velero barco : escuela.getBarcos()) {
+                if (!barco.isNavegando() && !this.estaEnPuerto(barco.getIndice())) {
+                    this.amarrar(barco);
+                }
+            }
+        }
+    }
+
+    /**
+     * Desconecta el gestor de los sucesos de la escuela.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public synchronized void barcoCreado(Velero barco) {
+        if (!this.estaEnPuerto(barco.getIndice())) {
+            this.amarrar(barco);
+        }
+    }
+
+    @Override
+    public synchronized void navegacionIniciada(Velero barco) {
+        int i = barco.getIndice();
+        if (i >= this.amarre.length) {
+            return;
+        }
+        if (this.amarre[i] >= 0) {
+            this.liberar(this.amarre[i]);
+        } else if (this.amarre[i] == GestorAmarres.EN_ESPERA) {
+            // Si estaba esperando amarre, deja de esperar
+            this.enEspera[barco.getNumMastiles() - 1].remove(i);
+        }
+        this.amarre[i] = GestorAmarres.SIN_AMARRE;
+    }
+
+    @Override
+    public synchronized void navegacionParada(Velero barco, int tiempoNavegando) {
+        this.amarrar(barco);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve el amarre de un velero.
+     *
+     * @param barco Velero
+     * @return Número del amarre, o <code>SIN_AMARRE</code> si está navegando o esperando amarre
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     */
+    public synchronized int getAmarre(Velero barco) throws NullPointerException, IllegalArgumentException {
+        if (barco == null) {
+            throw new NullPointerException("El velero no puede ser nulo.\n");
+        }
+        if (barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        int i = barco.getIndice();
+        return (i < this.amarre.length && this.amarre[i] >= 0 ? this.amarre[i] : GestorAmarres.SIN_AMARRE);
+    }
+
+    /**
+     * Devuelve el velero amarrado en un amarre.
+     *
+     * @param numero Número del amarre
+     * @return Velero amarrado, o <code>null</code> si el amarre está libre
+     *
+     * @throws IndexOutOfBoundsException Si el amarre no existe
+     */
+    public synchronized Velero getOcupante(int numero) throws IndexOutOfBoundsException {
+        this.comprobarAmarre(numero);
+        return (this.ocupante[numero] < 0 ? null : this.escuela.getBarco(this.ocupante[numero]));
+    }
+
+    /**
+     * Devuelve el tamaño de un amarre.
+     *
+     * @param numero Número del amarre
+     * @return Tamaño (número máximo de mástiles) del amarre
+     *
+     * @throws IndexOutOfBoundsException Si el amarre no existe
+     */
+    public int getTamano(int numero) throws IndexOutOfBoundsException {
+        this.comprobarAmarre(numero);
+        int t = 0;
+        while (numero >= this.primerAmarre[t + 1]) {
+            t++;
+        }
+        return t + 1;
+    }
+
+    /**
+     * Devuelve el número total de amarres del puerto.
+     * @return Número de amarres
+     */
+    public int getNumAmarres() {
+        return this.ocupante.length;
+    }
+
+    /**
+     * Devuelve el número de amarres libres de un tamaño.
+     *
+     * @param tamano Tamaño de los amarres
+     * @return Número de amarres libres de ese tamaño
+     *
+     * @throws IllegalArgumentException Si el tamaño no existe
+     */
+    public synchronized int getNumLibres(int tamano) throws IllegalArgumentException {
+        if (tamano < Velero.MIN_MASTILES || tamano > Velero.MAX_MASTILES) {
+            throw new IllegalArgumentException(String.format("El tamaño de amarre debe estar entre %d y %d.\n", Velero.MIN_MASTILES, Velero.MAX_MASTILES));
+        }
+        return this.libres[tamano - 1].getNumLibres();
+    }
+
+    /**
+     * Devuelve el número de barcos en puerto que esperan amarre.
+     * @return Número de barcos sin amarre
+     */
+    public synchronized int getNumEnEspera() {
+        int total = 0;
+        for (ArrayDeque<Integer> cola : this.enEspera) {
+            total += cola.size();
+        }
+        return total;
+    }
+
+    /**
+     * Devuelve el estado del gestor en un tipo String
+     *
+     * @return String Estado del gestor
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder libresPorTamano = new StringBuilder();
+        for (int t = 0; t < Velero.MAX_MASTILES; t++) {
+            libresPorTamano.append(t == 0 ? "" : ", ").append(this.libres[t].getNumLibres()).append('/').append(this.libres[t].getNumPosiciones());
+        }
+        return String.format("{Escuela: %s, Amarres libres por tamaño: [%s], Barcos esperando: %d}",
+                this.escuela.getNombre(), libresPorTamano, this.getNumEnEspera());
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    private void comprobarAmarre(int numero) throws IndexOutOfBoundsException {
+        if (numero < 0 || numero >= this.ocupante.length) {
+            throw new IndexOutOfBoundsException(String.format("No existe el amarre %d.\n", numero));
+        }
+    }
+
+    // Indica si el barco ya tiene amarre o lo está esperando
+    private boolean estaEnPuerto(int i) {
+        return i < this.amarre.length && this.amarre[i] != GestorAmarres.SIN_AMARRE;
+    }
+
+    // Asigna a un barco el amarre libre más pequeño en el que cabe, o lo pone a esperar
+    private void amarrar(Velero barco) {
+        int i = barco.getIndice();
+        if (i >= this.amarre.length) {
+            int anterior = this.amarre.length;
+            int capacidad = Math.max(i + 1, anterior * 2);
+            this.amarre = Arrays.copyOf(this.amarre, capacidad);
+            Arrays.fill(this.amarre, anterior, capacidad, GestorAmarres.SIN_AMARRE);
+            this.llegada = Arrays.copyOf(this.llegada, capacidad);
+        }
+        for (int t = barco.getNumMastiles() - 1; t < Velero.MAX_MASTILES; t++) {
+            int posicion = this.libres[t].buscarLibre();
+            if (posicion >= 0) {
+                this.ocupar(t, posicion, i);
+                return;
+            }
+        }
+        this.amarre[i] = GestorAmarres.EN_ESPERA;
+        this.llegada[i] = this.numLlegadas++;
+        this.enEspera[barco.getNumMastiles() - 1].add(i);
+    }
+
+    private void ocupar(int t, int posicion, int i) {
+        this.libres[t].ocupar(posicion);
+        int numero = this.primerAmarre[t] + posicion;
+        this.ocupante[numero] = i;
+        this.amarre[i] = numero;
+    }
+
+    // Libera un amarre y se lo asigna al barco que lleva más tiempo esperando y cabe en él
+    private void liberar(int numero) {
+        int t = this.getTamano(numero) - 1;
+        int posicion = numero - this.primerAmarre[t];
+        this.ocupante[numero] = -1;
+        this.libres[t].liberar(posicion);
+        int elegida = -1;
+        for (int m = 0; m <= t; m++) {
+            Integer primero = this.enEspera[m].peek();
+            if (primero != null && (elegida < 0 || this.llegada[primero] < this.llegada[this.enEspera[elegida].peek()])) {
+                elegida = m;
+            }
+        }
+        if (elegida >= 0) {
+            this.ocupar(t, posicion, this.enEspera[elegida].poll());
+        }
+    }
+}
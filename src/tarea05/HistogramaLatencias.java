@@ -0,0 +1,177 @@
+package tarea05;
+
+/**
+ * <p>
+ * Histograma de latencias (en nanosegundos) con escala logarítmica-lineal:
+ * los valores menores que 64 se guardan exactos, y el resto en intervalos cuya
+ * anchura es 1/32 de su magnitud (error relativo inferior al 3,2%).</p>
+ * <p>
+ * El registro de un valor no reserva memoria, por lo que cada hilo de una
+ * prueba de carga puede llevar su propio histograma y unirlo al final con
+ * <code>sumar</code>. Los objetos de esta clase no son seguros entre hilos.</p>
+ *
+ * @author profesorado
+ */
+public class HistogramaLatencias {
+
+    // Valores que se guardan de forma exacta y subintervalos por potencia de dos
+    private static final int EXACTOS = 64;
+    private static final int SUBINTERVALOS = 32;
+
+    // Número total de intervalos necesarios para cubrir todos los valores long positivos
+    private static final int NUM_INTERVALOS = EXACTOS + 58 * SUBINTERVALOS;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final long[] contadores;    // Número de valores registrados en cada intervalo
+    private long numValores;            // Número total de valores registrados
+    private long suma;                  // Suma de todos los valores registrados
+    private long minimo;                // Valor mínimo registrado
+    private long maximo;                // Valor máximo registrado
+
+    /**
+     * Crea un histograma vacío.
+     */
+    public HistogramaLatencias() {
+        this.contadores = new long[HistogramaLatencias.NUM_INTERVALOS];
+        this.numValores = 0;
+        this.suma = 0;
+        this.minimo = Long.MAX_VALUE;
+        this.maximo = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Registro de valores
+    // ------------------------------------------------------------------------
+    /**
+     * Registra un valor en el histograma. Los valores negativos se registran como cero.
+     *
+     * @param nanos Latencia (en nanosegundos)
+     */
+    public void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        this.contadores[HistogramaLatencias.intervalo(valor)]++;
+        this.numValores++;
+        this.suma += valor;
+        this.minimo = Math.min(this.minimo, valor);
+        this.maximo = Math.max(this.maximo, valor);
+    }
+
+    /**
+     * Suma a este histograma todos los valores registrados en otro.
+     *
+     * @param otro Histograma que se suma
+     */
+    public void sumar(HistogramaLatencias otro) {
+        for (int i = 0; i < this.contadores.length; i++) {
+            this.contadores[i] += otro.contadores[i];
+        }
+        this.numValores += otro.numValores;
+        this.suma += otro.suma;
+        this.minimo = Math.min(this.minimo, otro.minimo);
+        this.maximo = Math.max(this.maximo, otro.maximo);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numValores</code>
+     * @return Número de valores registrados
+     */
+    public long getNumValores() {
+        return this.numValores;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>minimo</code>
+     * @return Latencia mínima (en nanosegundos), o 0 si el histograma está vacío
+     */
+    public long getMinimo() {
+        return (this.numValores == 0 ? 0 : this.minimo);
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>maximo</code>
+     * @return Latencia máxima (en nanosegundos)
+     */
+    public long getMaximo() {
+        return this.maximo;
+    }
+
+    /**
+     * Devuelve la latencia media.
+     * @return Latencia media (en nanosegundos), o 0 si el histograma está vacío
+     */
+    public double getMedia() {
+        return (this.numValores == 0 ? 0 : (double) this.suma / this.numValores);
+    }
+
+    /**
+     * Devuelve el percentil indicado de las latencias registradas.
+     *
+     * @param percentil Percentil que se consulta (entre 0 y 100)
+     * @return Latencia (en nanosegundos) por debajo de la cual se encuentra ese porcentaje de valores
+     *
+     * @throws IllegalArgumentException Si el percentil no está entre 0 y 100
+     */
+    public long getPercentil(double percentil) throws IllegalArgumentException {
+        if (percentil < 0 || percentil > 100) {
+            throw new IllegalArgumentException(String.format("El percentil %.2f debe estar entre 0 y 100.\n", percentil));
+        }
+        if (this.numValores == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(this.numValores * percentil / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < this.contadores.length; i++) {
+            acumulado += this.contadores[i];
+            if (acumulado >= objetivo) {
+                return Math.min(HistogramaLatencias.limiteSuperior(i), this.maximo);
+            }
+        }
+        return this.maximo;
+    }
+
+    /**
+     * Devuelve un resumen de la distribución de latencias en un tipo String
+     *
+     * @return String Resumen de la distribución (en microsegundos)
+     */
+    @Override
+    public String toString() {
+        return String.format("{media: %.2f µs, p50: %.2f µs, p90: %.2f µs, p99: %.2f µs, p99.9: %.2f µs, máx: %.2f µs}",
+                this.getMedia() / 1e3,
+                this.getPercentil(50) / 1e3,
+                this.getPercentil(90) / 1e3,
+                this.getPercentil(99) / 1e3,
+                this.getPercentil(99.9) / 1e3,
+                this.getMaximo() / 1e3
+        );
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Devuelve el intervalo que corresponde a un valor no negativo
+    private static int intervalo(long valor) {
+        if (valor < HistogramaLatencias.EXACTOS) {
+            return (int) valor;
+        }
+        // Desplazamiento que deja el valor entre 32 y 63
+        int desplazamiento = 58 - Long.numberOfLeadingZeros(valor);
+        return HistogramaLatencias.EXACTOS + (desplazamiento - 1) * HistogramaLatencias.SUBINTERVALOS
+                + (int) ((valor >>> desplazamiento) - HistogramaLatencias.SUBINTERVALOS);
+    }
+
+    // Devuelve el mayor valor que corresponde a un intervalo
+    private static long limiteSuperior(int intervalo) {
+        if (intervalo < HistogramaLatencias.EXACTOS) {
+            return intervalo;
+        }
+        int desplazamiento = (intervalo - HistogramaLatencias.EXACTOS) / HistogramaLatencias.SUBINTERVALOS + 1;
+        long mantisa = (intervalo - HistogramaLatencias.EXACTOS) % HistogramaLatencias.SUBINTERVALOS + HistogramaLatencias.SUBINTERVALOS;
+        return ((mantisa + 1) << desplazamiento) - 1;
+    }
+}
@@ -0,0 +1,628 @@
+package tarea05;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Importador masivo de veleros desde ficheros CSV o JSON Lines.</p>
+ * <p>
+ * El fichero se proyecta en memoria (<code>FileChannel.map</code>) y se divide en
+ * bloques que terminan siempre en un final de línea. Cada bloque se analiza y se
+ * valida en paralelo con las mismas reglas que el constructor de <code>Velero</code>
+ * (<code>MIN_MASTILES</code>, <code>MAX_MASTILES</code> y <code>MIN_TRIPULANTES</code>),
+ * acumulando los errores con su número de línea. Cuando todos los bloques se han
+ * analizado, los veleros válidos se crean de una sola vez en la escuela del
+ * importador, en el orden del fichero.</p>
+ * <p>
+ * Si la escuela comparte su flota en una región, antes de crear ningún velero
+ * se comprueba el lote entero: los nombres repetidos (en el fichero o en la
+ * escuela) o demasiado largos para la región se anotan como errores de su línea y, si las ranuras libres de la
+ * región no bastan para todos, la importación se rechaza sin crear ninguno.
+ * Si aun así otro proceso llena la región mientras se crean, los veleros que
+ * faltan se anotan como errores y el resultado contiene los ya creados.</p>
+ * <p>
+ * Formatos admitidos (un velero por línea; las líneas en blanco se ignoran):</p>
+ * <ul>
+ * <li><strong>CSV</strong>: <code>nombre,mastiles,tripulantes</code>, con cabecera opcional.
+ * Si hay cabecera, las columnas se localizan por su nombre, por lo que también se
+ * pueden importar los informes CSV de <code>EscritorInformeVeleros</code>. Los nombres
+ * pueden ir entre comillas, pero no pueden contener saltos de línea.</li>
+ * <li><strong>JSON Lines</strong>: <code>{"nombre":"Atlantis","mastiles":2,"tripulantes":4}</code>.
+ * También se aceptan las claves <code>maxTripulantes</code> y <code>numMastiles</code>,
+ * y se ignoran los campos desconocidos.</li>
+ * </ul>
+ *
+ * @author profesorado
+ */
+public class ImportadorFlota {
+
+    /**
+     * Tamaño por defecto (en bytes) de los bloques que se analizan en paralelo: {@value TAMANO_BLOQUE_POR_DEFECTO}.
+     */
+    public static final int TAMANO_BLOQUE_POR_DEFECTO = 8 * 1024 * 1024;
+
+    /**
+     * Tamaño mínimo (en bytes) de los bloques que se analizan en paralelo: {@value TAMANO_BLOQUE_MINIMO}.
+     */
+    public static final int TAMANO_BLOQUE_MINIMO = 4 * 1024;
+
+    // Tamaño de la ventana de lectura usada para localizar finales de línea
+    private static final int TAMANO_VENTANA = 8 * 1024;
+
+    // Marca de orden de bytes UTF-8 que puede aparecer al principio del fichero
+    private static final byte[] BOM_UTF8 = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    // Columnas por defecto de un CSV sin cabecera: nombre, mástiles y tripulantes
+    private static final int[] COLUMNAS_POR_DEFECTO = {0, 1, 2};
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;          // Escuela en la que se crean los veleros importados
+    private final int tamanoBloque;             // Tamaño nominal de cada bloque (en bytes)
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Crea un importador sobre la escuela por defecto con el tamaño de bloque por defecto.
+     */
+    public ImportadorFlota() {
+        this(EscuelaVela.getPorDefecto(), ImportadorFlota.TAMANO_BLOQUE_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un importador sobre una escuela con el tamaño de bloque por defecto.
+     *
+     * @param escuela Escuela en la que se crean los veleros importados
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public ImportadorFlota(EscuelaVela escuela) throws NullPointerException {
+        this(escuela, ImportadorFlota.TAMANO_BLOQUE_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un importador sobre una escuela con un tamaño de bloque determinado.
+     *
+     * @param escuela Escuela en la que se crean los veleros importados
+     * @param tamanoBloque Tamaño nominal (en bytes) de los bloques que se analizan en paralelo
+     *
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si el tamaño del bloque es menor que el mínimo
+     */
+    public ImportadorFlota(EscuelaVela escuela, int tamanoBloque) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del importador no puede ser nula.\n");
+        }
+        if (tamanoBloque < ImportadorFlota.TAMANO_BLOQUE_MINIMO) {
+            throw new IllegalArgumentException(String.format("El tamaño de bloque debe ser, como mínimo, %d bytes.\n", ImportadorFlota.TAMANO_BLOQUE_MINIMO));
+        }
+        this.escuela = escuela;
+        this.tamanoBloque = tamanoBloque;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos de importación
+    // ------------------------------------------------------------------------
+    /**
+     * Importa los veleros de un fichero, deduciendo el formato por su extensión
+     * (<code>.csv</code>, <code>.jsonl</code>, <code>.ndjson</code> o <code>.json</code>).
+     *
+     * @param fichero Ruta del fichero
+     * @return Resultado de la importación
+     *
+     * @throws NullPointerException Si el fichero es nulo
+     * @throws IllegalArgumentException Si no se reconoce la extensión o la cabecera del fichero
+     * @throws IllegalStateException Si la región compartida de la escuela no tiene sitio para todos los veleros
+     * @throws IOException Si se produce un error al leer el fichero
+     */
+    public ResultadoImportacion importar(Path fichero) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+        return this.importar(fichero, ImportadorFlota.deducirFormato(fichero));
+    }
+
+    /**
+     * Importa los veleros de un fichero en el formato indicado.
+     *
+     * @param fichero Ruta del fichero
+     * @param formato Formato del fichero (<code>CSV</code> o <code>JSONL</code>)
+     * @return Resultado de la importación
+     *
+     * @throws NullPointerException Si alguno de los parámetros es nulo
+     * @throws IllegalArgumentException Si el formato no se puede importar o la cabecera no es válida
+     * @throws IllegalStateException Si la región compartida de la escuela no tiene sitio para todos los veleros
+     * @throws IOException Si se produce un error al leer el fichero
+     */
+    public ResultadoImportacion importar(Path fichero, FormatoInforme formato) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+        if (fichero == null) {
+            throw new NullPointerException("El fichero de importación no puede ser nulo.\n");
+        }
+        if (formato == null) {
+            throw new NullPointerException("El formato de importación no puede ser nulo.\n");
+        }
+        if (formato == FormatoInforme.TEXTO) {
+            throw new IllegalArgumentException("Sólo se pueden importar ficheros CSV o JSON Lines.\n");
+        }
+        long inicioImportacion = System.nanoTime();
+
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            long inicio = ImportadorFlota.saltarBom(canal, tamano);
+
+            // La cabecera CSV se interpreta antes de repartir el fichero entre los bloques
+            int[] columnas = ImportadorFlota.COLUMNAS_POR_DEFECTO;
+            boolean saltarCabecera = false;
+            if (formato == FormatoInforme.CSV && inicio < tamano) {
+                int[] columnasCabecera = ImportadorFlota.leerCabecera(ImportadorFlota.leerPrimeraLinea(canal, inicio, tamano));
+                if (columnasCabecera != null) {
+                    columnas = columnasCabecera;
+                    saltarCabecera = true;
+                }
+            }
+
+            // Se analizan los bloques en paralelo
+            long[] limites = this.calcularLimites(canal, inicio, tamano);
+            BloqueImportado[] bloques = new BloqueImportado[limites.length - 1];
+            final int[] columnasBloques = columnas;
+            final boolean saltarPrimeraLinea = saltarCabecera;
+            try {
+                IntStream.range(0, bloques.length).parallel().forEach(i -> {
+                    bloques[i] = new BloqueImportado(formato, columnasBloques, i == 0 && saltarPrimeraLinea);
+                    bloques[i].procesar(canal, limites[i], limites[i + 1]);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Se unen los resultados de los bloques y se crean los veleros válidos de una sola vez
+            return this.confirmar(bloques, inicioImportacion);
+        }
+    }
+
+    /**
+     * Deduce el formato de un fichero de importación a partir de su extensión.
+     *
+     * @param fichero Ruta del fichero
+     * @return Formato del fichero
+     *
+     * @throws NullPointerException Si el fichero es nulo
+     * @throws IllegalArgumentException Si no se reconoce la extensión
+     */
+    public static FormatoInforme deducirFormato(Path fichero) throws NullPointerException, IllegalArgumentException {
+        if (fichero == null) {
+            throw new NullPointerException("El fichero de importación no puede ser nulo.\n");
+        }
+        String nombre = String.valueOf(fichero.getFileName()).toLowerCase(Locale.ROOT);
+        if (nombre.endsWith(".csv")) {
+            return FormatoInforme.CSV;
+        }
+        if (nombre.endsWith(".jsonl") || nombre.endsWith(".ndjson") || nombre.endsWith(".json")) {
+            return FormatoInforme.JSONL;
+        }
+        throw new IllegalArgumentException(String.format("No se reconoce el formato del fichero %s (debe ser .csv o .jsonl).\n", nombre));
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Crea los veleros válidos de todos los bloques y renumera los errores con su línea global. Con una
+    // región compartida, el lote se comprueba entero antes de crear ningún velero
+    private ResultadoImportacion confirmar(BloqueImportado[] bloques, long inicioImportacion) throws IllegalStateException {
+        int numValidos = 0;
+        int numErrores = 0;
+        for (BloqueImportado bloque : bloques) {
+            numValidos += bloque.numValidos;
+            numErrores += bloque.errores.size();
+        }
+
+        // Se renumeran las líneas de los veleros válidos y de los errores
+        List<ErrorImportacion> errores = new ArrayList<>(numErrores);
+        long[] lineas = new long[numValidos];
+        long primeraLinea = 0;
+        int siguiente = 0;
+        for (BloqueImportado bloque : bloques) {
+            for (int i = 0; i < bloque.numValidos; i++) {
+                lineas[siguiente++] = primeraLinea + bloque.lineas[i];
+            }
+            for (ErrorImportacion error : bloque.errores) {
+                errores.add(new ErrorImportacion(primeraLinea + error.getLinea(), error.getMensaje()));
+            }
+            primeraLinea += bloque.numLineas;
+        }
+
+        // Con una región compartida los nombres no pueden repetirse y cada velero ocupa una ranura
+        boolean[] descartados = new boolean[numValidos];
+        RegionCompartidaFlota region = this.escuela.getRegion();
+        if (region != null) {
+            HashSet<String> nombres = new HashSet<>();
+            int numNuevos = 0;
+            siguiente = 0;
+            for (BloqueImportado bloque : bloques) {
+                for (int i = 0; i < bloque.numValidos; i++, siguiente++) {
+                    String nombre = bloque.nombres[i];
+                    try {
+                        RegionCompartidaFlota.comprobarNombre(nombre);
+                    } catch (IllegalArgumentException e) {
+                        descartados[siguiente] = true;
+                        errores.add(new ErrorImportacion(lineas[siguiente], e.getMessage()));
+                        continue;
+                    }
+                    if (this.escuela.buscarBarco(nombre) != null || !nombres.add(nombre)) {
+                        descartados[siguiente] = true;
+                        errores.add(new ErrorImportacion(lineas[siguiente], String.format("Ya existe un velero con el nombre %s en la escuela %s, que comparte su flota con otros procesos.\n", nombre, this.escuela.getNombre())));
+                    } else {
+                        numNuevos++;
+                    }
+                }
+            }
+            // Los nombres que ya ha registrado otro proceso se cuentan también como ranuras nuevas
+            int libres = region.getCapacidad() - region.getNumBarcos();
+            if (numNuevos > libres) {
+                throw new IllegalStateException(String.format("La región compartida %s sólo tiene %d ranuras libres y la importación necesita %d; no se ha creado ningún velero.\n",
+                        region.getFichero(), libres, numNuevos));
+            }
+        }
+
+        // Se crean los veleros; si otro proceso llena la región entretanto, los que faltan se anotan como errores
+        Velero[] veleros = new Velero[numValidos];
+        int numCreados = 0;
+        RuntimeException fallo = null;
+        siguiente = 0;
+        for (BloqueImportado bloque : bloques) {
+            for (int i = 0; i < bloque.numValidos; i++, siguiente++) {
+                if (descartados[siguiente]) {
+                    continue;
+                }
+                if (fallo == null) {
+                    try {
+                        veleros[numCreados++] = new Velero(this.escuela, bloque.nombres[i], bloque.mastiles[i], bloque.tripulantes[i]);
+                        continue;
+                    } catch (IllegalStateException | IllegalArgumentException e) {
+                        numCreados--;
+                        fallo = e;
+                    }
+                }
+                errores.add(new ErrorImportacion(lineas[siguiente], fallo.getMessage()));
+            }
+        }
+        if (region != null) {
+            errores.sort(Comparator.comparingLong(ErrorImportacion::getLinea));
+        }
+        return new ResultadoImportacion(Arrays.copyOf(veleros, numCreados), errores, primeraLinea, System.nanoTime() - inicioImportacion);
+    }
+
+    // Calcula los límites de los bloques, desplazando cada corte hasta el siguiente final de línea
+    private long[] calcularLimites(FileChannel canal, long inicio, long tamano) throws IOException {
+        long[] limites = new long[16];
+        int numLimites = 0;
+        limites[numLimites++] = inicio;
+        long posicion = inicio;
+        while (tamano - posicion > this.tamanoBloque) {
+            posicion = ImportadorFlota.buscarSiguienteLinea(canal, posicion + this.tamanoBloque, tamano);
+            if (numLimites == limites.length) {
+                limites = Arrays.copyOf(limites, limites.length * 2);
+            }
+            limites[numLimites++] = posicion;
+        }
+        if (posicion < tamano || numLimites == 1) {
+            if (numLimites == limites.length) {
+                limites = Arrays.copyOf(limites, limites.length + 1);
+            }
+            limites[numLimites++] = tamano;
+        }
+        return Arrays.copyOf(limites, numLimites);
+    }
+
+    // Devuelve la posición siguiente al primer final de línea encontrado a partir de una posición
+    private static long buscarSiguienteLinea(FileChannel canal, long posicion, long tamano) throws IOException {
+        ByteBuffer ventana = ByteBuffer.allocate(ImportadorFlota.TAMANO_VENTANA);
+        while (posicion < tamano) {
+            ventana.clear();
+            int leidos = canal.read(ventana, posicion);
+            if (leidos <= 0) {
+                break;
+            }
+            for (int i = 0; i < leidos; i++) {
+                if (ventana.get(i) == '\n') {
+                    return posicion + i + 1;
+                }
+            }
+            posicion += leidos;
+        }
+        return tamano;
+    }
+
+    // Lee la primera línea del fichero (sin el final de línea)
+    private static byte[] leerPrimeraLinea(FileChannel canal, long inicio, long tamano) throws IOException {
+        long fin = ImportadorFlota.buscarSiguienteLinea(canal, inicio, tamano);
+        ByteBuffer linea = ByteBuffer.allocate((int) Math.min(fin - inicio, Integer.MAX_VALUE - 8));
+        while (linea.hasRemaining() && canal.read(linea, inicio + linea.position()) > 0) {
+            // Se sigue leyendo hasta completar la línea
+        }
+        int longitud = linea.position();
+        while (longitud > 0 && (linea.get(longitud - 1) == '\n' || linea.get(longitud - 1) == '\r')) {
+            longitud--;
+        }
+        return Arrays.copyOf(linea.array(), longitud);
+    }
+
+    // Devuelve la posición del primer byte de datos, saltando la marca de orden de bytes si existe
+    private static long saltarBom(FileChannel canal, long tamano) throws IOException {
+        if (tamano < ImportadorFlota.BOM_UTF8.length) {
+            return 0;
+        }
+        ByteBuffer inicio = ByteBuffer.allocate(ImportadorFlota.BOM_UTF8.length);
+        canal.read(inicio, 0);
+        return (Arrays.equals(inicio.array(), ImportadorFlota.BOM_UTF8) ? ImportadorFlota.BOM_UTF8.length : 0);
+    }
+
+    /*
+     * Interpreta la primera línea de un CSV. Si es una cabecera, devuelve la posición
+     * de las columnas de nombre, mástiles y tripulantes; si es un registro de datos
+     * (la segunda columna es numérica, o la línea no es un CSV válido), devuelve null.
+     * Los campos se separan con las mismas reglas de comillas que los registros.
+     */
+    private static int[] leerCabecera(byte[] linea) throws IllegalArgumentException {
+        List<String> campos = new ArrayList<>();
+        int[] limites = new int[3];
+        try {
+            int i = 0;
+            while (i <= linea.length) {
+                i = ImportadorFlota.siguienteCampoCsv(linea, i, linea.length, limites);
+                campos.add(new String(linea, limites[0], limites[1] - limites[0], StandardCharsets.UTF_8));
+            }
+        } catch (IllegalArgumentException e) {
+            // Comillas mal cerradas: se trata como un registro y su bloque anota el error
+            return null;
+        }
+        if (campos.size() > 1 && campos.get(1).trim().matches("[+-]?\\d+")) {
+            return null;
+        }
+        int[] columnas = {-1, -1, -1};
+        for (int i = 0; i < campos.size(); i++) {
+            String campo = campos.get(i).trim().toLowerCase(Locale.ROOT);
+            if (campo.equals("nombre") || campo.equals("nombrebarco")) {
+                columnas[0] = i;
+            } else if (campo.equals("mastiles") || campo.equals("nummastiles")) {
+                columnas[1] = i;
+            } else if (campo.equals("tripulantes") || campo.equals("maxtripulantes")) {
+                columnas[2] = i;
+            }
+        }
+        if (columnas[0] < 0 || columnas[1] < 0 || columnas[2] < 0) {
+            throw new IllegalArgumentException("La cabecera CSV debe contener las columnas nombre, mastiles y tripulantes.\n");
+        }
+        return columnas;
+    }
+
+    /*
+     * Localiza el campo CSV que empieza en una posición de la línea: deja en limites
+     * su inicio, su fin (sin las comillas que lo rodean) y 1 si contiene comillas
+     * dobles escapadas, y devuelve la posición siguiente a la coma que lo termina.
+     */
+    private static int siguienteCampoCsv(byte[] linea, int i, int longitud, int[] limites) throws IllegalArgumentException {
+        int inicioCampo = i;
+        int finCampo;
+        boolean comillasDobles = false;
+        if (i < longitud && linea[i] == '"') {
+            inicioCampo = ++i;
+            while (i < longitud && !(linea[i] == '"' && (i + 1 >= longitud || linea[i + 1] != '"'))) {
+                comillasDobles |= (linea[i] == '"');
+                i += (linea[i] == '"' ? 2 : 1);
+            }
+            if (i >= longitud) {
+                throw new IllegalArgumentException("Falta cerrar las comillas de un campo.\n");
+            }
+            finCampo = i++;
+            if (i < longitud && linea[i] != ',') {
+                throw new IllegalArgumentException("Hay texto después de las comillas de cierre de un campo.\n");
+            }
+        } else {
+            while (i < longitud && linea[i] != ',') {
+                i++;
+            }
+            finCampo = i;
+        }
+        limites[0] = inicioCampo;
+        limites[1] = finCampo;
+        limites[2] = (comillasDobles ? 1 : 0);
+        return i + 1;
+    }
+
+    // ------------------------------------------------------------------------
+    // Clase interna: análisis de un bloque del fichero
+    // ------------------------------------------------------------------------
+    /*
+     * Resultado del análisis de un bloque. Los errores se numeran con la línea
+     * relativa al inicio del bloque y se renumeran al unir los bloques.
+     */
+    private static class BloqueImportado {
+
+        private final FormatoInforme formato;   // Formato del fichero
+        private final int[] columnas;           // Columnas CSV de nombre, mástiles y tripulantes
+        private final boolean saltarCabecera;   // Indica si la primera línea del bloque es la cabecera
+        private final LectorJson lector;        // Lector de líneas JSON (sólo en formato JSONL)
+
+        private String[] nombres = new String[1024];
+        private int[] mastiles = new int[1024];
+        private int[] tripulantes = new int[1024];
+        private long[] lineas = new long[1024];             // Línea de cada velero válido, relativa al bloque
+        private int numValidos;
+        private long numLineas;
+        private final List<ErrorImportacion> errores = new ArrayList<>();
+
+        // Línea que se está analizando
+        private byte[] linea = new byte[256];
+        private final int[] limites = new int[3];           // Límites del último campo CSV localizado
+
+        BloqueImportado(FormatoInforme formato, int[] columnas, boolean saltarCabecera) {
+            this.formato = formato;
+            this.columnas = columnas;
+            this.saltarCabecera = saltarCabecera;
+            this.lector = (formato == FormatoInforme.JSONL ? new LectorJson() : null);
+        }
+
+        // Analiza las líneas comprendidas entre dos posiciones del fichero
+        void procesar(FileChannel canal, long inicio, long fin) {
+            MappedByteBuffer mapa;
+            try {
+                mapa = canal.map(FileChannel.MapMode.READ_ONLY, inicio, fin - inicio);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int limite = mapa.limit();
+            int posicion = 0;
+            while (posicion < limite) {
+                int finLinea = posicion;
+                while (finLinea < limite && mapa.get(finLinea) != '\n') {
+                    finLinea++;
+                }
+                this.numLineas++;
+                int longitud = finLinea - posicion;
+                if (longitud > 0 && mapa.get(finLinea - 1) == '\r') {
+                    longitud--;
+                }
+                if (longitud > this.linea.length) {
+                    this.linea = new byte[Math.max(longitud, this.linea.length * 2)];
+                }
+                mapa.get(posicion, this.linea, 0, longitud);
+                if (!(this.numLineas == 1 && this.saltarCabecera) && !this.enBlanco(longitud)) {
+                    this.procesarLinea(longitud);
+                }
+                posicion = finLinea + 1;
+            }
+        }
+
+        // Analiza y valida una línea, guardando el velero o el error correspondiente
+        private void procesarLinea(int longitud) {
+            try {
+                if (this.formato == FormatoInforme.CSV) {
+                    this.procesarCsv(longitud);
+                } else {
+                    this.procesarJson(longitud);
+                }
+            } catch (IllegalArgumentException | NullPointerException e) {
+                this.errores.add(new ErrorImportacion(this.numLineas, e.getMessage()));
+            }
+        }
+
+        // Analiza una línea CSV
+        private void procesarCsv(int longitud) {
+            String nombre = null;
+            int numMastiles = 0;
+            int numTripulantes = 0;
+            int encontrados = 0;
+            int campo = 0;
+            int i = 0;
+            while (i <= longitud) {
+                i = ImportadorFlota.siguienteCampoCsv(this.linea, i, longitud, this.limites);
+                int inicioCampo = this.limites[0];
+                int finCampo = this.limites[1];
+
+                if (campo == this.columnas[0]) {
+                    nombre = new String(this.linea, inicioCampo, finCampo - inicioCampo, StandardCharsets.UTF_8);
+                    if (this.limites[2] != 0) {
+                        nombre = nombre.replace("\"\"", "\"");
+                    }
+                    encontrados++;
+                } else if (campo == this.columnas[1]) {
+                    numMastiles = this.parsearEntero(inicioCampo, finCampo, "mástiles");
+                    encontrados++;
+                } else if (campo == this.columnas[2]) {
+                    numTripulantes = this.parsearEntero(inicioCampo, finCampo, "tripulantes");
+                    encontrados++;
+                }
+                campo++;
+            }
+            if (encontrados < 3) {
+                throw new IllegalArgumentException(String.format("Faltan columnas: se esperaban al menos %d campos.\n",
+                        Math.max(this.columnas[0], Math.max(this.columnas[1], this.columnas[2])) + 1));
+            }
+            this.anadir(nombre, numMastiles, numTripulantes);
+        }
+
+        // Analiza una línea JSON
+        private void procesarJson(int longitud) {
+            String nombre = null;
+            int numMastiles = 0;
+            int numTripulantes = 0;
+            boolean hayMastiles = false;
+            boolean hayTripulantes = false;
+            this.lector.iniciar(this.linea, 0, longitud);
+            while (this.lector.siguienteCampo()) {
+                if (this.lector.claveEs("nombre") || this.lector.claveEs("nombreBarco")) {
+                    nombre = this.lector.getTexto();
+                } else if (this.lector.claveEs("mastiles") || this.lector.claveEs("numMastiles")) {
+                    numMastiles = this.lector.getEntero();
+                    hayMastiles = true;
+                } else if (this.lector.claveEs("tripulantes") || this.lector.claveEs("maxTripulantes")) {
+                    numTripulantes = this.lector.getEntero();
+                    hayTripulantes = true;
+                }
+            }
+            if (!hayMastiles) {
+                throw new IllegalArgumentException("Falta el campo mastiles.\n");
+            }
+            if (!hayTripulantes) {
+                throw new IllegalArgumentException("Falta el campo tripulantes.\n");
+            }
+            this.anadir(nombre, numMastiles, numTripulantes);
+        }
+
+        // Valida los datos del velero con las reglas del constructor y los guarda
+        private void anadir(String nombre, int numMastiles, int numTripulantes) {
+            Velero.comprobarDatos(nombre, numMastiles, numTripulantes);
+            if (this.numValidos == this.nombres.length) {
+                int capacidad = this.nombres.length * 2;
+                this.nombres = Arrays.copyOf(this.nombres, capacidad);
+                this.mastiles = Arrays.copyOf(this.mastiles, capacidad);
+                this.tripulantes = Arrays.copyOf(this.tripulantes, capacidad);
+                this.lineas = Arrays.copyOf(this.lineas, capacidad);
+            }
+            this.nombres[this.numValidos] = nombre;
+            this.mastiles[this.numValidos] = numMastiles;
+            this.tripulantes[this.numValidos] = numTripulantes;
+            this.lineas[this.numValidos] = this.numLineas;
+            this.numValidos++;
+        }
+
+        // Convierte un campo numérico, ignorando los espacios que lo rodean
+        private int parsearEntero(int inicio, int fin, String campo) {
+            while (inicio < fin && this.linea[inicio] == ' ') {
+                inicio++;
+            }
+            while (fin > inicio && this.linea[fin - 1] == ' ') {
+                fin--;
+            }
+            try {
+                return LectorJson.parsearEntero(this.linea, inicio, fin);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("El número de %s no es un entero válido.\n", campo));
+            }
+        }
+
+        // Indica si la línea sólo contiene espacios en blanco
+        private boolean enBlanco(int longitud) {
+            for (int i = 0; i < longitud; i++) {
+                if (this.linea[i] != ' ' && this.linea[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
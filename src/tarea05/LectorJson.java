@@ -0,0 +1,317 @@
+package tarea05;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Lector secuencial de objetos JSON planos codificados en UTF-8, como los de
+ * un fichero JSON Lines: <code>{"nombre":"Atlantis","mastiles":2}</code>.</p>
+ * <p>
+ * Recorre los campos del objeto sin crear estructuras intermedias: las claves se
+ * comparan directamente sobre los bytes y sólo se decodifican los valores de
+ * texto que se consultan. Un mismo lector puede reutilizarse para muchas líneas.
+ * No admite objetos ni arrays anidados.</p>
+ *
+ * @author profesorado
+ */
+class LectorJson {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private byte[] datos;               // Bytes del objeto JSON
+    private int posicion;               // Posición de lectura actual
+    private int fin;                    // Posición final (exclusiva) del objeto
+    private boolean primerCampo;        // Indica si todavía no se ha leído ningún campo
+
+    private int inicioClave;            // Posición del primer byte de la clave actual
+    private int finClave;               // Posición final (exclusiva) de la clave actual
+    private int inicioValor;            // Posición del primer byte del valor actual
+    private int finValor;               // Posición final (exclusiva) del valor actual
+    private boolean valorTexto;         // Indica si el valor actual es una cadena
+    private boolean valorEscapado;      // Indica si la cadena actual contiene secuencias de escape
+
+    /**
+     * Prepara el lector para recorrer un objeto JSON.
+     *
+     * @param datos Bytes que contienen el objeto
+     * @param inicio Posición del primer byte del objeto
+     * @param fin Posición final (exclusiva) del objeto
+     *
+     * @throws IllegalArgumentException Si el texto no empieza por <code>{</code>
+     */
+    void iniciar(byte[] datos, int inicio, int fin) throws IllegalArgumentException {
+        this.datos = datos;
+        this.posicion = inicio;
+        this.fin = fin;
+        this.primerCampo = true;
+        this.saltarEspacios();
+        this.esperar((byte) '{');
+    }
+
+    /**
+     * Avanza hasta el siguiente campo del objeto.
+     *
+     * @return <code>true</code> si se ha leído un campo, <code>false</code> si el objeto ha terminado
+     *
+     * @throws IllegalArgumentException Si el objeto JSON está mal formado
+     */
+    boolean siguienteCampo() throws IllegalArgumentException {
+        this.saltarEspacios();
+        if (this.posicion < this.fin && this.datos[this.posicion] == '}') {
+            this.posicion++;
+            this.saltarEspacios();
+            if (this.posicion != this.fin) {
+                throw new IllegalArgumentException("Hay contenido después del final del objeto JSON.\n");
+            }
+            return false;
+        }
+        if (!this.primerCampo) {
+            this.esperar((byte) ',');
+            this.saltarEspacios();
+        }
+        this.primerCampo = false;
+
+        // Clave
+        this.esperar((byte) '"');
+        this.inicioClave = this.posicion;
+        this.leerCadena();
+        this.finClave = this.posicion - 1;
+        this.saltarEspacios();
+        this.esperar((byte) ':');
+        this.saltarEspacios();
+
+        // Valor
+        if (this.posicion >= this.fin) {
+            throw new IllegalArgumentException("Falta el valor de un campo del objeto JSON.\n");
+        }
+        byte b = this.datos[this.posicion];
+        if (b == '"') {
+            this.posicion++;
+            this.inicioValor = this.posicion;
+            this.valorEscapado = this.leerCadena();
+            this.finValor = this.posicion - 1;
+            this.valorTexto = true;
+        } else if (b == '{' || b == '[') {
+            throw new IllegalArgumentException("No se admiten objetos ni arrays anidados.\n");
+        } else {
+            this.inicioValor = this.posicion;
+            while (this.posicion < this.fin && this.datos[this.posicion] != ',' && this.datos[this.posicion] != '}'
+                    && this.datos[this.posicion] != ' ' && this.datos[this.posicion] != '\t') {
+                this.posicion++;
+            }
+            this.finValor = this.posicion;
+            this.valorTexto = false;
+        }
+        return true;
+    }
+
+    /**
+     * Comprueba si la clave del campo actual coincide con un nombre dado (ASCII).
+     *
+     * @param nombre Nombre de la clave
+     * @return <code>true</code> si la clave coincide
+     */
+    boolean claveEs(String nombre) {
+        int longitud = this.finClave - this.inicioClave;
+        if (longitud != nombre.length()) {
+            return false;
+        }
+        for (int i = 0; i < longitud; i++) {
+            if (this.datos[this.inicioClave + i] != nombre.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Devuelve el valor de texto del campo actual.
+     *
+     * @return Texto del campo
+     *
+     * @throws IllegalArgumentException Si el valor no es una cadena
+     */
+    String getTexto() throws IllegalArgumentException {
+        if (!this.valorTexto) {
+            throw new IllegalArgumentException(String.format("El campo %s debe ser una cadena.\n", this.getClave()));
+        }
+        if (!this.valorEscapado) {
+            return new String(this.datos, this.inicioValor, this.finValor - this.inicioValor, StandardCharsets.UTF_8);
+        }
+        return this.decodificarEscapes();
+    }
+
+    /**
+     * Devuelve el valor entero del campo actual.
+     *
+     * @return Valor del campo
+     *
+     * @throws IllegalArgumentException Si el valor no es un número entero
+     */
+    int getEntero() throws IllegalArgumentException {
+        if (this.valorTexto) {
+            throw new IllegalArgumentException(String.format("El campo %s debe ser un número entero.\n", this.getClave()));
+        }
+        return LectorJson.parsearEntero(this.datos, this.inicioValor, this.finValor);
+    }
+
+    /**
+     * Devuelve el valor numérico (con decimales) del campo actual.
+     *
+     * @return Valor del campo
+     *
+     * @throws IllegalArgumentException Si el valor no es un número
+     */
+    double getDecimal() throws IllegalArgumentException {
+        try {
+            if (!this.valorTexto) {
+                return Double.parseDouble(new String(this.datos, this.inicioValor, this.finValor - this.inicioValor, StandardCharsets.US_ASCII));
+            }
+        } catch (NumberFormatException e) {
+            // Se informa con el mismo mensaje que un valor de texto
+        }
+        throw new IllegalArgumentException(String.format("El campo %s debe ser un número.\n", this.getClave()));
+    }
+
+    /**
+     * Devuelve el valor lógico del campo actual.
+     *
+     * @return Valor del campo
+     *
+     * @throws IllegalArgumentException Si el valor no es <code>true</code> ni <code>false</code>
+     */
+    boolean getLogico() throws IllegalArgumentException {
+        if (!this.valorTexto && this.finValor - this.inicioValor == 4 && this.datos[this.inicioValor] == 't') {
+            return true;
+        }
+        if (!this.valorTexto && this.finValor - this.inicioValor == 5 && this.datos[this.inicioValor] == 'f') {
+            return false;
+        }
+        throw new IllegalArgumentException(String.format("El campo %s debe ser true o false.\n", this.getClave()));
+    }
+
+    /**
+     * Devuelve el nombre de la clave del campo actual.
+     *
+     * @return Nombre de la clave
+     */
+    String getClave() {
+        return new String(this.datos, this.inicioClave, this.finClave - this.inicioClave, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Convierte una secuencia de dígitos ASCII (con signo opcional) en un entero.
+     *
+     * @param datos Bytes que contienen el número
+     * @param inicio Posición del primer byte
+     * @param fin Posición final (exclusiva)
+     * @return Valor del número
+     *
+     * @throws IllegalArgumentException Si el texto no es un número entero válido
+     */
+    static int parsearEntero(byte[] datos, int inicio, int fin) throws IllegalArgumentException {
+        boolean negativo = false;
+        if (inicio < fin && (datos[inicio] == '-' || datos[inicio] == '+')) {
+            negativo = datos[inicio] == '-';
+            inicio++;
+        }
+        if (inicio >= fin || fin - inicio > 10) {
+            throw new IllegalArgumentException("El valor numérico no es un entero válido.\n");
+        }
+        long valor = 0;
+        for (int i = inicio; i < fin; i++) {
+            int digito = datos[i] - '0';
+            if (digito < 0 || digito > 9) {
+                throw new IllegalArgumentException("El valor numérico no es un entero válido.\n");
+            }
+            valor = valor * 10 + digito;
+        }
+        valor = negativo ? -valor : valor;
+        if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("El valor numérico está fuera de rango.\n");
+        }
+        return (int) valor;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Avanza hasta el final de una cadena (tras las comillas de cierre) e indica si contiene escapes
+    private boolean leerCadena() {
+        boolean escapes = false;
+        while (this.posicion < this.fin) {
+            byte b = this.datos[this.posicion++];
+            if (b == '"') {
+                return escapes;
+            }
+            if (b == '\\') {
+                escapes = true;
+                this.posicion++;
+            }
+        }
+        throw new IllegalArgumentException("Cadena JSON sin terminar.\n");
+    }
+
+    // Decodifica una cadena que contiene secuencias de escape
+    private String decodificarEscapes() {
+        StringBuilder texto = new StringBuilder(this.finValor - this.inicioValor);
+        int inicioTramo = this.inicioValor;
+        int i = this.inicioValor;
+        while (i < this.finValor) {
+            if (this.datos[i] != '\\') {
+                i++;
+                continue;
+            }
+            texto.append(new String(this.datos, inicioTramo, i - inicioTramo, StandardCharsets.UTF_8));
+            byte b = this.datos[i + 1];
+            switch (b) {
+                case 'n':
+                    texto.append('\n');
+                    break;
+                case 'r':
+                    texto.append('\r');
+                    break;
+                case 't':
+                    texto.append('\t');
+                    break;
+                case 'b':
+                    texto.append('\b');
+                    break;
+                case 'f':
+                    texto.append('\f');
+                    break;
+                case 'u':
+                    if (i + 6 > this.finValor) {
+                        throw new IllegalArgumentException("Secuencia de escape \\u incompleta.\n");
+                    }
+                    texto.append((char) Integer.parseInt(new String(this.datos, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default:
+                    texto.append((char) b);
+                    break;
+            }
+            i += 2;
+            inicioTramo = i;
+        }
+        texto.append(new String(this.datos, inicioTramo, this.finValor - inicioTramo, StandardCharsets.UTF_8));
+        return texto.toString();
+    }
+
+    // Salta los espacios en blanco
+    private void saltarEspacios() {
+        while (this.posicion < this.fin && (this.datos[this.posicion] == ' ' || this.datos[this.posicion] == '\t'
+                || this.datos[this.posicion] == '\r' || this.datos[this.posicion] == '\n')) {
+            this.posicion++;
+        }
+    }
+
+    // Comprueba que el siguiente byte es el esperado y lo consume
+    private void esperar(byte esperado) {
+        if (this.posicion >= this.fin || this.datos[this.posicion] != esperado) {
+            throw new IllegalArgumentException(String.format("Objeto JSON mal formado: se esperaba '%c'.\n", (char) esperado));
+        }
+        this.posicion++;
+    }
+}
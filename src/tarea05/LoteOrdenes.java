@@ -0,0 +1,311 @@
+package tarea05;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Lote de órdenes sobre los veleros de una escuela (salidas, llegadas y
+ * cambios de rumbo) que se ejecutan como una unidad: o se aplican todas o no
+ * se aplica ninguna. Sirve, por ejemplo, para sacar a navegar a la vez todos
+ * los barcos de una clase sin que un error a mitad deje parte de la flota en
+ * el agua.</p>
+ * <p>
+ * <code>ejecutar</code> comprueba primero todas las órdenes con las mismas
+ * reglas que los métodos de <code>Velero</code>; si alguna falla, lanza su
+ * excepción indicando el número de orden y no cambia nada. Después marca los
+ * barcos (en la región compartida, si la escuela la tiene, deshaciendo las
+ * marcas si otro proceso se adelanta con alguno), actualiza los contadores de
+ * la escuela una sola vez para todo el lote y, por último, cambia el estado de
+ * cada barco y avisa a los oyentes como si las órdenes se hubieran dado una a
+ * una. Si un oyente lanza una excepción, se anota en la escuela y el lote se
+ * termina de aplicar igualmente. Todas las salidas y llegadas del lote se
+ * fechan con una única lectura del reloj de la escuela, que también da la
+ * duración de las llegadas que no indican los minutos navegando.</p>
+ * <p>
+ * Cada barco sólo puede aparecer una vez en el lote. Como con los métodos de
+ * <code>Velero</code>, los barcos del lote no deben recibir órdenes desde
+ * otros hilos mientras se ejecuta.</p>
+ *
+ * @author profesorado
+ */
+public class LoteOrdenes {
+
+    // Tipos de orden
+    private static final int SALIDA = 0;
+    private static final int LLEGADA = 1;
+    private static final int RUMBO = 2;
+    private static final int LLEGADA_RELOJ = 3;     // Llegada con el tiempo navegando calculado con el reloj
+
+    // Orden del lote
+    private static final class Orden {
+
+        final int tipo;
+        final Velero barco;
+        final int velocidad;
+        final String rumbo;
+        final String patron;
+        final int numero;           // Tripulación (salidas) o minutos navegando (llegadas)
+        int idRumbo;                // Rumbo comprobado (salidas y cambios de rumbo)
+        int idPatron;               // Patrón de la tabla de la escuela (salidas)
+        int tiempoNavegando;        // Minutos comprobados (llegadas)
+
+        Orden(int tipo, Velero barco, int velocidad, String rumbo, String patron, int numero) {
+            this.tipo = tipo;
+            this.barco = barco;
+            this.velocidad = velocidad;
+            this.rumbo = rumbo;
+            this.patron = patron;
+            this.numero = numero;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;          // Escuela de los barcos del lote
+    private final ArrayList<Orden> ordenes;     // Órdenes, en el orden en que se añadieron
+    private final BitSet barcos;                // Índices de los barcos que ya tienen orden
+
+    /**
+     * Crea un lote vacío para los barcos de una escuela.
+     *
+     * @param escuela Escuela de los barcos
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public LoteOrdenes(EscuelaVela escuela) throws NullPointerException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del lote de órdenes no puede ser nula.\n");
+        }
+        this.escuela = escuela;
+        this.ordenes = new ArrayList<>();
+        this.barcos = new BitSet();
+    }
+
+    // ------------------------------------------------------------------------
+    // Órdenes
+    // ------------------------------------------------------------------------
+    /**
+     * Añade la salida a navegar de un velero. Los parámetros se comprueban al ejecutar el lote.
+     *
+     * @param barco Velero
+     * @param velocidad Velocidad del barco durante la navegación
+     * @param rumbo Rumbo del barco durante la navegación
+     * @param patron Patrón del barco
+     * @param tripulacion Número de tripulantes (exceptuando el patrón)
+     * @return El propio lote
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o ya tiene una orden en el lote
+     */
+    public synchronized LoteOrdenes salida(Velero barco, int velocidad, String rumbo, String patron, int tripulacion) throws NullPointerException, IllegalArgumentException {
+        return this.anadir(new Orden(LoteOrdenes.SALIDA, barco, velocidad, rumbo, patron, tripulacion));
+    }
+
+    /**
+     * Añade la llegada a puerto de un velero.
+     *
+     * @param barco Velero
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado navegando
+     * @return El propio lote
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o ya tiene una orden en el lote
+     */
+    public synchronized LoteOrdenes llegada(Velero barco, int tiempoNavegando) throws NullPointerException, IllegalArgumentException {
+        return this.anadir(new Orden(LoteOrdenes.LLEGADA, barco, 0, null, null, tiempoNavegando));
+    }
+
+    /**
+     * Añade la llegada a puerto de un velero, con el tiempo navegando que
+     * indique el reloj de la escuela al ejecutar el lote.
+     *
+     * @param barco Velero
+     * @return El propio lote
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o ya tiene una orden en el lote
+     */
+    public synchronized LoteOrdenes llegada(Velero barco) throws NullPointerException, IllegalArgumentException {
+        return this.anadir(new Orden(LoteOrdenes.LLEGADA_RELOJ, barco, 0, null, null, 0));
+    }
+
+    /**
+     * Añade el cambio de rumbo de un velero que está navegando.
+     *
+     * @param barco Velero
+     * @param rumbo Nuevo rumbo
+     * @return El propio lote
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o ya tiene una orden en el lote
+     */
+    public synchronized LoteOrdenes rumbo(Velero barco, String rumbo) throws NullPointerException, IllegalArgumentException {
+        return this.anadir(new Orden(LoteOrdenes.RUMBO, barco, 0, rumbo, null, 0));
+    }
+
+    /**
+     * Quita todas las órdenes del lote.
+     */
+    public synchronized void vaciar() {
+        this.ordenes.clear();
+        this.barcos.clear();
+    }
+
+    /**
+     * @return Número de órdenes del lote
+     */
+    public synchronized int getNumOrdenes() {
+        return this.ordenes.size();
+    }
+
+    // ------------------------------------------------------------------------
+    // Ejecución
+    // ------------------------------------------------------------------------
+    /**
+     * Ejecuta todas las órdenes del lote o ninguna. El lote conserva sus
+     * órdenes; se puede vaciar y reutilizar.
+     *
+     * @throws IllegalArgumentException Si algún parámetro de una orden es incorrecto
+     * @throws IllegalStateException Si el estado de algún barco no permite su orden, o un rumbo o patrón nuevo no cabe en su tabla
+     * @throws NullPointerException Si falta el rumbo o el patrón de alguna orden
+     */
+    public synchronized void ejecutar() throws IllegalArgumentException, IllegalStateException, NullPointerException {
+        // Comprobación de todas las órdenes, sin cambiar nada
+        long instante = this.escuela.getReloj().millis();
+        int salidas = 0;
+        int llegadas = 0;
+        long minutos = 0;
+        for (int i = 0; i < this.ordenes.size(); i++) {
+            Orden orden = this.ordenes.get(i);
+            try {
+                switch (orden.tipo) {
+                    case LoteOrdenes.SALIDA:
+                        orden.idRumbo = orden.barco.comprobarSalida(orden.velocidad, orden.rumbo, orden.patron, orden.numero);
+                        salidas++;
+                        break;
+                    case LoteOrdenes.LLEGADA:
+                        orden.barco.comprobarLlegada(orden.numero);
+                        orden.tiempoNavegando = orden.numero;
+                        llegadas++;
+                        minutos += orden.tiempoNavegando;
+                        break;
+                    case LoteOrdenes.LLEGADA_RELOJ:
+                        orden.tiempoNavegando = orden.barco.minutosNavegando(instante);
+                        llegadas++;
+                        minutos += orden.tiempoNavegando;
+                        break;
+                    default:
+                        orden.idRumbo = orden.barco.comprobarRumbo(orden.rumbo);
+                }
+            } catch (RuntimeException e) {
+                throw LoteOrdenes.errorEnOrden(i, e);
+            }
+        }
+
+        // Lote aceptado: los rumbos y patrones nuevos se añaden a sus tablas, que pueden estar llenas
+        TablaSimbolos patrones = this.escuela.getPatrones();
+        String ultimoPatron = null;
+        int idPatron = -1;
+        for (int i = 0; i < this.ordenes.size(); i++) {
+            Orden orden = this.ordenes.get(i);
+            if (orden.tipo != LoteOrdenes.SALIDA) {
+                continue;
+            }
+            try {
+                if (orden.idRumbo < 0) {
+                    orden.idRumbo = this.escuela.getRumbos().getId(orden.rumbo);
+                }
+                // Las órdenes de una misma clase suelen repetir patrón: se reutiliza su identificador
+                if (!orden.patron.equals(ultimoPatron)) {
+                    idPatron = patrones.getId(orden.patron);
+                    ultimoPatron = orden.patron;
+                }
+                orden.idPatron = idPatron;
+            } catch (RuntimeException e) {
+                throw LoteOrdenes.errorEnOrden(i, e);
+            }
+        }
+
+        // Indicadores de navegación compartidos: si otro proceso se adelanta, se deshacen los ya cambiados
+        for (int i = 0; i < this.ordenes.size(); i++) {
+            Orden orden = this.ordenes.get(i);
+            if (orden.tipo != LoteOrdenes.RUMBO && !this.escuela.cambiarIndicador(orden.barco.getRanura(), orden.tipo == LoteOrdenes.SALIDA)) {
+                for (int j = i - 1; j >= 0; j--) {
+                    Orden anterior = this.ordenes.get(j);
+                    if (anterior.tipo != LoteOrdenes.RUMBO) {
+                        this.escuela.cambiarIndicador(anterior.barco.getRanura(), anterior.tipo != LoteOrdenes.SALIDA);
+                    }
+                }
+                throw new IllegalStateException(String.format("Orden %d del lote: otro proceso ha cambiado el estado del velero %s.\n", i + 1, orden.barco.getNombreBarco()));
+            }
+        }
+
+        // Contadores de la escuela, una sola vez para todo el lote
+        this.escuela.registrarLote(salidas - llegadas, minutos);
+
+        // Estado de cada barco y avisos a los oyentes (sus errores se anotan en la escuela y no interrumpen
+        // el lote); las tareas que dejen los oyentes se ejecutan cuando el lote está aplicado entero
+        boolean exterior = this.escuela.empezarOperacion();
+        try {
+            for (Orden orden : this.ordenes) {
+                switch (orden.tipo) {
+                    case LoteOrdenes.SALIDA:
+                        orden.barco.aplicarSalida(orden.velocidad, orden.idRumbo, orden.idPatron, orden.numero, instante);
+                        break;
+                    case LoteOrdenes.RUMBO:
+                        orden.barco.aplicarRumbo(orden.idRumbo);
+                        break;
+                    default:
+                        orden.barco.aplicarLlegada(orden.tiempoNavegando, instante);
+                }
+            }
+        } finally {
+            this.escuela.terminarOperacion(exterior);
+        }
+    }
+
+    /**
+     * Devuelve el estado del lote en un tipo String
+     *
+     * @return String Estado del lote
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("{Escuela: %s, Órdenes: %d}", this.escuela.getNombre(), this.ordenes.size());
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    private LoteOrdenes anadir(Orden orden) throws NullPointerException, IllegalArgumentException {
+        if (orden.barco == null) {
+            throw new NullPointerException("El velero de una orden no puede ser nulo.\n");
+        }
+        if (orden.barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", orden.barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        if (this.barcos.get(orden.barco.getIndice())) {
+            throw new IllegalArgumentException(String.format("El velero %s ya tiene una orden en el lote.\n", orden.barco.getNombreBarco()));
+        }
+        this.barcos.set(orden.barco.getIndice());
+        this.ordenes.add(orden);
+        return this;
+    }
+
+    // Excepción del mismo tipo que la original, con el número de la orden que ha fallado
+    private static RuntimeException errorEnOrden(int i, RuntimeException e) {
+        String mensaje = String.format("Orden %d del lote: %s", i + 1, e.getMessage());
+        if (e instanceof IllegalStateException) {
+            return new IllegalStateException(mensaje, e);
+        }
+        if (e instanceof IllegalArgumentException) {
+            return new IllegalArgumentException(mensaje, e);
+        }
+        if (e instanceof NullPointerException) {
+            return new NullPointerException(mensaje);
+        }
+        return e;
+    }
+}
@@ -0,0 +1,133 @@
+package tarea05;
+
+/**
+ * <p>
+ * Conjunto de posiciones libres de 0 a n - 1 en un mapa de bits jerárquico:
+ * el primer nivel tiene un bit por posición (1 si está libre) y cada nivel
+ * superior tiene un bit por palabra del nivel inferior (1 si esa palabra
+ * tiene alguna posición libre), hasta llegar a un nivel de una sola palabra.</p>
+ * <p>
+ * Ocupar, liberar o buscar la primera posición libre modifica o lee una
+ * palabra por nivel, es decir, log<sub>64</sub>(n) palabras: tres para
+ * 262.144 posiciones. No está sincronizado.</p>
+ *
+ * @author profesorado
+ */
+class MapaBitsLibres {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final int numPosiciones;    // Número de posiciones
+    private final long[][] niveles;     // Niveles del mapa, del de posiciones (0) al de una sola palabra
+    private int numLibres;              // Número de posiciones libres
+
+    /**
+     * Crea un mapa con todas las posiciones libres.
+     *
+     * @param numPosiciones Número de posiciones
+     *
+     * @throws IllegalArgumentException Si el número de posiciones es negativo
+     */
+    MapaBitsLibres(int numPosiciones) throws IllegalArgumentException {
+        if (numPosiciones < 0) {
+            throw new IllegalArgumentException(String.format("El número de posiciones %d no puede ser negativo.\n", numPosiciones));
+        }
+        this.numPosiciones = numPosiciones;
+        int numNiveles = 1;
+        for (long palabras = (numPosiciones + 63) >>> 6; palabras > 1; palabras = (palabras + 63) >>> 6) {
+            numNiveles++;
+        }
+        this.niveles = new long[numNiveles][];
+        int bits = numPosiciones;
+        for (int nivel = 0; nivel < numNiveles; nivel++) {
+            this.niveles[nivel] = new long[Math.max(1, (bits + 63) >>> 6)];
+            // Se marcan como libres los bits 0..bits-1 del nivel
+            for (int palabra = 0; palabra < (bits >>> 6); palabra++) {
+                this.niveles[nivel][palabra] = -1L;
+            }
+            if ((bits & 63) != 0) {
+                this.niveles[nivel][bits >>> 6] = (1L << (bits & 63)) - 1;
+            }
+            bits = (bits + 63) >>> 6;
+        }
+        this.numLibres = numPosiciones;
+    }
+
+    /**
+     * @return Número de posiciones del mapa
+     */
+    int getNumPosiciones() {
+        return this.numPosiciones;
+    }
+
+    /**
+     * @return Número de posiciones libres
+     */
+    int getNumLibres() {
+        return this.numLibres;
+    }
+
+    /**
+     * @param posicion Posición
+     * @return <code>true</code> si la posición está libre
+     */
+    boolean isLibre(int posicion) {
+        return (this.niveles[0][posicion >>> 6] & (1L << posicion)) != 0;
+    }
+
+    /**
+     * Busca la primera posición libre, bajando desde el nivel superior.
+     *
+     * @return Primera posición libre, o -1 si no hay ninguna
+     */
+    int buscarLibre() {
+        if (this.numLibres == 0) {
+            return -1;
+        }
+        int indice = 0;
+        for (int nivel = this.niveles.length - 1; nivel >= 0; nivel--) {
+            indice = (indice << 6) | Long.numberOfTrailingZeros(this.niveles[nivel][indice]);
+        }
+        return indice;
+    }
+
+    /**
+     * Marca una posición libre como ocupada.
+     *
+     * @param posicion Posición
+     */
+    void ocupar(int posicion) {
+        int indice = posicion;
+        for (long[] nivel : this.niveles) {
+            int palabra = indice >>> 6;
+            nivel[palabra] &= ~(1L << indice);
+            if (nivel[palabra] != 0) {
+                break;
+            }
+            // La palabra se ha quedado sin posiciones libres: se borra su bit en el nivel superior
+            indice = palabra;
+        }
+        this.numLibres--;
+    }
+
+    /**
+     * Marca una posición ocupada como libre.
+     *
+     * @param posicion Posición
+     */
+    void liberar(int posicion) {
+        int indice = posicion;
+        for (long[] nivel : this.niveles) {
+            int palabra = indice >>> 6;
+            boolean estabaVacia = (nivel[palabra] == 0);
+            nivel[palabra] |= 1L << indice;
+            if (!estabaVacia) {
+                break;
+            }
+            // La palabra vuelve a tener posiciones libres: se marca en el nivel superior
+            indice = palabra;
+        }
+        this.numLibres++;
+    }
+}
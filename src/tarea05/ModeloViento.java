@@ -0,0 +1,302 @@
+package tarea05;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Modelo meteorológico de una escuela de vela: a partir de una serie temporal
+ * de viento a lo largo del día calcula la <strong>envolvente de velocidad</strong>
+ * que puede alcanzar cada velero según el viento de cada momento, su rumbo y su
+ * número de mástiles.</p>
+ * <p>
+ * El fichero de viento tiene una línea por medición con la hora (HH:MM) y la
+ * intensidad del viento en nudos separadas por una coma, por ejemplo
+ * <code>13:30,18</code>. Cada medición es válida hasta la siguiente, y la última
+ * hasta el final del día; antes de la primera se aplica la última del día
+ * anterior. Las líneas vacías y las que empiezan por <code>#</code> se ignoran.</p>
+ * <p>
+ * Al crear el modelo se precalculan todas las envolventes en tablas de enteros,
+ * de modo que consultar la velocidad máxima de un velero es un acceso a un array.
+ * El minuto del día de cada instante se calcula con el desfase de la zona
+ * horaria local en ese instante (que cambia con el horario de verano); el
+ * desfase del último tramo entre cambios de horario consultado se guarda para
+ * no recalcularlo. El modelo es inmutable y puede compartirse entre hilos y
+ * escuelas.</p>
+ *
+ * @author profesorado
+ */
+public class ModeloViento {
+
+    /**
+     * Viento mínimo (en nudos) para poder navegar: {@value VIENTO_MINIMO}.
+     */
+    public static final int VIENTO_MINIMO = 3;
+
+    // Minutos de un día
+    private static final int MINUTOS_DIA = 24 * 60;
+
+    // Rumbos con envolvente propia; el resto de rumbos usan la fila 0 (rumbo libre)
+    private static final int NUM_RUMBOS = Velero.RUMBOS_CONOCIDOS.length;
+    private static final int ID_CENIDA = Velero.ID_CENIDA;
+    private static final int ID_EMPOPADA = Velero.ID_EMPOPADA;
+
+    // Fracción de la intensidad del viento que se aprovecha en cada rumbo y ganancia por mástil adicional
+    private static final double FACTOR_CENIDA = 0.6;
+    private static final double FACTOR_EMPOPADA = 0.9;
+    private static final double FACTOR_LIBRE = 0.75;
+    private static final double FACTOR_MASTIL = 0.15;
+
+    // Tramo entre dos cambios de horario de la zona, con su desfase (en milisegundos)
+    private static final class Tramo {
+
+        private final long desde;
+        private final long hasta;
+        private final long desfase;
+
+        private Tramo(long desde, long hasta, long desfase) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.desfase = desfase;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final int[] horas;                  // Minuto del día de cada medición
+    private final int[] vientos;                // Intensidad (en nudos) de cada medición
+    private final short[] medicionPorMinuto;    // Medición vigente en cada minuto del día
+    private final byte[] velocidadMaxima;       // Envolvente por medición, rumbo y número de mástiles
+    private final ZoneRules reglasZona;         // Reglas de la zona horaria local
+    private volatile Tramo tramo;               // Último tramo de la zona consultado (se sustituye, nunca se modifica)
+
+    // ------------------------------------------------------------------------
+    // Constructores y métodos fábrica
+    // ------------------------------------------------------------------------
+    // Constructor privado: recibe las mediciones ordenadas por hora
+    private ModeloViento(int[] horas, int[] vientos) {
+        this.horas = horas;
+        this.vientos = vientos;
+
+        // Medición vigente en cada minuto del día
+        this.medicionPorMinuto = new short[ModeloViento.MINUTOS_DIA];
+        int medicion = horas.length - 1;
+        for (int minuto = 0; minuto < ModeloViento.MINUTOS_DIA; minuto++) {
+            int siguiente = (medicion + 1) % horas.length;
+            if (horas[siguiente] == minuto) {
+                medicion = siguiente;
+            }
+            this.medicionPorMinuto[minuto] = (short) medicion;
+        }
+
+        // Envolventes precalculadas para cada medición, rumbo y número de mástiles
+        int columnas = Velero.MAX_MASTILES + 1;
+        this.velocidadMaxima = new byte[horas.length * ModeloViento.NUM_RUMBOS * columnas];
+        for (int m = 0; m < horas.length; m++) {
+            for (int rumbo = 0; rumbo < ModeloViento.NUM_RUMBOS; rumbo++) {
+                for (int mastiles = Velero.MIN_MASTILES; mastiles <= Velero.MAX_MASTILES; mastiles++) {
+                    this.velocidadMaxima[(m * ModeloViento.NUM_RUMBOS + rumbo) * columnas + mastiles]
+                            = (byte) ModeloViento.calcularVelocidadMaxima(vientos[m], rumbo, mastiles);
+                }
+            }
+        }
+        this.reglasZona = ZoneId.systemDefault().getRules();
+        this.tramo = this.calcularTramo(System.currentTimeMillis());
+    }
+
+    /**
+     * Crea un modelo con la misma intensidad de viento durante todo el día.
+     *
+     * @param nudos Intensidad del viento (en nudos)
+     * @return El modelo de viento
+     *
+     * @throws IllegalArgumentException Si la intensidad es negativa
+     */
+    public static ModeloViento constante(int nudos) throws IllegalArgumentException {
+        if (nudos < 0) {
+            throw new IllegalArgumentException(String.format("La intensidad del viento %d no puede ser negativa.\n", nudos));
+        }
+        return new ModeloViento(new int[]{0}, new int[]{nudos});
+    }
+
+    /**
+     * Carga un modelo a partir de un fichero de viento codificado en UTF-8.
+     *
+     * @param ruta Ruta del fichero
+     * @return El modelo de viento
+     *
+     * @throws IOException Si se produce un error al leer el fichero
+     * @throws IllegalArgumentException Si el fichero no es válido
+     */
+    public static ModeloViento cargar(Path ruta) throws IOException, IllegalArgumentException {
+        try (Reader lector = Files.newBufferedReader(ruta, StandardCharsets.UTF_8)) {
+            return ModeloViento.leer(lector);
+        }
+    }
+
+    /**
+     * Lee un modelo a partir del texto de un fichero de viento.
+     *
+     * @param texto Texto con las mediciones
+     * @return El modelo de viento
+     *
+     * @throws IOException Si se produce un error al leer el texto
+     * @throws IllegalArgumentException Si el texto no es válido o no contiene ninguna medición
+     */
+    public static ModeloViento leer(Reader texto) throws IOException, IllegalArgumentException {
+        int[] horas = new int[16];
+        int[] vientos = new int[16];
+        int numMediciones = 0;
+        BufferedReader lineas = new BufferedReader(texto);
+        String linea;
+        int numLinea = 0;
+        while ((linea = lineas.readLine()) != null) {
+            numLinea++;
+            linea = linea.trim();
+            if (linea.isEmpty() || linea.startsWith("#")) {
+                continue;
+            }
+            if (numMediciones == horas.length) {
+                horas = Arrays.copyOf(horas, numMediciones * 2);
+                vientos = Arrays.copyOf(vientos, numMediciones * 2);
+            }
+            try {
+                String[] campos = linea.split(",");
+                String[] hora = campos[0].trim().split(":");
+                if (campos.length != 2 || hora.length != 2) {
+                    throw new IllegalArgumentException("El formato debe ser HH:MM,nudos.\n");
+                }
+                int minuto = Integer.parseInt(hora[0]) * 60 + Integer.parseInt(hora[1]);
+                int nudos = Integer.parseInt(campos[1].trim());
+                if (minuto < 0 || minuto >= ModeloViento.MINUTOS_DIA || nudos < 0) {
+                    throw new IllegalArgumentException("La hora o la intensidad del viento no son válidas.\n");
+                }
+                if (numMediciones > 0 && minuto <= horas[numMediciones - 1]) {
+                    throw new IllegalArgumentException("Las mediciones deben estar ordenadas por hora.\n");
+                }
+                horas[numMediciones] = minuto;
+                vientos[numMediciones] = nudos;
+                numMediciones++;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Línea %d del fichero de viento: se esperaba un número.\n", numLinea));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Línea %d del fichero de viento: %s", numLinea, e.getMessage()));
+            }
+        }
+        if (numMediciones == 0) {
+            throw new IllegalArgumentException("El fichero de viento no contiene ninguna medición.\n");
+        }
+        return new ModeloViento(Arrays.copyOf(horas, numMediciones), Arrays.copyOf(vientos, numMediciones));
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve la intensidad del viento en un minuto del día.
+     *
+     * @param minutoDia Minuto del día (entre 0 y 1439)
+     * @return Intensidad del viento (en nudos)
+     *
+     * @throws ArrayIndexOutOfBoundsException Si el minuto no es válido
+     */
+    public int getViento(int minutoDia) throws ArrayIndexOutOfBoundsException {
+        return this.vientos[this.medicionPorMinuto[minutoDia]];
+    }
+
+    /**
+     * Devuelve la velocidad máxima que puede alcanzar un velero en un minuto del día.
+     *
+     * @param minutoDia Minuto del día (entre 0 y 1439)
+     * @param idRumbo Identificador del rumbo en la tabla de rumbos de la escuela (-1 para un rumbo que todavía no está en ella)
+     * @param mastiles Número de mástiles del velero
+     * @return Velocidad máxima (en nudos), o 0 si no hay viento suficiente para navegar
+     *
+     * @throws ArrayIndexOutOfBoundsException Si el minuto o el número de mástiles no son válidos
+     */
+    public int getVelocidadMaxima(int minutoDia, int idRumbo, int mastiles) throws ArrayIndexOutOfBoundsException {
+        int rumbo = (idRumbo >= 0 && idRumbo < ModeloViento.NUM_RUMBOS ? idRumbo : 0);
+        return this.velocidadMaxima[(this.medicionPorMinuto[minutoDia] * ModeloViento.NUM_RUMBOS + rumbo) * (Velero.MAX_MASTILES + 1) + mastiles];
+    }
+
+    /**
+     * Devuelve el minuto del día actual según el reloj del sistema y la zona horaria local.
+     *
+     * @return Minuto del día (entre 0 y 1439)
+     */
+    public int getMinutoActual() {
+        return this.getMinuto(System.currentTimeMillis());
+    }
+
+    /**
+     * Devuelve el minuto del día de un instante en la zona horaria local (por
+     * ejemplo, el del reloj de una escuela).
+     *
+     * @param milisegundos Instante (en milisegundos desde 1970)
+     * @return Minuto del día (entre 0 y 1439)
+     */
+    public int getMinuto(long milisegundos) {
+        Tramo actual = this.tramo;
+        if (milisegundos < actual.desde || milisegundos >= actual.hasta) {
+            actual = this.calcularTramo(milisegundos);
+            this.tramo = actual;
+        }
+        return (int) Math.floorMod(Math.floorDiv(milisegundos + actual.desfase, 60_000L), (long) ModeloViento.MINUTOS_DIA);
+    }
+
+    // Tramo de la zona horaria que contiene un instante: desde el cambio de horario anterior hasta el siguiente
+    private Tramo calcularTramo(long milisegundos) {
+        Instant instante = Instant.ofEpochMilli(milisegundos);
+        ZoneOffsetTransition anterior = this.reglasZona.previousTransition(instante.plusMillis(1));
+        ZoneOffsetTransition siguiente = this.reglasZona.nextTransition(instante);
+        return new Tramo(anterior == null ? Long.MIN_VALUE : anterior.toEpochSecond() * 1000L,
+                siguiente == null ? Long.MAX_VALUE : siguiente.toEpochSecond() * 1000L,
+                this.reglasZona.getOffset(instante).getTotalSeconds() * 1000L);
+    }
+
+    /**
+     * Devuelve el número de mediciones del modelo.
+     * @return Número de mediciones de viento
+     */
+    public int getNumMediciones() {
+        return this.horas.length;
+    }
+
+    /**
+     * Devuelve el modelo en un tipo String
+     *
+     * @return String Mediciones del modelo
+     */
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder("{Modelo de viento:");
+        for (int i = 0; i < this.horas.length; i++) {
+            texto.append(String.format(" %02d:%02d %d nudos%s", this.horas[i] / 60, this.horas[i] % 60, this.vientos[i], (i < this.horas.length - 1 ? "," : "")));
+        }
+        return texto.append('}').toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Velocidad máxima para una intensidad de viento, un rumbo (fila de la tabla) y un número de mástiles
+    private static int calcularVelocidadMaxima(int viento, int rumbo, int mastiles) {
+        if (viento < ModeloViento.VIENTO_MINIMO) {
+            return 0;
+        }
+        double factor = (rumbo == ModeloViento.ID_CENIDA ? ModeloViento.FACTOR_CENIDA
+                : rumbo == ModeloViento.ID_EMPOPADA ? ModeloViento.FACTOR_EMPOPADA : ModeloViento.FACTOR_LIBRE);
+        double velocidad = viento * factor * (1 + ModeloViento.FACTOR_MASTIL * (mastiles - 1));
+        return (int) Math.max(Velero.MIN_VELOCIDAD, Math.min(Velero.MAX_VELOCIDAD, Math.round(velocidad)));
+    }
+}
@@ -0,0 +1,76 @@
+package tarea05;
+
+/**
+ * <p>
+ * Oyente de los sucesos de los veleros de una <code>EscuelaVela</code>. Se
+ * registra con <code>EscuelaVela.anadirOyente</code> y recibe los avisos en el
+ * mismo hilo que realiza la operación, una vez que ésta se ha validado.</p>
+ * <p>
+ * Todos los métodos tienen una implementación vacía, de modo que cada oyente
+ * sólo sobrescribe los sucesos que le interesan. Los avisos deben ser rápidos y
+ * no lanzar excepciones, ya que forman parte de la operación del velero. Si
+ * un oyente lanza una, la operación, que ya está hecha, no falla: la
+ * excepción se anota en la escuela (<code>getNumErroresOyentes</code>,
+ * <code>getUltimoErrorOyente</code>) y los demás oyentes reciben el aviso
+ * igualmente.</p>
+ *
+ * @author profesorado
+ */
+public interface OyenteFlota {
+
+    /**
+     * Aviso de la creación de un velero en la escuela.
+     *
+     * @param barco Velero creado
+     */
+    default void barcoCreado(Velero barco) {
+    }
+
+    /**
+     * Aviso del inicio de la navegación de un velero (con los datos de la navegación ya asignados).
+     *
+     * @param barco Velero que ha salido a navegar
+     */
+    default void navegacionIniciada(Velero barco) {
+    }
+
+    /**
+     * Aviso del cambio de rumbo de un velero que está navegando.
+     *
+     * @param barco Velero que ha cambiado de rumbo (con el rumbo nuevo)
+     * @param idRumboAnterior Identificador del rumbo anterior
+     */
+    default void rumboCambiado(Velero barco, int idRumboAnterior) {
+    }
+
+    /**
+     * Aviso del cambio de velocidad de un velero que está navegando, a partir
+     * de la telemetría de a bordo.
+     *
+     * @param barco Velero que ha cambiado de velocidad (con la velocidad nueva)
+     * @param velocidadAnterior Velocidad anterior (en nudos)
+     */
+    default void velocidadCambiada(Velero barco, int velocidadAnterior) {
+    }
+
+    /**
+     * Aviso del final de la navegación de un velero. Se produce antes de borrar
+     * los datos de la navegación, por lo que aún pueden consultarse el rumbo,
+     * el patrón, la velocidad y la tripulación.
+     *
+     * @param barco Velero que vuelve a puerto
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado navegando
+     */
+    default void navegacionParada(Velero barco, int tiempoNavegando) {
+    }
+
+    /**
+     * Aviso del resultado de una regata entre dos veleros.
+     *
+     * @param barco Velero que ha iniciado la regata
+     * @param otroBarco Velero contra el que se ha regateado
+     * @param resultado Positivo si gana <code>barco</code>, negativo si gana <code>otroBarco</code> y cero si empatan
+     */
+    default void regataFinalizada(Velero barco, Velero otroBarco, int resultado) {
+    }
+}
@@ -0,0 +1,391 @@
+package tarea05;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Plan de mantenimiento de los veleros de una escuela según el tiempo que han
+ * navegado. Cada velero tiene un intervalo de servicio (en minutos de
+ * navegación) y le corresponde una revisión cuando el tiempo navegado desde la
+ * última alcanza ese intervalo.</p>
+ * <p>
+ * Los barcos se guardan en un montículo indexado ordenado por los minutos que
+ * les faltan para la revisión: cada navegación que termina actualiza la
+ * posición de su barco en O(log n), y los siguientes K barcos que necesitan
+ * mantenimiento se obtienen en O(K log K) sin recorrer la flota. Si la escuela
+ * aplica el plan (<code>EscuelaVela.setPlanMantenimiento</code>), los barcos
+ * con la revisión vencida no pueden salir a navegar hasta que se registre el
+ * servicio.</p>
+ *
+ * @author profesorado
+ */
+public class PlanMantenimiento implements OyenteFlota {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;      // Escuela cuyos barcos se revisan
+    private final int intervaloPorDefecto;  // Intervalo de servicio de los barcos nuevos (en minutos)
+
+    // Datos de cada barco, por índice en la escuela
+    private int[] intervalo;                // Intervalo de servicio (en minutos)
+    private int[] restante;                 // Minutos de navegación que faltan para la revisión
+    private int[] posicion;                 // Posición en el montículo (-1 si no está)
+
+    // Montículo de mínimos de índices de barco, ordenado por minutos restantes
+    private int[] monticulo;
+    private int numBarcos;
+
+    /**
+     * Crea el plan de mantenimiento de una escuela, con el mismo intervalo de
+     * servicio para todos los barcos, y lo conecta a sus sucesos. Los barcos
+     * que ya existen se incluyen con el tiempo que llevan navegado.
+     *
+     * @param escuela Escuela cuyos barcos se revisan
+     * @param intervaloPorDefecto Minutos de navegación entre revisiones
+     *
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si el intervalo no es positivo
+     */
+    public PlanMantenimiento(EscuelaVela escuela, int intervaloPorDefecto) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del plan de mantenimiento no puede ser nula.\n");
+        }
+        if (intervaloPorDefecto <= 0) {
+            throw new IllegalArgumentException(String.format("El intervalo de mantenimiento de %d minutos debe ser positivo.\n", intervaloPorDefecto));
+        }
+        this.escuela = escuela;
+        this.intervaloPorDefecto = intervaloPorDefecto;
+        int capacidad = Math.max(16, escuela.getNumBarcosLocales());
+        this.intervalo = new int[capacidad];
+        this.restante = new int[capacidad];
+        this.posicion = new int[capacidad];
+        Arrays.fill(this.posicion, -1);
+        this.monticulo = new int[capacidad];
+        this.numBarcos = 0;
+        // Primero se conecta, para no perder los barcos que se creen mientras se incluyen los existentes
+        escuela.anadirOyente(this);
+        for (Velero barco : escuela.getBarcos()) {
+            this.barcoCreado(barco);
+        }
+    }
+
+    /**
+     * Desconecta el plan de los sucesos de la escuela (y deja de aplicarse en ella si era el suyo).
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+        if (this.escuela.getPlanMantenimiento() == this) {
+            this.escuela.setPlanMantenimiento(null);
+        }
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>escuela</code>
+     * @return Escuela cuyos barcos se revisan
+     */
+    public EscuelaVela getEscuela() {
+        return this.escuela;
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public synchronized void barcoCreado(Velero barco) {
+        int i = barco.getIndice();
+        if (i < this.posicion.length && this.posicion[i] >= 0) {
+            return;
+        }
+        this.asegurarCapacidad(i + 1);
+        this.intervalo[i] = this.intervaloPorDefecto;
+        this.restante[i] = this.intervaloPorDefecto - barco.getTiempoTotalNavegacionBarco();
+        this.monticulo[this.numBarcos] = i;
+        this.posicion[i] = this.numBarcos;
+        this.numBarcos++;
+        this.subir(this.posicion[i]);
+    }
+
+    @Override
+    public synchronized void navegacionParada(Velero barco, int tiempoNavegando) {
+        int i = barco.getIndice();
+        if (i < this.posicion.length && this.posicion[i] >= 0) {
+            this.restante[i] -= tiempoNavegando;
+            this.subir(this.posicion[i]);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Gestión del plan
+    // ------------------------------------------------------------------------
+    /**
+     * Registra la revisión de un velero: vuelve a tener todo su intervalo por delante.
+     *
+     * @param barco Velero revisado
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     * @throws IllegalStateException Si el barco está navegando
+     */
+    public synchronized void registrarServicio(Velero barco) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        int i = this.comprobarBarco(barco);
+        if (barco.isNavegando()) {
+            throw new IllegalStateException(String.format("No se puede revisar el velero %s mientras navega.\n", barco.getNombreBarco()));
+        }
+        this.actualizar(i, this.intervalo[i]);
+    }
+
+    /**
+     * Cambia el intervalo de servicio de un velero. Los minutos restantes se
+     * recalculan desde su última revisión.
+     *
+     * @param barco Velero
+     * @param minutos Minutos de navegación entre revisiones
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o el intervalo no es positivo
+     */
+    public synchronized void setIntervalo(Velero barco, int minutos) throws NullPointerException, IllegalArgumentException {
+        int i = this.comprobarBarco(barco);
+        if (minutos <= 0) {
+            throw new IllegalArgumentException(String.format("El intervalo de mantenimiento de %d minutos debe ser positivo.\n", minutos));
+        }
+        int navegado = this.intervalo[i] - this.restante[i];
+        this.intervalo[i] = minutos;
+        this.actualizar(i, minutos - navegado);
+    }
+
+    /**
+     * Devuelve el intervalo de servicio de un velero.
+     *
+     * @param barco Velero
+     * @return Minutos de navegación entre revisiones
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     */
+    public synchronized int getIntervalo(Velero barco) throws NullPointerException, IllegalArgumentException {
+        return this.intervalo[this.comprobarBarco(barco)];
+    }
+
+    /**
+     * Devuelve los minutos de navegación que le faltan a un velero para la
+     * revisión (cero o negativo si ya la necesita).
+     *
+     * @param barco Velero
+     * @return Minutos restantes hasta la revisión
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     */
+    public synchronized int getMinutosRestantes(Velero barco) throws NullPointerException, IllegalArgumentException {
+        return this.restante[this.comprobarBarco(barco)];
+    }
+
+    /**
+     * Indica si un velero ha agotado su intervalo de servicio.
+     *
+     * @param barco Velero
+     * @return <code>true</code> si necesita mantenimiento
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela
+     */
+    public synchronized boolean necesitaMantenimiento(Velero barco) throws NullPointerException, IllegalArgumentException {
+        return this.restante[this.comprobarBarco(barco)] <= 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve los K barcos a los que menos les falta para la revisión, de más
+     * a menos urgente. Sólo se visitan las posiciones del montículo que pueden
+     * formar parte del resultado.
+     *
+     * @param k Número de barcos
+     * @return Lista con hasta <code>k</code> barcos
+     *
+     * @throws IllegalArgumentException Si <code>k</code> es negativo
+     */
+    public synchronized List<Velero> getProximos(int k) throws IllegalArgumentException {
+        if (k < 0) {
+            throw new IllegalArgumentException(String.format("El número de barcos %d no puede ser negativo.\n", k));
+        }
+        int limite = Math.min(k, this.numBarcos);
+        List<Velero> proximos = new ArrayList<>(limite);
+        if (limite == 0) {
+            return proximos;
+        }
+        // Montículo auxiliar de posiciones del montículo principal (la frontera de la búsqueda)
+        int[] frontera = new int[limite + 1];
+        int numFrontera = 1;
+        frontera[0] = 0;
+        while (proximos.size() < limite) {
+            int nodo = frontera[0];
+            frontera[0] = frontera[--numFrontera];
+            this.bajarFrontera(frontera, numFrontera, 0);
+            proximos.add(this.escuela.getBarco(this.monticulo[nodo]));
+            for (int hijo = 2 * nodo + 1; hijo <= 2 * nodo + 2 && hijo < this.numBarcos; hijo++) {
+                if (numFrontera == frontera.length) {
+                    frontera = Arrays.copyOf(frontera, frontera.length * 2);
+                }
+                frontera[numFrontera] = hijo;
+                this.subirFrontera(frontera, numFrontera++);
+            }
+        }
+        return proximos;
+    }
+
+    /**
+     * Devuelve los barcos que necesitan mantenimiento, de más a menos urgente.
+     *
+     * @return Lista de barcos con la revisión vencida
+     */
+    public synchronized List<Velero> getPendientes() {
+        return this.getProximos(this.contarPendientes(0));
+    }
+
+    /**
+     * Devuelve el número de barcos que necesitan mantenimiento.
+     *
+     * @return Número de barcos con la revisión vencida
+     */
+    public synchronized int getNumPendientes() {
+        return this.contarPendientes(0);
+    }
+
+    /**
+     * Devuelve el estado del plan en un tipo String
+     *
+     * @return String Estado del plan
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("{Escuela: %s, Barcos: %d, Intervalo: %d minutos, Pendientes: %d%s}",
+                this.escuela.getNombre(),
+                this.numBarcos,
+                this.intervaloPorDefecto,
+                this.contarPendientes(0),
+                (this.numBarcos == 0 ? "" : String.format(", Próximo: %s (%d minutos)",
+                        this.escuela.getBarco(this.monticulo[0]).getNombreBarco(), this.restante[this.monticulo[0]]))
+        );
+    }
+
+    // ------------------------------------------------------------------------
+    // Montículo indexado
+    // ------------------------------------------------------------------------
+    // Comprueba que el barco es de la escuela y devuelve su índice
+    private int comprobarBarco(Velero barco) throws NullPointerException, IllegalArgumentException {
+        if (barco == null) {
+            throw new NullPointerException("El velero no puede ser nulo.\n");
+        }
+        int i = barco.getIndice();
+        if (barco.getEscuela() != this.escuela || i >= this.posicion.length || this.posicion[i] < 0) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        return i;
+    }
+
+    // Cambia los minutos restantes de un barco y restablece el orden del montículo
+    private void actualizar(int i, int minutos) {
+        int anterior = this.restante[i];
+        this.restante[i] = minutos;
+        if (minutos < anterior) {
+            this.subir(this.posicion[i]);
+        } else {
+            this.bajar(this.posicion[i]);
+        }
+    }
+
+    // Cuenta los barcos vencidos del subárbol (sólo se bajan las ramas con algún vencido)
+    private int contarPendientes(int nodo) {
+        if (nodo >= this.numBarcos || this.restante[this.monticulo[nodo]] > 0) {
+            return 0;
+        }
+        return 1 + this.contarPendientes(2 * nodo + 1) + this.contarPendientes(2 * nodo + 2);
+    }
+
+    private void subir(int nodo) {
+        int barco = this.monticulo[nodo];
+        int clave = this.restante[barco];
+        while (nodo > 0) {
+            int padre = (nodo - 1) / 2;
+            if (this.restante[this.monticulo[padre]] <= clave) {
+                break;
+            }
+            this.colocar(nodo, this.monticulo[padre]);
+            nodo = padre;
+        }
+        this.colocar(nodo, barco);
+    }
+
+    private void bajar(int nodo) {
+        int barco = this.monticulo[nodo];
+        int clave = this.restante[barco];
+        while (true) {
+            int hijo = 2 * nodo + 1;
+            if (hijo >= this.numBarcos) {
+                break;
+            }
+            if (hijo + 1 < this.numBarcos && this.restante[this.monticulo[hijo + 1]] < this.restante[this.monticulo[hijo]]) {
+                hijo++;
+            }
+            if (clave <= this.restante[this.monticulo[hijo]]) {
+                break;
+            }
+            this.colocar(nodo, this.monticulo[hijo]);
+            nodo = hijo;
+        }
+        this.colocar(nodo, barco);
+    }
+
+    private void colocar(int nodo, int barco) {
+        this.monticulo[nodo] = barco;
+        this.posicion[barco] = nodo;
+    }
+
+    // La frontera de getProximos es un montículo de posiciones ordenado por la clave de su barco
+    private int claveNodo(int nodo) {
+        return this.restante[this.monticulo[nodo]];
+    }
+
+    private void subirFrontera(int[] frontera, int i) {
+        int nodo = frontera[i];
+        while (i > 0 && this.claveNodo(frontera[(i - 1) / 2]) > this.claveNodo(nodo)) {
+            frontera[i] = frontera[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        frontera[i] = nodo;
+    }
+
+    private void bajarFrontera(int[] frontera, int n, int i) {
+        int nodo = frontera[i];
+        while (2 * i + 1 < n) {
+            int hijo = 2 * i + 1;
+            if (hijo + 1 < n && this.claveNodo(frontera[hijo + 1]) < this.claveNodo(frontera[hijo])) {
+                hijo++;
+            }
+            if (this.claveNodo(nodo) <= this.claveNodo(frontera[hijo])) {
+                break;
+            }
+            frontera[i] = frontera[hijo];
+            i = hijo;
+        }
+        frontera[i] = nodo;
+    }
+
+    private void asegurarCapacidad(int minimo) {
+        if (minimo > this.posicion.length) {
+            int capacidad = Math.max(minimo, this.posicion.length * 2);
+            int anterior = this.posicion.length;
+            this.intervalo = Arrays.copyOf(this.intervalo, capacidad);
+            this.restante = Arrays.copyOf(this.restante, capacidad);
+            this.posicion = Arrays.copyOf(this.posicion, capacidad);
+            Arrays.fill(this.posicion, anterior, capacidad, -1);
+            this.monticulo = Arrays.copyOf(this.monticulo, capacidad);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package tarea05;
+
+/**
+ * Comportamiento de una salida asíncrona cuando su cola de mensajes está llena.
+ *
+ * @author profesorado
+ */
+public enum PoliticaDesbordamiento {
+    /**
+     * El hilo que escribe espera a que haya sitio en la cola (no se pierde ningún mensaje).
+     */
+    BLOQUEAR,
+    /**
+     * Se descarta el mensaje nuevo y se cuenta como descartado.
+     */
+    DESCARTAR_NUEVOS,
+    /**
+     * Se descartan los mensajes más antiguos de la cola para hacer sitio al nuevo.
+     */
+    DESCARTAR_ANTIGUOS
+}
@@ -0,0 +1,403 @@
+package tarea05;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Lado primario de la replicación en caliente de una escuela: envía a una
+ * <code>ReplicaFlota</code>, por un socket local, el registro ordenado de los
+ * cambios de estado de sus veleros, para que otra máquina virtual tenga la
+ * flota al día y pueda tomar el relevo si la primaria cae.</p>
+ * <p>
+ * Cada cambio (creación, salida, cambio de rumbo o de velocidad y llegada)
+ * genera un registro con el estado completo del barco tras el cambio y un
+ * número de secuencia global. Aplicar un registro es idempotente, así que la
+ * réplica converge aunque reciba registros repetidos. Al conectarse una
+ * réplica se le envía primero la época de la primaria (un número al azar
+ * distinto en cada arranque, porque las secuencias vuelven a empezar), después
+ * una instantánea de todos los barcos y, a continuación, los cambios
+ * posteriores.</p>
+ * <p>
+ * La replicación es asíncrona: el oyente sólo copia el estado del barco y lo
+ * deja en una cola, sin esperar a la réplica, de modo que
+ * <code>iniciarNavegacion</code> y <code>pararNavegacion</code> apenas se
+ * ralentizan. Un hilo emisor retira los registros por lotes y los escribe con
+ * una sola llamada por lote; si no hay cambios, envía cada
+ * {@value LATIDO_MS} ms un lote vacío como latido. Mientras no hay réplica
+ * conectada, los cambios no se guardan (la instantánea los recoge), y si la
+ * réplica acumula más de <code>MAX_PENDIENTES</code> registros sin recibir, se
+ * corta su conexión para que se resincronice.</p>
+ * <p>
+ * Uso: <code>java tarea05.PrimarioReplicacion [puerto] [veleros] [operaciones por segundo]</code></p>
+ *
+ * @author profesorado
+ */
+public class PrimarioReplicacion implements OyenteFlota, Closeable {
+
+    /**
+     * Puerto por defecto de la replicación.
+     */
+    public static final int PUERTO_POR_DEFECTO = 8082;
+
+    /**
+     * Intervalo de los latidos sin cambios (en milisegundos).
+     */
+    public static final int LATIDO_MS = 100;
+
+    /**
+     * Número máximo de registros pendientes de enviar: si la réplica se queda
+     * más atrás, se corta la conexión y se vuelve a sincronizar con una
+     * instantánea al reconectarse.
+     */
+    public static final int MAX_PENDIENTES = 1 << 20;
+
+    // Número máximo de registros de un lote
+    private static final int MAX_LOTE = 4096;
+
+    /**
+     * Estado completo de un velero tras un cambio, tal como viaja por el socket.
+     */
+    static final class Registro {
+
+        final long secuencia;       // Número de secuencia del cambio
+        final long instante;        // Instante del cambio en la primaria (ms)
+        final int indice;
+        final String nombre;
+        final int mastiles;
+        final int maxTripulantes;
+        final boolean navegando;
+        final int tiempoTotal;
+        final int velocidad;
+        final String rumbo;
+        final String patron;
+        final int tripulacion;
+        final long instanteSalida;  // Instante de la última salida según el reloj de la primaria (ms)
+
+        Registro(long secuencia, long instante, int indice, String nombre, int mastiles, int maxTripulantes,
+                boolean navegando, int tiempoTotal, int velocidad, String rumbo, String patron, int tripulacion, long instanteSalida) {
+            this.secuencia = secuencia;
+            this.instante = instante;
+            this.indice = indice;
+            this.nombre = nombre;
+            this.mastiles = mastiles;
+            this.maxTripulantes = maxTripulantes;
+            this.navegando = navegando;
+            this.tiempoTotal = tiempoTotal;
+            this.velocidad = velocidad;
+            this.rumbo = rumbo;
+            this.patron = patron;
+            this.tripulacion = tripulacion;
+            this.instanteSalida = instanteSalida;
+        }
+
+        // Copia el estado actual de un barco (en puerto, con los valores por defecto, si se indica)
+        static Registro de(Velero barco, long secuencia, boolean enPuerto) {
+            boolean navegando = !enPuerto && barco.isNavegando();
+            return new Registro(secuencia, System.currentTimeMillis(), barco.getIndice(), barco.getNombreBarco(),
+                    barco.getNumMastiles(), barco.getMaxTripulantes(), navegando, barco.getTiempoTotalNavegacionBarco(),
+                    navegando ? barco.getVelocidad() : 0,
+                    navegando ? barco.getRumbo() : Velero.RUMBO_POR_DEFECTO,
+                    navegando ? barco.getPatron() : Velero.PATRON_POR_DEFECTO,
+                    navegando ? barco.getTripulacion() : Velero.MIN_TRIPULANTES,
+                    barco.getMilisegundosSalida());
+        }
+
+        void escribir(DataOutputStream salida) throws IOException {
+            salida.writeLong(this.secuencia);
+            salida.writeLong(this.instante);
+            salida.writeInt(this.indice);
+            salida.writeUTF(this.nombre);
+            salida.writeByte(this.mastiles);
+            salida.writeShort(this.maxTripulantes);
+            salida.writeBoolean(this.navegando);
+            salida.writeInt(this.tiempoTotal);
+            salida.writeByte(this.velocidad);
+            salida.writeUTF(this.rumbo);
+            salida.writeUTF(this.patron);
+            salida.writeShort(this.tripulacion);
+            salida.writeLong(this.instanteSalida);
+        }
+
+        static Registro leer(DataInputStream entrada) throws IOException {
+            return new Registro(entrada.readLong(), entrada.readLong(), entrada.readInt(), entrada.readUTF(),
+                    entrada.readByte(), entrada.readShort(), entrada.readBoolean(), entrada.readInt(),
+                    entrada.readByte(), entrada.readUTF(), entrada.readUTF(), entrada.readShort(), entrada.readLong());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                      // Escuela que se replica
+    private final ServerSocket servidor;                    // Socket en el que se conecta la réplica
+    private final LinkedBlockingQueue<Registro> cola;       // Registros pendientes de enviar
+    private final AtomicLong secuencia;                     // Último número de secuencia asignado
+    private final long epoca;                               // Época de las secuencias (distinta en cada arranque)
+    private final Thread emisor;                            // Hilo que envía los registros
+    private volatile boolean conectada;                     // Indica si hay una réplica conectada
+    private volatile boolean desbordada;                    // Indica si la réplica se ha quedado demasiado atrás
+    private volatile boolean abierto;                       // Indica si la replicación sigue activa
+    private volatile long numEnviados;                      // Registros enviados (sólo los cuenta el emisor)
+
+    /**
+     * Pone una escuela en modo primario: la conecta a sus sucesos y empieza a
+     * esperar la conexión de una réplica.
+     *
+     * @param escuela Escuela que se replica
+     * @param direccion Dirección y puerto en los que se espera a la réplica
+     *
+     * @throws NullPointerException Si la escuela o la dirección son nulas
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public PrimarioReplicacion(EscuelaVela escuela, InetSocketAddress direccion) throws NullPointerException, IOException {
+        if (escuela == null || direccion == null) {
+            throw new NullPointerException("La escuela y la dirección de la replicación no pueden ser nulas.\n");
+        }
+        this.escuela = escuela;
+        this.servidor = new ServerSocket();
+        this.servidor.bind(direccion);
+        this.servidor.setSoTimeout(PrimarioReplicacion.LATIDO_MS);
+        this.cola = new LinkedBlockingQueue<>(PrimarioReplicacion.MAX_PENDIENTES);
+        this.secuencia = new AtomicLong();
+        this.epoca = ThreadLocalRandom.current().nextLong();
+        this.conectada = false;
+        this.desbordada = false;
+        this.abierto = true;
+        escuela.anadirOyente(this);
+        this.emisor = new Thread(this::emitir, "emisor-replicacion");
+        this.emisor.setDaemon(true);
+        this.emisor.start();
+    }
+
+    /**
+     * Desconecta la escuela, cierra la conexión con la réplica y deja de esperar otras.
+     */
+    @Override
+    public void close() {
+        this.escuela.eliminarOyente(this);
+        this.abierto = false;
+        try {
+            this.emisor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Sucesos de la flota
+    // ------------------------------------------------------------------------
+    @Override
+    public void barcoCreado(Velero barco) {
+        this.anotar(barco, false);
+    }
+
+    @Override
+    public void navegacionIniciada(Velero barco) {
+        this.anotar(barco, false);
+    }
+
+    @Override
+    public void rumboCambiado(Velero barco, int idRumboAnterior) {
+        this.anotar(barco, false);
+    }
+
+    @Override
+    public void velocidadCambiada(Velero barco, int velocidadAnterior) {
+        this.anotar(barco, false);
+    }
+
+    @Override
+    public void navegacionParada(Velero barco, int tiempoNavegando) {
+        // El aviso llega antes de que el barco vuelva a sus valores de puerto
+        this.anotar(barco, true);
+    }
+
+    private void anotar(Velero barco, boolean enPuerto) {
+        if (this.conectada && !this.cola.offer(Registro.de(barco, this.secuencia.incrementAndGet(), enPuerto))) {
+            this.desbordada = true;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * @return <code>true</code> si hay una réplica conectada
+     */
+    public boolean isConectada() {
+        return this.conectada;
+    }
+
+    /**
+     * @return Último número de secuencia asignado
+     */
+    public long getSecuencia() {
+        return this.secuencia.get();
+    }
+
+    /**
+     * @return Registros pendientes de enviar a la réplica
+     */
+    public int getNumPendientes() {
+        return this.cola.size();
+    }
+
+    /**
+     * @return Registros enviados a las réplicas
+     */
+    public long getNumEnviados() {
+        return this.numEnviados;
+    }
+
+    /**
+     * @return Puerto en el que se espera a la réplica
+     */
+    public int getPuerto() {
+        return this.servidor.getLocalPort();
+    }
+
+    /**
+     * Devuelve el estado de la replicación en un tipo String
+     *
+     * @return String Estado de la replicación
+     */
+    @Override
+    public String toString() {
+        return String.format("{Escuela: %s, Réplica conectada: %b, Secuencia: %d, Pendientes: %d, Enviados: %d}",
+                this.escuela.getNombre(), this.conectada, this.getSecuencia(), this.getNumPendientes(), this.numEnviados);
+    }
+
+    // ------------------------------------------------------------------------
+    // Hilo emisor
+    // ------------------------------------------------------------------------
+    private void emitir() {
+        List<Registro> lote = new ArrayList<>(PrimarioReplicacion.MAX_LOTE);
+        try (ServerSocket escucha = this.servidor) {
+            while (this.abierto) {
+                Socket socket;
+                try {
+                    socket = escucha.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                try (Socket conexion = socket) {
+                    conexion.setTcpNoDelay(true);
+                    DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(conexion.getOutputStream(), 64 * 1024));
+                    salida.writeLong(this.epoca);
+                    this.enviarInstantanea(salida, lote);
+                    while (this.abierto && !this.desbordada) {
+                        Registro primero = this.cola.poll(PrimarioReplicacion.LATIDO_MS, TimeUnit.MILLISECONDS);
+                        lote.clear();
+                        if (primero != null) {
+                            lote.add(primero);
+                            this.cola.drainTo(lote, PrimarioReplicacion.MAX_LOTE - 1);
+                        }
+                        this.enviarLote(salida, lote);
+                    }
+                } catch (IOException e) {
+                    // La réplica se ha desconectado: se espera otra
+                } finally {
+                    this.conectada = false;
+                    this.desbordada = false;
+                    this.cola.clear();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(String.format("Replicación detenida: %s", e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Envía el estado de todos los barcos con el número de secuencia actual
+    private void enviarInstantanea(DataOutputStream salida, List<Registro> lote) throws IOException {
+        // Primero se activa la cola: los cambios que se crucen con la instantánea llegan después de ella
+        this.cola.clear();
+        this.conectada = true;
+        long actual = this.secuencia.get();
+        Velero[] barcos = this.escuela.getBarcos();
+        lote.clear();
+        for (Velero barco : barcos) {
+            lote.add(Registro.de(barco, actual, false));
+            if (lote.size() == PrimarioReplicacion.MAX_LOTE) {
+                this.enviarLote(salida, lote);
+                lote.clear();
+            }
+        }
+        this.enviarLote(salida, lote);
+    }
+
+    // Lote: número de registros, secuencia actual de la primaria y registros
+    private void enviarLote(DataOutputStream salida, List<Registro> lote) throws IOException {
+        salida.writeInt(lote.size());
+        salida.writeLong(this.secuencia.get());
+        for (Registro registro : lote) {
+            registro.escribir(salida);
+        }
+        salida.flush();
+        this.numEnviados += lote.size();
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main de la primaria de prueba: crea una escuela y saca a navegar
+     * y devuelve a puerto sus veleros sin parar, al ritmo indicado, mostrando
+     * cada segundo el estado de la flota y la latencia de las operaciones.
+     * @param args Puerto, número de veleros y operaciones por segundo (opcionales)
+     * @throws IOException Si no se puede abrir el puerto
+     * @throws InterruptedException Si se interrumpe la espera entre operaciones
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int puerto = (args.length > 0 ? Integer.parseInt(args[0]) : PrimarioReplicacion.PUERTO_POR_DEFECTO);
+        int numVeleros = (args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+        int porSegundo = (args.length > 2 ? Integer.parseInt(args[2]) : 100_000);
+        EscuelaVela escuela = new EscuelaVela("Primaria");
+        Velero[] barcos = new Velero[numVeleros];
+        for (int i = 0; i < numVeleros; i++) {
+            barcos[i] = escuela.crearVelero("V" + i, 1 + i % Velero.MAX_MASTILES, 4);
+        }
+        String[] patrones = {"Ana", "Luis", "Marta", "Pedro", "Sara", "Juan", "Elena"};
+        PrimarioReplicacion primario = new PrimarioReplicacion(escuela, new InetSocketAddress("127.0.0.1", puerto));
+        System.out.println(String.format("PRIMARIA: puerto %d, %d veleros, %d operaciones por segundo", primario.getPuerto(), numVeleros, porSegundo));
+        System.out.println("----------------------------------------------------\n");
+        HistogramaLatencias latencias = new HistogramaLatencias();
+        int porMilisegundo = Math.max(1, porSegundo / 1000);
+        long siguienteInforme = System.nanoTime() + 1_000_000_000L;
+        for (long i = 0;; i++) {
+            Velero barco = barcos[(int) (i % numVeleros)];
+            long t0 = System.nanoTime();
+            if (barco.isNavegando()) {
+                barco.pararNavegacion(1 + (int) (i % 60));
+            } else {
+                barco.iniciarNavegacion(5 + (int) (i % 10), (i & 1) == 0 ? "ceñida" : "empopada", patrones[(int) (i % patrones.length)], 2);
+            }
+            long t1 = System.nanoTime();
+            latencias.registrar(t1 - t0);
+            if (t1 > siguienteInforme) {
+                System.out.println(String.format(" -> %s", escuela));
+                System.out.println(String.format(" -> %s, latencias: %s", primario, latencias));
+                latencias = new HistogramaLatencias();
+                siguienteInforme = t1 + 1_000_000_000L;
+            }
+            if (i % porMilisegundo == porMilisegundo - 1) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package tarea05;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Protocolo binario de órdenes de la flota, compartido por
+ * <code>ServidorBinarioFlota</code> y <code>ClienteBinarioFlota</code>.</p>
+ * <p>
+ * Cada trama empieza con su longitud (un <code>int</code>, sin contarse a sí
+ * misma) y los números van en orden de bytes de red. Los textos se codifican
+ * en UTF-8 precedidos de su longitud en un <code>short</code>, y los barcos se
+ * identifican por su índice en la escuela. Las peticiones de una conexión se
+ * pueden enviar seguidas sin esperar respuesta; las respuestas llegan en el
+ * mismo orden.</p>
+ * <ul>
+ * <li>Petición: longitud, código de operación (<code>byte</code>) y parámetros:
+ * <ul>
+ * <li><code>CREAR</code>: nombre, mástiles (<code>byte</code>), tripulantes (<code>short</code>)</li>
+ * <li><code>SALIDA</code>: barco (<code>int</code>), velocidad (<code>byte</code>), rumbo, patrón, tripulación (<code>short</code>)</li>
+ * <li><code>LLEGADA</code>: barco (<code>int</code>), minutos (<code>int</code>)</li>
+ * <li><code>RUMBO</code>: barco (<code>int</code>), rumbo</li>
+ * <li><code>REGATA</code>: barco (<code>int</code>), rival (<code>int</code>)</li>
+ * </ul></li>
+ * <li>Respuesta: longitud, estado (<code>byte</code>) y, si el estado es
+ * <code>OK</code>, el resultado (el índice del barco creado en <code>CREAR</code>,
+ * el texto del resultado en <code>REGATA</code> y nada en las demás); si no, el
+ * mensaje de error.</li>
+ * </ul>
+ *
+ * @author profesorado
+ */
+final class ProtocoloFlota {
+
+    // ------------------------------------------------------------------------
+    // Códigos de operación
+    // ------------------------------------------------------------------------
+    static final byte CREAR = 1;
+    static final byte SALIDA = 2;
+    static final byte LLEGADA = 3;
+    static final byte RUMBO = 4;
+    static final byte REGATA = 5;
+
+    // ------------------------------------------------------------------------
+    // Estados de las respuestas
+    // ------------------------------------------------------------------------
+    static final byte OK = 0;
+    static final byte ARGUMENTO_INCORRECTO = 1;    // IllegalArgumentException o NullPointerException
+    static final byte ESTADO_INCORRECTO = 2;       // IllegalStateException
+    static final byte NO_EXISTE = 3;               // Barco u operación inexistente
+    static final byte ERROR = 4;                   // Cualquier otro error
+
+    /**
+     * Longitud máxima de una trama (sin contar su longitud).
+     */
+    static final int MAX_TRAMA = 4096;
+
+    private ProtocoloFlota() {
+    }
+
+    // ------------------------------------------------------------------------
+    // Textos
+    // ------------------------------------------------------------------------
+    /**
+     * Escribe un texto en un buffer. Los textos ASCII se copian carácter a
+     * carácter, sin crear arrays intermedios.
+     *
+     * @param buffer Buffer de destino
+     * @param texto Texto (no nulo)
+     *
+     * @throws IllegalArgumentException Si el texto codificado no cabe en una trama
+     */
+    static void ponerTexto(ByteBuffer buffer, String texto) throws IllegalArgumentException {
+        int longitud = texto.length();
+        boolean ascii = (longitud <= ProtocoloFlota.MAX_TRAMA);
+        for (int i = 0; i < longitud && ascii; i++) {
+            ascii = (texto.charAt(i) < 0x80);
+        }
+        if (ascii) {
+            buffer.putShort((short) longitud);
+            for (int i = 0; i < longitud; i++) {
+                buffer.put((byte) texto.charAt(i));
+            }
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > ProtocoloFlota.MAX_TRAMA) {
+            throw new IllegalArgumentException(String.format("El texto de %d bytes no cabe en una trama.\n", bytes.length));
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Lee un texto de un buffer.
+     *
+     * @param buffer Buffer de origen
+     * @return Texto leído
+     *
+     * @throws BufferUnderflowException Si el texto no está completo en el buffer
+     */
+    static String tomarTexto(ByteBuffer buffer) throws BufferUnderflowException {
+        int longitud = buffer.getShort() & 0xFFFF;
+        if (longitud > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[longitud];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ------------------------------------------------------------------------
+    // Tramas
+    // ------------------------------------------------------------------------
+    /**
+     * Reserva el hueco de la longitud de una trama.
+     *
+     * @param buffer Buffer de destino
+     * @return Posición de la longitud, para <code>cerrarTrama</code>
+     */
+    static int abrirTrama(ByteBuffer buffer) {
+        int posicion = buffer.position();
+        buffer.putInt(0);
+        return posicion;
+    }
+
+    /**
+     * Escribe la longitud de una trama ya completa.
+     *
+     * @param buffer Buffer de destino
+     * @param posicion Posición devuelta por <code>abrirTrama</code>
+     */
+    static void cerrarTrama(ByteBuffer buffer, int posicion) {
+        buffer.putInt(posicion, buffer.position() - posicion - Integer.BYTES);
+    }
+
+    /**
+     * Devuelve el estado de respuesta que corresponde a una excepción de la flota.
+     *
+     * @param e Excepción lanzada por la operación
+     * @return Estado de la respuesta
+     */
+    static byte estadoDe(RuntimeException e) {
+        if (e instanceof IndexOutOfBoundsException) {
+            return ProtocoloFlota.NO_EXISTE;
+        }
+        if (e instanceof IllegalStateException) {
+            return ProtocoloFlota.ESTADO_INCORRECTO;
+        }
+        if (e instanceof IllegalArgumentException || e instanceof NullPointerException) {
+            return ProtocoloFlota.ARGUMENTO_INCORRECTO;
+        }
+        return ProtocoloFlota.ERROR;
+    }
+}
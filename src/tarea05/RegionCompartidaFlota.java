@@ -0,0 +1,440 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Región de memoria compartida, proyectada desde un fichero, que contiene los
+ * contadores de una flota y el indicador de navegación de cada barco.</p>
+ * <p>
+ * Varios procesos de la misma máquina (recepción, quiosco del puerto, procesos
+ * por lotes...) pueden abrir el mismo fichero y crear una <code>EscuelaVela</code>
+ * sobre él. Todas las actualizaciones se hacen con operaciones atómicas de
+ * <code>VarHandle</code> directamente sobre la memoria proyectada, de modo que
+ * todos los procesos ven los mismos valores sin bloqueos, sin base de datos y
+ * sin pasar por la red.</p>
+ * <p>
+ * Cada barco ocupa una ranura identificada por su nombre: dos procesos que crean
+ * un velero con el mismo nombre comparten su indicador de navegación, y el barco
+ * sólo se cuenta una vez. El resto del estado del barco (velocidad, rumbo, patrón...)
+ * sigue siendo local a cada proceso. El nombre se guarda entero en la ranura,
+ * por lo que no puede ocupar más de {@value MAX_BYTES_NOMBRE} bytes en UTF-8.</p>
+ * <p>
+ * Si un proceso tarda más de un segundo en publicar la ranura que está
+ * ocupando, se da por terminado y la ranura se marca como abandonada: no se
+ * vuelve a usar, para que ese proceso, si en realidad sólo estaba detenido,
+ * no pueda escribir su nombre encima del de otro barco.</p>
+ * <p>
+ * Estructura del fichero (orden de bytes nativo):</p>
+ * <ul>
+ * <li>Cabecera de {@value TAMANO_CABECERA} bytes: identificador, versión, capacidad
+ * y los contadores <code>numBarcos</code>, <code>numBarcosNavegando</code> y
+ * <code>tiempoTotalNavegacion</code>.</li>
+ * <li>Tabla de ranuras de {@value TAMANO_RANURA} bytes: estado, indicador de
+ * navegación, resumen (<i>hash</i>) del nombre, su longitud y el nombre.</li>
+ * </ul>
+ *
+ * @author profesorado
+ */
+public class RegionCompartidaFlota implements Closeable {
+
+    /**
+     * Tamaño (en bytes) de la cabecera de la región: {@value TAMANO_CABECERA}.
+     */
+    public static final int TAMANO_CABECERA = 64;
+
+    /**
+     * Tamaño (en bytes) de la ranura de cada barco: {@value TAMANO_RANURA}.
+     */
+    public static final int TAMANO_RANURA = 64;
+
+    /**
+     * Capacidad máxima (en barcos) de una región compartida: {@value CAPACIDAD_MAXIMA}.
+     */
+    public static final int CAPACIDAD_MAXIMA = (Integer.MAX_VALUE - TAMANO_CABECERA) / TAMANO_RANURA;
+
+    /**
+     * Longitud máxima (en bytes UTF-8) del nombre de un barco de una región compartida: {@value MAX_BYTES_NOMBRE}.
+     */
+    public static final int MAX_BYTES_NOMBRE = TAMANO_RANURA - RegionCompartidaFlota.RANURA_NOMBRE;
+
+    // Identificador y versión del formato del fichero
+    private static final long IDENTIFICADOR = 0x56454C45524F5331L;      // "VELEROS1"
+    private static final int VERSION = 1;
+
+    // Posiciones de los campos de la cabecera
+    private static final int POS_IDENTIFICADOR = 0;
+    private static final int POS_VERSION = 8;
+    private static final int POS_CAPACIDAD = 12;
+    private static final int POS_NUM_BARCOS = 16;
+    private static final int POS_NUM_NAVEGANDO = 24;
+    private static final int POS_TIEMPO_TOTAL = 32;
+
+    // Posiciones de los campos dentro de cada ranura
+    private static final int RANURA_ESTADO = 0;
+    private static final int RANURA_NAVEGANDO = 4;
+    private static final int RANURA_RESUMEN = 8;
+    private static final int RANURA_LONGITUD = 16;
+    private static final int RANURA_NOMBRE = 20;
+
+    // Estados de una ranura: mientras un proceso la ocupa, el estado es un
+    // número impar propio de ese proceso (OCUPANDOSE en el bit más bajo)
+    private static final int LIBRE = 0;
+    private static final int OCUPANDOSE = 1;
+    private static final int OCUPADA = 2;
+    private static final int ABANDONADA = 4;
+
+    // Tiempo que se espera a que otro proceso publique una ranura antes de darla
+    // por abandonada (el proceso terminó mientras la ocupaba) y descartarla
+    private static final long PLAZO_OCUPACION_NS = TimeUnit.SECONDS.toNanos(1);
+
+    // Accesos atómicos a enteros de 32 y 64 bits sobre la memoria proyectada
+    private static final VarHandle ENTEROS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LARGOS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final Path fichero;                 // Fichero proyectado
+    private final FileChannel canal;            // Canal del fichero
+    private final MappedByteBuffer memoria;     // Memoria compartida
+    private final int capacidad;                // Número de ranuras de la tabla
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    // Constructor privado: las regiones se obtienen con el método abrir
+    private RegionCompartidaFlota(Path fichero, FileChannel canal, MappedByteBuffer memoria, int capacidad) {
+        this.fichero = fichero;
+        this.canal = canal;
+        this.memoria = memoria;
+        this.capacidad = capacidad;
+    }
+
+    /**
+     * Abre (o crea, si no existe) una región compartida en un fichero.
+     * Si el fichero ya existe se respeta la capacidad con la que se creó.
+     *
+     * @param fichero Ruta del fichero de la región
+     * @param capacidad Número máximo de barcos distintos que puede contener la región si se crea
+     * @return La región compartida
+     *
+     * @throws NullPointerException Si el fichero es nulo
+     * @throws IllegalArgumentException Si la capacidad no es válida o el fichero no es una región compartida
+     * @throws IOException Si se produce un error al abrir o proyectar el fichero
+     */
+    public static RegionCompartidaFlota abrir(Path fichero, int capacidad) throws NullPointerException, IllegalArgumentException, IOException {
+        if (fichero == null) {
+            throw new NullPointerException("El fichero de la región compartida no puede ser nulo.\n");
+        }
+        if (capacidad < 1 || capacidad > RegionCompartidaFlota.CAPACIDAD_MAXIMA) {
+            throw new IllegalArgumentException(String.format("La capacidad de la región compartida debe estar entre 1 y %d.\n", RegionCompartidaFlota.CAPACIDAD_MAXIMA));
+        }
+        FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // El bloqueo del fichero evita que dos procesos inicialicen la región a la vez
+            int capacidadRegion;
+            FileLock bloqueo = canal.lock();
+            try {
+                capacidadRegion = RegionCompartidaFlota.inicializar(canal, capacidad);
+            } finally {
+                bloqueo.release();
+            }
+            long tamano = RegionCompartidaFlota.TAMANO_CABECERA + (long) capacidadRegion * RegionCompartidaFlota.TAMANO_RANURA;
+            MappedByteBuffer memoria = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            memoria.order(ByteOrder.nativeOrder());
+            return new RegionCompartidaFlota(fichero, canal, memoria, capacidadRegion);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // Escribe la cabecera si el fichero es nuevo, o la comprueba si ya existía, y devuelve la capacidad
+    private static int inicializar(FileChannel canal, int capacidad) throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(RegionCompartidaFlota.TAMANO_CABECERA).order(ByteOrder.nativeOrder());
+        if (canal.size() == 0) {
+            cabecera.putLong(RegionCompartidaFlota.POS_IDENTIFICADOR, RegionCompartidaFlota.IDENTIFICADOR);
+            cabecera.putInt(RegionCompartidaFlota.POS_VERSION, RegionCompartidaFlota.VERSION);
+            cabecera.putInt(RegionCompartidaFlota.POS_CAPACIDAD, capacidad);
+            canal.write(cabecera, 0);
+            // Las ranuras quedan a cero (libres) al extender el fichero
+            canal.write(ByteBuffer.allocate(1), RegionCompartidaFlota.TAMANO_CABECERA + (long) capacidad * RegionCompartidaFlota.TAMANO_RANURA - 1);
+            canal.force(true);
+            return capacidad;
+        }
+        canal.read(cabecera, 0);
+        if (cabecera.getLong(RegionCompartidaFlota.POS_IDENTIFICADOR) != RegionCompartidaFlota.IDENTIFICADOR
+                || cabecera.getInt(RegionCompartidaFlota.POS_VERSION) != RegionCompartidaFlota.VERSION) {
+            throw new IllegalArgumentException("El fichero no contiene una región compartida de veleros válida.\n");
+        }
+        return cabecera.getInt(RegionCompartidaFlota.POS_CAPACIDAD);
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>fichero</code>
+     * @return Ruta del fichero proyectado
+     */
+    public Path getFichero() {
+        return this.fichero;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>capacidad</code>
+     * @return Número máximo de barcos distintos de la región
+     */
+    public int getCapacidad() {
+        return this.capacidad;
+    }
+
+    /**
+     * Consulta el número de barcos distintos registrados por todos los procesos
+     * @return Número de barcos de la flota compartida
+     */
+    public int getNumBarcos() {
+        return (int) (long) RegionCompartidaFlota.LARGOS.getVolatile(this.memoria, RegionCompartidaFlota.POS_NUM_BARCOS);
+    }
+
+    /**
+     * Consulta el número de barcos navegando según todos los procesos
+     * @return Número de barcos de la flota compartida navegando en el momento actual
+     */
+    public int getNumBarcosNavegando() {
+        return (int) (long) RegionCompartidaFlota.LARGOS.getVolatile(this.memoria, RegionCompartidaFlota.POS_NUM_NAVEGANDO);
+    }
+
+    /**
+     * Consulta los minutos de navegación acumulados por todos los procesos
+     * @return Minutos de navegación de todos los barcos de la flota compartida
+     */
+    public long getTiempoTotalNavegacion() {
+        return (long) RegionCompartidaFlota.LARGOS.getVolatile(this.memoria, RegionCompartidaFlota.POS_TIEMPO_TOTAL);
+    }
+
+    // ------------------------------------------------------------------------
+    // Operaciones sobre las ranuras (sólo desde la clase EscuelaVela)
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve la ranura de un barco, ocupando una nueva si ningún proceso lo ha
+     * registrado todavía (en ese caso se incrementa el número de barcos). Si
+     * otro proceso lleva más de un segundo ocupando una ranura sin publicarla,
+     * se considera que terminó a medias y la ranura se marca como abandonada.
+     *
+     * @param nombreBarco Nombre del barco
+     * @return Número de ranura del barco
+     *
+     * @throws IllegalArgumentException Si el nombre ocupa más de <code>MAX_BYTES_NOMBRE</code> bytes
+     * @throws IllegalStateException Si la región no tiene ranuras libres
+     */
+    int ranura(String nombreBarco) throws IllegalArgumentException, IllegalStateException {
+        byte[] nombre = RegionCompartidaFlota.comprobarNombre(nombreBarco);
+        long resumen = RegionCompartidaFlota.resumen(nombre);
+        int inicio = (int) Math.floorMod(resumen, (long) this.capacidad);
+        int propio = (ThreadLocalRandom.current().nextInt() << 1) | RegionCompartidaFlota.OCUPANDOSE;
+        for (int intento = 0; intento < this.capacidad; intento++) {
+            int ranura = (inicio + intento) % this.capacidad;
+            int base = RegionCompartidaFlota.TAMANO_CABECERA + ranura * RegionCompartidaFlota.TAMANO_RANURA;
+            int estado = (int) RegionCompartidaFlota.ENTEROS.getAcquire(this.memoria, base + RegionCompartidaFlota.RANURA_ESTADO);
+            if (estado == RegionCompartidaFlota.ABANDONADA) {
+                continue;
+            }
+            if (estado == RegionCompartidaFlota.LIBRE
+                    && RegionCompartidaFlota.ENTEROS.compareAndSet(this.memoria, base + RegionCompartidaFlota.RANURA_ESTADO, RegionCompartidaFlota.LIBRE, propio)) {
+                // Se ha ocupado la ranura: se escribe el nombre y se publica, salvo
+                // que otro proceso la haya dado por abandonada entretanto (en ese
+                // caso nadie vuelve a usarla y lo escrito no pisa a ningún barco)
+                this.memoria.putLong(base + RegionCompartidaFlota.RANURA_RESUMEN, resumen);
+                this.memoria.putInt(base + RegionCompartidaFlota.RANURA_LONGITUD, nombre.length);
+                this.memoria.put(base + RegionCompartidaFlota.RANURA_NOMBRE, nombre);
+                if (RegionCompartidaFlota.ENTEROS.compareAndSet(this.memoria, base + RegionCompartidaFlota.RANURA_ESTADO, propio, RegionCompartidaFlota.OCUPADA)) {
+                    RegionCompartidaFlota.LARGOS.getAndAdd(this.memoria, RegionCompartidaFlota.POS_NUM_BARCOS, 1L);
+                    return ranura;
+                }
+                intento--;
+                continue;
+            }
+            if (estado != RegionCompartidaFlota.OCUPADA) {
+                if (!this.esperarPublicacion(base, estado)) {
+                    // La ranura se ha liberado o abandonado: se vuelve a mirar
+                    intento--;
+                    continue;
+                }
+            }
+            if (this.coincide(base, resumen, nombre)) {
+                return ranura;
+            }
+        }
+        throw new IllegalStateException(String.format("La región compartida %s no tiene ranuras libres (%d ranuras).\n", this.fichero, this.capacidad));
+    }
+
+    // Espera a que otro proceso publique la ranura que está ocupando; si el plazo
+    // se agota sin cambios, la abandona. Devuelve true si la ranura queda ocupada
+    private boolean esperarPublicacion(int base, int estado) {
+        long limite = System.nanoTime() + RegionCompartidaFlota.PLAZO_OCUPACION_NS;
+        while (true) {
+            Thread.onSpinWait();
+            int actual = (int) RegionCompartidaFlota.ENTEROS.getAcquire(this.memoria, base + RegionCompartidaFlota.RANURA_ESTADO);
+            if (actual == RegionCompartidaFlota.OCUPADA) {
+                return true;
+            }
+            if (actual != estado) {
+                // Otro proceso la ha liberado, abandonado u ocupado: en este caso se vuelve a empezar el plazo
+                if (actual == RegionCompartidaFlota.LIBRE || actual == RegionCompartidaFlota.ABANDONADA) {
+                    return false;
+                }
+                estado = actual;
+                limite = System.nanoTime() + RegionCompartidaFlota.PLAZO_OCUPACION_NS;
+            } else if (System.nanoTime() - limite > 0) {
+                RegionCompartidaFlota.ENTEROS.compareAndSet(this.memoria, base + RegionCompartidaFlota.RANURA_ESTADO, estado, RegionCompartidaFlota.ABANDONADA);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Marca un barco como navegando, siempre que ningún proceso lo haya hecho antes.
+     *
+     * @param ranura Ranura del barco
+     * @return <code>true</code> si se ha marcado, <code>false</code> si el barco ya estaba navegando
+     */
+    boolean marcarSalida(int ranura) {
+        if (!this.cambiarIndicador(ranura, true)) {
+            return false;
+        }
+        RegionCompartidaFlota.LARGOS.getAndAdd(this.memoria, RegionCompartidaFlota.POS_NUM_NAVEGANDO, 1L);
+        return true;
+    }
+
+    /**
+     * Marca un barco como atracado y acumula su tiempo de navegación, siempre que
+     * el barco estuviera navegando.
+     *
+     * @param ranura Ranura del barco
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado el barco navegando
+     * @return <code>true</code> si se ha marcado, <code>false</code> si el barco no estaba navegando
+     */
+    boolean marcarLlegada(int ranura, int tiempoNavegando) {
+        if (!this.cambiarIndicador(ranura, false)) {
+            return false;
+        }
+        this.sumarContadores(-1, tiempoNavegando);
+        return true;
+    }
+
+    /**
+     * Cambia el indicador de navegación de un barco sin tocar los contadores,
+     * siempre que tuviera el valor contrario.
+     *
+     * @param ranura Ranura del barco
+     * @param navegando Nuevo valor del indicador
+     * @return <code>true</code> si se ha cambiado, <code>false</code> si ya tenía ese valor
+     */
+    boolean cambiarIndicador(int ranura, boolean navegando) {
+        int posicion = RegionCompartidaFlota.TAMANO_CABECERA + ranura * RegionCompartidaFlota.TAMANO_RANURA + RegionCompartidaFlota.RANURA_NAVEGANDO;
+        return RegionCompartidaFlota.ENTEROS.compareAndSet(this.memoria, posicion, navegando ? 0 : 1, navegando ? 1 : 0);
+    }
+
+    /**
+     * Suma a los contadores compartidos la variación de barcos navegando y de
+     * minutos de navegación de un conjunto de salidas y llegadas.
+     *
+     * @param navegando Variación del número de barcos navegando
+     * @param minutos Minutos de navegación que se acumulan
+     */
+    void sumarContadores(long navegando, long minutos) {
+        if (minutos != 0) {
+            RegionCompartidaFlota.LARGOS.getAndAdd(this.memoria, RegionCompartidaFlota.POS_TIEMPO_TOTAL, minutos);
+        }
+        if (navegando != 0) {
+            RegionCompartidaFlota.LARGOS.getAndAdd(this.memoria, RegionCompartidaFlota.POS_NUM_NAVEGANDO, navegando);
+        }
+    }
+
+    /**
+     * Consulta el indicador de navegación compartido de un barco.
+     *
+     * @param ranura Ranura del barco
+     * @return <code>true</code> si algún proceso tiene el barco navegando
+     */
+    boolean isNavegando(int ranura) {
+        int posicion = RegionCompartidaFlota.TAMANO_CABECERA + ranura * RegionCompartidaFlota.TAMANO_RANURA + RegionCompartidaFlota.RANURA_NAVEGANDO;
+        return (int) RegionCompartidaFlota.ENTEROS.getVolatile(this.memoria, posicion) != 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Cierre de la región
+    // ------------------------------------------------------------------------
+    /**
+     * Escribe en disco el contenido de la región y cierra el fichero.
+     * La proyección en memoria sigue siendo válida hasta que se libere el objeto.
+     *
+     * @throws IOException Si se produce un error al cerrar el fichero
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.canal.isOpen()) {
+            this.memoria.force();
+            this.canal.close();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    /**
+     * Comprueba que un nombre de barco cabe en una ranura.
+     *
+     * @param nombreBarco Nombre del barco
+     * @return Bytes UTF-8 del nombre
+     *
+     * @throws IllegalArgumentException Si el nombre ocupa más de <code>MAX_BYTES_NOMBRE</code> bytes
+     */
+    static byte[] comprobarNombre(String nombreBarco) throws IllegalArgumentException {
+        byte[] nombre = nombreBarco.getBytes(StandardCharsets.UTF_8);
+        if (nombre.length > RegionCompartidaFlota.MAX_BYTES_NOMBRE) {
+            throw new IllegalArgumentException(String.format("El nombre del velero %s ocupa %d bytes y en una región compartida no puede pasar de %d.\n",
+                    nombreBarco, nombre.length, RegionCompartidaFlota.MAX_BYTES_NOMBRE));
+        }
+        return nombre;
+    }
+
+    // Comprueba si la ranura que empieza en una posición contiene el nombre indicado
+    private boolean coincide(int base, long resumen, byte[] nombre) {
+        if (this.memoria.getLong(base + RegionCompartidaFlota.RANURA_RESUMEN) != resumen
+                || this.memoria.getInt(base + RegionCompartidaFlota.RANURA_LONGITUD) != nombre.length) {
+            return false;
+        }
+        for (int i = 0; i < nombre.length; i++) {
+            if (this.memoria.get(base + RegionCompartidaFlota.RANURA_NOMBRE + i) != nombre[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Resumen FNV-1a de 64 bits de los bytes de un nombre
+    private static long resumen(byte[] nombre) {
+        long resumen = 0xcbf29ce484222325L;
+        for (byte b : nombre) {
+            resumen ^= (b & 0xFF);
+            resumen *= 0x100000001b3L;
+        }
+        return resumen;
+    }
+}
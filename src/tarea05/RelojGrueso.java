@@ -0,0 +1,200 @@
+package tarea05;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * <p>
+ * Reloj de baja resolución para fechar salidas y llegadas sin coste
+ * apreciable: un hilo demonio copia la hora del sistema cada
+ * {@value RESOLUCION_POR_DEFECTO_MS} ms (o la resolución indicada) en un
+ * atributo <code>volatile</code>, y consultar el reloj es sólo leer ese
+ * atributo. La hora que devuelve puede ir por detrás de la real, como mucho,
+ * en la resolución del reloj (algo más si el sistema está muy cargado), que es
+ * despreciable para tiempos de navegación medidos en minutos.</p>
+ * <p>
+ * Cada reloj creado con el constructor arranca su propio hilo, que sigue vivo
+ * hasta que se llama a <code>close</code>; a partir de entonces el reloj da la
+ * hora exacta del sistema. Lo normal es usar el reloj compartido de
+ * <code>getPorDefecto</code>, que no se cierra nunca. <code>withZone</code>
+ * devuelve relojes que comparten el hilo del original, y cerrar cualquiera de
+ * ellos los cierra todos.</p>
+ *
+ * @author profesorado
+ */
+public final class RelojGrueso extends Clock implements AutoCloseable {
+
+    /**
+     * Resolución (en milisegundos) del reloj por defecto: {@value RESOLUCION_POR_DEFECTO_MS}.
+     */
+    public static final long RESOLUCION_POR_DEFECTO_MS = 10;
+
+    // Valor de la hora de un reloj cerrado: se lee la del sistema
+    private static final long CERRADO = Long.MIN_VALUE;
+
+    // Reloj compartido, creado la primera vez que se pide
+    private static volatile RelojGrueso porDefecto;
+
+    // Hora del sistema, copiada periódicamente por un hilo demonio
+    private static final class Fuente implements Runnable {
+
+        private final long resolucionMs;
+        private volatile long milisegundos;
+        private Thread hilo;
+
+        private Fuente(long resolucionMs) {
+            this.resolucionMs = resolucionMs;
+            this.milisegundos = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(this.resolucionMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                this.milisegundos = System.currentTimeMillis();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final Fuente fuente;        // Hora compartida con los relojes de otras zonas
+    private final ZoneId zona;          // Zona horaria del reloj
+
+    /**
+     * Crea un reloj grueso y arranca su hilo.
+     *
+     * @param resolucionMs Cada cuántos milisegundos se actualiza la hora
+     * @param zona Zona horaria del reloj
+     *
+     * @throws NullPointerException Si la zona es nula
+     * @throws IllegalArgumentException Si la resolución no es positiva
+     */
+    public RelojGrueso(long resolucionMs, ZoneId zona) throws NullPointerException, IllegalArgumentException {
+        if (zona == null) {
+            throw new NullPointerException("La zona horaria del reloj no puede ser nula.\n");
+        }
+        if (resolucionMs <= 0) {
+            throw new IllegalArgumentException("La resolución del reloj debe ser mayor que cero.\n");
+        }
+        this.fuente = new Fuente(resolucionMs);
+        this.zona = zona;
+        this.fuente.hilo = new Thread(this.fuente, "reloj-grueso");
+        this.fuente.hilo.setDaemon(true);
+        this.fuente.hilo.start();
+    }
+
+    // Reloj de otra zona que comparte la hora de uno existente
+    private RelojGrueso(Fuente fuente, ZoneId zona) {
+        this.fuente = fuente;
+        this.zona = zona;
+    }
+
+    /**
+     * Devuelve el reloj grueso compartido, con la resolución por defecto y la
+     * zona horaria del sistema.
+     *
+     * @return Reloj por defecto
+     */
+    public static RelojGrueso getPorDefecto() {
+        RelojGrueso reloj = RelojGrueso.porDefecto;
+        if (reloj == null) {
+            synchronized (RelojGrueso.class) {
+                reloj = RelojGrueso.porDefecto;
+                if (reloj == null) {
+                    reloj = new RelojGrueso(RelojGrueso.RESOLUCION_POR_DEFECTO_MS, ZoneId.systemDefault());
+                    RelojGrueso.porDefecto = reloj;
+                }
+            }
+        }
+        return reloj;
+    }
+
+    /**
+     * @return Cada cuántos milisegundos se actualiza la hora del reloj
+     */
+    public long getResolucionMs() {
+        return this.fuente.resolucionMs;
+    }
+
+    /**
+     * Para el hilo del reloj y espera a que termine. Desde entonces el reloj, y
+     * los de otras zonas que comparten su hora, dan la hora exacta del
+     * sistema. Cerrar el reloj por defecto o un reloj ya cerrado no hace nada.
+     */
+    @Override
+    public void close() {
+        RelojGrueso compartido = RelojGrueso.porDefecto;
+        if (compartido != null && compartido.fuente == this.fuente) {
+            return;
+        }
+        synchronized (this.fuente) {
+            if (this.fuente.milisegundos == RelojGrueso.CERRADO) {
+                return;
+            }
+            boolean interrumpido = false;
+            this.fuente.hilo.interrupt();
+            while (this.fuente.hilo.isAlive()) {
+                try {
+                    this.fuente.hilo.join();
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+            this.fuente.milisegundos = RelojGrueso.CERRADO;
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public long millis() {
+        long milisegundos = this.fuente.milisegundos;
+        return (milisegundos != RelojGrueso.CERRADO ? milisegundos : System.currentTimeMillis());
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(this.millis());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return this.zona;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zona) throws NullPointerException {
+        if (zona == null) {
+            throw new NullPointerException("La zona horaria del reloj no puede ser nula.\n");
+        }
+        return (zona.equals(this.zona) ? this : new RelojGrueso(this.fuente, zona));
+    }
+
+    @Override
+    public boolean equals(Object otro) {
+        return (otro instanceof RelojGrueso) && ((RelojGrueso) otro).fuente == this.fuente && ((RelojGrueso) otro).zona.equals(this.zona);
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this.fuente) ^ this.zona.hashCode();
+    }
+
+    /**
+     * Devuelve el estado del reloj en un tipo String
+     *
+     * @return String Estado del reloj
+     */
+    @Override
+    public String toString() {
+        return String.format("{Reloj grueso: %s, Resolución: %d ms, Zona: %s}", this.instant(), this.fuente.resolucionMs, this.zona);
+    }
+}
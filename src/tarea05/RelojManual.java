@@ -0,0 +1,152 @@
+package tarea05;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Reloj que sólo avanza cuando se le indica, para pruebas y simulaciones: con
+ * él, la duración de cada travesía que se calcula al parar la navegación es
+ * exactamente la que se ha hecho avanzar el reloj.</p>
+ * <p>
+ * Se puede usar desde varios hilos. <code>withZone</code> devuelve relojes
+ * que comparten la hora del original, de modo que avanzar uno avanza todos.</p>
+ *
+ * @author profesorado
+ */
+public final class RelojManual extends Clock {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final AtomicLong milisegundos;      // Hora, compartida con los relojes de otras zonas
+    private final ZoneId zona;                  // Zona horaria del reloj
+
+    /**
+     * Crea un reloj manual parado en un instante, en UTC.
+     *
+     * @param inicio Instante inicial
+     *
+     * @throws NullPointerException Si el instante es nulo
+     */
+    public RelojManual(Instant inicio) throws NullPointerException {
+        this(inicio, ZoneOffset.UTC);
+    }
+
+    /**
+     * Crea un reloj manual parado en un instante.
+     *
+     * @param inicio Instante inicial
+     * @param zona Zona horaria del reloj
+     *
+     * @throws NullPointerException Si el instante o la zona son nulos
+     */
+    public RelojManual(Instant inicio, ZoneId zona) throws NullPointerException {
+        this(new AtomicLong(RelojManual.comprobarInstante(inicio).toEpochMilli()), zona);
+    }
+
+    private RelojManual(AtomicLong milisegundos, ZoneId zona) throws NullPointerException {
+        if (zona == null) {
+            throw new NullPointerException("La zona horaria del reloj no puede ser nula.\n");
+        }
+        this.milisegundos = milisegundos;
+        this.zona = zona;
+    }
+
+    // ------------------------------------------------------------------------
+    // Ajuste del reloj
+    // ------------------------------------------------------------------------
+    /**
+     * Hace avanzar el reloj.
+     *
+     * @param duracion Tiempo que avanza
+     *
+     * @throws NullPointerException Si la duración es nula
+     * @throws IllegalArgumentException Si la duración es negativa
+     */
+    public void avanzar(Duration duracion) throws NullPointerException, IllegalArgumentException {
+        if (duracion == null) {
+            throw new NullPointerException("La duración que avanza el reloj no puede ser nula.\n");
+        }
+        if (duracion.isNegative()) {
+            throw new IllegalArgumentException("El reloj no puede avanzar una duración negativa.\n");
+        }
+        this.milisegundos.addAndGet(duracion.toMillis());
+    }
+
+    /**
+     * Hace avanzar el reloj un número de minutos.
+     *
+     * @param minutos Minutos que avanza
+     *
+     * @throws IllegalArgumentException Si los minutos son negativos
+     */
+    public void avanzarMinutos(long minutos) throws IllegalArgumentException {
+        this.avanzar(Duration.ofMinutes(minutos));
+    }
+
+    /**
+     * Pone el reloj en un instante, que puede ser anterior al actual.
+     *
+     * @param instante Nuevo instante
+     *
+     * @throws NullPointerException Si el instante es nulo
+     */
+    public void ajustar(Instant instante) throws NullPointerException {
+        this.milisegundos.set(RelojManual.comprobarInstante(instante).toEpochMilli());
+    }
+
+    private static Instant comprobarInstante(Instant instante) throws NullPointerException {
+        if (instante == null) {
+            throw new NullPointerException("El instante del reloj no puede ser nulo.\n");
+        }
+        return instante;
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    @Override
+    public long millis() {
+        return this.milisegundos.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(this.milisegundos.get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return this.zona;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zona) throws NullPointerException {
+        return (this.zona.equals(zona) ? this : new RelojManual(this.milisegundos, zona));
+    }
+
+    @Override
+    public boolean equals(Object otro) {
+        return (otro instanceof RelojManual) && ((RelojManual) otro).milisegundos == this.milisegundos && ((RelojManual) otro).zona.equals(this.zona);
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this.milisegundos) ^ this.zona.hashCode();
+    }
+
+    /**
+     * Devuelve el estado del reloj en un tipo String
+     *
+     * @return String Estado del reloj
+     */
+    @Override
+    public String toString() {
+        return String.format("{Reloj manual: %s, Zona: %s}", this.instant(), this.zona);
+    }
+}
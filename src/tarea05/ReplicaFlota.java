@@ -0,0 +1,351 @@
+package tarea05;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Réplica en caliente de la flota de otra máquina virtual: se conecta a un
+ * <code>PrimarioReplicacion</code>, recibe la instantánea inicial y los
+ * cambios posteriores, y los aplica continuamente sobre una escuela local.
+ * Si la conexión se pierde, la réplica vuelve a conectarse cada
+ * {@value ESPERA_RECONEXION_MS} ms y se resincroniza con una instantánea
+ * nueva.</p>
+ * <p>
+ * Los registros de cada barco se aplican sólo si su número de secuencia no es
+ * menor que el del último aplicado, de modo que los cambios anteriores a una
+ * instantánea que lleguen después de ella se descartan. Si la primaria se
+ * reinicia, sus secuencias vuelven a empezar: la réplica lo detecta porque
+ * cambia la época que recibe al conectarse, y olvida las secuencias
+ * anteriores. Cada registro debe corresponder al barco que la réplica tiene
+ * en ese índice; si no (la primaria ha arrancado con otra flota), se corta
+ * la conexión sin aplicarlo. Si aplicar un registro falla de otra forma
+ * (por ejemplo, no se puede crear el barco), el error se anota
+ * (<code>getUltimoError</code>), se corta la conexión y la réplica se
+ * resincroniza desde cero con la instantánea de la conexión siguiente. El estado se copia en
+ * el barco sin las comprobaciones de <code>Velero</code>, que ya hizo la
+ * primaria; los contadores de la escuela se ajustan con la diferencia y los
+ * oyentes de la escuela local reciben los mismos avisos que si los cambios se
+ * hubieran hecho en ella.</p>
+ * <p>
+ * <code>promover</code> deja de replicar y devuelve la escuela, que pasa a
+ * ser la primaria (por ejemplo, con un nuevo <code>PrimarioReplicacion</code>).
+ * La réplica no comprueba que la primaria anterior haya caído: quien la
+ * promueve debe asegurarse de ello.</p>
+ * <p>
+ * Uso: <code>java tarea05.ReplicaFlota [puerto]</code></p>
+ *
+ * @author profesorado
+ */
+public class ReplicaFlota implements Closeable {
+
+    /**
+     * Tiempo entre intentos de conexión con la primaria (en milisegundos).
+     */
+    public static final int ESPERA_RECONEXION_MS = 200;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;              // Escuela en la que se aplican los cambios
+    private final InetSocketAddress primaria;       // Dirección de la primaria
+    private final Thread receptor;                  // Hilo que recibe y aplica los cambios
+    private long[] secuencias;                      // Secuencia del último registro aplicado de cada barco
+    private long epocaPrimaria;                     // Época de las secuencias de la primaria
+    private boolean conEpoca;                       // Indica si ya se ha recibido alguna época
+    private volatile boolean activa;                // Indica si la réplica sigue replicando
+    private volatile boolean conectada;             // Indica si está conectada a la primaria
+    private volatile long secuenciaAplicada;        // Mayor secuencia aplicada
+    private volatile long secuenciaPrimaria;        // Secuencia de la primaria en el último lote recibido
+    private volatile long retrasoMs;                // Retraso del último cambio aplicado (en milisegundos)
+    private volatile long ultimoLote;               // Instante del último lote recibido (ms)
+    private volatile long numAplicados;             // Registros aplicados
+    private volatile long numErrores;               // Fallos al aplicar un registro (cada uno fuerza una resincronización)
+    private volatile RuntimeException ultimoError;  // Último fallo al aplicar un registro (o null)
+
+    /**
+     * Crea una réplica sobre una escuela vacía y empieza a replicar.
+     *
+     * @param escuela Escuela local, sin barcos y sin región compartida
+     * @param primaria Dirección de la primaria
+     *
+     * @throws NullPointerException Si la escuela o la dirección son nulas
+     * @throws IllegalArgumentException Si la escuela tiene barcos o región compartida
+     */
+    public ReplicaFlota(EscuelaVela escuela, InetSocketAddress primaria) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null || primaria == null) {
+            throw new NullPointerException("La escuela y la dirección de la primaria no pueden ser nulas.\n");
+        }
+        if (escuela.getNumBarcos() > 0 || escuela.getRegion() != null) {
+            throw new IllegalArgumentException(String.format("La escuela %s de la réplica debe estar vacía y sin región compartida.\n", escuela.getNombre()));
+        }
+        this.escuela = escuela;
+        this.primaria = primaria;
+        this.secuencias = new long[64];
+        Arrays.fill(this.secuencias, -1);
+        this.conEpoca = false;
+        this.activa = true;
+        this.receptor = new Thread(this::recibir, "receptor-replicacion");
+        this.receptor.setDaemon(true);
+        this.receptor.start();
+    }
+
+    /**
+     * Deja de replicar, tras aplicar el lote que se esté recibiendo, y devuelve la escuela.
+     *
+     * @return La escuela de la réplica
+     *
+     * @throws IllegalStateException Si la réplica ya se ha promovido o cerrado
+     */
+    public EscuelaVela promover() throws IllegalStateException {
+        synchronized (this) {
+            if (!this.activa) {
+                throw new IllegalStateException("La réplica ya se ha promovido o cerrado.\n");
+            }
+            this.activa = false;
+        }
+        this.detener();
+        return this.escuela;
+    }
+
+    /**
+     * Deja de replicar.
+     */
+    @Override
+    public void close() {
+        this.activa = false;
+        this.detener();
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * @return Escuela de la réplica (sólo debe consultarse mientras se replica)
+     */
+    public EscuelaVela getEscuela() {
+        return this.escuela;
+    }
+
+    /**
+     * @return <code>true</code> si la réplica está conectada a la primaria
+     */
+    public boolean isConectada() {
+        return this.conectada;
+    }
+
+    /**
+     * @return Mayor número de secuencia aplicado
+     */
+    public long getSecuenciaAplicada() {
+        return this.secuenciaAplicada;
+    }
+
+    /**
+     * @return Cambios de la primaria que aún no se han aplicado, según el último lote recibido
+     */
+    public long getRetrasoSecuencias() {
+        return Math.max(0, this.secuenciaPrimaria - this.secuenciaAplicada);
+    }
+
+    /**
+     * @return Tiempo entre un cambio en la primaria y su aplicación en la réplica, medido en el último lote (ms)
+     */
+    public long getRetrasoMs() {
+        return this.retrasoMs;
+    }
+
+    /**
+     * @return Tiempo desde el último lote recibido (ms); crece si la primaria deja de responder
+     */
+    public long getMsSinNoticias() {
+        return (this.ultimoLote == 0 ? -1 : System.currentTimeMillis() - this.ultimoLote);
+    }
+
+    /**
+     * @return Registros aplicados
+     */
+    public long getNumAplicados() {
+        return this.numAplicados;
+    }
+
+    /**
+     * @return Número de veces que ha fallado la aplicación de un registro y la réplica se ha resincronizado
+     */
+    public long getNumErrores() {
+        return this.numErrores;
+    }
+
+    /**
+     * @return Último fallo al aplicar un registro, o <code>null</code> si no ha habido ninguno
+     */
+    public RuntimeException getUltimoError() {
+        return this.ultimoError;
+    }
+
+    /**
+     * Devuelve el estado de la réplica en un tipo String
+     *
+     * @return String Estado de la réplica
+     */
+    @Override
+    public String toString() {
+        RuntimeException error = this.ultimoError;
+        return String.format("{Escuela: %s, Conectada: %b, Secuencia aplicada: %d, Retraso: %d cambios / %d ms, Sin noticias: %d ms, Errores: %d%s}",
+                this.escuela.getNombre(), this.conectada, this.secuenciaAplicada, this.getRetrasoSecuencias(), this.retrasoMs, this.getMsSinNoticias(),
+                this.numErrores, (error == null ? "" : " (" + error.toString().trim() + ")"));
+    }
+
+    // ------------------------------------------------------------------------
+    // Hilo receptor
+    // ------------------------------------------------------------------------
+    private void recibir() {
+        while (this.activa) {
+            try (Socket conexion = new Socket()) {
+                conexion.connect(this.primaria, PrimarioReplicacion.LATIDO_MS * 10);
+                conexion.setTcpNoDelay(true);
+                // Sin lotes (ni latidos) durante un tiempo, la primaria se da por perdida
+                conexion.setSoTimeout(PrimarioReplicacion.LATIDO_MS * 10);
+                DataInputStream entrada = new DataInputStream(new BufferedInputStream(conexion.getInputStream(), 64 * 1024));
+                long epoca = entrada.readLong();
+                if (!this.conEpoca || epoca != this.epocaPrimaria) {
+                    // Primaria nueva (o reiniciada): sus secuencias no se comparan con las anteriores
+                    Arrays.fill(this.secuencias, -1);
+                    this.secuenciaAplicada = 0;
+                    this.epocaPrimaria = epoca;
+                    this.conEpoca = true;
+                }
+                this.conectada = true;
+                while (this.activa) {
+                    this.recibirLote(entrada);
+                }
+            } catch (IOException e) {
+                // Primaria caída o inaccesible: se reintenta mientras la réplica siga activa
+            } catch (RuntimeException e) {
+                // Un registro no se ha podido aplicar y el barco puede haber quedado a medias: se anota, se
+                // corta la conexión y se olvidan las secuencias para que la instantánea siguiente lo reponga todo
+                this.ultimoError = e;
+                this.numErrores++;
+                this.conEpoca = false;
+            } finally {
+                this.conectada = false;
+            }
+            if (this.activa) {
+                try {
+                    Thread.sleep(ReplicaFlota.ESPERA_RECONEXION_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void recibirLote(DataInputStream entrada) throws IOException {
+        int numRegistros = entrada.readInt();
+        long secuenciaLote = entrada.readLong();
+        long instante = 0;
+        for (int i = 0; i < numRegistros; i++) {
+            PrimarioReplicacion.Registro registro = PrimarioReplicacion.Registro.leer(entrada);
+            this.aplicar(registro);
+            instante = registro.instante;
+        }
+        long ahora = System.currentTimeMillis();
+        this.secuenciaPrimaria = secuenciaLote;
+        this.retrasoMs = (numRegistros > 0 ? ahora - instante : 0);
+        this.ultimoLote = ahora;
+        this.numAplicados += numRegistros;
+    }
+
+    // Aplica el estado de un barco, si no es anterior al ya aplicado
+    private void aplicar(PrimarioReplicacion.Registro registro) throws IOException {
+        int i = registro.indice;
+        int numBarcos = this.escuela.getNumBarcosLocales();
+        if (i > numBarcos) {
+            throw new IOException(String.format("Registro del barco %d sin haber recibido el %d", i, numBarcos));
+        }
+        if (i == numBarcos) {
+            this.escuela.crearVelero(registro.nombre, registro.mastiles, registro.maxTripulantes);
+            if (i >= this.secuencias.length) {
+                int longitud = this.secuencias.length;
+                this.secuencias = Arrays.copyOf(this.secuencias, Math.max(i + 1, longitud * 2));
+                Arrays.fill(this.secuencias, longitud, this.secuencias.length, -1);
+            }
+        } else if (!this.escuela.getBarco(i).getNombreBarco().equals(registro.nombre)) {
+            throw new IOException(String.format("Registro del barco %s en el índice %d, que en la réplica es %s",
+                    registro.nombre, i, this.escuela.getBarco(i).getNombreBarco()));
+        }
+        if (registro.secuencia < this.secuencias[i]) {
+            return;
+        }
+        this.secuencias[i] = registro.secuencia;
+        this.secuenciaAplicada = Math.max(this.secuenciaAplicada, registro.secuencia);
+
+        Velero barco = this.escuela.getBarco(i);
+        boolean navegaba = barco.isNavegando();
+        int tiempoAnterior = barco.getTiempoTotalNavegacionBarco();
+        int velocidadAnterior = barco.getVelocidad();
+        int rumboAnterior = barco.getIdRumbo();
+        int nuevoRumbo = this.escuela.getRumbos().getId(registro.rumbo);
+        barco.restaurar(registro.navegando, registro.tiempoTotal, registro.velocidad, nuevoRumbo,
+                this.escuela.getPatrones().getId(registro.patron), registro.tripulacion, registro.instanteSalida);
+        this.escuela.registrarLote((registro.navegando ? 1 : 0) - (navegaba ? 1 : 0), registro.tiempoTotal - tiempoAnterior);
+
+        // Avisos a los oyentes locales, como si el cambio se hubiera hecho en esta escuela
+        if (!navegaba && registro.navegando) {
+            this.escuela.notificarNavegacionIniciada(barco);
+        } else if (navegaba && !registro.navegando) {
+            this.escuela.notificarNavegacionParada(barco, registro.tiempoTotal - tiempoAnterior);
+        } else if (registro.navegando) {
+            if (nuevoRumbo != rumboAnterior) {
+                this.escuela.notificarRumboCambiado(barco, rumboAnterior);
+            }
+            if (registro.velocidad != velocidadAnterior) {
+                this.escuela.notificarVelocidadCambiada(barco, velocidadAnterior);
+            }
+        }
+    }
+
+    // Espera a que el receptor termine el lote en curso (como mucho, lo que tarda en darse por perdida la primaria)
+    private void detener() {
+        this.receptor.interrupt();
+        if (Thread.currentThread() != this.receptor) {
+            try {
+                this.receptor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main de la réplica de prueba: replica la flota de
+     * <code>PrimarioReplicacion</code>, muestra cada segundo su estado y, si la
+     * primaria deja de dar noticias durante dos segundos, se promueve.
+     * @param args Puerto de la primaria (opcional)
+     * @throws InterruptedException Si se interrumpe la espera
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int puerto = (args.length > 0 ? Integer.parseInt(args[0]) : PrimarioReplicacion.PUERTO_POR_DEFECTO);
+        ReplicaFlota replica = new ReplicaFlota(new EscuelaVela("Réplica"), new InetSocketAddress("127.0.0.1", puerto));
+        System.out.println(String.format("RÉPLICA de la primaria del puerto %d", puerto));
+        System.out.println("----------------------------------------------------\n");
+        while (true) {
+            Thread.sleep(1000);
+            System.out.println(String.format(" -> %s", replica));
+            System.out.println(String.format(" -> %s", replica.getEscuela()));
+            if (replica.getMsSinNoticias() > 2000) {
+                EscuelaVela escuela = replica.promover();
+                System.out.println(String.format(" -> Primaria perdida: réplica promovida con %s", escuela));
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package tarea05;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de veleros: los barcos creados y los
+ * errores encontrados en el fichero, ordenados por número de línea.
+ *
+ * @author profesorado
+ */
+public class ResultadoImportacion {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final Velero[] veleros;                 // Veleros creados, en el orden del fichero
+    private final List<ErrorImportacion> errores;   // Errores encontrados, en el orden del fichero
+    private final long numLineas;                   // Número de líneas leídas del fichero
+    private final long tiempoNanos;                 // Duración de la importación (en nanosegundos)
+
+    /**
+     * Constructor de la clase <code>ResultadoImportacion</code>.
+     *
+     * @param veleros Veleros creados
+     * @param errores Errores encontrados
+     * @param numLineas Número de líneas leídas del fichero
+     * @param tiempoNanos Duración de la importación (en nanosegundos)
+     */
+    ResultadoImportacion(Velero[] veleros, List<ErrorImportacion> errores, long numLineas, long tiempoNanos) {
+        this.veleros = veleros;
+        this.errores = Collections.unmodifiableList(errores);
+        this.numLineas = numLineas;
+        this.tiempoNanos = tiempoNanos;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar los veleros importados
+     * @return Copia del array de veleros creados, en el orden del fichero
+     */
+    public Velero[] getVeleros() {
+        return this.veleros.clone();
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el número de veleros importados
+     * @return Número de veleros creados
+     */
+    public int getNumImportados() {
+        return this.veleros.length;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar los errores de la importación
+     * @return Lista (no modificable) de errores, ordenada por número de línea
+     */
+    public List<ErrorImportacion> getErrores() {
+        return this.errores;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numLineas</code>
+     * @return Número de líneas leídas del fichero
+     */
+    public long getNumLineas() {
+        return this.numLineas;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>tiempoNanos</code>
+     * @return Duración de la importación (en nanosegundos)
+     */
+    public long getTiempoNanos() {
+        return this.tiempoNanos;
+    }
+
+    /**
+     * Devuelve un resumen del resultado en un mensaje formateado en un tipo String
+     *
+     * @return String Resumen de la importación
+     */
+    @Override
+    public String toString() {
+        return String.format("{Líneas leídas: %d, Veleros importados: %d, Errores: %d, Tiempo: %.3f segundos}",
+                this.numLineas, this.veleros.length, this.errores.size(), this.tiempoNanos / 1e9);
+    }
+}
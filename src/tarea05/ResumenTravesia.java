@@ -0,0 +1,99 @@
+package tarea05;
+
+/**
+ * Resumen de la telemetría de una travesía de un velero: número de muestras,
+ * velocidad media y máxima, rumbo medio y escora media y máxima.
+ *
+ * @author profesorado
+ */
+public class ResumenTravesia {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final Velero barco;             // Velero de la travesía
+    private final long numMuestras;         // Número de muestras recibidas
+    private final double velocidadMedia;    // Velocidad media (en nudos)
+    private final double velocidadMaxima;   // Velocidad máxima (en nudos)
+    private final double rumboMedio;        // Rumbo medio (en grados, entre 0 y 360)
+    private final double escoraMedia;       // Escora media (en grados)
+    private final double escoraMaxima;      // Escora máxima (en grados)
+
+    // Constructor de paquete: los resúmenes los crea TelemetriaFlota al terminar la travesía
+    ResumenTravesia(Velero barco, long numMuestras, double velocidadMedia, double velocidadMaxima, double rumboMedio, double escoraMedia, double escoraMaxima) {
+        this.barco = barco;
+        this.numMuestras = numMuestras;
+        this.velocidadMedia = velocidadMedia;
+        this.velocidadMaxima = velocidadMaxima;
+        this.rumboMedio = rumboMedio;
+        this.escoraMedia = escoraMedia;
+        this.escoraMaxima = escoraMaxima;
+    }
+
+    /**
+     * @return Velero de la travesía
+     */
+    public Velero getBarco() {
+        return this.barco;
+    }
+
+    /**
+     * @return Número de muestras recibidas durante la travesía
+     */
+    public long getNumMuestras() {
+        return this.numMuestras;
+    }
+
+    /**
+     * @return Velocidad media (en nudos)
+     */
+    public double getVelocidadMedia() {
+        return this.velocidadMedia;
+    }
+
+    /**
+     * @return Velocidad máxima (en nudos)
+     */
+    public double getVelocidadMaxima() {
+        return this.velocidadMaxima;
+    }
+
+    /**
+     * @return Rumbo medio (en grados, entre 0 y 360)
+     */
+    public double getRumboMedio() {
+        return this.rumboMedio;
+    }
+
+    /**
+     * @return Escora media (en grados)
+     */
+    public double getEscoraMedia() {
+        return this.escoraMedia;
+    }
+
+    /**
+     * @return Escora máxima (en grados)
+     */
+    public double getEscoraMaxima() {
+        return this.escoraMaxima;
+    }
+
+    /**
+     * Devuelve el resumen en un tipo String
+     *
+     * @return String Resumen de la travesía
+     */
+    @Override
+    public String toString() {
+        return String.format("{Barco: %s, Muestras: %d, Velocidad media: %.2f nudos, Velocidad máxima: %.2f nudos, Rumbo medio: %.1fº, Escora media: %.1fº, Escora máxima: %.1fº}",
+                this.barco.getNombreBarco(),
+                this.numMuestras,
+                this.velocidadMedia,
+                this.velocidadMaxima,
+                this.rumboMedio,
+                this.escoraMedia,
+                this.escoraMaxima
+        );
+    }
+}
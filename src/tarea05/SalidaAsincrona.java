@@ -0,0 +1,411 @@
+package tarea05;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Salida de mensajes asíncrona: los hilos que escriben sólo dejan el texto en
+ * una cola acotada, y un único hilo escritor la vacía por lotes, codifica los
+ * mensajes en UTF-8 en un buffer grande y lo escribe en un canal con una sola
+ * llamada por lote.</p>
+ * <p>
+ * Cuando la cola está llena se aplica la <code>PoliticaDesbordamiento</code>
+ * indicada. Los mensajes de un mismo hilo se escriben en orden. Al cerrar la
+ * salida, o al terminar la máquina virtual, se escriben los mensajes pendientes.
+ * El canal no se cierra: pertenece a quien crea la salida.</p>
+ * <p>
+ * Los caracteres que no se pueden codificar (por ejemplo, sustitutos sueltos)
+ * se sustituyen por <code>?</code>. Los errores de escritura en el canal no
+ * detienen al escritor: se guardan y <code>close</code> lanza el último. Si el
+ * hilo escritor termina por un error inesperado, las escrituras siguientes
+ * fallan en lugar de quedarse esperando.</p>
+ *
+ * @author profesorado
+ */
+public class SalidaAsincrona implements SalidaRegistro {
+
+    /**
+     * Capacidad por defecto de la cola de mensajes.
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 65_536;
+
+    /**
+     * Tamaño por defecto del buffer de escritura (en bytes).
+     */
+    public static final int TAMANO_BUFFER_POR_DEFECTO = 256 * 1024;
+
+    // Número máximo de mensajes que el escritor retira de la cola de una vez
+    private static final int MAX_LOTE = 4096;
+
+    // Tiempo máximo que el escritor espera un mensaje antes de comprobar si la salida se ha cerrado
+    private static final long ESPERA_ESCRITOR_MS = 50;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final ArrayBlockingQueue<String> cola;          // Mensajes pendientes de escribir
+    private final PoliticaDesbordamiento politica;          // Comportamiento con la cola llena
+    private final WritableByteChannel canal;                // Destino de los mensajes
+    private final ByteBuffer buffer;                        // Buffer del escritor
+    private final CharsetEncoder codificador;               // Codificador UTF-8 del escritor
+    private final Thread escritor;                          // Hilo que vacía la cola
+    private final Thread alTerminar;                        // Cierre al terminar la máquina virtual
+    private final AtomicLong numEncolados;                  // Mensajes aceptados en la cola
+    private final AtomicLong numDescartados;                // Mensajes descartados por desbordamiento
+    private final Object monitor;                           // Aviso de lotes escritos (para flush)
+    private volatile long numEscritos;                      // Mensajes escritos en el canal
+    private volatile long numDescartadosEnCola;             // Mensajes aceptados y luego descartados
+    private volatile IOException error;                     // Último error de escritura
+    private volatile boolean cerrada;                       // Indica si la salida se ha cerrado
+    private volatile boolean escritorTerminado;             // Indica si el hilo escritor ha terminado
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Crea una salida asíncrona con la capacidad y el tamaño de buffer por defecto.
+     *
+     * @param canal Canal en el que se escriben los mensajes
+     * @param politica Comportamiento cuando la cola está llena
+     *
+     * @throws NullPointerException Si el canal o la política son nulos
+     */
+    public SalidaAsincrona(WritableByteChannel canal, PoliticaDesbordamiento politica) throws NullPointerException {
+        this(canal, SalidaAsincrona.CAPACIDAD_POR_DEFECTO, SalidaAsincrona.TAMANO_BUFFER_POR_DEFECTO, politica);
+    }
+
+    /**
+     * Crea una salida asíncrona y arranca su hilo escritor.
+     *
+     * @param canal Canal en el que se escriben los mensajes
+     * @param capacidad Número máximo de mensajes pendientes
+     * @param tamanoBuffer Tamaño del buffer de escritura (en bytes)
+     * @param politica Comportamiento cuando la cola está llena
+     *
+     * @throws NullPointerException Si el canal o la política son nulos
+     * @throws IllegalArgumentException Si la capacidad es menor que uno o el buffer menor de 1 KB
+     */
+    public SalidaAsincrona(WritableByteChannel canal, int capacidad, int tamanoBuffer, PoliticaDesbordamiento politica) throws NullPointerException, IllegalArgumentException {
+        if (canal == null || politica == null) {
+            throw new NullPointerException("El canal y la política de desbordamiento no pueden ser nulos.\n");
+        }
+        if (capacidad < 1) {
+            throw new IllegalArgumentException(String.format("La capacidad %d debe ser al menos uno.\n", capacidad));
+        }
+        if (tamanoBuffer < 1024) {
+            throw new IllegalArgumentException(String.format("El tamaño del buffer %d debe ser al menos de 1024 bytes.\n", tamanoBuffer));
+        }
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.politica = politica;
+        this.canal = canal;
+        this.buffer = ByteBuffer.allocateDirect(tamanoBuffer);
+        this.codificador = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.numEncolados = new AtomicLong();
+        this.numDescartados = new AtomicLong();
+        this.monitor = new Object();
+        this.numEscritos = 0;
+        this.numDescartadosEnCola = 0;
+        this.error = null;
+        this.cerrada = false;
+        this.escritorTerminado = false;
+
+        this.escritor = new Thread(this::vaciarCola, "salida-asincrona");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+        this.alTerminar = new Thread(this::close, "salida-asincrona-cierre");
+        Runtime.getRuntime().addShutdownHook(this.alTerminar);
+    }
+
+    /**
+     * Crea una salida asíncrona por la salida estándar del proceso. Los mensajes
+     * no pasan por <code>System.out</code>, por lo que no deben mezclarse con
+     * escrituras directas en la consola.
+     *
+     * @param politica Comportamiento cuando la cola está llena
+     * @return Salida asíncrona por la salida estándar
+     *
+     * @throws NullPointerException Si la política es nula
+     */
+    public static SalidaAsincrona consola(PoliticaDesbordamiento politica) throws NullPointerException {
+        System.out.flush();
+        return new SalidaAsincrona(Channels.newChannel(new FileOutputStream(FileDescriptor.out)), politica);
+    }
+
+    // ------------------------------------------------------------------------
+    // Escritura de mensajes
+    // ------------------------------------------------------------------------
+    /**
+     * Deja un texto en la cola para que lo escriba el hilo escritor. Con la
+     * política <code>BLOQUEAR</code> y la cola llena, espera a que haya sitio
+     * mientras el escritor siga en marcha.
+     *
+     * @param texto Texto que se escribe
+     *
+     * @throws IllegalStateException Si la salida está cerrada o su hilo escritor ha terminado
+     */
+    @Override
+    public void escribir(String texto) throws IllegalStateException {
+        this.comprobarAbierta();
+        String mensaje = String.valueOf(texto);
+        switch (this.politica) {
+            case BLOQUEAR:
+                try {
+                    while (!this.cola.offer(mensaje, SalidaAsincrona.ESPERA_ESCRITOR_MS, TimeUnit.MILLISECONDS)) {
+                        this.comprobarAbierta();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.numDescartados.incrementAndGet();
+                    return;
+                }
+                break;
+            case DESCARTAR_NUEVOS:
+                if (!this.cola.offer(mensaje)) {
+                    this.numDescartados.incrementAndGet();
+                    return;
+                }
+                break;
+            case DESCARTAR_ANTIGUOS:
+                while (!this.cola.offer(mensaje)) {
+                    if (this.cola.poll() != null) {
+                        this.descartarEnCola();
+                    }
+                }
+                break;
+        }
+        // Si la salida se ha cerrado mientras tanto, puede que nadie vaya a escribir el mensaje
+        if ((this.cerrada || this.escritorTerminado) && this.cola.remove(mensaje)) {
+            this.comprobarAbierta();
+        }
+        this.numEncolados.incrementAndGet();
+    }
+
+    /**
+     * Espera a que el hilo escritor haya procesado todos los mensajes aceptados
+     * hasta el momento, o a que termine.
+     */
+    @Override
+    public void flush() {
+        long objetivo = this.numEncolados.get();
+        synchronized (this.monitor) {
+            while (this.numEscritos + this.numDescartadosEnCola < objetivo && this.escritor.isAlive()) {
+                try {
+                    this.monitor.wait(SalidaAsincrona.ESPERA_ESCRITOR_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra la salida: deja de aceptar mensajes, espera a que se escriban los
+     * pendientes y detiene el hilo escritor. Cerrar una salida ya cerrada no tiene efecto.
+     *
+     * @throws UncheckedIOException Si se ha producido algún error de escritura en el canal
+     */
+    @Override
+    public void close() throws UncheckedIOException {
+        synchronized (this.monitor) {
+            if (this.cerrada) {
+                return;
+            }
+            this.cerrada = true;
+        }
+        boolean interrumpido = false;
+        while (this.escritor.isAlive()) {
+            try {
+                this.escritor.join();
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+        // Mensajes que el escritor ya no ha llegado a ver (si terminó por un error)
+        if (!this.cola.isEmpty()) {
+            this.buffer.clear();
+            this.codificador.reset();
+            List<String> lote = new ArrayList<>(SalidaAsincrona.MAX_LOTE);
+            try {
+                while (this.cola.drainTo(lote, SalidaAsincrona.MAX_LOTE) > 0) {
+                    this.escribirLote(lote);
+                    this.contarEscritos(lote.size());
+                    lote.clear();
+                }
+            } catch (RuntimeException e) {
+                this.error = new IOException("Error al escribir los mensajes pendientes de la salida asíncrona.\n", e);
+            }
+        }
+        if (Thread.currentThread() != this.alTerminar) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.alTerminar);
+            } catch (IllegalStateException e) {
+                // La máquina virtual ya está terminando
+            }
+            if (this.error != null) {
+                throw new UncheckedIOException("Error al escribir en la salida asíncrona.\n", this.error);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>politica</code>
+     * @return Política de desbordamiento de la salida
+     */
+    public PoliticaDesbordamiento getPolitica() {
+        return this.politica;
+    }
+
+    /**
+     * Devuelve el número de mensajes que esperan en la cola.
+     * @return Mensajes pendientes de escribir
+     */
+    public int getNumPendientes() {
+        return this.cola.size();
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numEscritos</code>
+     * @return Número de mensajes escritos en el canal
+     */
+    public long getNumEscritos() {
+        return this.numEscritos;
+    }
+
+    /**
+     * Devuelve el número de mensajes perdidos por la política de desbordamiento.
+     * @return Número de mensajes descartados
+     */
+    public long getNumDescartados() {
+        return this.numDescartados.get();
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>error</code>
+     * @return Último error de escritura en el canal, o <code>null</code> si no se ha producido ninguno
+     */
+    public IOException getError() {
+        return this.error;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Comprueba que la salida puede aceptar mensajes
+    private void comprobarAbierta() throws IllegalStateException {
+        if (this.cerrada) {
+            throw new IllegalStateException("La salida asíncrona está cerrada.\n");
+        }
+        if (this.escritorTerminado) {
+            throw new IllegalStateException("El hilo escritor de la salida asíncrona ha terminado por un error.\n", this.error);
+        }
+    }
+
+    // Cuenta los mensajes de un lote escrito y avisa a quien espera en flush
+    private void contarEscritos(int numMensajes) {
+        synchronized (this.monitor) {
+            this.numEscritos += numMensajes;
+            this.monitor.notifyAll();
+        }
+    }
+
+    // Cuenta un mensaje aceptado que se ha descartado para hacer sitio a otro
+    private void descartarEnCola() {
+        this.numDescartados.incrementAndGet();
+        synchronized (this.monitor) {
+            this.numDescartadosEnCola++;
+            this.monitor.notifyAll();
+        }
+    }
+
+    // Hilo escritor: si termina por un error inesperado, lo guarda y deja de aceptar mensajes
+    private void vaciarCola() {
+        try {
+            this.vaciarLotes();
+        } catch (RuntimeException e) {
+            this.error = new IOException("El hilo escritor de la salida asíncrona ha terminado por un error.\n", e);
+        } finally {
+            this.escritorTerminado = true;
+            synchronized (this.monitor) {
+                this.monitor.notifyAll();
+            }
+        }
+    }
+
+    // Bucle del hilo escritor: retira lotes de la cola hasta que la salida se cierra y queda vacía
+    private void vaciarLotes() {
+        List<String> lote = new ArrayList<>(SalidaAsincrona.MAX_LOTE);
+        while (true) {
+            String primero;
+            try {
+                primero = this.cola.poll(SalidaAsincrona.ESPERA_ESCRITOR_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                primero = null;
+            }
+            if (primero == null) {
+                if (this.cerrada && this.cola.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            lote.add(primero);
+            this.cola.drainTo(lote, SalidaAsincrona.MAX_LOTE - 1);
+            this.escribirLote(lote);
+            this.contarEscritos(lote.size());
+            lote.clear();
+        }
+    }
+
+    // Codifica un lote de mensajes en el buffer y lo escribe en el canal
+    private void escribirLote(List<String> lote) {
+        try {
+            for (String mensaje : lote) {
+                CharBuffer caracteres = CharBuffer.wrap(mensaje);
+                CoderResult resultado;
+                do {
+                    resultado = this.codificador.encode(caracteres, this.buffer, false);
+                    if (resultado.isOverflow()) {
+                        this.escribirBuffer();
+                    }
+                } while (resultado.isOverflow());
+            }
+            this.escribirBuffer();
+        } catch (IOException e) {
+            this.error = e;
+            this.buffer.clear();
+        }
+    }
+
+    // Escribe el contenido del buffer en el canal
+    private void escribirBuffer() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.canal.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
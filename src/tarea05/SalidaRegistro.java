@@ -0,0 +1,124 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.PrintStream;
+
+/**
+ * <p>
+ * Destino de los mensajes que muestran los programas de prueba. Permite
+ * sustituir la escritura directa en la consola, que bloquea y vacía el flujo en
+ * cada mensaje, por una salida asíncrona como <code>SalidaAsincrona</code>.</p>
+ * <p>
+ * Las implementaciones deben poder utilizarse desde varios hilos a la vez y
+ * conservar el orden de los mensajes escritos por un mismo hilo.</p>
+ *
+ * @author profesorado
+ */
+public interface SalidaRegistro extends Closeable, Flushable {
+
+    /**
+     * Escribe un texto tal cual, sin añadir un salto de línea.
+     *
+     * @param texto Texto que se escribe
+     */
+    void escribir(String texto);
+
+    /**
+     * Escribe un texto con formato (equivale a <code>printf</code>).
+     *
+     * @param formato Cadena de formato
+     * @param argumentos Argumentos del formato
+     */
+    default void escribirFormato(String formato, Object... argumentos) {
+        this.escribir(String.format(formato, argumentos));
+    }
+
+    /**
+     * Escribe un texto seguido de un salto de línea (equivale a <code>println</code>).
+     *
+     * @param texto Texto que se escribe
+     */
+    default void escribirLinea(Object texto) {
+        this.escribir(texto + System.lineSeparator());
+    }
+
+    /**
+     * Escribe un salto de línea.
+     */
+    default void escribirLinea() {
+        this.escribir(System.lineSeparator());
+    }
+
+    /**
+     * Espera a que se hayan escrito en el destino todos los mensajes anteriores.
+     */
+    @Override
+    void flush();
+
+    /**
+     * Escribe los mensajes pendientes y libera los recursos de la salida.
+     */
+    @Override
+    void close();
+
+    /**
+     * Devuelve una salida síncrona que escribe directamente en <code>System.out</code>
+     * (el flujo que esté configurado en cada momento). Es la salida por defecto.
+     *
+     * @return Salida síncrona por la consola
+     */
+    static SalidaRegistro consola() {
+        return new SalidaRegistro() {
+            @Override
+            public void escribir(String texto) {
+                System.out.print(texto);
+            }
+
+            @Override
+            public void escribirFormato(String formato, Object... argumentos) {
+                System.out.printf(formato, argumentos);
+            }
+
+            @Override
+            public void flush() {
+                System.out.flush();
+            }
+
+            @Override
+            public void close() {
+                System.out.flush();
+            }
+        };
+    }
+
+    /**
+     * Devuelve una salida síncrona que escribe en un flujo de impresión.
+     *
+     * @param flujo Flujo en el que se escribe (no se cierra con la salida)
+     * @return Salida síncrona por el flujo indicado
+     *
+     * @throws NullPointerException Si el flujo es nulo
+     */
+    static SalidaRegistro de(PrintStream flujo) throws NullPointerException {
+        if (flujo == null) {
+            throw new NullPointerException("El flujo de salida no puede ser nulo.\n");
+        }
+        return new SalidaRegistro() {
+            @Override
+            public void escribir(String texto) {
+                flujo.print(texto);
+            }
+
+            @Override
+            public void flush() {
+                flujo.flush();
+            }
+
+            @Override
+            public void close() {
+                flujo.flush();
+            }
+        };
+    }
+}
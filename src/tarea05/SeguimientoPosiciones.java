@@ -0,0 +1,377 @@
+package tarea05;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Seguimiento de la posición de los veleros de una escuela que están navegando,
+ * con un índice espacial de rejilla uniforme para detectar los barcos que se
+ * encuentran demasiado cerca.</p>
+ * <p>
+ * Las posiciones se expresan en metros hacia el este y hacia el norte desde el
+ * puerto, y se reciben de un servicio de posicionamiento con
+ * <code>actualizarPosicion</code>. En cada <code>ciclo</code> se reconstruye el
+ * índice: el plano se divide en celdas del tamaño de la distancia de alerta, de
+ * modo que dos barcos a menos de esa distancia están en la misma celda o en dos
+ * celdas vecinas. Las celdas se agrupan por dispersión en una tabla proporcional
+ * al número de barcos y se ordenan por recuento, así que construir el índice y
+ * revisar todas las parejas cercanas cuesta O(n) en lugar de O(n²).</p>
+ * <p>
+ * Al volver a puerto, un velero deja de tener posición. Las consultas de barcos
+ * cercanos utilizan las posiciones del último ciclo. Los métodos están
+ * sincronizados, por lo que el servicio de posicionamiento y el ciclo pueden
+ * ejecutarse en hilos distintos.</p>
+ *
+ * @author profesorado
+ */
+public class SeguimientoPosiciones implements OyenteFlota {
+
+    /**
+     * Receptor de las alertas de proximidad de un ciclo.
+     */
+    public interface OyenteProximidad {
+
+        /**
+         * Aviso de dos veleros que navegan a menos de la distancia de alerta.
+         *
+         * @param barco Uno de los veleros
+         * @param otroBarco El otro velero
+         * @param distancia Distancia entre ambos (en metros)
+         */
+        void proximidad(Velero barco, Velero otroBarco, double distancia);
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;      // Escuela cuyos barcos se siguen
+    private final double distanciaAlerta;   // Distancia mínima de seguridad (en metros), y lado de las celdas
+
+    // Posiciones actuales, por índice de barco en la escuela
+    private double[] este;                  // Metros hacia el este desde el puerto
+    private double[] norte;                 // Metros hacia el norte desde el puerto
+    private boolean[] conPosicion;          // Indica si el barco tiene una posición válida
+
+    // Índice del último ciclo: barcos ordenados por cubeta de dispersión de su celda
+    private int numIndexados;               // Barcos incluidos en el índice
+    private int[] inicioCubeta;             // Primera posición de cada cubeta en los arrays ordenados
+    private int[] barcoOrdenado;            // Índice de barco en la escuela
+    private int[] celdaX;                   // Coordenada X de la celda de cada barco ordenado
+    private int[] celdaY;                   // Coordenada Y de la celda de cada barco ordenado
+    private double[] esteOrdenado;          // Posición hacia el este de cada barco ordenado
+    private double[] norteOrdenado;         // Posición hacia el norte de cada barco ordenado
+    private int mascaraCubetas;             // Número de cubetas menos uno (potencia de dos)
+
+    /**
+     * Crea el seguimiento de posiciones de una escuela y lo conecta a sus sucesos.
+     *
+     * @param escuela Escuela cuyos barcos se siguen
+     * @param distanciaAlerta Distancia (en metros) por debajo de la cual se avisa de que dos barcos están demasiado cerca
+     *
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si la distancia no es positiva
+     */
+    public SeguimientoPosiciones(EscuelaVela escuela, double distanciaAlerta) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del seguimiento no puede ser nula.\n");
+        }
+        if (!(distanciaAlerta > 0)) {
+            throw new IllegalArgumentException(String.format("La distancia de alerta %.2f debe ser positiva.\n", distanciaAlerta));
+        }
+        this.escuela = escuela;
+        this.distanciaAlerta = distanciaAlerta;
+        int capacidad = Math.max(16, escuela.getNumBarcosLocales());
+        this.este = new double[capacidad];
+        this.norte = new double[capacidad];
+        this.conPosicion = new boolean[capacidad];
+        this.numIndexados = 0;
+        this.inicioCubeta = new int[2];
+        this.barcoOrdenado = new int[0];
+        this.celdaX = new int[0];
+        this.celdaY = new int[0];
+        this.esteOrdenado = new double[0];
+        this.norteOrdenado = new double[0];
+        this.mascaraCubetas = 0;
+        escuela.anadirOyente(this);
+    }
+
+    /**
+     * Desconecta el seguimiento de los sucesos de la escuela.
+     */
+    public void desconectar() {
+        this.escuela.eliminarOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Actualización de posiciones
+    // ------------------------------------------------------------------------
+    /**
+     * Actualiza la posición de un velero de la escuela.
+     *
+     * @param barco Velero cuya posición se recibe
+     * @param metrosEste Metros hacia el este desde el puerto
+     * @param metrosNorte Metros hacia el norte desde el puerto
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no es de la escuela o la posición no es un número
+     */
+    public void actualizarPosicion(Velero barco, double metrosEste, double metrosNorte) throws NullPointerException, IllegalArgumentException {
+        if (barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        this.actualizarPosicion(barco.getIndice(), metrosEste, metrosNorte);
+    }
+
+    /**
+     * Actualiza la posición de un velero a partir de su índice en la escuela
+     * (la forma habitual de identificar los barcos en un servicio de posicionamiento).
+     *
+     * @param indice Índice del barco en la escuela
+     * @param metrosEste Metros hacia el este desde el puerto
+     * @param metrosNorte Metros hacia el norte desde el puerto
+     *
+     * @throws IndexOutOfBoundsException Si no existe ningún barco con ese índice
+     * @throws IllegalArgumentException Si la posición no es un número finito
+     */
+    public synchronized void actualizarPosicion(int indice, double metrosEste, double metrosNorte) throws IndexOutOfBoundsException, IllegalArgumentException {
+        if (indice < 0 || indice >= this.escuela.getNumBarcosLocales()) {
+            throw new IndexOutOfBoundsException(String.format("No existe ningún velero con el índice %d.\n", indice));
+        }
+        if (!Double.isFinite(metrosEste) || !Double.isFinite(metrosNorte)) {
+            throw new IllegalArgumentException("La posición del velero debe ser un número finito.\n");
+        }
+        if (indice >= this.este.length) {
+            int capacidad = Math.max(indice + 1, this.este.length * 2);
+            this.este = Arrays.copyOf(this.este, capacidad);
+            this.norte = Arrays.copyOf(this.norte, capacidad);
+            this.conPosicion = Arrays.copyOf(this.conPosicion, capacidad);
+        }
+        this.este[indice] = metrosEste;
+        this.norte[indice] = metrosNorte;
+        this.conPosicion[indice] = true;
+    }
+
+    /**
+     * Al volver a puerto, el velero deja de tener posición en el agua.
+     *
+     * @param barco Velero que vuelve a puerto
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado navegando
+     */
+    @Override
+    public synchronized void navegacionParada(Velero barco, int tiempoNavegando) {
+        if (barco.getIndice() < this.conPosicion.length) {
+            this.conPosicion[barco.getIndice()] = false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Ciclo de detección
+    // ------------------------------------------------------------------------
+    /**
+     * Reconstruye el índice con las posiciones actuales de los barcos que están
+     * navegando y avisa de todas las parejas que están a menos de la distancia
+     * de alerta (cada pareja una sola vez).
+     *
+     * @param oyente Receptor de las alertas (puede ser nulo si sólo se quieren contar)
+     * @return Número de parejas de barcos demasiado cercanos
+     */
+    public synchronized int ciclo(OyenteProximidad oyente) {
+        this.construirIndice();
+        double limite = this.distanciaAlerta * this.distanciaAlerta;
+        int numAlertas = 0;
+        for (int i = 0; i < this.numIndexados; i++) {
+            int cx = this.celdaX[i];
+            int cy = this.celdaY[i];
+            // Misma celda (sólo los barcos posteriores) y las cuatro celdas vecinas "hacia delante"
+            numAlertas += this.revisarCelda(i, cx, cy, true, limite, oyente);
+            numAlertas += this.revisarCelda(i, cx + 1, cy - 1, false, limite, oyente);
+            numAlertas += this.revisarCelda(i, cx + 1, cy, false, limite, oyente);
+            numAlertas += this.revisarCelda(i, cx + 1, cy + 1, false, limite, oyente);
+            numAlertas += this.revisarCelda(i, cx, cy + 1, false, limite, oyente);
+        }
+        return numAlertas;
+    }
+
+    /**
+     * Devuelve los barcos que, según el último ciclo, se encuentran a una
+     * distancia de un punto menor o igual que la indicada.
+     *
+     * @param metrosEste Metros hacia el este desde el puerto
+     * @param metrosNorte Metros hacia el norte desde el puerto
+     * @param radio Distancia máxima (en metros)
+     * @return Barcos cercanos al punto, sin un orden determinado
+     */
+    public synchronized Velero[] buscarCercanos(double metrosEste, double metrosNorte, double radio) {
+        Velero[] cercanos = new Velero[8];
+        int numCercanos = 0;
+        if (this.numIndexados == 0 || !(radio >= 0)) {
+            return new Velero[0];
+        }
+        double limite = radio * radio;
+        int alcance = (int) Math.ceil(radio / this.distanciaAlerta);
+        int cx = this.celda(metrosEste);
+        int cy = this.celda(metrosNorte);
+        // Si el radio abarca más celdas que barcos hay en el índice, se recorre el índice completo
+        if ((2L * alcance + 1) * (2L * alcance + 1) > this.numIndexados) {
+            for (int i = 0; i < this.numIndexados; i++) {
+                if (this.distancia2(i, metrosEste, metrosNorte) <= limite) {
+                    cercanos = this.anadir(cercanos, numCercanos++, i);
+                }
+            }
+            return Arrays.copyOf(cercanos, numCercanos);
+        }
+        for (int x = cx - alcance; x <= cx + alcance; x++) {
+            for (int y = cy - alcance; y <= cy + alcance; y++) {
+                int cubeta = this.cubeta(x, y);
+                for (int i = this.inicioCubeta[cubeta]; i < this.inicioCubeta[cubeta + 1]; i++) {
+                    if (this.celdaX[i] == x && this.celdaY[i] == y && this.distancia2(i, metrosEste, metrosNorte) <= limite) {
+                        cercanos = this.anadir(cercanos, numCercanos++, i);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(cercanos, numCercanos);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Indica si se conoce la posición de un velero.
+     *
+     * @param barco Velero que se consulta
+     * @return <code>true</code> si el barco tiene posición (está navegando y se ha recibido alguna)
+     */
+    public synchronized boolean tienePosicion(Velero barco) {
+        return barco.getEscuela() == this.escuela && barco.getIndice() < this.conPosicion.length && this.conPosicion[barco.getIndice()];
+    }
+
+    /**
+     * Devuelve la posición actual de un velero.
+     *
+     * @param barco Velero que se consulta
+     * @return Metros hacia el este y hacia el norte desde el puerto, o <code>null</code> si no tiene posición
+     */
+    public synchronized double[] getPosicion(Velero barco) {
+        if (!this.tienePosicion(barco)) {
+            return null;
+        }
+        return new double[]{this.este[barco.getIndice()], this.norte[barco.getIndice()]};
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>distanciaAlerta</code>
+     * @return Distancia de alerta (en metros)
+     */
+    public double getDistanciaAlerta() {
+        return this.distanciaAlerta;
+    }
+
+    /**
+     * Devuelve el número de barcos incluidos en el último ciclo.
+     * @return Barcos navegando con posición en el último ciclo
+     */
+    public synchronized int getNumIndexados() {
+        return this.numIndexados;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Reconstruye el índice ordenando los barcos por cubeta (ordenación por recuento)
+    private void construirIndice() {
+        int numBarcos = Math.min(this.escuela.getNumBarcosLocales(), this.conPosicion.length);
+        int numValidos = 0;
+        for (int b = 0; b < numBarcos; b++) {
+            if (this.conPosicion[b] && this.escuela.getBarco(b).isNavegando()) {
+                numValidos++;
+            }
+        }
+        int numCubetas = Integer.highestOneBit(Math.max(1, numValidos) * 2 - 1) * 2;
+        if (this.inicioCubeta.length != numCubetas + 1) {
+            this.inicioCubeta = new int[numCubetas + 1];
+        } else {
+            Arrays.fill(this.inicioCubeta, 0);
+        }
+        if (this.barcoOrdenado.length < numValidos) {
+            int capacidad = Math.max(numValidos, this.barcoOrdenado.length * 2);
+            this.barcoOrdenado = new int[capacidad];
+            this.celdaX = new int[capacidad];
+            this.celdaY = new int[capacidad];
+            this.esteOrdenado = new double[capacidad];
+            this.norteOrdenado = new double[capacidad];
+        }
+        this.mascaraCubetas = numCubetas - 1;
+
+        // Recuento por cubeta (desplazado una posición) y suma acumulada
+        for (int b = 0; b < numBarcos; b++) {
+            if (this.conPosicion[b] && this.escuela.getBarco(b).isNavegando()) {
+                this.inicioCubeta[this.cubeta(this.celda(this.este[b]), this.celda(this.norte[b])) + 1]++;
+            }
+        }
+        for (int c = 0; c < numCubetas; c++) {
+            this.inicioCubeta[c + 1] += this.inicioCubeta[c];
+        }
+
+        // Colocación de cada barco en su cubeta (se usa inicioCubeta como cursor y se restaura después)
+        for (int b = 0; b < numBarcos; b++) {
+            if (this.conPosicion[b] && this.escuela.getBarco(b).isNavegando()) {
+                int x = this.celda(this.este[b]);
+                int y = this.celda(this.norte[b]);
+                int posicion = this.inicioCubeta[this.cubeta(x, y)]++;
+                this.barcoOrdenado[posicion] = b;
+                this.celdaX[posicion] = x;
+                this.celdaY[posicion] = y;
+                this.esteOrdenado[posicion] = this.este[b];
+                this.norteOrdenado[posicion] = this.norte[b];
+            }
+        }
+        System.arraycopy(this.inicioCubeta, 0, this.inicioCubeta, 1, numCubetas);
+        this.inicioCubeta[0] = 0;
+        this.numIndexados = numValidos;
+    }
+
+    // Compara el barco i con los de una celda y devuelve el número de alertas
+    private int revisarCelda(int i, int x, int y, boolean mismaCelda, double limite, OyenteProximidad oyente) {
+        int cubeta = this.cubeta(x, y);
+        int numAlertas = 0;
+        for (int j = (mismaCelda ? i + 1 : this.inicioCubeta[cubeta]); j < this.inicioCubeta[cubeta + 1]; j++) {
+            if (this.celdaX[j] != x || this.celdaY[j] != y) {
+                continue;
+            }
+            double distancia2 = this.distancia2(j, this.esteOrdenado[i], this.norteOrdenado[i]);
+            if (distancia2 < limite) {
+                numAlertas++;
+                if (oyente != null) {
+                    oyente.proximidad(this.escuela.getBarco(this.barcoOrdenado[i]), this.escuela.getBarco(this.barcoOrdenado[j]), Math.sqrt(distancia2));
+                }
+            }
+        }
+        return numAlertas;
+    }
+
+    // Coordenada de la celda que contiene una posición
+    private int celda(double metros) {
+        return (int) Math.floor(metros / this.distanciaAlerta);
+    }
+
+    // Cubeta de dispersión de una celda
+    private int cubeta(int x, int y) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77;
+        return (h ^ (h >>> 15)) & this.mascaraCubetas;
+    }
+
+    // Cuadrado de la distancia entre el barco ordenado i y un punto
+    private double distancia2(int i, double metrosEste, double metrosNorte) {
+        double dx = this.esteOrdenado[i] - metrosEste;
+        double dy = this.norteOrdenado[i] - metrosNorte;
+        return dx * dx + dy * dy;
+    }
+
+    // Añade el barco ordenado i a un array de resultados, ampliándolo si es necesario
+    private Velero[] anadir(Velero[] cercanos, int posicion, int i) {
+        Velero[] resultado = (posicion == cercanos.length ? Arrays.copyOf(cercanos, posicion * 2) : cercanos);
+        resultado[posicion] = this.escuela.getBarco(this.barcoOrdenado[i]);
+        return resultado;
+    }
+}
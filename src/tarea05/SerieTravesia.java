@@ -0,0 +1,98 @@
+package tarea05;
+
+/**
+ * Serie de muestras (instante, velocidad y rumbo) de una travesía leída de un
+ * <code>ArchivoTravesias</code>, en orden de grabación.
+ *
+ * @author profesorado
+ */
+public class SerieTravesia {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto inmutables (privados)
+    // ------------------------------------------------------------------------
+    private final long idTravesia;          // Identificador de la travesía en el archivo
+    private final String nombreBarco;       // Nombre del barco
+    private final int numMuestras;          // Número de muestras de la serie
+    private final long[] marcasTiempo;      // Instante de cada muestra (en milisegundos)
+    private final float[] velocidades;      // Velocidad de cada muestra (en nudos)
+    private final float[] rumbos;           // Rumbo de cada muestra (en grados)
+
+    // Constructor de paquete: las series las crea ArchivoTravesias (los arrays no se copian)
+    SerieTravesia(long idTravesia, String nombreBarco, int numMuestras, long[] marcasTiempo, float[] velocidades, float[] rumbos) {
+        this.idTravesia = idTravesia;
+        this.nombreBarco = nombreBarco;
+        this.numMuestras = numMuestras;
+        this.marcasTiempo = marcasTiempo;
+        this.velocidades = velocidades;
+        this.rumbos = rumbos;
+    }
+
+    /**
+     * @return Identificador de la travesía en el archivo
+     */
+    public long getIdTravesia() {
+        return this.idTravesia;
+    }
+
+    /**
+     * @return Nombre del barco de la travesía
+     */
+    public String getNombreBarco() {
+        return this.nombreBarco;
+    }
+
+    /**
+     * @return Número de muestras de la serie
+     */
+    public int getNumMuestras() {
+        return this.numMuestras;
+    }
+
+    /**
+     * @param i Posición de la muestra (empezando en 0)
+     * @return Instante de la muestra (en milisegundos)
+     */
+    public long getMarcaTiempo(int i) {
+        return this.marcasTiempo[this.comprobar(i)];
+    }
+
+    /**
+     * @param i Posición de la muestra (empezando en 0)
+     * @return Velocidad de la muestra (en nudos)
+     */
+    public float getVelocidad(int i) {
+        return this.velocidades[this.comprobar(i)];
+    }
+
+    /**
+     * @param i Posición de la muestra (empezando en 0)
+     * @return Rumbo de la muestra (en grados)
+     */
+    public float getRumbo(int i) {
+        return this.rumbos[this.comprobar(i)];
+    }
+
+    /**
+     * Devuelve la serie en un tipo String
+     *
+     * @return String Resumen de la serie
+     */
+    @Override
+    public String toString() {
+        return String.format("{Travesía: %d, Barco: %s, Muestras: %d%s}",
+                this.idTravesia,
+                this.nombreBarco,
+                this.numMuestras,
+                (this.numMuestras == 0 ? "" : String.format(", Desde: %d, Hasta: %d", this.marcasTiempo[0], this.marcasTiempo[this.numMuestras - 1]))
+        );
+    }
+
+    // Comprueba que una posición está dentro de la serie
+    private int comprobar(int i) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= this.numMuestras) {
+            throw new IndexOutOfBoundsException(String.format("La muestra %d no existe en una serie de %d muestras.\n", i, this.numMuestras));
+        }
+        return i;
+    }
+}
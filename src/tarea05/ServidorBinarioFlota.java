@@ -0,0 +1,374 @@
+package tarea05;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * <p>
+ * Servidor del protocolo binario de órdenes de la flota
+ * (<code>ProtocoloFlota</code>), pensado para clientes internos que envían
+ * muchas órdenes seguidas y para los que JSON sobre HTTP es demasiado
+ * pesado.</p>
+ * <p>
+ * Un único hilo atiende todas las conexiones con un <code>Selector</code> y
+ * ejecuta las órdenes directamente, ya que las operaciones de los veleros son
+ * breves. Cada conexión tiene un buffer directo de entrada y otro de salida,
+ * tomados de una reserva y devueltos al cerrarla: las tramas se decodifican
+ * sobre el buffer de entrada y las respuestas se codifican directamente en el
+ * de salida, que se entrega tal cual al canal sin copias intermedias. Se
+ * atienden todas las tramas completas recibidas de una vez (las peticiones
+ * encadenadas de un cliente salen en una sola escritura) y, si el cliente no
+ * lee sus respuestas, se deja de leer de esa conexión hasta que vacíe el
+ * buffer de salida.</p>
+ * <p>
+ * Uso: <code>java tarea05.ServidorBinarioFlota [puerto]</code></p>
+ *
+ * @author profesorado
+ */
+public class ServidorBinarioFlota implements Closeable {
+
+    /**
+     * Puerto por defecto del servidor.
+     */
+    public static final int PUERTO_POR_DEFECTO = 8081;
+
+    // Tamaño de los buffers de cada conexión
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    // Hueco libre que se exige en el buffer de salida antes de atender una trama
+    private static final int MAX_RESPUESTA = 1024;
+
+    // Longitud máxima de los textos de las respuestas (caracteres)
+    private static final int MAX_TEXTO = 256;
+
+    // Número máximo de buffers que se guardan en la reserva
+    private static final int MAX_RESERVA = 256;
+
+    // Buffers de una conexión (ambos en modo escritura)
+    private static final class Conexion {
+
+        final SocketChannel canal;
+        final ByteBuffer entrada;
+        final ByteBuffer salida;
+        boolean pendiente;          // Quedan tramas completas sin atender por falta de sitio en la salida
+
+        Conexion(SocketChannel canal, ByteBuffer entrada, ByteBuffer salida) {
+            this.canal = canal;
+            this.entrada = entrada;
+            this.salida = salida;
+            this.pendiente = false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;                  // Escuela cuya flota se publica
+    private final ServerSocketChannel servidor;         // Canal de escucha
+    private final Selector selector;                    // Selector de todas las conexiones
+    private final ArrayDeque<ByteBuffer> reserva;       // Buffers directos libres (sólo los usa el hilo del servidor)
+    private Thread hilo;                                // Hilo del servidor
+    private volatile boolean abierto;                   // Indica si el servidor sigue atendiendo
+    private volatile long numTramas;                    // Tramas atendidas (sólo las cuenta el hilo del servidor)
+
+    /**
+     * Crea el servidor de una escuela, sin iniciarlo.
+     *
+     * @param escuela Escuela cuya flota se publica
+     * @param direccion Dirección y puerto en los que escucha (puerto 0 para uno libre cualquiera)
+     *
+     * @throws NullPointerException Si la escuela o la dirección son nulas
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public ServidorBinarioFlota(EscuelaVela escuela, InetSocketAddress direccion) throws NullPointerException, IOException {
+        if (escuela == null || direccion == null) {
+            throw new NullPointerException("La escuela y la dirección del servidor no pueden ser nulas.\n");
+        }
+        this.escuela = escuela;
+        this.selector = Selector.open();
+        this.servidor = ServerSocketChannel.open();
+        this.servidor.bind(direccion, 1024);
+        this.servidor.configureBlocking(false);
+        this.servidor.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.reserva = new ArrayDeque<>();
+        this.abierto = true;
+    }
+
+    /**
+     * Empieza a atender conexiones en un hilo propio.
+     *
+     * @throws IllegalStateException Si el servidor ya se ha iniciado o cerrado
+     */
+    public synchronized void iniciar() throws IllegalStateException {
+        if (this.hilo != null || !this.abierto) {
+            throw new IllegalStateException("El servidor binario ya se ha iniciado o está cerrado.\n");
+        }
+        this.hilo = new Thread(this::atender, "servidor-binario-flota");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Cierra el servidor y todas sus conexiones.
+     */
+    @Override
+    public void close() {
+        this.abierto = false;
+        this.selector.wakeup();
+        Thread actual;
+        synchronized (this) {
+            actual = this.hilo;
+        }
+        if (actual != null && actual != Thread.currentThread()) {
+            try {
+                actual.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (actual == null) {
+            this.cerrarTodo();
+        }
+    }
+
+    /**
+     * @return Puerto en el que escucha el servidor
+     */
+    public int getPuerto() {
+        return this.servidor.socket().getLocalPort();
+    }
+
+    // ------------------------------------------------------------------------
+    // Bucle del selector
+    // ------------------------------------------------------------------------
+    private void atender() {
+        try {
+            while (this.abierto) {
+                this.selector.select();
+                Iterator<SelectionKey> claves = this.selector.selectedKeys().iterator();
+                while (claves.hasNext()) {
+                    SelectionKey clave = claves.next();
+                    claves.remove();
+                    if (!clave.isValid()) {
+                        continue;
+                    }
+                    if (clave.isAcceptable()) {
+                        this.aceptar();
+                    } else {
+                        this.servir(clave);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(String.format("Servidor binario detenido: %s", e.getMessage()));
+        } finally {
+            this.cerrarTodo();
+        }
+    }
+
+    private void aceptar() throws IOException {
+        SocketChannel canal;
+        while ((canal = this.servidor.accept()) != null) {
+            canal.configureBlocking(false);
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Conexion conexion = new Conexion(canal, this.tomarBuffer(), this.tomarBuffer());
+            canal.register(this.selector, SelectionKey.OP_READ, conexion);
+        }
+    }
+
+    // Lee lo recibido, atiende las tramas completas y envía las respuestas
+    private void servir(SelectionKey clave) {
+        Conexion conexion = (Conexion) clave.attachment();
+        try {
+            if (clave.isReadable() && conexion.canal.read(conexion.entrada) < 0) {
+                this.cerrar(clave, conexion);
+                return;
+            }
+            while (true) {
+                this.procesar(conexion);
+                conexion.salida.flip();
+                conexion.canal.write(conexion.salida);
+                conexion.salida.compact();
+                // Se repite si quedaban tramas y la salida se ha vaciado por completo
+                if (!conexion.pendiente || conexion.salida.position() > 0) {
+                    break;
+                }
+            }
+            // Con la salida llena no se lee más, para que un cliente que no lee no acumule respuestas
+            clave.interestOps(conexion.salida.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException e) {
+            this.cerrar(clave, conexion);
+        }
+    }
+
+    // Atiende las tramas completas del buffer de entrada mientras haya sitio en el de salida
+    private void procesar(Conexion conexion) throws IOException {
+        ByteBuffer entrada = conexion.entrada;
+        ByteBuffer salida = conexion.salida;
+        entrada.flip();
+        conexion.pendiente = false;
+        while (entrada.remaining() >= Integer.BYTES) {
+            int longitud = entrada.getInt(entrada.position());
+            if (longitud < 1 || longitud > ProtocoloFlota.MAX_TRAMA) {
+                throw new IOException(String.format("Trama de longitud %d incorrecta", longitud));
+            }
+            if (entrada.remaining() < Integer.BYTES + longitud) {
+                break;
+            }
+            if (salida.remaining() < ServidorBinarioFlota.MAX_RESPUESTA) {
+                conexion.pendiente = true;
+                break;
+            }
+            int inicio = entrada.position() + Integer.BYTES;
+            int fin = inicio + longitud;
+            int limite = entrada.limit();
+            entrada.position(inicio).limit(fin);
+            this.ejecutar(entrada, salida);
+            entrada.limit(limite).position(fin);
+            this.numTramas++;
+        }
+        entrada.compact();
+    }
+
+    // Ejecuta la orden de una trama y escribe su respuesta
+    private void ejecutar(ByteBuffer peticion, ByteBuffer respuesta) {
+        int trama = ProtocoloFlota.abrirTrama(respuesta);
+        int estado = respuesta.position();
+        respuesta.put(ProtocoloFlota.OK);
+        try {
+            byte operacion = peticion.get();
+            switch (operacion) {
+                case ProtocoloFlota.CREAR: {
+                    String nombre = ProtocoloFlota.tomarTexto(peticion);
+                    int mastiles = peticion.get();
+                    int tripulantes = peticion.getShort();
+                    respuesta.putInt(this.escuela.crearVelero(nombre, mastiles, tripulantes).getIndice());
+                    break;
+                }
+                case ProtocoloFlota.SALIDA: {
+                    Velero barco = this.escuela.getBarco(peticion.getInt());
+                    int velocidad = peticion.get();
+                    String rumbo = ProtocoloFlota.tomarTexto(peticion);
+                    String patron = ProtocoloFlota.tomarTexto(peticion);
+                    barco.iniciarNavegacion(velocidad, rumbo, patron, peticion.getShort());
+                    break;
+                }
+                case ProtocoloFlota.LLEGADA: {
+                    Velero barco = this.escuela.getBarco(peticion.getInt());
+                    barco.pararNavegacion(peticion.getInt());
+                    break;
+                }
+                case ProtocoloFlota.RUMBO: {
+                    Velero barco = this.escuela.getBarco(peticion.getInt());
+                    barco.setRumbo(ProtocoloFlota.tomarTexto(peticion));
+                    break;
+                }
+                case ProtocoloFlota.REGATA: {
+                    Velero barco = this.escuela.getBarco(peticion.getInt());
+                    Velero rival = this.escuela.getBarco(peticion.getInt());
+                    ProtocoloFlota.ponerTexto(respuesta, ServidorBinarioFlota.recortar(barco.iniciarRegata(rival)));
+                    break;
+                }
+                default:
+                    respuesta.position(estado);
+                    respuesta.put(ProtocoloFlota.NO_EXISTE);
+                    ProtocoloFlota.ponerTexto(respuesta, String.format("No existe la operación %d.", operacion));
+            }
+        } catch (BufferUnderflowException e) {
+            respuesta.position(estado);
+            respuesta.put(ProtocoloFlota.ARGUMENTO_INCORRECTO);
+            ProtocoloFlota.ponerTexto(respuesta, "Trama incompleta.");
+        } catch (RuntimeException e) {
+            respuesta.position(estado);
+            respuesta.put(ProtocoloFlota.estadoDe(e));
+            ProtocoloFlota.ponerTexto(respuesta, ServidorBinarioFlota.recortar(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
+        }
+        ProtocoloFlota.cerrarTrama(respuesta, trama);
+    }
+
+    // Quita los saltos de línea finales y limita la longitud de un texto para que quepa en MAX_RESPUESTA
+    private static String recortar(String texto) {
+        String recortado = texto.trim();
+        return (recortado.length() > ServidorBinarioFlota.MAX_TEXTO ? recortado.substring(0, ServidorBinarioFlota.MAX_TEXTO) : recortado);
+    }
+
+    // ------------------------------------------------------------------------
+    // Reserva de buffers y cierre
+    // ------------------------------------------------------------------------
+    private ByteBuffer tomarBuffer() {
+        ByteBuffer buffer = this.reserva.poll();
+        return (buffer != null ? buffer : ByteBuffer.allocateDirect(ServidorBinarioFlota.TAMANO_BUFFER));
+    }
+
+    private void devolverBuffer(ByteBuffer buffer) {
+        if (this.reserva.size() < ServidorBinarioFlota.MAX_RESERVA) {
+            buffer.clear();
+            this.reserva.push(buffer);
+        }
+    }
+
+    private void cerrar(SelectionKey clave, Conexion conexion) {
+        clave.cancel();
+        try {
+            conexion.canal.close();
+        } catch (IOException e) {
+            // La conexión ya no se usa
+        }
+        this.devolverBuffer(conexion.entrada);
+        this.devolverBuffer(conexion.salida);
+    }
+
+    private void cerrarTodo() {
+        for (SelectionKey clave : this.selector.keys()) {
+            if (clave.attachment() instanceof Conexion) {
+                this.cerrar(clave, (Conexion) clave.attachment());
+            }
+        }
+        try {
+            this.servidor.close();
+            this.selector.close();
+        } catch (IOException e) {
+            // El servidor ya no se usa
+        }
+    }
+
+    /**
+     * Devuelve el estado del servidor en un tipo String
+     *
+     * @return String Estado del servidor
+     */
+    @Override
+    public String toString() {
+        return String.format("{Escuela: %s, Puerto: %d, Abierto: %b, Tramas atendidas: %d}", this.escuela.getNombre(), this.getPuerto(), this.abierto, this.numTramas);
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main del servidor binario: publica la escuela por defecto
+     * @param args Puerto (opcional)
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public static void main(String[] args) throws IOException {
+        int puerto = (args.length > 0 ? Integer.parseInt(args[0]) : ServidorBinarioFlota.PUERTO_POR_DEFECTO);
+        ServidorBinarioFlota servidor = new ServidorBinarioFlota(EscuelaVela.getPorDefecto(), new InetSocketAddress(puerto));
+        Runtime.getRuntime().addShutdownHook(new Thread(servidor::close));
+        servidor.iniciar();
+        System.out.println(String.format("Servidor binario de la flota escuchando en el puerto %d", servidor.getPuerto()));
+        try {
+            servidor.hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
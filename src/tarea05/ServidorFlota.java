@@ -0,0 +1,499 @@
+package tarea05;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * API HTTP/JSON de la flota de una escuela, sobre el servidor HTTP del JDK,
+ * para integrarla en los quioscos y en la web. Cada petición se atiende en un
+ * hilo virtual si la máquina virtual los ofrece (Java 21 o posterior) y, si
+ * no, en un conjunto fijo de hilos.</p>
+ * <p>
+ * Rutas (los cuerpos son objetos JSON sin anidar):</p>
+ * <ul>
+ * <li><code>GET /escuela</code>: datos de la escuela</li>
+ * <li><code>GET /veleros</code>: array de todos los veleros, enviado por partes
+ * a medida que se codifica (<code>?navegando=true</code> o <code>false</code> para filtrar)</li>
+ * <li><code>POST /veleros</code> <code>{"nombre", "mastiles", "tripulantes"}</code>: crea un velero</li>
+ * <li><code>GET /veleros/{nombre}</code>: datos de un velero</li>
+ * <li><code>POST /veleros/{nombre}/salida</code> <code>{"velocidad", "rumbo", "patron", "tripulacion"}</code></li>
+ * <li><code>POST /veleros/{nombre}/llegada</code> <code>{"minutos"}</code></li>
+ * <li><code>POST /veleros/{nombre}/rumbo</code> <code>{"rumbo"}</code></li>
+ * <li><code>POST /veleros/{nombre}/regata</code> <code>{"rival"}</code></li>
+ * <li><code>POST /lote</code>: varias operaciones en JSON Lines, una por línea, con
+ * los campos <code>"op"</code> (<code>crear</code>, <code>consultar</code>,
+ * <code>salida</code>, <code>llegada</code>, <code>rumbo</code> o <code>regata</code>)
+ * y <code>"barco"</code> además de los de la operación. La respuesta tiene una
+ * línea por operación, en el mismo orden, con <code>"ok"</code> y el resultado o
+ * el error.</li>
+ * </ul>
+ * <p>
+ * Los errores se devuelven como <code>{"error": mensaje}</code> con el código
+ * 400 (datos incorrectos), 404 (velero o ruta inexistente), 405 (método no
+ * admitido) o 409 (estado del velero incompatible con la operación). El JSON
+ * se codifica directamente en bytes con <code>EscritorJson</code>.</p>
+ * <p>
+ * Uso: <code>java tarea05.ServidorFlota [puerto]</code></p>
+ *
+ * @author profesorado
+ */
+public class ServidorFlota implements Closeable {
+
+    /**
+     * Puerto por defecto del servidor.
+     */
+    public static final int PUERTO_POR_DEFECTO = 8080;
+
+    // Tamaño del buffer de las respuestas por partes
+    private static final int TAMANO_BUFFER = 16 * 1024;
+
+    // Parámetros de una operación (los enteros ausentes valen AUSENTE)
+    private static final int AUSENTE = Integer.MIN_VALUE;
+
+    private static final class Parametros {
+
+        String operacion;
+        String barco;
+        String nombre;
+        String rumbo;
+        String patron;
+        String rival;
+        int mastiles = ServidorFlota.AUSENTE;
+        int tripulantes = ServidorFlota.AUSENTE;
+        int velocidad = ServidorFlota.AUSENTE;
+        int tripulacion = ServidorFlota.AUSENTE;
+        int minutos = ServidorFlota.AUSENTE;
+
+        // Lee los campos de un objeto JSON (los campos desconocidos se ignoran)
+        void leer(byte[] datos, int inicio, int fin) throws IllegalArgumentException {
+            LectorJson lector = new LectorJson();
+            lector.iniciar(datos, inicio, fin);
+            while (lector.siguienteCampo()) {
+                if (lector.claveEs("op")) {
+                    this.operacion = lector.getTexto();
+                } else if (lector.claveEs("barco")) {
+                    this.barco = lector.getTexto();
+                } else if (lector.claveEs("nombre")) {
+                    this.nombre = lector.getTexto();
+                } else if (lector.claveEs("rumbo")) {
+                    this.rumbo = lector.getTexto();
+                } else if (lector.claveEs("patron")) {
+                    this.patron = lector.getTexto();
+                } else if (lector.claveEs("rival")) {
+                    this.rival = lector.getTexto();
+                } else if (lector.claveEs("mastiles")) {
+                    this.mastiles = lector.getEntero();
+                } else if (lector.claveEs("tripulantes")) {
+                    this.tripulantes = lector.getEntero();
+                } else if (lector.claveEs("velocidad")) {
+                    this.velocidad = lector.getEntero();
+                } else if (lector.claveEs("tripulacion")) {
+                    this.tripulacion = lector.getEntero();
+                } else if (lector.claveEs("minutos")) {
+                    this.minutos = lector.getEntero();
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;          // Escuela cuya flota se publica
+    private final HttpServer servidor;          // Servidor HTTP del JDK
+    private final ExecutorService ejecutor;     // Ejecutor de las peticiones
+    private final boolean hilosVirtuales;       // Indica si el ejecutor usa hilos virtuales
+
+    /**
+     * Crea el servidor de una escuela, sin iniciarlo.
+     *
+     * @param escuela Escuela cuya flota se publica
+     * @param direccion Dirección y puerto en los que escucha (puerto 0 para uno libre cualquiera)
+     *
+     * @throws NullPointerException Si la escuela o la dirección son nulas
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public ServidorFlota(EscuelaVela escuela, InetSocketAddress direccion) throws NullPointerException, IOException {
+        if (escuela == null || direccion == null) {
+            throw new NullPointerException("La escuela y la dirección del servidor no pueden ser nulas.\n");
+        }
+        this.escuela = escuela;
+        this.servidor = HttpServer.create(direccion, 1024);
+        ExecutorService virtual = ServidorFlota.crearEjecutorVirtual();
+        this.hilosVirtuales = (virtual != null);
+        this.ejecutor = (virtual != null ? virtual
+                : Executors.newFixedThreadPool(Math.max(8, 4 * Runtime.getRuntime().availableProcessors())));
+        this.servidor.setExecutor(this.ejecutor);
+        this.servidor.createContext("/", this::atender);
+    }
+
+    // Crea un ejecutor con un hilo virtual por tarea, o devuelve null si la máquina virtual no los ofrece
+    private static ExecutorService crearEjecutorVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Empieza a atender peticiones.
+     */
+    public void iniciar() {
+        this.servidor.start();
+    }
+
+    /**
+     * Deja de aceptar peticiones y espera a que terminen las que están en curso.
+     *
+     * @param segundos Tiempo máximo de espera (en segundos)
+     */
+    public void detener(int segundos) {
+        this.servidor.stop(segundos);
+        this.ejecutor.shutdown();
+        try {
+            this.ejecutor.awaitTermination(segundos, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Detiene el servidor sin esperar a las peticiones en curso.
+     */
+    @Override
+    public void close() {
+        this.detener(0);
+    }
+
+    /**
+     * @return Puerto en el que escucha el servidor
+     */
+    public int getPuerto() {
+        return this.servidor.getAddress().getPort();
+    }
+
+    /**
+     * @return <code>true</code> si las peticiones se atienden en hilos virtuales
+     */
+    public boolean isHilosVirtuales() {
+        return this.hilosVirtuales;
+    }
+
+    // ------------------------------------------------------------------------
+    // Atención de peticiones
+    // ------------------------------------------------------------------------
+    private void atender(HttpExchange intercambio) throws IOException {
+        try {
+            String metodo = intercambio.getRequestMethod();
+            String ruta = intercambio.getRequestURI().getPath();
+            String[] partes = (ruta.length() > 1 ? ruta.substring(1).split("/") : new String[0]);
+            if (partes.length == 1 && partes[0].equals("escuela")) {
+                if (this.comprobarMetodo(intercambio, metodo, "GET")) {
+                    this.enviarEscuela(intercambio);
+                }
+            } else if (partes.length == 1 && partes[0].equals("veleros")) {
+                if (metodo.equals("GET")) {
+                    this.enviarVeleros(intercambio);
+                } else if (this.comprobarMetodo(intercambio, metodo, "POST")) {
+                    this.atenderOperacion(intercambio, "crear", null);
+                }
+            } else if (partes.length == 2 && partes[0].equals("veleros")) {
+                if (this.comprobarMetodo(intercambio, metodo, "GET")) {
+                    this.atenderOperacion(intercambio, "consultar", partes[1]);
+                }
+            } else if (partes.length == 3 && partes[0].equals("veleros")) {
+                if (this.comprobarMetodo(intercambio, metodo, "POST")) {
+                    this.atenderOperacion(intercambio, partes[2], partes[1]);
+                }
+            } else if (partes.length == 1 && partes[0].equals("lote")) {
+                if (this.comprobarMetodo(intercambio, metodo, "POST")) {
+                    this.atenderLote(intercambio);
+                }
+            } else {
+                this.enviarError(intercambio, 404, String.format("No existe la ruta %s.", ruta));
+            }
+        } finally {
+            intercambio.close();
+        }
+    }
+
+    private boolean comprobarMetodo(HttpExchange intercambio, String metodo, String esperado) throws IOException {
+        if (!metodo.equals(esperado)) {
+            intercambio.getResponseHeaders().set("Allow", esperado);
+            this.enviarError(intercambio, 405, String.format("La ruta no admite el método %s.", metodo));
+            return false;
+        }
+        return true;
+    }
+
+    // Atiende una operación individual: el barco de la ruta y los parámetros del cuerpo
+    private void atenderOperacion(HttpExchange intercambio, String operacion, String barco) throws IOException {
+        EscritorJson json = new EscritorJson(null, 512);
+        int estado;
+        try {
+            Parametros parametros = new Parametros();
+            byte[] cuerpo = intercambio.getRequestBody().readAllBytes();
+            if (cuerpo.length > 0) {
+                parametros.leer(cuerpo, 0, cuerpo.length);
+            }
+            parametros.operacion = operacion;
+            parametros.barco = barco;
+            estado = this.ejecutar(parametros, json);
+        } catch (RuntimeException e) {
+            this.enviarError(intercambio, ServidorFlota.codigoError(e), e.getMessage());
+            return;
+        }
+        this.enviar(intercambio, estado, json.getBytes());
+    }
+
+    // Atiende un lote de operaciones en JSON Lines, enviando cada resultado en cuanto se conoce
+    private void atenderLote(HttpExchange intercambio) throws IOException {
+        byte[] cuerpo = intercambio.getRequestBody().readAllBytes();
+        intercambio.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        intercambio.sendResponseHeaders(200, 0);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            EscritorJson json = new EscritorJson(salida, ServidorFlota.TAMANO_BUFFER);
+            EscritorJson resultado = new EscritorJson(null, 512);
+            int inicio = 0;
+            while (inicio < cuerpo.length) {
+                int fin = inicio;
+                while (fin < cuerpo.length && cuerpo[fin] != '\n') {
+                    fin++;
+                }
+                int finLinea = (fin > inicio && cuerpo[fin - 1] == '\r' ? fin - 1 : fin);
+                if (finLinea > inicio) {
+                    json.inicioObjeto();
+                    resultado.reiniciar();
+                    try {
+                        Parametros parametros = new Parametros();
+                        parametros.leer(cuerpo, inicio, finLinea);
+                        this.ejecutar(parametros, resultado);
+                        json.nombre("ok").valor(true);
+                        json.nombre("resultado").valorCodificado(resultado);
+                    } catch (RuntimeException e) {
+                        json.nombre("ok").valor(false);
+                        json.nombre("estado").valor(ServidorFlota.codigoError(e));
+                        json.nombre("error").valor(ServidorFlota.mensaje(e));
+                    }
+                    json.finObjeto().finLinea();
+                }
+                inicio = fin + 1;
+            }
+            json.volcar();
+        }
+    }
+
+    // Ejecuta una operación, escribe su resultado y devuelve el código de estado HTTP.
+    // Velero no está sincronizado: cada operación se hace con el barco bloqueado
+    // para que dos peticiones simultáneas sobre el mismo barco no se mezclen
+    private int ejecutar(Parametros p, EscritorJson json) throws IOException {
+        if (p.operacion == null) {
+            throw new IllegalArgumentException("Falta el campo op.\n");
+        }
+        switch (p.operacion) {
+            case "crear": {
+                if (p.nombre == null) {
+                    p.nombre = p.barco;
+                }
+                Velero barco = this.escuela.crearVelero(p.nombre, ServidorFlota.requerido(p.mastiles, "mastiles"), ServidorFlota.requerido(p.tripulantes, "tripulantes"));
+                ServidorFlota.escribirVelero(json, barco);
+                return 201;
+            }
+            case "consultar": {
+                Velero barco = this.buscar(p.barco);
+                synchronized (barco) {
+                    ServidorFlota.escribirVelero(json, barco);
+                }
+                return 200;
+            }
+            case "salida": {
+                Velero barco = this.buscar(p.barco);
+                synchronized (barco) {
+                    barco.iniciarNavegacion(ServidorFlota.requerido(p.velocidad, "velocidad"), p.rumbo, p.patron, ServidorFlota.requerido(p.tripulacion, "tripulacion"));
+                    ServidorFlota.escribirVelero(json, barco);
+                }
+                return 200;
+            }
+            case "llegada": {
+                Velero barco = this.buscar(p.barco);
+                synchronized (barco) {
+                    barco.pararNavegacion(ServidorFlota.requerido(p.minutos, "minutos"));
+                    ServidorFlota.escribirVelero(json, barco);
+                }
+                return 200;
+            }
+            case "rumbo": {
+                Velero barco = this.buscar(p.barco);
+                synchronized (barco) {
+                    barco.setRumbo(p.rumbo);
+                    ServidorFlota.escribirVelero(json, barco);
+                }
+                return 200;
+            }
+            case "regata": {
+                Velero barco = this.buscar(p.barco);
+                if (p.rival == null) {
+                    throw new IllegalArgumentException("Falta el campo rival.\n");
+                }
+                Velero rival = this.buscar(p.rival);
+                // Los dos barcos se bloquean siempre en el mismo orden para no interbloquearse
+                Velero primero = (barco.getIndice() <= rival.getIndice() ? barco : rival);
+                Velero segundo = (primero == barco ? rival : barco);
+                String resultado;
+                synchronized (primero) {
+                    synchronized (segundo) {
+                        resultado = barco.iniciarRegata(rival);
+                    }
+                }
+                json.inicioObjeto().nombre("resultado").valor(resultado.trim()).finObjeto();
+                return 200;
+            }
+            default:
+                throw new NoSuchElementException(String.format("No existe la operación %s.\n", p.operacion));
+        }
+    }
+
+    private Velero buscar(String nombreBarco) throws IllegalArgumentException, NoSuchElementException {
+        if (nombreBarco == null) {
+            throw new IllegalArgumentException("Falta el campo barco.\n");
+        }
+        Velero barco = this.escuela.buscarBarco(nombreBarco);
+        if (barco == null) {
+            throw new NoSuchElementException(String.format("No existe el velero %s en la escuela %s.\n", nombreBarco, this.escuela.getNombre()));
+        }
+        return barco;
+    }
+
+    private static int requerido(int valor, String campo) throws IllegalArgumentException {
+        if (valor == ServidorFlota.AUSENTE) {
+            throw new IllegalArgumentException(String.format("Falta el campo %s.\n", campo));
+        }
+        return valor;
+    }
+
+    // ------------------------------------------------------------------------
+    // Respuestas
+    // ------------------------------------------------------------------------
+    private void enviarEscuela(HttpExchange intercambio) throws IOException {
+        EscritorJson json = new EscritorJson(null, 256);
+        json.inicioObjeto();
+        json.nombre("nombre").valor(this.escuela.getNombre());
+        json.nombre("numBarcos").valor(this.escuela.getNumBarcos());
+        json.nombre("numBarcosNavegando").valor(this.escuela.getNumBarcosNavegando());
+        json.nombre("tiempoTotalNavegacion").valor(this.escuela.getTiempoTotalNavegacion());
+        json.finObjeto();
+        this.enviar(intercambio, 200, json.getBytes());
+    }
+
+    // Envía todos los veleros por partes, sin construir la respuesta completa en memoria
+    private void enviarVeleros(HttpExchange intercambio) throws IOException {
+        String consulta = intercambio.getRequestURI().getQuery();
+        Boolean navegando = null;
+        if (consulta != null && consulta.startsWith("navegando=")) {
+            navegando = Boolean.valueOf(consulta.substring("navegando=".length()));
+        }
+        intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        intercambio.sendResponseHeaders(200, 0);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            EscritorJson json = new EscritorJson(salida, ServidorFlota.TAMANO_BUFFER);
+            json.inicioArray();
+            int numBarcos = this.escuela.getNumBarcosLocales();
+            for (int i = 0; i < numBarcos; i++) {
+                Velero barco = this.escuela.getBarco(i);
+                synchronized (barco) {
+                    if (navegando == null || barco.isNavegando() == navegando) {
+                        ServidorFlota.escribirVelero(json, barco);
+                    }
+                }
+            }
+            json.finArray();
+            json.volcar();
+        }
+    }
+
+    private void enviarError(HttpExchange intercambio, int estado, String mensaje) throws IOException {
+        EscritorJson json = new EscritorJson(null, 256);
+        json.inicioObjeto().nombre("error").valor(mensaje == null ? "" : mensaje.trim()).finObjeto();
+        this.enviar(intercambio, estado, json.getBytes());
+    }
+
+    private void enviar(HttpExchange intercambio, int estado, byte[] cuerpo) throws IOException {
+        intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        intercambio.sendResponseHeaders(estado, cuerpo.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(cuerpo);
+        }
+    }
+
+    /**
+     * Escribe los datos de un velero como un objeto JSON.
+     *
+     * @param json Escritor en el que se escribe
+     * @param barco Velero
+     *
+     * @throws IOException Si se produce un error al volcar el escritor
+     */
+    static void escribirVelero(EscritorJson json, Velero barco) throws IOException {
+        json.inicioObjeto();
+        json.nombre("nombre").valor(barco.getNombreBarco());
+        json.nombre("mastiles").valor(barco.getNumMastiles());
+        json.nombre("maxTripulantes").valor(barco.getMaxTripulantes());
+        json.nombre("navegando").valor(barco.isNavegando());
+        json.nombre("tiempoTotalNavegacion").valor(barco.getTiempoTotalNavegacionBarco());
+        json.nombre("velocidad").valor(barco.getVelocidad());
+        json.nombre("rumbo").valor(barco.getRumbo());
+        json.nombre("patron").valor(barco.getPatron());
+        json.nombre("tripulacion").valor(barco.getTripulacion());
+        json.finObjeto();
+    }
+
+    // Código HTTP de una excepción de la flota
+    private static int codigoError(RuntimeException e) {
+        if (e instanceof NoSuchElementException) {
+            return 404;
+        }
+        if (e instanceof IllegalStateException) {
+            return 409;
+        }
+        if (e instanceof IllegalArgumentException || e instanceof NullPointerException || e instanceof IndexOutOfBoundsException) {
+            return 400;
+        }
+        return 500;
+    }
+
+    private static String mensaje(RuntimeException e) {
+        return (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage().trim());
+    }
+
+    // ------------------------------------------------------------------------
+    // Programa principal
+    // ------------------------------------------------------------------------
+    /**
+     * Metodo main del servidor: publica la escuela por defecto
+     * @param args Puerto (opcional)
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public static void main(String[] args) throws IOException {
+        int puerto = (args.length > 0 ? Integer.parseInt(args[0]) : ServidorFlota.PUERTO_POR_DEFECTO);
+        // Sin TCP_NODELAY, las respuestas pequeñas esperan al ACK retardado del cliente (unos 40 ms).
+        // Es una propiedad de toda la máquina virtual: sólo la fija el programa, no la clase
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        ServidorFlota servidor = new ServidorFlota(EscuelaVela.getPorDefecto(), new InetSocketAddress(puerto));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> servidor.detener(1)));
+        servidor.iniciar();
+        System.out.println(String.format("Servidor de la flota escuchando en el puerto %d (%s)",
+                servidor.getPuerto(), servidor.isHilosVirtuales() ? "hilos virtuales" : "conjunto fijo de hilos"));
+    }
+}
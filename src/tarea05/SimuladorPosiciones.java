@@ -0,0 +1,130 @@
+package tarea05;
+
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ * Simulador local de un servicio de posicionamiento: saca a navegar una flota
+ * de veleros repartidos al azar por una zona, los mueve en cada ciclo según su
+ * velocidad y un rumbo (en grados) aleatorio, y mide el tiempo que tarda
+ * <code>SeguimientoPosiciones</code> en recibir las posiciones y detectar las
+ * parejas demasiado cercanas.</p>
+ * <p>
+ * Antes de la simulación se comprueba, con una flota reducida, que el índice
+ * encuentra exactamente las mismas parejas que una comparación de todos con todos.</p>
+ * <p>
+ * Uso: <code>java tarea05.SimuladorPosiciones [barcos] [ciclos] [distancia] [segundosPorCiclo]</code></p>
+ *
+ * @author profesorado
+ */
+public class SimuladorPosiciones {
+
+    // Valores por defecto de los argumentos
+    private static final int BARCOS_POR_DEFECTO = 100_000;
+    private static final int CICLOS_POR_DEFECTO = 20;
+    private static final double DISTANCIA_POR_DEFECTO = 30;
+    private static final double SEGUNDOS_POR_DEFECTO = 5;
+
+    // Superficie de agua por barco (en metros cuadrados) y metros por segundo de un nudo
+    private static final double SUPERFICIE_POR_BARCO = 250_000;
+    private static final double METROS_SEGUNDO_NUDO = 1852.0 / 3600.0;
+
+    // Barcos de la comprobación con el método de todos contra todos
+    private static final int BARCOS_COMPROBACION = 3_000;
+
+    /**
+     * Se crea un constructor privado para evitar que la clase pueda instanciarse
+     */
+    private SimuladorPosiciones() {
+
+    }
+
+    /**
+     * Metodo main del simulador
+     * @param args Número de barcos, número de ciclos, distancia de alerta (en metros) y segundos por ciclo
+     */
+    public static void main(String[] args) {
+        int numBarcos = (args.length > 0 ? Integer.parseInt(args[0]) : SimuladorPosiciones.BARCOS_POR_DEFECTO);
+        int numCiclos = (args.length > 1 ? Integer.parseInt(args[1]) : SimuladorPosiciones.CICLOS_POR_DEFECTO);
+        double distancia = (args.length > 2 ? Double.parseDouble(args[2]) : SimuladorPosiciones.DISTANCIA_POR_DEFECTO);
+        double segundos = (args.length > 3 ? Double.parseDouble(args[3]) : SimuladorPosiciones.SEGUNDOS_POR_DEFECTO);
+
+        System.out.println(String.format("SIMULACIÓN DE POSICIONES: %d barcos, %d ciclos, alerta a %.0f metros, %.0f segundos por ciclo",
+                numBarcos, numCiclos, distancia, segundos));
+        System.out.println("----------------------------------------------------\n");
+
+        int esperadas = SimuladorPosiciones.contarParejas(SimuladorPosiciones.BARCOS_COMPROBACION, distancia, true);
+        int obtenidas = SimuladorPosiciones.contarParejas(SimuladorPosiciones.BARCOS_COMPROBACION, distancia, false);
+        System.out.println(String.format(" -> Comprobación con %d barcos: %d parejas (todos contra todos: %d) %s\n",
+                SimuladorPosiciones.BARCOS_COMPROBACION, obtenidas, esperadas, (obtenidas == esperadas ? "coinciden" : "NO COINCIDEN")));
+
+        // Flota inicial repartida en un cuadrado
+        EscuelaVela escuela = new EscuelaVela("Simulación");
+        SeguimientoPosiciones seguimiento = new SeguimientoPosiciones(escuela, distancia);
+        SplittableRandom aleatorio = new SplittableRandom(42);
+        double lado = Math.sqrt(numBarcos * SimuladorPosiciones.SUPERFICIE_POR_BARCO);
+        double[] este = new double[numBarcos];
+        double[] norte = new double[numBarcos];
+        double[] avanceEste = new double[numBarcos];
+        double[] avanceNorte = new double[numBarcos];
+        for (int i = 0; i < numBarcos; i++) {
+            Velero barco = new Velero(escuela, "Velero " + (i + 1), 1 + i % Velero.MAX_MASTILES, 4);
+            int velocidad = aleatorio.nextInt(Velero.MIN_VELOCIDAD, 16);
+            barco.iniciarNavegacion(velocidad, (i % 2 == 0 ? "ceñida" : "empopada"), "Patrón " + (i % 500), 2);
+            double angulo = aleatorio.nextDouble(2 * Math.PI);
+            este[i] = aleatorio.nextDouble(lado);
+            norte[i] = aleatorio.nextDouble(lado);
+            avanceEste[i] = Math.sin(angulo) * velocidad * SimuladorPosiciones.METROS_SEGUNDO_NUDO * segundos;
+            avanceNorte[i] = Math.cos(angulo) * velocidad * SimuladorPosiciones.METROS_SEGUNDO_NUDO * segundos;
+        }
+
+        HistogramaLatencias tiempos = new HistogramaLatencias();
+        long totalAlertas = 0;
+        for (int ciclo = 0; ciclo < numCiclos; ciclo++) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < numBarcos; i++) {
+                este[i] += avanceEste[i];
+                norte[i] += avanceNorte[i];
+                seguimiento.actualizarPosicion(i, este[i], norte[i]);
+            }
+            int alertas = seguimiento.ciclo(null);
+            tiempos.registrar(System.nanoTime() - inicio);
+            totalAlertas += alertas;
+        }
+        System.out.println(String.format(" -> Barcos seguidos: %d", seguimiento.getNumIndexados()));
+        System.out.println(String.format(" -> Alertas de proximidad: %d (%.1f por ciclo)", totalAlertas, (double) totalAlertas / Math.max(1, numCiclos)));
+        System.out.println(String.format(" -> Tiempo por ciclo (posiciones + índice + alertas): %s", tiempos));
+        Velero[] cercanos = seguimiento.buscarCercanos(lado / 2, lado / 2, 10 * distancia);
+        System.out.println(String.format(" -> Barcos a menos de %.0f metros del centro de la zona: %d", 10 * distancia, cercanos.length));
+    }
+
+    // Cuenta las parejas cercanas de una flota aleatoria con el índice o comparando todos con todos
+    private static int contarParejas(int numBarcos, double distancia, boolean todosContraTodos) {
+        EscuelaVela escuela = new EscuelaVela("Comprobación");
+        SeguimientoPosiciones seguimiento = new SeguimientoPosiciones(escuela, distancia);
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        double lado = Math.sqrt(numBarcos * SimuladorPosiciones.SUPERFICIE_POR_BARCO) / 4;
+        double[] este = new double[numBarcos];
+        double[] norte = new double[numBarcos];
+        for (int i = 0; i < numBarcos; i++) {
+            new Velero(escuela, "Velero " + (i + 1), 1, 4).iniciarNavegacion(10, "ceñida", "Patrón", 2);
+            este[i] = aleatorio.nextDouble(-lado, lado);
+            norte[i] = aleatorio.nextDouble(-lado, lado);
+            seguimiento.actualizarPosicion(i, este[i], norte[i]);
+        }
+        if (!todosContraTodos) {
+            return seguimiento.ciclo(null);
+        }
+        int parejas = 0;
+        for (int i = 0; i < numBarcos; i++) {
+            for (int j = i + 1; j < numBarcos; j++) {
+                double dx = este[i] - este[j];
+                double dy = norte[i] - norte[j];
+                if (dx * dx + dy * dy < distancia * distancia) {
+                    parejas++;
+                }
+            }
+        }
+        return parejas;
+    }
+}
@@ -0,0 +1,412 @@
+package tarea05;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * Tabla de clasificación ordenada por puntuación (de mayor a menor, y por
+ * nombre en caso de empate), implementada como una lista de saltos indexable:
+ * cada enlace guarda cuántas posiciones salta, por lo que insertar, mover,
+ * consultar la posición de un participante o acceder a una posición cuestan
+ * O(log n).</p>
+ * <p>
+ * La tabla puede utilizarse desde varios hilos a la vez: las consultas se
+ * realizan en paralelo y las actualizaciones son exclusivas. Las consultas
+ * devuelven copias (<code>Entrada</code>) que no cambian con la tabla.</p>
+ *
+ * @author profesorado
+ */
+public class TablaClasificacion {
+
+    // Número máximo de niveles de la lista de saltos (suficiente para 2^32 participantes)
+    private static final int MAX_NIVEL = 32;
+
+    /**
+     * Participante de una tabla de clasificación en el momento de la consulta.
+     */
+    public static final class Entrada {
+
+        private final int posicion;         // Posición en la tabla (empezando en 1)
+        private final String nombre;        // Nombre del participante
+        private final double puntuacion;    // Puntuación del participante
+        private final int numRegatas;       // Número de regatas disputadas
+
+        private Entrada(int posicion, String nombre, double puntuacion, int numRegatas) {
+            this.posicion = posicion;
+            this.nombre = nombre;
+            this.puntuacion = puntuacion;
+            this.numRegatas = numRegatas;
+        }
+
+        /**
+         * @return Posición en la tabla (empezando en 1)
+         */
+        public int getPosicion() {
+            return this.posicion;
+        }
+
+        /**
+         * @return Nombre del participante
+         */
+        public String getNombre() {
+            return this.nombre;
+        }
+
+        /**
+         * @return Puntuación del participante
+         */
+        public double getPuntuacion() {
+            return this.puntuacion;
+        }
+
+        /**
+         * @return Número de regatas disputadas
+         */
+        public int getNumRegatas() {
+            return this.numRegatas;
+        }
+
+        /**
+         * Devuelve la entrada en un tipo String
+         *
+         * @return String Posición, nombre, puntuación y regatas
+         */
+        @Override
+        public String toString() {
+            return String.format("%d. %s (%.1f puntos, %d regatas)", this.posicion, this.nombre, this.puntuacion, this.numRegatas);
+        }
+    }
+
+    // Nodo de la lista de saltos: en cada nivel guarda el siguiente nodo y las posiciones que salta
+    private static final class Nodo {
+
+        final String nombre;
+        double puntuacion;
+        int numRegatas;
+        final Nodo[] siguientes;
+        final int[] saltos;
+
+        Nodo(String nombre, double puntuacion, int numRegatas, int nivel) {
+            this.nombre = nombre;
+            this.puntuacion = puntuacion;
+            this.numRegatas = numRegatas;
+            this.siguientes = new Nodo[nivel];
+            this.saltos = new int[nivel];
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final Nodo cabeza;                          // Nodo inicial (sin participante)
+    private final HashMap<String, Nodo> porNombre;      // Nodo de cada participante
+    private final ReentrantReadWriteLock cerrojo;       // Consultas compartidas y actualizaciones exclusivas
+    private int nivel;                                  // Número de niveles en uso
+    private int numEntradas;                            // Número de participantes
+
+    /**
+     * Crea una tabla de clasificación vacía.
+     */
+    public TablaClasificacion() {
+        this.cabeza = new Nodo(null, Double.NaN, 0, TablaClasificacion.MAX_NIVEL);
+        this.porNombre = new HashMap<>();
+        this.cerrojo = new ReentrantReadWriteLock();
+        this.nivel = 1;
+        this.numEntradas = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Actualización
+    // ------------------------------------------------------------------------
+    /**
+     * Establece la puntuación y el número de regatas de un participante,
+     * añadiéndolo a la tabla si no estaba.
+     *
+     * @param nombre Nombre del participante
+     * @param puntuacion Nueva puntuación
+     * @param numRegatas Número de regatas disputadas
+     *
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si la puntuación no es un número
+     */
+    public void establecer(String nombre, double puntuacion, int numRegatas) throws NullPointerException, IllegalArgumentException {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre del participante no puede ser nulo.\n");
+        }
+        if (Double.isNaN(puntuacion)) {
+            throw new IllegalArgumentException(String.format("La puntuación de %s debe ser un número.\n", nombre));
+        }
+        this.cerrojo.writeLock().lock();
+        try {
+            Nodo nodo = this.porNombre.get(nombre);
+            if (nodo != null) {
+                nodo.numRegatas = numRegatas;
+                if (nodo.puntuacion == puntuacion) {
+                    return;
+                }
+                this.quitar(nodo);
+            }
+            nodo = new Nodo(nombre, puntuacion, numRegatas, TablaClasificacion.nivelAleatorio());
+            this.insertar(nodo);
+            this.porNombre.put(nombre, nodo);
+        } finally {
+            this.cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Elimina un participante de la tabla.
+     *
+     * @param nombre Nombre del participante
+     * @return <code>true</code> si el participante estaba en la tabla
+     */
+    public boolean eliminar(String nombre) {
+        this.cerrojo.writeLock().lock();
+        try {
+            Nodo nodo = this.porNombre.remove(nombre);
+            if (nodo == null) {
+                return false;
+            }
+            this.quitar(nodo);
+            return true;
+        } finally {
+            this.cerrojo.writeLock().unlock();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve el número de participantes de la tabla.
+     * @return Número de participantes
+     */
+    public int getNumEntradas() {
+        this.cerrojo.readLock().lock();
+        try {
+            return this.numEntradas;
+        } finally {
+            this.cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve la entrada actual de un participante.
+     *
+     * @param nombre Nombre del participante
+     * @return Entrada del participante, o <code>null</code> si no está en la tabla
+     */
+    public Entrada getEntrada(String nombre) {
+        this.cerrojo.readLock().lock();
+        try {
+            Nodo nodo = this.porNombre.get(nombre);
+            return (nodo == null ? null : new Entrada(this.posicion(nodo), nodo.nombre, nodo.puntuacion, nodo.numRegatas));
+        } finally {
+            this.cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve la posición de un participante en O(log n).
+     *
+     * @param nombre Nombre del participante
+     * @return Posición del participante (empezando en 1), o -1 si no está en la tabla
+     */
+    public int getPosicion(String nombre) {
+        this.cerrojo.readLock().lock();
+        try {
+            Nodo nodo = this.porNombre.get(nombre);
+            return (nodo == null ? -1 : this.posicion(nodo));
+        } finally {
+            this.cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve los mejores participantes de la tabla.
+     *
+     * @param cantidad Número máximo de participantes que se devuelven
+     * @return Entradas de los mejores participantes, en orden
+     */
+    public List<Entrada> getMejores(int cantidad) {
+        return this.getPosiciones(1, cantidad);
+    }
+
+    /**
+     * Devuelve los participantes que ocupan un intervalo de posiciones.
+     *
+     * @param desde Primera posición (empezando en 1)
+     * @param hasta Última posición (incluida)
+     * @return Entradas de las posiciones indicadas que existen en la tabla, en orden
+     */
+    public List<Entrada> getPosiciones(int desde, int hasta) {
+        List<Entrada> entradas = new ArrayList<>();
+        this.cerrojo.readLock().lock();
+        try {
+            int posicion = Math.max(1, desde);
+            Nodo nodo = this.enPosicion(posicion);
+            while (nodo != null && posicion <= hasta) {
+                entradas.add(new Entrada(posicion, nodo.nombre, nodo.puntuacion, nodo.numRegatas));
+                nodo = nodo.siguientes[0];
+                posicion++;
+            }
+        } finally {
+            this.cerrojo.readLock().unlock();
+        }
+        return entradas;
+    }
+
+    /**
+     * Devuelve los participantes con una puntuación dentro de un intervalo.
+     *
+     * @param minimo Puntuación mínima (incluida)
+     * @param maximo Puntuación máxima (incluida)
+     * @return Entradas de los participantes del intervalo, en orden
+     */
+    public List<Entrada> getEntre(double minimo, double maximo) {
+        List<Entrada> entradas = new ArrayList<>();
+        this.cerrojo.readLock().lock();
+        try {
+            // Se busca el último nodo con una puntuación mayor que el máximo
+            Nodo actual = this.cabeza;
+            int posicion = 0;
+            for (int i = this.nivel - 1; i >= 0; i--) {
+                while (actual.siguientes[i] != null && actual.siguientes[i].puntuacion > maximo) {
+                    posicion += actual.saltos[i];
+                    actual = actual.siguientes[i];
+                }
+            }
+            Nodo nodo = actual.siguientes[0];
+            while (nodo != null && nodo.puntuacion >= minimo) {
+                posicion++;
+                entradas.add(new Entrada(posicion, nodo.nombre, nodo.puntuacion, nodo.numRegatas));
+                nodo = nodo.siguientes[0];
+            }
+        } finally {
+            this.cerrojo.readLock().unlock();
+        }
+        return entradas;
+    }
+
+    /**
+     * Devuelve la tabla completa en un tipo String
+     *
+     * @return String Participantes de la tabla, uno por línea
+     */
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder();
+        for (Entrada entrada : this.getPosiciones(1, Integer.MAX_VALUE)) {
+            texto.append(entrada).append('\n');
+        }
+        return texto.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares (con el cerrojo adquirido)
+    // ------------------------------------------------------------------------
+    // Indica si el nodo a va antes que el b en la tabla
+    private static boolean antes(Nodo a, Nodo b) {
+        if (a.puntuacion != b.puntuacion) {
+            return a.puntuacion > b.puntuacion;
+        }
+        return a.nombre.compareTo(b.nombre) < 0;
+    }
+
+    // Número de niveles de un nodo nuevo: cada nivel adicional con probabilidad 1/2
+    private static int nivelAleatorio() {
+        int bits = ThreadLocalRandom.current().nextInt() | (1 << (TablaClasificacion.MAX_NIVEL - 1));
+        return Integer.numberOfTrailingZeros(bits) + 1;
+    }
+
+    // Inserta un nodo en su lugar, actualizando los saltos de los nodos anteriores
+    private void insertar(Nodo nodo) {
+        Nodo[] anteriores = new Nodo[TablaClasificacion.MAX_NIVEL];
+        int[] posiciones = new int[TablaClasificacion.MAX_NIVEL];
+        Nodo actual = this.cabeza;
+        for (int i = this.nivel - 1; i >= 0; i--) {
+            posiciones[i] = (i == this.nivel - 1 ? 0 : posiciones[i + 1]);
+            while (actual.siguientes[i] != null && TablaClasificacion.antes(actual.siguientes[i], nodo)) {
+                posiciones[i] += actual.saltos[i];
+                actual = actual.siguientes[i];
+            }
+            anteriores[i] = actual;
+        }
+        int nivelNodo = nodo.siguientes.length;
+        for (int i = this.nivel; i < nivelNodo; i++) {
+            posiciones[i] = 0;
+            anteriores[i] = this.cabeza;
+            this.cabeza.saltos[i] = this.numEntradas;
+        }
+        this.nivel = Math.max(this.nivel, nivelNodo);
+        for (int i = 0; i < nivelNodo; i++) {
+            nodo.siguientes[i] = anteriores[i].siguientes[i];
+            anteriores[i].siguientes[i] = nodo;
+            nodo.saltos[i] = anteriores[i].saltos[i] - (posiciones[0] - posiciones[i]);
+            anteriores[i].saltos[i] = posiciones[0] - posiciones[i] + 1;
+        }
+        for (int i = nivelNodo; i < this.nivel; i++) {
+            anteriores[i].saltos[i]++;
+        }
+        this.numEntradas++;
+    }
+
+    // Quita un nodo de la lista, actualizando los saltos de los nodos anteriores
+    private void quitar(Nodo nodo) {
+        Nodo actual = this.cabeza;
+        for (int i = this.nivel - 1; i >= 0; i--) {
+            while (actual.siguientes[i] != null && TablaClasificacion.antes(actual.siguientes[i], nodo)) {
+                actual = actual.siguientes[i];
+            }
+            if (actual.siguientes[i] == nodo) {
+                actual.saltos[i] += nodo.saltos[i] - 1;
+                actual.siguientes[i] = nodo.siguientes[i];
+            } else {
+                actual.saltos[i]--;
+            }
+        }
+        while (this.nivel > 1 && this.cabeza.siguientes[this.nivel - 1] == null) {
+            this.nivel--;
+        }
+        this.numEntradas--;
+    }
+
+    // Posición de un nodo de la lista (empezando en 1)
+    private int posicion(Nodo nodo) {
+        Nodo actual = this.cabeza;
+        int posicion = 0;
+        for (int i = this.nivel - 1; i >= 0; i--) {
+            while (actual.siguientes[i] != null && !TablaClasificacion.antes(nodo, actual.siguientes[i])) {
+                posicion += actual.saltos[i];
+                actual = actual.siguientes[i];
+            }
+            if (actual == nodo) {
+                return posicion;
+            }
+        }
+        return posicion;
+    }
+
+    // Nodo que ocupa una posición (empezando en 1), o null si no existe
+    private Nodo enPosicion(int posicion) {
+        if (posicion < 1 || posicion > this.numEntradas) {
+            return null;
+        }
+        Nodo actual = this.cabeza;
+        int recorrido = 0;
+        for (int i = this.nivel - 1; i >= 0; i--) {
+            while (actual.siguientes[i] != null && recorrido + actual.saltos[i] <= posicion) {
+                recorrido += actual.saltos[i];
+                actual = actual.siguientes[i];
+            }
+            if (recorrido == posicion) {
+                return actual;
+            }
+        }
+        return null;
+    }
+}
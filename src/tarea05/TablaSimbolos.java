@@ -0,0 +1,166 @@
+package tarea05;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Tabla de símbolos que asigna a cada cadena distinta un identificador entero
+ * compacto (0, 1, 2...), y guarda una única instancia de cada cadena.</p>
+ * <p>
+ * Se utiliza para los valores que se repiten constantemente en la flota (rumbos,
+ * patrones y nombres de barcos): los veleros almacenan el identificador en lugar
+ * de la cadena, las comparaciones se hacen entre enteros y las cadenas duplicadas
+ * que reciben los métodos públicos no se conservan en memoria.</p>
+ * <p>
+ * Los símbolos no se eliminan nunca, por lo que las tablas que reciben cadenas
+ * de fuera (clientes de red, ficheros) tienen un número máximo de símbolos.
+ * La consulta de la cadena de un identificador no utiliza bloqueos, y la tabla
+ * puede utilizarse desde varios hilos a la vez.</p>
+ *
+ * @author profesorado
+ */
+public class TablaSimbolos {
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto
+    // ------------------------------------------------------------------------
+    private final ConcurrentHashMap<String, Integer> identificadores;  // Identificador de cada cadena
+    private volatile String[] simbolos;                                 // Cadena de cada identificador
+    private volatile int numSimbolos;                                   // Número de símbolos de la tabla
+    private final int maxSimbolos;                                      // Número máximo de símbolos
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Crea una tabla de símbolos sin límite con unos símbolos iniciales, que
+     * reciben los identificadores 0, 1, 2... en el orden indicado.
+     *
+     * @param iniciales Símbolos iniciales de la tabla
+     */
+    public TablaSimbolos(String... iniciales) {
+        this(Integer.MAX_VALUE, iniciales);
+    }
+
+    /**
+     * Crea una tabla de símbolos con un número máximo de símbolos y unos
+     * símbolos iniciales, que reciben los identificadores 0, 1, 2... en el
+     * orden indicado.
+     *
+     * @param maxSimbolos Número máximo de símbolos de la tabla
+     * @param iniciales Símbolos iniciales de la tabla
+     *
+     * @throws IllegalArgumentException Si los símbolos iniciales no caben en la tabla
+     */
+    public TablaSimbolos(int maxSimbolos, String... iniciales) throws IllegalArgumentException {
+        if (maxSimbolos < iniciales.length) {
+            throw new IllegalArgumentException(String.format("La tabla de símbolos debe admitir al menos sus %d símbolos iniciales.\n", iniciales.length));
+        }
+        this.identificadores = new ConcurrentHashMap<>();
+        this.simbolos = new String[Math.max(16, iniciales.length)];
+        this.numSimbolos = 0;
+        this.maxSimbolos = maxSimbolos;
+        for (String simbolo : iniciales) {
+            this.getId(simbolo);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas de la tabla
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve el identificador de una cadena, añadiéndola a la tabla si no existía.
+     *
+     * @param simbolo Cadena de la que se obtiene el identificador
+     * @return Identificador de la cadena
+     *
+     * @throws NullPointerException Si la cadena es nula
+     * @throws IllegalStateException Si la cadena no está en la tabla y la tabla está llena
+     */
+    public int getId(String simbolo) throws NullPointerException, IllegalStateException {
+        if (simbolo == null) {
+            throw new NullPointerException("El símbolo no puede ser nulo.\n");
+        }
+        Integer id = this.identificadores.get(simbolo);
+        if (id == null) {
+            id = this.identificadores.computeIfAbsent(simbolo, this::anadir);
+        }
+        return id;
+    }
+
+    /**
+     * Busca el identificador de una cadena sin añadirla a la tabla.
+     *
+     * @param simbolo Cadena que se busca
+     * @return Identificador de la cadena, o -1 si no está en la tabla (o es nula)
+     */
+    public int buscar(String simbolo) {
+        Integer id = (simbolo == null ? null : this.identificadores.get(simbolo));
+        return (id == null ? -1 : id);
+    }
+
+    /**
+     * Devuelve la cadena de un identificador.
+     *
+     * @param id Identificador de la cadena
+     * @return La cadena correspondiente
+     *
+     * @throws IndexOutOfBoundsException Si el identificador no existe
+     */
+    public String getSimbolo(int id) throws IndexOutOfBoundsException {
+        // Se lee primero el contador: el array leído después contiene, como mínimo, esos símbolos
+        int registrados = this.numSimbolos;
+        String[] tabla = this.simbolos;
+        if (id < 0 || id >= registrados) {
+            throw new IndexOutOfBoundsException(String.format("No existe ningún símbolo con el identificador %d.\n", id));
+        }
+        return tabla[id];
+    }
+
+    /**
+     * Devuelve la instancia única (canónica) de una cadena, añadiéndola a la tabla si no existía.
+     *
+     * @param simbolo Cadena de la que se obtiene la instancia canónica
+     * @return Instancia de la cadena guardada en la tabla
+     *
+     * @throws NullPointerException Si la cadena es nula
+     * @throws IllegalStateException Si la cadena no está en la tabla y la tabla está llena
+     */
+    public String getCanonico(String simbolo) throws NullPointerException, IllegalStateException {
+        return this.getSimbolo(this.getId(simbolo));
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>numSimbolos</code>
+     * @return Número de símbolos distintos de la tabla
+     */
+    public int getNumSimbolos() {
+        return this.numSimbolos;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>maxSimbolos</code>
+     * @return Número máximo de símbolos de la tabla
+     */
+    public int getMaxSimbolos() {
+        return this.maxSimbolos;
+    }
+
+    // ------------------------------------------------------------------------
+    // Métodos auxiliares
+    // ------------------------------------------------------------------------
+    // Añade un símbolo nuevo al final de la tabla y devuelve su identificador
+    private synchronized Integer anadir(String simbolo) throws IllegalStateException {
+        int id = this.numSimbolos;
+        if (id == this.maxSimbolos) {
+            throw new IllegalStateException(String.format("La tabla de símbolos está llena (%d símbolos), no se puede añadir %s.\n", this.maxSimbolos, simbolo));
+        }
+        if (id == this.simbolos.length) {
+            this.simbolos = Arrays.copyOf(this.simbolos, (int) Math.min(2L * id, this.maxSimbolos));
+        }
+        this.simbolos[id] = simbolo;
+        this.numSimbolos = id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,450 @@
+package tarea05;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Canal de entrada de la telemetría de a bordo (velocidad, rumbo y escora) de
+ * los veleros de una escuela, preparado para decenas de muestras por segundo
+ * y barco en flotas grandes.</p>
+ * <p>
+ * Las muestras se guardan en un buffer circular reservado de antemano, formado
+ * por arrays de tipos primitivos: publicar una muestra no crea ningún objeto.
+ * Varios hilos pueden publicar a la vez (cada uno reserva una posición con una
+ * operación atómica y la marca como publicada al terminar de escribirla), y un
+ * único hilo consumidor recoge las muestras publicadas por lotes. Si el buffer
+ * está lleno, los productores esperan a que el consumidor libere sitio (o
+ * fallan, si el canal se cierra o el consumidor ha terminado). El aviso de
+ * llegada a puerto, en cambio, llega desde el hilo que opera con los barcos y
+ * no espera nunca: si no hay sitio o el consumidor ha terminado, se descarta y
+ * se cuenta (<code>getNumDescartados</code>), y las muestras de esa travesía
+ * se suman a las de la siguiente.</p>
+ * <p>
+ * El consumidor acumula las muestras en arrays indexados por barco y guarda la
+ * última velocidad medida de cada uno. Cuando un barco vuelve a puerto se
+ * genera su <code>ResumenTravesia</code>, que se obtiene con
+ * <code>extraerResumenes</code>. Como <code>Velero</code> no está sincronizado,
+ * el consumidor no modifica los barcos: las velocidades medidas se aplican con
+ * <code>aplicarVelocidades</code>, desde el hilo que opera con ellos.</p>
+ *
+ * @author profesorado
+ */
+public class TelemetriaFlota implements OyenteFlota, AutoCloseable {
+
+    /**
+     * Capacidad por defecto del buffer circular (muestras).
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 1 << 16;
+
+    // Número máximo de muestras que el consumidor procesa en un lote
+    private static final int MAX_LOTE = 4096;
+
+    // Tipos de registro del buffer
+    private static final byte MUESTRA = 0;
+    private static final byte FIN_TRAVESIA = 1;
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto: buffer circular
+    // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;          // Escuela cuyos barcos envían telemetría
+    private final int mascara;                  // Capacidad del buffer menos uno (potencia de dos)
+    private final int[] barcoMuestra;           // Índice del barco de cada posición
+    private final byte[] tipoMuestra;           // Tipo de registro de cada posición
+    private final float[] velocidadMuestra;     // Velocidad (en nudos) de cada posición
+    private final float[] rumboMuestra;         // Rumbo (en grados) de cada posición
+    private final float[] escoraMuestra;        // Escora (en grados) de cada posición
+    private final AtomicLongArray publicada;    // Secuencia publicada en cada posición
+    private final AtomicLong siguiente;         // Siguiente secuencia que reservará un productor
+    private volatile long consumida;            // Secuencias ya procesadas por el consumidor
+    private volatile boolean cerrada;           // Indica si se ha cerrado el canal
+    private final Thread consumidor;            // Hilo que procesa las muestras
+
+    // ------------------------------------------------------------------------
+    // Atributos de objeto: acumulados por barco (sólo los usa el consumidor)
+    // ------------------------------------------------------------------------
+    private long[] numMuestras;                 // Muestras de la travesía actual
+    private double[] sumaVelocidad;             // Suma de las velocidades
+    private float[] maxVelocidad;               // Velocidad máxima
+    private double[] sumaSeno;                  // Suma de los senos del rumbo
+    private double[] sumaCoseno;                // Suma de los cosenos del rumbo
+    private double[] sumaEscora;                // Suma de las escoras (en valor absoluto)
+    private float[] maxEscora;                  // Escora máxima (en valor absoluto)
+    private final ConcurrentLinkedQueue<ResumenTravesia> resumenes;     // Resúmenes de travesías terminadas
+    private volatile AtomicIntegerArray velocidadMedida;    // Última velocidad medida más uno (0 si no hay ninguna pendiente)
+    private volatile long numProcesadas;        // Muestras procesadas desde la creación
+    private volatile long numErrores;           // Registros cuyo proceso ha fallado
+    private final AtomicLong numDescartados;    // Avisos de llegada descartados por falta de sitio
+
+    // ------------------------------------------------------------------------
+    // Constructores de la clase
+    // ------------------------------------------------------------------------
+    /**
+     * Crea el canal de telemetría de una escuela con la capacidad por defecto.
+     *
+     * @param escuela Escuela cuyos barcos envían telemetría
+     *
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public TelemetriaFlota(EscuelaVela escuela) throws NullPointerException {
+        this(escuela, TelemetriaFlota.CAPACIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * Crea el canal de telemetría de una escuela, lo conecta a sus sucesos y
+     * arranca el hilo consumidor.
+     *
+     * @param escuela Escuela cuyos barcos envían telemetría
+     * @param capacidad Número de muestras del buffer circular (se redondea a una potencia de dos)
+     *
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si la capacidad es menor que 2 o mayor que 2^30
+     */
+    public TelemetriaFlota(EscuelaVela escuela, int capacidad) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela de la telemetría no puede ser nula.\n");
+        }
+        if (capacidad < 2 || capacidad > (1 << 30)) {
+            throw new IllegalArgumentException(String.format("La capacidad %d debe estar entre 2 y 2^30.\n", capacidad));
+        }
+        int tamano = Integer.highestOneBit(capacidad - 1) << 1;
+        this.escuela = escuela;
+        this.mascara = tamano - 1;
+        this.barcoMuestra = new int[tamano];
+        this.tipoMuestra = new byte[tamano];
+        this.velocidadMuestra = new float[tamano];
+        this.rumboMuestra = new float[tamano];
+        this.escoraMuestra = new float[tamano];
+        this.publicada = new AtomicLongArray(tamano);
+        for (int i = 0; i < tamano; i++) {
+            this.publicada.set(i, -1);
+        }
+        this.siguiente = new AtomicLong();
+        this.consumida = 0;
+        this.cerrada = false;
+
+        int numBarcos = Math.max(16, escuela.getNumBarcosLocales());
+        this.numMuestras = new long[numBarcos];
+        this.sumaVelocidad = new double[numBarcos];
+        this.maxVelocidad = new float[numBarcos];
+        this.sumaSeno = new double[numBarcos];
+        this.sumaCoseno = new double[numBarcos];
+        this.sumaEscora = new double[numBarcos];
+        this.maxEscora = new float[numBarcos];
+        this.resumenes = new ConcurrentLinkedQueue<>();
+        this.velocidadMedida = new AtomicIntegerArray(numBarcos);
+        this.numProcesadas = 0;
+        this.numErrores = 0;
+        this.numDescartados = new AtomicLong();
+
+        this.consumidor = new Thread(this::consumir, "telemetria-" + escuela.getNombre());
+        this.consumidor.setDaemon(true);
+        this.consumidor.start();
+        escuela.anadirOyente(this);
+    }
+
+    // ------------------------------------------------------------------------
+    // Publicación de muestras
+    // ------------------------------------------------------------------------
+    /**
+     * Publica una muestra de telemetría de un velero de la escuela. Si el buffer
+     * está lleno, espera a que el consumidor libere sitio.
+     *
+     * @param indiceBarco Índice del barco en la escuela
+     * @param velocidad Velocidad medida (en nudos)
+     * @param rumbo Rumbo medido (en grados)
+     * @param escora Escora medida (en grados)
+     *
+     * @throws IndexOutOfBoundsException Si no existe ningún barco con ese índice
+     * @throws IllegalStateException Si el canal está cerrado o el consumidor ha terminado
+     */
+    public void publicar(int indiceBarco, float velocidad, float rumbo, float escora) throws IndexOutOfBoundsException, IllegalStateException {
+        if (indiceBarco < 0 || indiceBarco >= this.escuela.getNumBarcosLocales()) {
+            throw new IndexOutOfBoundsException(String.format("No existe ningún velero con el índice %d.\n", indiceBarco));
+        }
+        this.escribir(TelemetriaFlota.MUESTRA, indiceBarco, velocidad, rumbo, escora);
+    }
+
+    /**
+     * Publica una muestra de telemetría de un velero.
+     *
+     * @param barco Velero que envía la muestra
+     * @param velocidad Velocidad medida (en nudos)
+     * @param rumbo Rumbo medido (en grados)
+     * @param escora Escora medida (en grados)
+     *
+     * @throws NullPointerException Si el barco es nulo
+     * @throws IllegalArgumentException Si el barco no pertenece a la escuela
+     * @throws IllegalStateException Si el canal está cerrado o el consumidor ha terminado
+     */
+    public void publicar(Velero barco, float velocidad, float rumbo, float escora) throws NullPointerException, IllegalArgumentException, IllegalStateException {
+        if (barco.getEscuela() != this.escuela) {
+            throw new IllegalArgumentException(String.format("El velero %s no pertenece a la escuela %s.\n", barco.getNombreBarco(), this.escuela.getNombre()));
+        }
+        this.escribir(TelemetriaFlota.MUESTRA, barco.getIndice(), velocidad, rumbo, escora);
+    }
+
+    /**
+     * Al volver un barco a puerto se cierra su travesía. El aviso pasa por el
+     * buffer, de modo que el resumen incluye todas las muestras publicadas antes.
+     *
+     * @param barco Velero que vuelve a puerto
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado navegando
+     */
+    @Override
+    public void navegacionParada(Velero barco, int tiempoNavegando) {
+        // El aviso llega desde la operación del barco, que no debe esperar al consumidor
+        if (!this.cerrada && !this.intentarEscribir(TelemetriaFlota.FIN_TRAVESIA, barco.getIndice())) {
+            this.numDescartados.incrementAndGet();
+        }
+    }
+
+    // Reserva una posición del buffer, escribe el registro y lo marca como publicado
+    private void escribir(byte tipo, int indiceBarco, float velocidad, float rumbo, float escora) throws IllegalStateException {
+        if (this.cerrada) {
+            throw new IllegalStateException("El canal de telemetría está cerrado.\n");
+        }
+        long secuencia = this.siguiente.getAndIncrement();
+        long limite = secuencia - this.mascara - 1;
+        while (this.consumida <= limite) {
+            // Si nadie va a liberar sitio, no se espera indefinidamente
+            if (this.cerrada || !this.consumidor.isAlive()) {
+                throw new IllegalStateException("El canal de telemetría está cerrado o su consumidor ha terminado.\n");
+            }
+            Thread.onSpinWait();
+        }
+        this.escribir(secuencia, tipo, indiceBarco, velocidad, rumbo, escora);
+    }
+
+    // Reserva una posición sólo si está libre y escribe un registro sin datos; devuelve false si no hay
+    // sitio o el consumidor ha terminado
+    private boolean intentarEscribir(byte tipo, int indiceBarco) {
+        if (!this.consumidor.isAlive()) {
+            return false;
+        }
+        long secuencia;
+        do {
+            secuencia = this.siguiente.get();
+            if (this.consumida <= secuencia - this.mascara - 1) {
+                return false;
+            }
+        } while (!this.siguiente.compareAndSet(secuencia, secuencia + 1));
+        this.escribir(secuencia, tipo, indiceBarco, 0, 0, 0);
+        return true;
+    }
+
+    // Escribe un registro en la posición de una secuencia ya reservada y lo marca como publicado
+    private void escribir(long secuencia, byte tipo, int indiceBarco, float velocidad, float rumbo, float escora) {
+        int posicion = (int) secuencia & this.mascara;
+        this.tipoMuestra[posicion] = tipo;
+        this.barcoMuestra[posicion] = indiceBarco;
+        this.velocidadMuestra[posicion] = velocidad;
+        this.rumboMuestra[posicion] = rumbo;
+        this.escoraMuestra[posicion] = escora;
+        this.publicada.lazySet(posicion, secuencia);
+    }
+
+    // ------------------------------------------------------------------------
+    // Consultas y cierre
+    // ------------------------------------------------------------------------
+    /**
+     * Devuelve y elimina los resúmenes de las travesías terminadas desde la última llamada.
+     *
+     * @return Resúmenes de travesías, en el orden en que han terminado
+     */
+    public List<ResumenTravesia> extraerResumenes() {
+        List<ResumenTravesia> extraidos = new ArrayList<>();
+        ResumenTravesia resumen;
+        while ((resumen = this.resumenes.poll()) != null) {
+            extraidos.add(resumen);
+        }
+        return extraidos;
+    }
+
+    /**
+     * Aplica a cada barco la última velocidad medida desde la llamada anterior
+     * (sólo a los que siguen navegando). Se debe llamar desde el hilo que opera
+     * con los barcos, porque avisa a los oyentes de la escuela de cada cambio.
+     *
+     * @return Número de barcos con una velocidad medida pendiente
+     */
+    public int aplicarVelocidades() {
+        AtomicIntegerArray medidas = this.velocidadMedida;
+        int numBarcos = Math.min(medidas.length(), this.escuela.getNumBarcosLocales());
+        int aplicadas = 0;
+        for (int b = 0; b < numBarcos; b++) {
+            int medida = medidas.getAndSet(b, 0);
+            if (medida != 0) {
+                this.escuela.getBarco(b).actualizarVelocidad(medida - 1);
+                aplicadas++;
+            }
+        }
+        return aplicadas;
+    }
+
+    /**
+     * Devuelve el número de muestras procesadas por el consumidor.
+     * @return Muestras procesadas desde la creación del canal
+     */
+    public long getNumProcesadas() {
+        return this.numProcesadas;
+    }
+
+    /**
+     * Devuelve el número de registros que el consumidor no ha podido procesar
+     * (y ha descartado) por un error.
+     * @return Registros descartados desde la creación del canal
+     */
+    public long getNumErrores() {
+        return this.numErrores;
+    }
+
+    /**
+     * Devuelve el número de avisos de llegada a puerto descartados porque el
+     * buffer estaba lleno o el consumidor había terminado.
+     * @return Avisos descartados desde la creación del canal
+     */
+    public long getNumDescartados() {
+        return this.numDescartados.get();
+    }
+
+    /**
+     * Devuelve el número de registros publicados que el consumidor aún no ha procesado.
+     * @return Retraso del consumidor (en registros)
+     */
+    public long getRetraso() {
+        return Math.max(0, this.siguiente.get() - this.consumida);
+    }
+
+    /**
+     * Espera a que el consumidor haya procesado todo lo publicado hasta el momento.
+     */
+    public void esperarConsumidor() {
+        long objetivo = this.siguiente.get();
+        while (this.consumida < objetivo && this.consumidor.isAlive()) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    /**
+     * Cierra el canal: procesa las muestras pendientes, detiene el consumidor y
+     * lo desconecta de la escuela.
+     */
+    @Override
+    public void close() {
+        if (this.cerrada) {
+            return;
+        }
+        this.escuela.eliminarOyente(this);
+        this.esperarConsumidor();
+        this.cerrada = true;
+        try {
+            this.consumidor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Consumidor
+    // ------------------------------------------------------------------------
+    // Bucle del consumidor: procesa lotes de registros publicados consecutivos
+    private void consumir() {
+        int esperas = 0;
+        while (true) {
+            long inicio = this.consumida;
+            long fin = inicio;
+            while (fin - inicio < TelemetriaFlota.MAX_LOTE && this.publicada.get((int) fin & this.mascara) == fin) {
+                fin++;
+            }
+            if (fin == inicio) {
+                if (this.cerrada) {
+                    return;
+                }
+                // Espera activa breve y después pausas cortas para no ocupar un procesador
+                if (++esperas < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(50_000);
+                }
+                continue;
+            }
+            esperas = 0;
+            for (long s = inicio; s < fin; s++) {
+                // Un registro que falla se descarta: el consumidor debe seguir liberando sitio
+                try {
+                    this.procesar((int) s & this.mascara);
+                } catch (RuntimeException e) {
+                    this.numErrores++;
+                }
+            }
+            this.numProcesadas += fin - inicio;
+            this.consumida = fin;
+        }
+    }
+
+    // Procesa un registro del buffer
+    private void procesar(int posicion) {
+        int b = this.barcoMuestra[posicion];
+        if (b >= this.numMuestras.length) {
+            this.ampliar(Math.max(b + 1, this.numMuestras.length * 2));
+        }
+        Velero barco = this.escuela.getBarco(b);
+        if (this.tipoMuestra[posicion] == TelemetriaFlota.FIN_TRAVESIA) {
+            this.velocidadMedida.set(b, 0);
+            this.cerrarTravesia(barco, b);
+            return;
+        }
+        float velocidad = this.velocidadMuestra[posicion];
+        double rumbo = Math.toRadians(this.rumboMuestra[posicion]);
+        float escora = Math.abs(this.escoraMuestra[posicion]);
+        this.numMuestras[b]++;
+        this.sumaVelocidad[b] += velocidad;
+        this.maxVelocidad[b] = Math.max(this.maxVelocidad[b], velocidad);
+        this.sumaSeno[b] += Math.sin(rumbo);
+        this.sumaCoseno[b] += Math.cos(rumbo);
+        this.sumaEscora[b] += escora;
+        this.maxEscora[b] = Math.max(this.maxEscora[b], escora);
+        this.velocidadMedida.set(b, Math.max(0, Math.round(velocidad)) + 1);
+    }
+
+    // Genera el resumen de la travesía de un barco y reinicia sus acumulados
+    private void cerrarTravesia(Velero barco, int b) {
+        long n = this.numMuestras[b];
+        if (n > 0) {
+            double rumboMedio = Math.toDegrees(Math.atan2(this.sumaSeno[b], this.sumaCoseno[b]));
+            this.resumenes.add(new ResumenTravesia(barco, n, this.sumaVelocidad[b] / n, this.maxVelocidad[b],
+                    (rumboMedio + 360) % 360, this.sumaEscora[b] / n, this.maxEscora[b]));
+        }
+        this.numMuestras[b] = 0;
+        this.sumaVelocidad[b] = 0;
+        this.maxVelocidad[b] = 0;
+        this.sumaSeno[b] = 0;
+        this.sumaCoseno[b] = 0;
+        this.sumaEscora[b] = 0;
+        this.maxEscora[b] = 0;
+    }
+
+    // Amplía los arrays de acumulados por barco
+    private void ampliar(int capacidad) {
+        this.numMuestras = Arrays.copyOf(this.numMuestras, capacidad);
+        this.sumaVelocidad = Arrays.copyOf(this.sumaVelocidad, capacidad);
+        this.maxVelocidad = Arrays.copyOf(this.maxVelocidad, capacidad);
+        this.sumaSeno = Arrays.copyOf(this.sumaSeno, capacidad);
+        this.sumaCoseno = Arrays.copyOf(this.sumaCoseno, capacidad);
+        this.sumaEscora = Arrays.copyOf(this.sumaEscora, capacidad);
+        this.maxEscora = Arrays.copyOf(this.maxEscora, capacidad);
+        // Una medida que se aplique mientras se copia puede aplicarse otra vez más tarde, que no cambia nada
+        AtomicIntegerArray medidas = new AtomicIntegerArray(capacidad);
+        for (int b = 0; b < this.velocidadMedida.length(); b++) {
+            medidas.set(b, this.velocidadMedida.get(b));
+        }
+        this.velocidadMedida = medidas;
+    }
+}
@@ -1,5 +1,9 @@
 package tarea05;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+
 /**
  * Clase de utilidades necesaria para la realizacion de las pruebas escritas
  * en las clases <b>TestEj0102</b>, <b>TestEj03</b> , <b>TestEj040506</b>  
@@ -15,6 +19,38 @@ public class TestUtilidades {
 
     }
 
+    // Destino de los mensajes de las pruebas (por defecto, escritura directa en la consola)
+    private static volatile SalidaRegistro salida = SalidaRegistro.consola();
+
+    /**
+     * Devuelve la salida en la que se escriben los mensajes de las pruebas
+     *
+     * @return SalidaRegistro Salida actual
+     */
+    public static SalidaRegistro getSalida() {
+        return TestUtilidades.salida;
+    }
+
+    /**
+     * Cambia la salida en la que se escriben los mensajes de las pruebas. Con
+     * una salida asíncrona los mensajes ya no se intercalan en orden con los que
+     * los programas de prueba escriben directamente en <code>System.out</code>.
+     *
+     * @param nuevaSalida Nueva salida de los mensajes
+     * @return SalidaRegistro Salida anterior, vaciada (no se cierra)
+     *
+     * @throws NullPointerException Si la salida es nula
+     */
+    public static SalidaRegistro setSalida(SalidaRegistro nuevaSalida) throws NullPointerException {
+        if (nuevaSalida == null) {
+            throw new NullPointerException("La salida de las pruebas no puede ser nula.\n");
+        }
+        SalidaRegistro anterior = TestUtilidades.salida;
+        TestUtilidades.salida = nuevaSalida;
+        anterior.flush();
+        return anterior;
+    }
+
     /**
      * Método de consulta de atributos estáticos de la clase
      *
@@ -62,16 +98,7 @@ public class TestUtilidades {
         StringBuilder consulta = new StringBuilder();
 
         // Ahora se lee el valor de cada getter() del dispositivo
-        consulta.append("Leyendo los datos almacenados en el velero...\n");
-        consulta.append(String.format(" -> Nombre del velero: %s\n", barco.getNombreBarco()));
-        consulta.append(String.format(" -> Número de mástiles: %d\n", barco.getNumMastiles()));
-        consulta.append(String.format(" -> Número máximo de tripulantes: %d\n", barco.getMaxTripulantes()));
-        consulta.append(String.format(" -> Navegando: %s\n", (barco.isNavegando()? "Sí" : "No")));
-        consulta.append(String.format(" -> Tiempo total de navegacion del velero: %s minutos \n", barco.getTiempoTotalNavegacionBarco()));
-        consulta.append(String.format(" -> Velocidad de navegación: %d nudos\n", barco.getVelocidad()));
-        consulta.append(String.format(" -> Rumbo de navegación: %s\n", barco.getRumbo()));
-        consulta.append(String.format(" -> Patrón durante la navegación: %s\n", barco.getPatron()));
-        consulta.append(String.format(" -> Número de tripulantes durante la navegación: %d\n\n", barco.getTripulacion()));
+        EscritorInformeVeleros.formatear(FormatoInforme.TEXTO, barco, consulta);
 
         // Se devuelve la salida formateada
         return consulta.toString();
@@ -84,12 +111,24 @@ public class TestUtilidades {
      * @return String consulta de atributos de todos los veleros de un array de barcos
      */
     public static String consultarAtributosArrayVeleros(Velero[] arrayBarcos) {
-        StringBuilder consulta = new StringBuilder();
-        // Se leen los datos de cada barco y se devuelven
-        for (Velero arrayBarco : arrayBarcos) {
-            consulta.append(TestUtilidades.consultarAtributosVelero(arrayBarco));
-        }
-        return consulta.toString();
+        // En flotas grandes los datos de los barcos se formatean por trozos en paralelo, en el orden del array
+        return EscritorInformeVeleros.formatearTodos(FormatoInforme.TEXTO, arrayBarcos);
+    }
+
+    /**
+     * Escribe los datos de un array de barcos directamente sobre un destino,
+     * sin acumular el informe completo en memoria
+     *
+     * @param arrayBarcos Array de barcos
+     * @param destino Destino en el que se escriben los datos de los veleros
+     * @param formato Formato del informe (texto, CSV o JSON Lines)
+     * @throws IOException Si se produce un error al escribir en el destino
+     */
+    public static void escribirAtributosArrayVeleros(Velero[] arrayBarcos, Writer destino, FormatoInforme formato) throws IOException {
+        // Se escribe cada barco en cuanto se formatea; el destino no se cierra
+        EscritorInformeVeleros escritor = new EscritorInformeVeleros(destino, formato);
+        escritor.escribirTodos(arrayBarcos);
+        escritor.flush();
     }
     
      /**
@@ -104,13 +143,13 @@ public class TestUtilidades {
         // Se crea un objeto de tipo barco
         Velero barco = null;
         try {
-            System.out.printf("Creando un Velero con los parámetros [%s,%d,%d]...\n", nombre, mastiles, tripulantes);
+            TestUtilidades.salida.escribirFormato("Creando un Velero con los parámetros [%s,%d,%d]...\n", nombre, mastiles, tripulantes);
             barco = new Velero(nombre, mastiles, tripulantes);
-            System.out.println(" -> Objeto creado con éxito.\n");
+            TestUtilidades.salida.escribirLinea(" -> Objeto creado con éxito.\n");
         } catch (IllegalArgumentException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         } catch (NullPointerException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }
 
         // Se retorna el barco creado
@@ -126,11 +165,11 @@ public class TestUtilidades {
         // Se crea un objeto de tipo Velero
         Velero barco = null;
         try {
-            System.out.printf("Creando un Velero con los parámetros por defecto...\n");
+            TestUtilidades.salida.escribirFormato("Creando un Velero con los parámetros por defecto...\n");
             barco = new Velero();
-            System.out.println(" -> Objeto creado con éxito.\n");
+            TestUtilidades.salida.escribirLinea(" -> Objeto creado con éxito.\n");
         } catch (IllegalArgumentException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }
 
         // Se retorna el barco creado
@@ -147,17 +186,49 @@ public class TestUtilidades {
         // Se crea un objeto de tipo array para almacenar las aeronaves
         Velero[] arrayBarcos = null;
         try {
-            System.out.printf("Intentando crear array de %d objetos de tipo Velero con los parámetros por defecto...\n", cantidad);
+            TestUtilidades.salida.escribirFormato("Intentando crear array de %d objetos de tipo Velero con los parámetros por defecto...\n", cantidad);
             arrayBarcos = Velero.crearArrayVelero(cantidad);
-            System.out.println(" -> Array de Objetos creado con éxito.\n");
+            TestUtilidades.salida.escribirLinea(" -> Array de Objetos creado con éxito.\n");
         } catch (IllegalArgumentException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }
 
         // Se retorna el vector creado
         return arrayBarcos;
     }
 
+    /**
+     * Importa de forma masiva los veleros de un fichero CSV o JSON Lines
+     * 
+     * @param ruta Ruta del fichero (el formato se deduce de la extensión)
+     * @return Velero Array de barcos importados
+     */
+    public static Velero[] importarFlota(String ruta) {
+        // Se crea un objeto de tipo array para almacenar los barcos importados
+        Velero[] arrayBarcos = null;
+        try {
+            TestUtilidades.salida.escribirFormato("Importando veleros desde el fichero %s...\n", ruta);
+            ResultadoImportacion resultado = new ImportadorFlota().importar(Paths.get(ruta));
+            arrayBarcos = resultado.getVeleros();
+            TestUtilidades.salida.escribirFormato(" -> Importación finalizada: %s\n", resultado);
+
+            // Sólo se muestran los primeros errores, el resto se pueden consultar en el resultado
+            int numMostrados = Math.min(resultado.getErrores().size(), 10);
+            for (int i = 0; i < numMostrados; i++) {
+                TestUtilidades.salida.escribirFormato(" -> %s\n", resultado.getErrores().get(i));
+            }
+            if (numMostrados < resultado.getErrores().size()) {
+                TestUtilidades.salida.escribirFormato(" -> ... y %d errores más\n", resultado.getErrores().size() - numMostrados);
+            }
+            TestUtilidades.salida.escribirLinea();
+        } catch (IllegalArgumentException | IllegalStateException | IOException e) {
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
+        }
+
+        // Se retorna el array de barcos importados
+        return arrayBarcos;
+    }
+
     /**
      * Crea un array de barcos con datos de prueba
      *
@@ -193,11 +264,11 @@ public class TestUtilidades {
         try {
             barco.iniciarNavegacion(velocidad, rumbo, patron, tripulacion);
         } catch (IllegalArgumentException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         } catch (IllegalStateException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         } catch (NullPointerException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }        
     }
     
@@ -213,7 +284,7 @@ public class TestUtilidades {
         try {
             barco.pararNavegacion(tiempo);
         } catch (IllegalStateException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }
     }
     
@@ -229,11 +300,11 @@ public class TestUtilidades {
         try {
             barco.setRumbo(rumbo);
         } catch (IllegalStateException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         } catch (NullPointerException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         } catch (IllegalArgumentException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }
     }
     
@@ -254,11 +325,11 @@ public class TestUtilidades {
             resultado = barco1.iniciarRegata(barco2);
             
             // Muestra el resultado de la regata
-            System.out.println(resultado);
+            TestUtilidades.salida.escribirLinea(resultado);
         } catch (IllegalStateException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         } catch (NullPointerException e) {
-            System.out.printf(" -> Se ha producido un error: %s\n", e.getMessage());
+            TestUtilidades.salida.escribirFormato(" -> Se ha producido un error: %s\n", e.getMessage());
         }
     }
 }
@@ -1,5 +1,7 @@
 package tarea05;
 
+import java.time.Instant;
+
 // ------------------------------------------------------------
 //                   Clase Velero
 // ------------------------------------------------------------
@@ -12,14 +14,19 @@ package tarea05;
  * Los objetos de esta clase permiten almacenar y gestionar la información
  * relativa al estado de los veleros y a la navegación.</p>
  * <p>
- * La clase también posee información general (estática), relativa a los
- * diferentes barcos veleros que existen en la escuela, como:</p>
+ * Cada velero pertenece a una escuela (<code>EscuelaVela</code>), que guarda la
+ * información general relativa a los diferentes barcos veleros que existen en
+ * ella, como:</p>
  * <ul>
  * <li><strong>cantidad total de veleros</strong> que existen en la escuela</li>
  * <li><strong>cantidad de veleros navegando</strong> en el momento actual</li>
  * <li><strong>cantidad total</strong> de minutos de navegación de todos los
  * veleros</li>
  * </ul>
+ * <p>
+ * Los veleros creados sin indicar una escuela pertenecen a la escuela por
+ * defecto, cuya información se puede consultar con los métodos estáticos
+ * de la clase.</p>
  *
  * @author profesorado
  */
@@ -38,6 +45,11 @@ public class Velero {
      * Número máximo de mástiles de un velero: {@value MAX_MASTILES}.
      */
     public static final int MAX_MASTILES = 4;
+
+    /**
+     * Número máximo de veleros de un array creado con <code>crearArrayVelero</code>: {@value MAX_ARRAY_VELEROS}.
+     */
+    public static final int MAX_ARRAY_VELEROS = 10;
     
     /**
      * Velocidad mínima de navegación (en nudos): {@value MIN_VELOCIDAD}.
@@ -65,23 +77,26 @@ public class Velero {
     public static final int MIN_TRIPULANTES = 0;
 
     // ------------------------------------------------------------------------
-    // Atributos estáticos privados (mutables)
-    // No dependen de instancias de objetos particulares y sólo pueden 
-    // modificarse desde la propia clase
+    // Atributos estáticos (inmutables)
+    // Rumbos conocidos: son los primeros de la tabla de rumbos de cada escuela,
+    // por lo que tienen los mismos identificadores en todas ellas
     // ------------------------------------------------------------------------
-    // Cantidad total de barcos de la escuela
-    private static int numBarcos = 0;
-
-    // Cantidad total de barcos que están navegando
-    private static int numBarcosNavegando = 0;
+    static final String[] RUMBOS_CONOCIDOS = {Velero.RUMBO_POR_DEFECTO, "ceñida", "empopada"};
+    static final int ID_SIN_RUMBO = 0;
+    static final int ID_CENIDA = 1;
+    static final int ID_EMPOPADA = 2;
 
-    // Número total de minutos de navegación de todos los barcos
-    private static float tiempoTotalNavegacion = 0;
+    // Instante (ms) que indica que no se conoce una salida o llegada; el 0 es
+    // un instante válido (1970-01-01T00:00:00Z)
+    static final long SIN_INSTANTE = Long.MIN_VALUE;
 
     // ------------------------------------------------------------------------
     // Atributos de objeto inmutables (privados)
     // Representan el estado del objeto pero no pueden cambiar su valor
     // ------------------------------------------------------------------------
+    private final EscuelaVela escuela;      // Escuela a la que pertenece el barco
+    private final int indice;               // Índice del barco en el registro de su escuela
+    private final int ranura;               // Ranura del barco en la región compartida de su escuela (-1 si no hay)
     private final String nombreBarco;       // Nombre del barco   
     private final int numMastiles;          // Número de mástiles del velero
     private final int maxTripulantes;       // Número máximo de tripulantes del barco (sin incluir el patrón)
@@ -97,6 +112,8 @@ public class Velero {
     // ------------------------------------------------------------------------
     private boolean navegando;                   // Indica si el barco está navegando o no (TRUE / FALSE)
     private int tiempoTotalNavegacionBarco;      // Tiempo total de navegación del barco (en minutos)
+    private long instanteSalida;                 // Instante de la última salida según el reloj de la escuela (ms, SIN_INSTANTE si no ha salido)
+    private long instanteLlegada;                // Instante de la última llegada según el reloj de la escuela (ms, SIN_INSTANTE si no ha llegado)
 
     // ------------------------------------------------------------------------
     // Atributos de la información de navegación
@@ -104,8 +121,8 @@ public class Velero {
     // Almacenan información sobre los parámetros de navegación
     // ------------------------------------------------------------------------
     private int velocidad;                  // Velocidad del barco (en nudos)
-    private String patron;                  // Nombre del patron del barco
-    private String rumbo;                   // Rumbo que tomará el barco mientras está navegando
+    private int idPatron;                   // Nombre del patron del barco (identificador en la tabla de símbolos de la escuela)
+    private int idRumbo;                    // Rumbo que tomará el barco mientras está navegando (identificador en la tabla de rumbos de la escuela)
     private int tripulacion;                // Número de tripulantes del barco
 
     // ------------------------------------------------------------------------
@@ -113,8 +130,8 @@ public class Velero {
     // ------------------------------------------------------------------------
     /**
      * Constructor de tres parámetros de la clase <code>Velero</code>.
-     * Crea un objeto <code>Velero</code> y almacena los datos básicos del barco:
-     * <b>nombre</b>, <b>mástiles</b> y <b>tripulantes</b>.
+     * Crea un objeto <code>Velero</code> en la escuela por defecto y almacena
+     * los datos básicos del barco: <b>nombre</b>, <b>mástiles</b> y <b>tripulantes</b>.
      * 
      * @param nombre Nombre del barco
      * @param mastiles Número de mástiles del velero
@@ -124,51 +141,103 @@ public class Velero {
      * @throws IllegalArgumentException Si alguno de los parámetros no es válido
      */
     public Velero(String nombre, int mastiles, int tripulantes) throws IllegalArgumentException, NullPointerException {
-        if (nombre == null) {
-            throw new NullPointerException("El nombre del velero no puede ser nulo.\n");
-        }
-        if (nombre.equals("")) {
-            throw new IllegalArgumentException("El nombre del velero no puede estar vacío.\n");
-        }
-        //El número de mástiles del velero debe estar entre los mínimos y máximos que marca la clase
-        if (mastiles < Velero.MIN_MASTILES || mastiles > Velero.MAX_MASTILES) {
-            throw new IllegalArgumentException(String.format("El número de mástiles debe estar entre %d y %d.\n", Velero.MIN_MASTILES, Velero.MAX_MASTILES));
-        }
-        //El número máximo de tripulantes de un barco debe ser, como mínimo, cero (si únicamente puede navegar el patrón)
-        if (tripulantes < Velero.MIN_TRIPULANTES) {
-            throw new IllegalArgumentException(String.format("El número de tripulantes debe ser, como mínimo, %d.\n", Velero.MIN_TRIPULANTES));
+        this(EscuelaVela.getPorDefecto(), nombre, mastiles, tripulantes);
+    }
+
+    /**
+     * Constructor de cuatro parámetros de la clase <code>Velero</code>.
+     * Crea un objeto <code>Velero</code> en una escuela determinada y almacena
+     * los datos básicos del barco: <b>nombre</b>, <b>mástiles</b> y <b>tripulantes</b>.
+     * 
+     * @param escuela Escuela a la que pertenece el barco
+     * @param nombre Nombre del barco
+     * @param mastiles Número de mástiles del velero
+     * @param tripulantes Número máximo de tripulantes del barco
+     * 
+     * @throws NullPointerException Si algunos de los parámetros es nulo
+     * @throws IllegalArgumentException Si alguno de los parámetros no es válido
+     */
+    public Velero(EscuelaVela escuela, String nombre, int mastiles, int tripulantes) throws IllegalArgumentException, NullPointerException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela del velero no puede ser nula.\n");
         }
-        this.nombreBarco = nombre;
+        Velero.comprobarDatos(nombre, mastiles, tripulantes);
+        this.escuela = escuela;
+        this.nombreBarco = escuela.getSimbolos().getCanonico(nombre);
         this.numMastiles = mastiles;
         this.maxTripulantes = tripulantes;
         
         // Inicialización de atributos relacionados con la navegación
         this.navegando = false;
         this.tiempoTotalNavegacionBarco = 0;
+        this.instanteSalida = Velero.SIN_INSTANTE;
+        this.instanteLlegada = Velero.SIN_INSTANTE;
         this.velocidad = 0;
-        this.patron = Velero.PATRON_POR_DEFECTO;
-        this.rumbo = Velero.RUMBO_POR_DEFECTO;
+        this.idPatron = escuela.getIdPatronPorDefecto();
+        this.idRumbo = Velero.ID_SIN_RUMBO;
         this.tripulacion = Velero.MIN_TRIPULANTES;
 
-        // Actualización de los atributos de clase necesarios
-        Velero.numBarcos++;
-        
         //En el constructor no pasamos como parámetro un patrón, ya que un barco puede tener más de un patrón
         //Se asignará el patrón que está a cargo del barco cuando comience a navegar
+
+        // Actualización de los contadores de la escuela (el barco ya está completamente inicializado)
+        this.ranura = escuela.asignarRanura(nombre);
+        this.indice = escuela.registrar(this);
+        escuela.notificarBarcoCreado(this);
     }
       
     /**
      * Constructor por defecto de la clase <code>Velero</code>.
-     * Crea un objeto <code>Velero</code> con los valores por defecto.
+     * Crea un objeto <code>Velero</code> con los valores por defecto en la escuela por defecto.
      * 
      */
     public Velero() {
-        this("Velero " + (Velero.numBarcos + 1), Velero.MIN_MASTILES, Velero.MIN_TRIPULANTES);
+        this(EscuelaVela.getPorDefecto());
+    }
+
+    /**
+     * Constructor de la clase <code>Velero</code> con los valores por defecto.
+     * Crea un objeto <code>Velero</code> con los valores por defecto en una escuela determinada.
+     * 
+     * @param escuela Escuela a la que pertenece el barco
+     * 
+     * @throws NullPointerException Si la escuela es nula
+     */
+    public Velero(EscuelaVela escuela) throws NullPointerException {
+        this(escuela, (escuela == null ? null : escuela.siguienteNombrePorDefecto()), Velero.MIN_MASTILES, Velero.MIN_TRIPULANTES);
+    }
+
+    /**
+     * Comprueba que los datos básicos de un barco son válidos, sin llegar a crearlo.
+     * Se aplican las mismas reglas que en el constructor de tres parámetros.
+     * 
+     * @param nombre Nombre del barco
+     * @param mastiles Número de mástiles del velero
+     * @param tripulantes Número máximo de tripulantes del barco
+     * 
+     * @throws NullPointerException Si el nombre es nulo
+     * @throws IllegalArgumentException Si alguno de los parámetros no es válido
+     */
+    static void comprobarDatos(String nombre, int mastiles, int tripulantes) throws IllegalArgumentException, NullPointerException {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre del velero no puede ser nulo.\n");
+        }
+        if (nombre.equals("")) {
+            throw new IllegalArgumentException("El nombre del velero no puede estar vacío.\n");
+        }
+        //El número de mástiles del velero debe estar entre los mínimos y máximos que marca la clase
+        if (mastiles < Velero.MIN_MASTILES || mastiles > Velero.MAX_MASTILES) {
+            throw new IllegalArgumentException(String.format("El número de mástiles debe estar entre %d y %d.\n", Velero.MIN_MASTILES, Velero.MAX_MASTILES));
+        }
+        //El número máximo de tripulantes de un barco debe ser, como mínimo, cero (si únicamente puede navegar el patrón)
+        if (tripulantes < Velero.MIN_TRIPULANTES) {
+            throw new IllegalArgumentException(String.format("El número de tripulantes debe ser, como mínimo, %d.\n", Velero.MIN_TRIPULANTES));
+        }
     }
 
     /**
      * Método fábrica de la clase <code>Velero</code>.
-     * Crea un array de objetos <code>Velero</code> con los valores por defecto.
+     * Crea un array de objetos <code>Velero</code> con los valores por defecto en la escuela por defecto.
      * 
      * @param cantidad Número de barcos que se van a crear
      * @return El array de barcos
@@ -176,13 +245,31 @@ public class Velero {
      * @throws IllegalArgumentException Si alguno de los parámetros no es válido
      */
     public static Velero[] crearArrayVelero(int cantidad) throws IllegalArgumentException {
-        if (cantidad < 1 || cantidad > 10) {
-            throw new IllegalArgumentException(String.format("Número de barcos incorrecto (%d), debe ser mayor o igual que 1 y menor o igual que 10.\n", cantidad));
+        return Velero.crearArrayVelero(EscuelaVela.getPorDefecto(), cantidad);
+    }
+
+    /**
+     * Método fábrica de la clase <code>Velero</code>.
+     * Crea un array de objetos <code>Velero</code> con los valores por defecto en una escuela determinada.
+     * 
+     * @param escuela Escuela a la que pertenecen los barcos
+     * @param cantidad Número de barcos que se van a crear
+     * @return El array de barcos
+     * 
+     * @throws NullPointerException Si la escuela es nula
+     * @throws IllegalArgumentException Si alguno de los parámetros no es válido
+     */
+    public static Velero[] crearArrayVelero(EscuelaVela escuela, int cantidad) throws NullPointerException, IllegalArgumentException {
+        if (escuela == null) {
+            throw new NullPointerException("La escuela de los veleros no puede ser nula.\n");
+        }
+        if (cantidad < 1 || cantidad > Velero.MAX_ARRAY_VELEROS) {
+            throw new IllegalArgumentException(String.format("Número de barcos incorrecto (%d), debe ser mayor o igual que 1 y menor o igual que %d.\n", cantidad, Velero.MAX_ARRAY_VELEROS));
         }
 
         Velero[] arrayBarcos = new Velero[cantidad];
         for (int i = 0; i < arrayBarcos.length; i++) {
-            arrayBarcos[i] = new Velero();
+            arrayBarcos[i] = new Velero(escuela);
         }
         return arrayBarcos;
     }
@@ -191,6 +278,30 @@ public class Velero {
     // Getters (consultan el estado del objeto)
     // ------------------------------------------------------------------------
     
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>escuela</code>
+     * @return Escuela a la que pertenece el velero
+     */
+    public EscuelaVela getEscuela() {
+        return this.escuela;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>indice</code>
+     * @return Índice del velero en el registro de su escuela
+     */
+    public int getIndice() {
+        return this.indice;
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>ranura</code>
+     * @return Ranura del velero en la región compartida de su escuela (-1 si no hay)
+     */
+    int getRanura() {
+        return this.ranura;
+    }
+
     /**
      * Método de acceso (getter) para consultar el atributo <code>nombreBarco</code>
      * @return Nombre del velero 
@@ -220,7 +331,8 @@ public class Velero {
      * @return El velero está navegando o no (TRUE / FALSE)
      */
     public boolean isNavegando() {
-        return this.navegando;
+        // Si la escuela comparte sus contadores, el indicador de navegación reside en la región compartida
+        return (this.ranura < 0 ? this.navegando : this.escuela.isNavegando(this.ranura));
     }
 
     /**
@@ -246,7 +358,15 @@ public class Velero {
      * @return Rumbo de navegación del velero
      */
     public String getRumbo() {
-        return this.rumbo;
+        return this.escuela.getRumbos().getSimbolo(this.idRumbo);
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el identificador del rumbo
+     * @return Identificador del rumbo de navegación del velero en la tabla de rumbos de su escuela
+     */
+    public int getIdRumbo() {
+        return this.idRumbo;
     }
 
     /**
@@ -254,7 +374,15 @@ public class Velero {
      * @return Patrón del velero
      */
     public String getPatron() {
-        return this.patron;
+        return this.escuela.getPatrones().getSimbolo(this.idPatron);
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el identificador del patrón
+     * @return Identificador del patrón del velero en la tabla de símbolos de su escuela
+     */
+    public int getIdPatron() {
+        return this.idPatron;
     }
 
     /**
@@ -264,33 +392,56 @@ public class Velero {
     public int getTripulacion() {
         return this.tripulacion;
     }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>instanteSalida</code>
+     * @return Instante de la última salida a navegar, o <code>null</code> si el velero no ha salido nunca
+     */
+    public Instant getInstanteSalida() {
+        return (this.instanteSalida == Velero.SIN_INSTANTE ? null : Instant.ofEpochMilli(this.instanteSalida));
+    }
+
+    /**
+     * Método de acceso (getter) para consultar el atributo <code>instanteLlegada</code>
+     * @return Instante de la última llegada a puerto, o <code>null</code> si el velero no ha llegado nunca
+     */
+    public Instant getInstanteLlegada() {
+        return (this.instanteLlegada == Velero.SIN_INSTANTE ? null : Instant.ofEpochMilli(this.instanteLlegada));
+    }
+
+    /**
+     * @return Instante de la última salida, en milisegundos (<code>SIN_INSTANTE</code> si no se conoce)
+     */
+    long getMilisegundosSalida() {
+        return this.instanteSalida;
+    }
     
     // ------------------------------------------------------------------------
-    // Métodos estáticos (acceden a los atributos estáticos de la clase)
+    // Métodos estáticos (consultan la información de la escuela por defecto)
     // ------------------------------------------------------------------------
 
     /**
-     * Método de acceso (getter) para consultar el atributo estático de clase <code>numBarcos</code>
-     * @return Número de barcos en la escuela de vela
+     * Método de acceso (getter) para consultar el atributo <code>numBarcos</code> de la escuela por defecto
+     * @return Número de barcos en la escuela de vela por defecto
      */
     public static int getNumBarcos() {
-        return Velero.numBarcos;
+        return EscuelaVela.getPorDefecto().getNumBarcos();
     }
 
     /**
-     * Método de acceso (getter) para consultar el atributo estático de clase <code>numBarcosNavegando</code>
-     * @return Número de barcos navegando en el momento actual
+     * Método de acceso (getter) para consultar el atributo <code>numBarcosNavegando</code> de la escuela por defecto
+     * @return Número de barcos de la escuela por defecto navegando en el momento actual
      */
     public static int getNumBarcosNavegando() {
-        return Velero.numBarcosNavegando;
+        return EscuelaVela.getPorDefecto().getNumBarcosNavegando();
     }
 
     /**
-     * Método de acceso (getter) para consultar el atributo estático de clase <code>tiempoTotalNavegacion</code>
-     * @return Minutos de navegación de todos los barcos de la escuela de vela
+     * Método de acceso (getter) para consultar el atributo <code>tiempoTotalNavegacion</code> de la escuela por defecto
+     * @return Minutos de navegación de todos los barcos de la escuela de vela por defecto
      */
     public static float getTiempoTotalNavegacion() {
-        return Velero.tiempoTotalNavegacion;
+        return EscuelaVela.getPorDefecto().getTiempoTotalNavegacion();
     }
     
     // ------------------------------------------------------------------------
@@ -306,8 +457,23 @@ public class Velero {
      * @throws IllegalArgumentException Si alguno de los parámetros no es válido
      * @throws IllegalStateException Si el velero no se encuentra navegando
      * @throws IllegalStateException Si el velero ya se encuentra navegando en ese rumbo
+     * @throws IllegalArgumentException Si la velocidad actual supera la que permite el viento en el nuevo rumbo
      */
     public void setRumbo(String rumbo) throws IllegalStateException, NullPointerException, IllegalArgumentException{
+        this.aplicarRumbo(this.comprobarRumbo(rumbo));
+    }
+
+    /**
+     * Comprueba que el barco puede cambiar a un rumbo, sin cambiarlo.
+     *
+     * @param rumbo Nuevo rumbo
+     * @return Identificador del nuevo rumbo en la tabla de rumbos
+     *
+     * @throws NullPointerException Si el rumbo es nulo
+     * @throws IllegalArgumentException Si el rumbo no es válido o la velocidad actual supera la que permite el viento en él
+     * @throws IllegalStateException Si el velero no está navegando o ya navega con ese rumbo
+     */
+    int comprobarRumbo(String rumbo) throws IllegalStateException, NullPointerException, IllegalArgumentException {
         if (!this.isNavegando()) {
             throw new IllegalStateException(String.format("El velero %s no está navegando, no se puede cambiar el rumbo.\n", this.getNombreBarco()));
         }
@@ -315,13 +481,45 @@ public class Velero {
             throw new NullPointerException("El rumbo no puede ser nulo, debes indicar el rumbo (ceñida o empopada) para poder modificarlo.\n");
         }
         //Comprobamos que el rumbo no esté vacío o sea distinto de "ceñida" o "empopada"
-        if (rumbo.equals("") || (!rumbo.equals("ceñida") && !rumbo.equals("empopada"))) {
+        int nuevoRumbo = this.escuela.getRumbos().buscar(rumbo);
+        if (nuevoRumbo != Velero.ID_CENIDA && nuevoRumbo != Velero.ID_EMPOPADA) {
             throw new IllegalArgumentException("El rumbo no es correcto, debes indicar el rumbo (ceñida o empopada) para poder modificarlo.\n");
         }
-        if (this.getRumbo().equals(rumbo)) {
+        if (this.idRumbo == nuevoRumbo) {
             throw new IllegalStateException(String.format("El velero %s ya está navegando con ese rumbo (%s), debes indicar un rumbo distinto para poder modificarlo.\n", this.getNombreBarco(), this.getRumbo()));
         }
-        this.rumbo = rumbo;
+        this.comprobarViento(this.velocidad, nuevoRumbo, rumbo);
+        return nuevoRumbo;
+    }
+
+    /**
+     * Cambia el rumbo de un barco ya comprobado con <code>comprobarRumbo</code> y avisa a los oyentes.
+     *
+     * @param nuevoRumbo Identificador del nuevo rumbo
+     */
+    void aplicarRumbo(int nuevoRumbo) {
+        int rumboAnterior = this.idRumbo;
+        this.idRumbo = nuevoRumbo;
+        this.escuela.notificarRumboCambiado(this, rumboAnterior);
+    }
+
+    /**
+     * Actualiza la velocidad de un velero que está navegando con la medida por
+     * la telemetría de a bordo. La velocidad se ajusta a los límites permitidos
+     * y los oyentes de la escuela sólo reciben aviso si cambia.
+     * 
+     * @param velocidad Velocidad medida (en nudos)
+     */
+    void actualizarVelocidad(int velocidad) {
+        if (!this.isNavegando()) {
+            return;
+        }
+        int nuevaVelocidad = Math.max(Velero.MIN_VELOCIDAD, Math.min(Velero.MAX_VELOCIDAD, velocidad));
+        if (nuevaVelocidad != this.velocidad) {
+            int velocidadAnterior = this.velocidad;
+            this.velocidad = nuevaVelocidad;
+            this.escuela.notificarVelocidadCambiada(this, velocidadAnterior);
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -336,11 +534,38 @@ public class Velero {
      * @param patron el patrón del barco en esta navegación
      * @param tripulacion el número de tripulantes (exceptuando el patrón) en esta navegación
      * 
-     * @throws IllegalArgumentException Si la velocidad no está en el rango permitido
-     * @throws IllegalStateException Si el barco ya se encuentra navegando o necesita mantenimiento
+     * @throws IllegalArgumentException Si la velocidad no está en el rango permitido o supera la que permite el viento
+     * @throws IllegalStateException Si el barco ya se encuentra navegando o necesita mantenimiento, o si el patrón es nuevo y la tabla de patrones está llena
      * @throws NullPointerException Si patrón o rumbo tienen valores nulos.
      */
     public void iniciarNavegacion(int velocidad, String rumbo, String patron, int tripulacion) throws IllegalArgumentException, IllegalStateException, NullPointerException {
+        int nuevoRumbo = this.comprobarSalida(velocidad, rumbo, patron, tripulacion);
+        // Salida aceptada: se añaden el rumbo y el patrón a las tablas de la escuela antes de registrarla
+        if (nuevoRumbo < 0) {
+            nuevoRumbo = this.escuela.getRumbos().getId(rumbo);
+        }
+        int nuevoPatron = this.escuela.getPatrones().getId(patron);
+        if (!this.escuela.registrarSalida(this.ranura)) {
+            throw new IllegalStateException(String.format("El velero %s ya está navegando y se encuentra fuera de puerto.\n", this.getNombreBarco()));
+        }
+        this.aplicarSalida(velocidad, nuevoRumbo, nuevoPatron, tripulacion, this.escuela.getReloj().millis());
+    }
+
+    /**
+     * Comprueba que el barco puede salir a navegar con unos parámetros, sin
+     * registrar la salida.
+     *
+     * @param velocidad Velocidad del barco durante la navegación
+     * @param rumbo Rumbo del barco durante la navegación
+     * @param patron Patrón del barco en esta navegación
+     * @param tripulacion Número de tripulantes (exceptuando el patrón)
+     * @return Identificador del rumbo en la tabla de rumbos de la escuela, o -1 si el rumbo todavía no está en ella
+     *
+     * @throws IllegalArgumentException Si algún parámetro es incorrecto o la velocidad supera la que permite el viento
+     * @throws IllegalStateException Si el barco ya se encuentra navegando o necesita mantenimiento
+     * @throws NullPointerException Si patrón o rumbo tienen valores nulos
+     */
+    int comprobarSalida(int velocidad, String rumbo, String patron, int tripulacion) throws IllegalArgumentException, IllegalStateException, NullPointerException {
         if (velocidad < Velero.MIN_VELOCIDAD || velocidad > Velero.MAX_VELOCIDAD) {
             throw new IllegalArgumentException(String.format("La velocidad de navegación de %d nudos es incorrecta.\n", velocidad));
         }       
@@ -363,12 +588,35 @@ public class Velero {
             throw new IllegalArgumentException(String.format("El número de tripulantes debe estar entre %d y %d.\n", Velero.MIN_TRIPULANTES , this.getMaxTripulantes()));
         }
         
+        PlanMantenimiento mantenimiento = this.escuela.getPlanMantenimiento();
+        if (mantenimiento != null && mantenimiento.necesitaMantenimiento(this)) {
+            throw new IllegalStateException(String.format("El velero %s necesita mantenimiento y no puede salir a navegar.\n", this.getNombreBarco()));
+        }
+        
+        // El rumbo se busca sin añadirlo a la tabla: sólo se añade si la salida se acepta
+        int nuevoRumbo = this.escuela.getRumbos().buscar(rumbo);
+        this.comprobarViento(velocidad, nuevoRumbo, rumbo);
+        return nuevoRumbo;
+    }
+
+    /**
+     * Pone a navegar un barco cuya salida ya está comprobada y registrada en la
+     * escuela, y avisa a los oyentes.
+     *
+     * @param velocidad Velocidad del barco
+     * @param nuevoRumbo Identificador del rumbo
+     * @param nuevoPatron Identificador del patrón en la tabla de símbolos de la escuela
+     * @param tripulacion Número de tripulantes
+     * @param instante Instante de la salida según el reloj de la escuela (ms)
+     */
+    void aplicarSalida(int velocidad, int nuevoRumbo, int nuevoPatron, int tripulacion, long instante) {
+        this.instanteSalida = instante;
         this.velocidad = velocidad;
-        this.rumbo = rumbo;
-        this.patron = patron;
+        this.idRumbo = nuevoRumbo;
+        this.idPatron = nuevoPatron;
         this.tripulacion = tripulacion;
         this.navegando = true;
-        Velero.numBarcosNavegando++;
+        this.escuela.notificarNavegacionIniciada(this);
     }
 
     /**
@@ -380,20 +628,116 @@ public class Velero {
      * @throws IllegalStateException Si el barco no se encuentra navegando
      */
     public void pararNavegacion(int tiempoNavegando) throws IllegalStateException, IllegalArgumentException {
+        this.comprobarLlegada(tiempoNavegando);
+        if (!this.escuela.registrarLlegada(this.ranura, tiempoNavegando)) {
+            throw new IllegalStateException(String.format("El velero %s no está navegando.\n", this.getNombreBarco()));
+        }
+        this.aplicarLlegada(tiempoNavegando, this.escuela.getReloj().millis());
+    }
+
+    /**
+     * Para la navegación del barco actual. El tiempo navegando se calcula con el
+     * reloj de la escuela: son los minutos entre la salida y la llegada,
+     * redondeados al más próximo y, como mínimo, uno.
+     * 
+     * @return Tiempo (en minutos) que ha estado el barco navegando
+     * 
+     * @throws IllegalStateException Si el barco no se encuentra navegando o no se conoce su instante de salida
+     */
+    public int pararNavegacion() throws IllegalStateException {
+        long llegada = this.escuela.getReloj().millis();
+        int tiempoNavegando = this.minutosNavegando(llegada);
+        if (!this.escuela.registrarLlegada(this.ranura, tiempoNavegando)) {
+            throw new IllegalStateException(String.format("El velero %s no está navegando.\n", this.getNombreBarco()));
+        }
+        this.aplicarLlegada(tiempoNavegando, llegada);
+        return tiempoNavegando;
+    }
+
+    /**
+     * Calcula los minutos que lleva navegando el barco hasta un instante,
+     * redondeados al más próximo y, como mínimo, uno.
+     *
+     * @param instante Instante de la llegada según el reloj de la escuela (ms)
+     * @return Tiempo (en minutos) que ha estado el barco navegando
+     *
+     * @throws IllegalStateException Si el barco no se encuentra navegando o no se conoce su instante de salida
+     */
+    int minutosNavegando(long instante) throws IllegalStateException {
+        if (!this.isNavegando()) {
+            throw new IllegalStateException(String.format("El velero %s no está navegando.\n", this.getNombreBarco()));
+        }
+        if (this.instanteSalida == Velero.SIN_INSTANTE) {
+            // Sólo ocurre si otro proceso de la región compartida sacó el barco a navegar
+            throw new IllegalStateException(String.format("No se conoce el instante de salida del velero %s: se debe indicar el tiempo navegando.\n", this.getNombreBarco()));
+        }
+        long minutos = (instante - this.instanteSalida + 30_000L) / 60_000L;
+        return (int) Math.max(1L, Math.min(minutos, (long) Integer.MAX_VALUE));
+    }
+
+    /**
+     * Comprueba que el barco puede volver a puerto, sin registrar la llegada.
+     *
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado el barco navegando
+     *
+     * @throws IllegalArgumentException Si el tiempo navegando es incorrecto
+     * @throws IllegalStateException Si el barco no se encuentra navegando
+     */
+    void comprobarLlegada(int tiempoNavegando) throws IllegalStateException, IllegalArgumentException {
         if (!this.isNavegando()) {
             throw new IllegalStateException(String.format("El velero %s no está navegando.\n", this.getNombreBarco()));
         }
         if (tiempoNavegando <= 0) {
             throw new IllegalArgumentException("Tiempo navegando incorrecto, debe ser mayor que cero.\n");
         }
-        this.tiempoTotalNavegacionBarco += tiempoNavegando;
-        Velero.tiempoTotalNavegacion += tiempoNavegando;
-        Velero.numBarcosNavegando--;
-        this.navegando = false;
-        this.velocidad = 0;
-        this.rumbo = Velero.RUMBO_POR_DEFECTO;
-        this.patron = Velero.PATRON_POR_DEFECTO;
-        this.tripulacion = Velero.MIN_TRIPULANTES;
+    }
+
+    /**
+     * Devuelve a puerto un barco cuya llegada ya está comprobada y registrada
+     * en la escuela, y avisa a los oyentes.
+     *
+     * @param tiempoNavegando Tiempo (en minutos) que ha estado el barco navegando
+     * @param instante Instante de la llegada según el reloj de la escuela (ms)
+     */
+    void aplicarLlegada(int tiempoNavegando, long instante) {
+        boolean exterior = this.escuela.empezarOperacion();
+        try {
+            this.instanteLlegada = instante;
+            this.tiempoTotalNavegacionBarco += tiempoNavegando;
+            // Los oyentes ven el barco todavía con los datos de la travesía
+            this.escuela.notificarNavegacionParada(this, tiempoNavegando);
+            this.navegando = false;
+            this.velocidad = 0;
+            this.idRumbo = Velero.ID_SIN_RUMBO;
+            this.idPatron = this.escuela.getIdPatronPorDefecto();
+            this.tripulacion = Velero.MIN_TRIPULANTES;
+        } finally {
+            // Las tareas que los oyentes han dejado para después ya ven el barco en puerto
+            this.escuela.terminarOperacion(exterior);
+        }
+    }
+
+    /**
+     * Sustituye el estado de navegación del barco por otro recibido de fuera
+     * (por ejemplo, de la réplica de otra escuela), sin comprobaciones, sin
+     * tocar los contadores de la escuela y sin avisar a los oyentes.
+     *
+     * @param navegando Indica si el barco está navegando
+     * @param tiempoTotal Tiempo total de navegación del barco (en minutos)
+     * @param velocidad Velocidad (en nudos)
+     * @param nuevoRumbo Identificador del rumbo
+     * @param nuevoPatron Identificador del patrón en la tabla de símbolos de la escuela
+     * @param tripulacion Número de tripulantes
+     * @param instanteSalida Instante de la última salida (ms, <code>SIN_INSTANTE</code> si no se conoce)
+     */
+    void restaurar(boolean navegando, int tiempoTotal, int velocidad, int nuevoRumbo, int nuevoPatron, int tripulacion, long instanteSalida) {
+        this.instanteSalida = instanteSalida;
+        this.navegando = navegando;
+        this.tiempoTotalNavegacionBarco = tiempoTotal;
+        this.velocidad = velocidad;
+        this.idRumbo = nuevoRumbo;
+        this.idPatron = nuevoPatron;
+        this.tripulacion = tripulacion;
     }
     
     /**
@@ -417,8 +761,8 @@ public class Velero {
         if (!otroBarco.isNavegando()) {
             throw new IllegalStateException(String.format("No se puede iniciar la regata, el barco %s no está navegando.\n", otroBarco.getNombreBarco()));
         }
-        // Comprobamos si ambos barcos llevan el mismo rumbo
-        if (!this.getRumbo().equals(otroBarco.getRumbo())){
+        // Comprobamos si ambos barcos llevan el mismo rumbo (los identificadores sólo se comparan dentro de una escuela)
+        if (this.escuela == otroBarco.escuela ? this.idRumbo != otroBarco.idRumbo : !this.getRumbo().equals(otroBarco.getRumbo())) {
             throw new IllegalStateException(String.format("No se puede iniciar la regata, los barcos %s y %s deben navegar con el mismo rumbo.\n", this.getNombreBarco(), otroBarco.getNombreBarco()));
         }
         // Comprobamos si ambos barcos tienen el mismo numero de mastiles
@@ -428,18 +772,37 @@ public class Velero {
         
         // Iniciamos la regata
         String resultadoRegata;
+        int resultado = Integer.compare(this.velocidad, otroBarco.getVelocidad());
         
         // Comparamos las velocidades para averiguar cuál es el barco más rápido, que será el que gane la regata
-        if (this.velocidad > otroBarco.getVelocidad()) {
+        if (resultado > 0) {
             resultadoRegata = String.format("El barco %s ha llegado antes a la línea de llegada.\n", this.getNombreBarco());
-        } else if (this.velocidad < otroBarco.getVelocidad()) {
+        } else if (resultado < 0) {
             resultadoRegata = String.format("El barco %s ha llegado primero a la línea de llegada.\n", otroBarco.getNombreBarco());
         } else {
             resultadoRegata = String.format("Los barcos %s y %s han llegado a la vez a la línea de llegada.\n", this.getNombreBarco(), otroBarco.getNombreBarco());
         }
+        this.escuela.notificarRegataFinalizada(this, otroBarco, resultado);
         return resultadoRegata;
     }
     
+    // Comprueba que la velocidad está dentro de la envolvente del modelo de viento de la escuela
+    private void comprobarViento(int velocidad, int idRumbo, String rumbo) throws IllegalArgumentException {
+        ModeloViento viento = this.escuela.getModeloViento();
+        if (viento == null) {
+            return;
+        }
+        int minuto = viento.getMinuto(this.escuela.getReloj().millis());
+        int maxima = viento.getVelocidadMaxima(minuto, idRumbo, this.numMastiles);
+        if (maxima < Velero.MIN_VELOCIDAD) {
+            throw new IllegalArgumentException(String.format("No se puede navegar con %d nudos de viento, se necesitan al menos %d.\n", viento.getViento(minuto), ModeloViento.VIENTO_MINIMO));
+        }
+        if (velocidad > maxima) {
+            throw new IllegalArgumentException(String.format("Con %d nudos de viento, el velero %s no puede superar los %d nudos en %s.\n",
+                    viento.getViento(minuto), this.getNombreBarco(), maxima, rumbo));
+        }
+    }
+    
     // ------------------------------------------------------------------------
     // Método toString (imprime el estado del objeto)
     // ------------------------------------------------------------------------